@@ -43,8 +43,37 @@ dependencies {
 	testRuntimeOnly(libs.logback)
 }
 
+tasks.jar {
+	manifest {
+		// Read back by the bytecode cache to invalidate entries written by other versions.
+		attributes("Implementation-Version" to project.version)
+	}
+}
+
+tasks.withType<Test>().configureEach {
+	// Lets kernels be vectorised; the library doesn't depend on the module, so it's only added at runtime.
+	jvmArgs("--add-modules", "jdk.incubator.vector")
+}
+
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+		excludeTags("benchmark")
+	}
+}
+
+tasks.register<Test>("benchmark") {
+	description = "Runs the compiler benchmarks."
+	group = "verification"
+
+	testClassesDirs = sourceSets.test.get().output.classesDirs
+	classpath = sourceSets.test.get().runtimeClasspath
+
+	useJUnitPlatform {
+		includeTags("benchmark")
+	}
+
+	testLogging.showStandardStreams = true
+	shouldRunAfter(tasks.test)
 }
 
 publishing {
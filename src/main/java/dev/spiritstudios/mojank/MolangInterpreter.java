@@ -9,16 +9,40 @@ import dev.spiritstudios.mojank.ast.KeywordExpression;
 import dev.spiritstudios.mojank.ast.ConstantExpression;
 import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
 import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.compile.Analysis;
+import dev.spiritstudios.mojank.compile.Binding;
+import dev.spiritstudios.mojank.compile.CompileOptions;
 import dev.spiritstudios.mojank.internal.NotImplementedException;
 import dev.spiritstudios.mojank.internal.Util;
 import dev.spiritstudios.mojank.compile.link.Linker;
 import dev.spiritstudios.mojank.runtime.Primitives;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.lang.constant.ConstantDesc;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 
+import static dev.spiritstudios.mojank.internal.Evaluation.STATIC_FLOAT;
+import static dev.spiritstudios.mojank.internal.Evaluation.STATIC_FLOAT_SETTER;
+import static dev.spiritstudios.mojank.internal.Evaluation.VIRTUAL_FLOAT;
+import static dev.spiritstudios.mojank.internal.Evaluation.VIRTUAL_FLOAT_SETTER;
+import static dev.spiritstudios.mojank.internal.Evaluation.isFloatShaped;
+import static dev.spiritstudios.mojank.internal.Evaluation.rethrow;
+import static dev.spiritstudios.mojank.internal.Evaluation.widensToFloat;
+import static dev.spiritstudios.mojank.internal.Evaluation.wrapIndex;
+import static dev.spiritstudios.mojank.internal.Evaluation.zero;
+
 public final class MolangInterpreter {
 	private static final Logger logger = Util.logger();
 
@@ -90,6 +114,83 @@ public final class MolangInterpreter {
 		};
 	}
 
+	/**
+	 * Evaluates the expression against live arguments, using the bindings already resolved by an {@link Analysis},
+	 * so that identifiers, fields and methods resolve exactly as they would when compiled.
+	 *
+	 * @param arguments The arguments of the {@link Analysis}'s target method, in declaration order.
+	 * @return The returned value, or null if nothing was returned.
+	 */
+	public static Object evaluate(Expression expression, Analysis analysis, Object... arguments) {
+		return evaluate(expression, analysis, CompileOptions.DEFAULT, arguments);
+	}
+
+	/**
+	 * @param options Only the {@link CompileOptions#maxLoopIterations()} apply, as nothing is compiled.
+	 */
+	public static Object evaluate(Expression expression, Analysis analysis, CompileOptions options, Object... arguments) {
+		final var frame = Frame.enter(analysis, options, arguments);
+
+		try {
+			return frame.evaluateReturned(expression);
+		} finally {
+			frame.exit();
+		}
+	}
+
+	/**
+	 * Evaluates the expression to a float, without boxing anything along the way through arithmetic, comparisons,
+	 * logic, and reads and calls of primitive fields and methods.
+	 * Such expressions allocate nothing, as long as the arguments array is reused.
+	 *
+	 * @see #evaluate(Expression, Analysis, CompileOptions, Object...)
+	 */
+	public static float evaluateFloat(Expression expression, Analysis analysis, CompileOptions options, Object... arguments) {
+		final var frame = Frame.enter(analysis, options, arguments);
+
+		try {
+			// Single expressions are parsed as a return of their value.
+			if (expression instanceof UnaryOperationExpression(var value, var operator) &&
+				operator == UnaryOperationExpression.Operator.RETURN) {
+				return frame.evaluateFloat(value);
+			}
+
+			return Primitives.unboxAsFloatLenient(frame.evaluateReturned(expression));
+		} finally {
+			frame.exit();
+		}
+	}
+
+	/**
+	 * @see #evaluateFloat(Expression, Analysis, CompileOptions, Object...)
+	 */
+	public static boolean evaluateBoolean(Expression expression, Analysis analysis, CompileOptions options, Object... arguments) {
+		final var frame = Frame.enter(analysis, options, arguments);
+
+		try {
+			if (expression instanceof UnaryOperationExpression(var value, var operator) &&
+				operator == UnaryOperationExpression.Operator.RETURN) {
+				return frame.evaluateBoolean(value);
+			}
+
+			return Primitives.unboxAsBooleanLenient(frame.evaluateReturned(expression));
+		} finally {
+			frame.exit();
+		}
+	}
+
+	/**
+	 * Converts an evaluated value to the given type, as it would be when returned from or passed to something of that type.
+	 */
+	public static Object convert(Object value, Class<?> type) {
+		if (type == float.class || type == Float.class) return Primitives.unboxAsFloatLenient(value);
+		if (type == double.class || type == Double.class) return Primitives.unboxAsDoubleLenient(value);
+		if (type == int.class || type == Integer.class) return Primitives.unboxAsIntLenient(value);
+		if (type == long.class || type == Long.class) return (long) Primitives.unboxAsDoubleLenient(value);
+		if (type == boolean.class || type == Boolean.class) return Primitives.unboxAsBooleanLenient(value);
+		return value;
+	}
+
 	public static boolean evaluateBoolean(Expression expression, Linker linker) {
 		return Primitives.unboxAsBooleanLenient(evaluate(expression, linker));
 	}
@@ -97,4 +198,500 @@ public final class MolangInterpreter {
 	public static float evaluateFloat(Expression expression, Linker linker) {
 		return Primitives.unboxAsFloatLenient(evaluate(expression, linker));
 	}
+
+	/**
+	 * Frames are reused by each thread, so that evaluating allocates nothing of its own.
+	 */
+	private static final class Frame {
+		private static final ThreadLocal<Frame> FRAMES = ThreadLocal.withInitial(Frame::new);
+
+		private @Nullable Analysis analysis;
+		private int maxLoopIterations;
+		private Object @Nullable [] arguments;
+		private final Map<Integer, Object> locals = new HashMap<>();
+		private final Map<String, Object> temporaries = new HashMap<>();
+		// Variables kept on the compiled expression itself only last as long as the frame here.
+		private final Map<String, Object> variables = new HashMap<>();
+
+		private boolean returning;
+		private Object returned;
+
+		private int loops;
+		// Set by break and continue, until the innermost loop sees them.
+		private boolean breaking;
+		private boolean continuing;
+
+		private static Frame enter(Analysis analysis, CompileOptions options, Object[] arguments) {
+			var frame = FRAMES.get();
+
+			// Entered again from within an evaluation, such as by a method that evaluates another expression.
+			if (frame.analysis != null) {
+				frame = new Frame();
+			}
+
+			frame.analysis = analysis;
+			frame.maxLoopIterations = options.maxLoopIterations();
+			frame.arguments = arguments;
+			return frame;
+		}
+
+		private void exit() {
+			analysis = null;
+			arguments = null;
+			locals.clear();
+			temporaries.clear();
+			variables.clear();
+			returning = false;
+			returned = null;
+			loops = 0;
+			breaking = false;
+			continuing = false;
+		}
+
+		private Object evaluateReturned(Expression expression) {
+			final var result = evaluate(expression);
+			return returning ? returned : result;
+		}
+
+		private boolean jumping() {
+			return returning || breaking || continuing;
+		}
+
+		private Object evaluate(Expression expression) {
+			if (jumping()) {
+				return null;
+			}
+
+			return switch (expression) {
+				case ConstantExpression(var value) -> value;
+				case IdentifierExpression identifier -> switch (analysis.binding(identifier)) {
+					case Binding.ClassAlias(var clazz) -> clazz;
+					case Binding.Parameter parameter -> arguments[parameter.index()];
+					case Binding binding -> throw new IllegalStateException("Identifier bound to " + binding);
+				};
+				case BinaryOperationExpression binary -> evaluateBinary(binary);
+				case UnaryOperationExpression(var value, var operator) -> switch (operator) {
+					case NUMERICAL_NEGATE -> -evaluateFloat(value);
+					case POSITIVE -> evaluateFloat(value);
+					case LOGICAL_NEGATE -> !evaluateBoolean(value);
+					case RETURN -> {
+						returned = evaluate(value);
+						returning = true;
+						yield null;
+					}
+				};
+				case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) ->
+					evaluateBoolean(condition) ? evaluate(ifTrue) : evaluate(ifFalse);
+				case ArrayAccessExpression(var array, var index) -> {
+					final var value = evaluate(array);
+					yield Array.get(value, wrapIndex(value, Primitives.unboxAsIntLenient(evaluate(index))));
+				}
+				case MethodCallExpression call -> evaluateCall(call);
+				case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) ->
+					Math.fma(evaluateFloat(multiplicand), evaluateFloat(multiplier), evaluateFloat(addend));
+				case ComplexExpression complex -> {
+					for (final var statement : complex.expressions()) {
+						evaluate(statement);
+
+						if (jumping()) {
+							break;
+						}
+					}
+
+					yield null;
+				}
+				case LocalStoreExpression(var id, var value) -> {
+					final var result = evaluate(value);
+					locals.put(id, result);
+					yield result;
+				}
+				case LocalLoadExpression(var id, var source) -> locals.containsKey(id) ? locals.get(id) : evaluate(source);
+				case LoopExpression(var count, var body, var preheader) -> {
+					// Clamped to the cap, and only evaluated once, as when compiled.
+					final int limit = Math.min(Primitives.unboxAsIntLenient(evaluate(count)), maxLoopIterations);
+
+					if (limit > 0) {
+						preheader.forEach(this::evaluate);
+					}
+
+					loops++;
+
+					for (int i = 0; i < limit && !returning; i++) {
+						evaluate(body);
+						continuing = false;
+
+						if (breaking) {
+							breaking = false;
+							break;
+						}
+					}
+
+					loops--;
+					yield null;
+				}
+				case KeywordExpression keyword -> {
+					if (loops == 0) {
+						throw new IllegalStateException("Tried to " + keyword.name().toLowerCase(Locale.ROOT) + " when not inside a loop!");
+					}
+
+					switch (keyword) {
+						case BREAK -> breaking = true;
+						case CONTINUE -> continuing = true;
+					}
+
+					yield null;
+				}
+			};
+		}
+
+		private Object evaluateBinary(BinaryOperationExpression binary) {
+			final var left = binary.left();
+			final var right = binary.right();
+
+			return switch (binary.operator()) {
+				case SET -> {
+					// Types a variable by its value, if this is the first assignment to it.
+					analysis.type(binary);
+
+					switch (left) {
+						case BinaryOperationExpression target
+							when analysis.binding(target) instanceof Binding.Temporary(var name, var type) ->
+							temporaries.put(name, convert(evaluate(right), type));
+						case BinaryOperationExpression target
+							when analysis.binding(target) instanceof Binding.Variable variable ->
+							writeVariable(variable, convert(evaluate(right), variable.type()));
+						case BinaryOperationExpression target -> {
+							final var access = analysis.binding(target, Binding.FieldAccess.class);
+							final var field = access.field();
+
+							setField(field, target.left(), right);
+						}
+						case ArrayAccessExpression(var array, var index) -> {
+							final var value = evaluate(array);
+							final var wrapped = wrapIndex(value, Primitives.unboxAsIntLenient(evaluate(index)));
+							Array.set(value, wrapped, convert(evaluate(right), value.getClass().componentType()));
+						}
+						default -> throw new IllegalStateException("Cannot assign to " + left);
+					}
+
+					yield null;
+				}
+				case NULL_COALESCE -> {
+					final var value = evaluate(left);
+					yield value != null ? value : evaluate(right);
+				}
+				case CONDITIONAL -> {
+					if (evaluateBoolean(left)) {
+						evaluate(right);
+					}
+
+					yield null;
+				}
+				case LOGICAL_OR -> evaluateBoolean(left) || evaluateBoolean(right);
+				case LOGICAL_AND -> evaluateBoolean(left) && evaluateBoolean(right);
+				case EQUAL_TO -> equal(left, right);
+				case NOT_EQUAL -> !equal(left, right);
+				case LESS_THAN -> evaluateFloat(left) < evaluateFloat(right);
+				case GREATER_THAN -> evaluateFloat(left) > evaluateFloat(right);
+				case LESS_THAN_OR_EQUAL_TO -> evaluateFloat(left) <= evaluateFloat(right);
+				case GREATER_THAN_OR_EQUAL_TO -> evaluateFloat(left) >= evaluateFloat(right);
+				case ADD -> evaluateFloat(left) + evaluateFloat(right);
+				case SUBTRACT -> evaluateFloat(left) - evaluateFloat(right);
+				case MULTIPLY -> evaluateFloat(left) * evaluateFloat(right);
+				case DIVIDE -> evaluateFloat(left) / evaluateFloat(right);
+				case REMAINDER -> evaluateFloat(left) % evaluateFloat(right);
+				case GET -> {
+					if (analysis.binding(binary) instanceof Binding.Temporary(var name, var type)) {
+						// Unset variables read as zero, the same as an uninitialised slot would.
+						yield temporaries.containsKey(name) ? temporaries.get(name) : zero(type);
+					}
+
+					if (analysis.binding(binary) instanceof Binding.Variable variable) {
+						yield readVariable(variable);
+					}
+
+					final var access = analysis.binding(binary, Binding.FieldAccess.class);
+					final var field = access.field();
+					final var getter = analysis.linker().getter(field);
+
+					try {
+						yield Modifier.isStatic(field.getModifiers()) ?
+							getter.invoke() :
+							getter.invoke(access.hasReceiver() ? evaluate(left) : null);
+					} catch (Throwable throwable) {
+						throw rethrow(throwable);
+					}
+				}
+				case ARROW -> throw new NotImplementedException();
+			};
+		}
+
+		private Object evaluateCall(MethodCallExpression call) {
+			final var invocation = analysis.binding(call, Binding.Invocation.class);
+			final var method = invocation.method();
+			final var receiver = invocation.hasReceiver() ?
+				evaluate(((BinaryOperationExpression) call.method()).left()) :
+				null;
+
+			final var parameterTypes = method.getParameterTypes();
+			final int offset = Modifier.isStatic(method.getModifiers()) ? 0 : 1;
+			final var args = new Object[parameterTypes.length + offset];
+
+			if (offset == 1) {
+				args[0] = receiver;
+			}
+
+			for (int i = 0; i < parameterTypes.length; i++) {
+				args[i + offset] = convert(evaluate(call.parameters().get(i)), parameterTypes[i]);
+			}
+
+			try {
+				return analysis.linker().invoker(method).invokeWithArguments(args);
+			} catch (Throwable throwable) {
+				throw rethrow(throwable);
+			}
+		}
+
+		/**
+		 * Calls a method taking and returning numbers without boxing, if it takes few enough floats or doubles.
+		 */
+		private float evaluateCallFloat(MethodCallExpression call) {
+			final var invocation = analysis.binding(call, Binding.Invocation.class);
+			final var method = invocation.method();
+
+			if (!isFloatShaped(method)) {
+				return Primitives.unboxAsFloatLenient(evaluateCall(call));
+			}
+
+			final var receiver = invocation.hasReceiver() ?
+				evaluate(((BinaryOperationExpression) call.method()).left()) :
+				null;
+
+			final var isStatic = Modifier.isStatic(method.getModifiers());
+			final var parameters = call.parameters();
+			final var invoker = analysis.linker().invoker(method)
+				.asType((isStatic ? STATIC_FLOAT : VIRTUAL_FLOAT)[parameters.size()]);
+
+			try {
+				if (isStatic) {
+					return switch (parameters.size()) {
+						case 0 -> (float) invoker.invokeExact();
+						case 1 -> (float) invoker.invokeExact(evaluateFloat(parameters.get(0)));
+						case 2 -> (float) invoker.invokeExact(evaluateFloat(parameters.get(0)), evaluateFloat(parameters.get(1)));
+						default -> (float) invoker.invokeExact(
+							evaluateFloat(parameters.get(0)),
+							evaluateFloat(parameters.get(1)),
+							evaluateFloat(parameters.get(2))
+						);
+					};
+				}
+
+				return switch (parameters.size()) {
+					case 0 -> (float) invoker.invokeExact(receiver);
+					case 1 -> (float) invoker.invokeExact(receiver, evaluateFloat(parameters.get(0)));
+					case 2 -> (float) invoker.invokeExact(
+						receiver,
+						evaluateFloat(parameters.get(0)),
+						evaluateFloat(parameters.get(1))
+					);
+					default -> (float) invoker.invokeExact(
+						receiver,
+						evaluateFloat(parameters.get(0)),
+						evaluateFloat(parameters.get(1)),
+						evaluateFloat(parameters.get(2))
+					);
+				};
+			} catch (Throwable throwable) {
+				throw rethrow(throwable);
+			}
+		}
+
+		private float evaluateGetFloat(BinaryOperationExpression binary) {
+			if (!(analysis.binding(binary) instanceof Binding.FieldAccess(var _, var field, var hasReceiver)) ||
+				!widensToFloat(field.getType())) {
+				return Primitives.unboxAsFloatLenient(evaluateBinary(binary));
+			}
+
+			final var getter = analysis.linker().getter(field);
+
+			try {
+				if (Modifier.isStatic(field.getModifiers())) {
+					return (float) getter.asType(STATIC_FLOAT[0]).invokeExact();
+				}
+
+				return (float) getter.asType(VIRTUAL_FLOAT[0]).invokeExact(hasReceiver ? evaluate(binary.left()) : null);
+			} catch (Throwable throwable) {
+				throw rethrow(throwable);
+			}
+		}
+
+		private void setField(Field field, Expression receiver, Expression value) {
+			final var isStatic = Modifier.isStatic(field.getModifiers());
+			final var target = isStatic ? null : evaluate(receiver);
+			final var setter = analysis.linker().setter(field);
+
+			try {
+				if (field.getType() == float.class) {
+					final float converted = evaluateFloat(value);
+
+					if (isStatic) {
+						setter.asType(STATIC_FLOAT_SETTER).invokeExact(converted);
+					} else {
+						setter.asType(VIRTUAL_FLOAT_SETTER).invokeExact(target, converted);
+					}
+
+					return;
+				}
+
+				final var converted = convert(evaluate(value), field.getType());
+
+				if (isStatic) {
+					setter.invoke(converted);
+				} else {
+					setter.invoke(target, converted);
+				}
+			} catch (Throwable throwable) {
+				throw rethrow(throwable);
+			}
+		}
+
+		private Object readVariable(Binding.Variable variable) {
+			if (variable.isIndexed()) {
+				throw new NotImplementedException("Variables held in a VariableArena can only be accessed once compiled");
+			}
+
+			if (variable.parameter() == null) {
+				return variables.containsKey(variable.name()) ? variables.get(variable.name()) : zero(variable.type());
+			}
+
+			final var struct = arguments[variable.parameter().index()];
+
+			try {
+				return struct.getClass().getField(variable.field()).get(struct);
+			} catch (ReflectiveOperationException exception) {
+				throw new IllegalStateException("Cannot read " + variable + " from " + struct.getClass(), exception);
+			}
+		}
+
+		private void writeVariable(Binding.Variable variable, Object value) {
+			if (variable.isIndexed()) {
+				throw new NotImplementedException("Variables held in a VariableArena can only be accessed once compiled");
+			}
+
+			if (variable.parameter() == null) {
+				variables.put(variable.name(), value);
+				return;
+			}
+
+			final var struct = arguments[variable.parameter().index()];
+
+			try {
+				set(struct.getClass().getField(variable.field()), struct, value);
+			} catch (NoSuchFieldException exception) {
+				throw new IllegalStateException("Cannot write " + variable + " to " + struct.getClass(), exception);
+			}
+		}
+
+		private boolean evaluateBoolean(Expression expression) {
+			if (jumping()) {
+				return false;
+			}
+
+			return switch (expression) {
+				case ConstantExpression(var value) -> Primitives.unboxAsBooleanLenient(value);
+				case BinaryOperationExpression binary -> switch (binary.operator()) {
+					case LOGICAL_OR -> evaluateBoolean(binary.left()) || evaluateBoolean(binary.right());
+					case LOGICAL_AND -> evaluateBoolean(binary.left()) && evaluateBoolean(binary.right());
+					case EQUAL_TO -> equal(binary.left(), binary.right());
+					case NOT_EQUAL -> !equal(binary.left(), binary.right());
+					case LESS_THAN -> evaluateFloat(binary.left()) < evaluateFloat(binary.right());
+					case GREATER_THAN -> evaluateFloat(binary.left()) > evaluateFloat(binary.right());
+					case LESS_THAN_OR_EQUAL_TO -> evaluateFloat(binary.left()) <= evaluateFloat(binary.right());
+					case GREATER_THAN_OR_EQUAL_TO -> evaluateFloat(binary.left()) >= evaluateFloat(binary.right());
+					case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER -> Primitives.castToBoolean(evaluateFloat(binary));
+					default -> Primitives.unboxAsBooleanLenient(evaluateBinary(binary));
+				};
+				case UnaryOperationExpression(var value, var operator) when operator == UnaryOperationExpression.Operator.LOGICAL_NEGATE ->
+					!evaluateBoolean(value);
+				case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) ->
+					evaluateBoolean(condition) ? evaluateBoolean(ifTrue) : evaluateBoolean(ifFalse);
+				default -> Primitives.unboxAsBooleanLenient(evaluate(expression));
+			};
+		}
+
+		private float evaluateFloat(Expression expression) {
+			if (jumping()) {
+				return 0F;
+			}
+
+			return switch (expression) {
+				case ConstantExpression(var value) -> Primitives.unboxAsFloatLenient(value);
+				case BinaryOperationExpression binary -> switch (binary.operator()) {
+					case ADD -> evaluateFloat(binary.left()) + evaluateFloat(binary.right());
+					case SUBTRACT -> evaluateFloat(binary.left()) - evaluateFloat(binary.right());
+					case MULTIPLY -> evaluateFloat(binary.left()) * evaluateFloat(binary.right());
+					case DIVIDE -> evaluateFloat(binary.left()) / evaluateFloat(binary.right());
+					case REMAINDER -> evaluateFloat(binary.left()) % evaluateFloat(binary.right());
+					case LOGICAL_OR, LOGICAL_AND, EQUAL_TO, NOT_EQUAL, LESS_THAN, GREATER_THAN,
+						 LESS_THAN_OR_EQUAL_TO, GREATER_THAN_OR_EQUAL_TO -> evaluateBoolean(binary) ? 1F : 0F;
+					case GET -> evaluateGetFloat(binary);
+					default -> Primitives.unboxAsFloatLenient(evaluateBinary(binary));
+				};
+				case UnaryOperationExpression(var value, var operator) -> switch (operator) {
+					case NUMERICAL_NEGATE -> -evaluateFloat(value);
+					case POSITIVE -> evaluateFloat(value);
+					case LOGICAL_NEGATE -> evaluateBoolean(value) ? 0F : 1F;
+					case RETURN -> Primitives.unboxAsFloatLenient(evaluate(expression));
+				};
+				case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) ->
+					evaluateBoolean(condition) ? evaluateFloat(ifTrue) : evaluateFloat(ifFalse);
+				case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) ->
+					Math.fma(evaluateFloat(multiplicand), evaluateFloat(multiplier), evaluateFloat(addend));
+				case MethodCallExpression call -> evaluateCallFloat(call);
+				default -> Primitives.unboxAsFloatLenient(evaluate(expression));
+			};
+		}
+
+		/**
+		 * Compares numbers as floats, without boxing them if the left is plainly a number.
+		 */
+		private boolean equal(Expression left, Expression right) {
+			if (isNumeric(left)) {
+				return evaluateFloat(left) == evaluateFloat(right);
+			}
+
+			return equal(evaluate(left), evaluate(right));
+		}
+
+		private static boolean isNumeric(Expression expression) {
+			return switch (expression) {
+				case ConstantExpression(var value) -> value instanceof Number;
+				case BinaryOperationExpression(var _, var operator, var _) -> switch (operator) {
+					case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER -> true;
+					default -> false;
+				};
+				case UnaryOperationExpression(var _, var operator) ->
+					operator == UnaryOperationExpression.Operator.NUMERICAL_NEGATE ||
+						operator == UnaryOperationExpression.Operator.POSITIVE;
+				case FusedMultiplyAddExpression _ -> true;
+				default -> false;
+			};
+		}
+
+		private static boolean equal(Object left, Object right) {
+			if (left instanceof Number || left instanceof Boolean) {
+				return Primitives.unboxAsFloatLenient(left) == Primitives.unboxAsFloatLenient(right);
+			}
+
+			return Objects.equals(left, right);
+		}
+
+		private static void set(Field field, Object receiver, Object value) {
+			try {
+				field.set(Modifier.isStatic(field.getModifiers()) ? null : receiver, value);
+			} catch (IllegalAccessException exception) {
+				throw new IllegalStateException("Cannot access " + field, exception);
+			}
+		}
+	}
 }
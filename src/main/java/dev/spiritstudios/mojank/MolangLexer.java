@@ -4,13 +4,20 @@ import dev.spiritstudios.mojank.token.ConstantToken;
 import dev.spiritstudios.mojank.token.ErrorToken;
 import dev.spiritstudios.mojank.token.IdentifierToken;
 import dev.spiritstudios.mojank.token.MolangToken;
-import it.unimi.dsi.fastutil.ints.IntSet;
+import dev.spiritstudios.mojank.token.OperatorToken;
+import dev.spiritstudios.mojank.token.PackedTokens;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringWriter;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
 
 import static dev.spiritstudios.mojank.token.OperatorToken.ADD;
 import static dev.spiritstudios.mojank.token.OperatorToken.AND;
@@ -44,14 +51,38 @@ import static dev.spiritstudios.mojank.token.OperatorToken.REMAINDER;
 import static dev.spiritstudios.mojank.token.OperatorToken.RETURN;
 import static dev.spiritstudios.mojank.token.OperatorToken.SET;
 import static dev.spiritstudios.mojank.token.OperatorToken.SUBTRACT;
-
+import static dev.spiritstudios.mojank.token.PackedTokens.ERROR;
+import static dev.spiritstudios.mojank.token.PackedTokens.FALSE;
+import static dev.spiritstudios.mojank.token.PackedTokens.IDENTIFIER;
+import static dev.spiritstudios.mojank.token.PackedTokens.NUMBER;
+import static dev.spiritstudios.mojank.token.PackedTokens.STRING;
+import static dev.spiritstudios.mojank.token.PackedTokens.TRUE;
+
+/**
+ * Splits Molang source into tokens, scanning it by index.
+ * <p>
+ * Source can be given as characters, or as UTF-8 in a byte array, {@link ByteBuffer} or {@link MemorySegment},
+ * none of which are copied or decoded up front.
+ * Numbers are parsed as they're scanned, and keywords are matched in place,
+ * so the only allocations are the tokens themselves and the strings of identifiers and string literals.
+ */
 public class MolangLexer {
-	private static final IntSet SKIP = IntSet.of(
-			' ',
-			'\t',
-			'\n',
-			'\r'
-	);
+	/**
+	 * Every power of ten that is exactly a float, so that a number of at most 24 bits divided by one
+	 * is correctly rounded, as {@link Float#parseFloat} would be.
+	 */
+	private static final float[] POWERS_OF_TEN = {
+		1e0F, 1e1F, 1e2F, 1e3F, 1e4F, 1e5F, 1e6F, 1e7F, 1e8F, 1e9F, 1e10F
+	};
+
+	private static final long MAX_EXACT_MANTISSA = 1L << 24;
+
+	/**
+	 * Whether the codepoint is whitespace skipped between tokens. Any other whitespace is an unexpected token.
+	 */
+	public static boolean isSkipped(int codepoint) {
+		return codepoint == ' ' || codepoint == '\t' || codepoint == '\n' || codepoint == '\r';
+	}
 
 	private static boolean isValidIdentifierStart(int codepoint) {
 		return ('a' <= codepoint && codepoint <= 'z') || ('A' <= codepoint && codepoint <= 'Z') || codepoint == '_';
@@ -61,17 +92,59 @@ public class MolangLexer {
 		return isValidIdentifierStart(codepoint) || Character.isDigit(codepoint);
 	}
 
+	private static final OperatorToken[] OPERATORS = OperatorToken.values();
 
-	private final Reader reader;
+	private final Input input;
+	private final int length;
 
+	private int index;
 	private int line = 1;
 	private int col = 1;
 
-	private int nextCharacter;
+	private int tokenStart;
+	private float number;
+	private boolean upperCase;
+	private ErrorToken error;
 
+	/**
+	 * Reads the whole of the reader up front.
+	 */
 	public MolangLexer(Reader reader) throws IOException {
-		this.reader = reader;
-		this.nextCharacter = reader.read();
+		this(read(reader));
+	}
+
+	public MolangLexer(CharSequence source) {
+		this(new Chars(source));
+	}
+
+	public MolangLexer(byte[] utf8) {
+		this(utf8, 0, utf8.length);
+	}
+
+	public MolangLexer(byte[] utf8, int offset, int length) {
+		this(new Bytes(utf8, offset, length));
+	}
+
+	/**
+	 * Lexes the bytes between the buffer's position and limit, without moving either.
+	 */
+	public MolangLexer(ByteBuffer utf8) {
+		this(MemorySegment.ofBuffer(utf8));
+	}
+
+	public MolangLexer(MemorySegment utf8) {
+		this(new Segment(utf8));
+	}
+
+	private MolangLexer(Input input) {
+		this.input = input;
+		this.length = input.length();
+	}
+
+	private static String read(Reader reader) throws IOException {
+		var writer = new StringWriter();
+		reader.transferTo(writer);
+		return writer.toString();
 	}
 
 	private float parseNumber(String string) {
@@ -80,124 +153,187 @@ public class MolangLexer {
 	}
 
 	public MolangToken next() throws IOException {
-		int codepoint = nextCharacter;
+		int kind = scan();
+
+		return switch (kind) {
+			case NUMBER -> new ConstantToken(number);
+			case STRING -> new ConstantToken(input.string(tokenStart + 1, index - 1));
+			case IDENTIFIER -> new IdentifierToken(identifier(tokenStart, index, upperCase));
+			case TRUE -> ConstantToken.TRUE;
+			case FALSE -> ConstantToken.FALSE;
+			case ERROR -> error;
+			default -> OPERATORS[kind];
+		};
+	}
 
-		while (SKIP.contains(codepoint)) {
-			codepoint = readChar();
-		}
+	public List<MolangToken> readAll() throws IOException {
+		var result = new ArrayList<MolangToken>();
 
-		if (codepoint == -1) {
-			return EOF;
+		while (true) {
+			var token = next();
+			result.add(token);
+			if (token == EOF) break;
 		}
 
-		if (Character.isDigit(codepoint)) {
-			StringBuilder number = new StringBuilder();
+		return result;
+	}
 
-			while (Character.isDigit(codepoint)) {
-				number.appendCodePoint(codepoint);
+	/**
+	 * Lexes the rest of the source into a packed stream, without making an object of any token.
+	 * Each distinct identifier or string is decoded once, the first time it's seen.
+	 */
+	public PackedTokens readPacked() {
+		var symbols = new Symbols();
+		var errors = new ArrayList<ErrorToken>();
+
+		int size = 0;
+		int[] kinds = new int[16];
+		int[] starts = new int[16];
+		int[] lengths = new int[16];
+		int[] ids = new int[16];
+		float[] numbers = new float[16];
 
-				codepoint = readChar();
+		while (true) {
+			int kind = scan();
+
+			if (size == kinds.length) {
+				kinds = Arrays.copyOf(kinds, size * 2);
+				starts = Arrays.copyOf(starts, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+				numbers = Arrays.copyOf(numbers, size * 2);
 			}
 
-			if (codepoint == '.') {
-				codepoint = readChar();
-				number.append('.');
+			kinds[size] = kind;
+			starts[size] = tokenStart;
+			lengths[size] = index - tokenStart;
+			ids[size] = switch (kind) {
+				case IDENTIFIER -> symbols.intern(tokenStart, index, true);
+				case STRING -> symbols.intern(tokenStart + 1, index - 1, false);
+				case ERROR -> {
+					errors.add(error);
+					yield errors.size() - 1;
+				}
+				default -> -1;
+			};
+			numbers[size] = kind == NUMBER ? number : 0F;
+			size++;
 
-				while (Character.isDigit(codepoint)) {
-					number.appendCodePoint(codepoint);
+			if (kind == EOF.ordinal()) break;
+		}
 
-					codepoint = readChar();
-				}
-			}
+		return new PackedTokens(
+			size, kinds, starts, lengths, ids, numbers,
+			symbols.names.toArray(String[]::new), errors.toArray(ErrorToken[]::new)
+		);
+	}
+
+	/**
+	 * Scans the next token, leaving its value in {@link #number}, {@link #upperCase} or {@link #error} as its kind needs.
+	 *
+	 * @return The kind of token, as for {@link PackedTokens#kind}.
+	 */
+	private int scan() {
+		int codepoint = current();
+
+		while (isSkipped(codepoint)) {
+			codepoint = advance();
+		}
 
-			return new ConstantToken(parseNumber(number.toString()));
+		tokenStart = index;
+
+		if (codepoint == -1) {
+			return EOF.ordinal();
+		}
+
+		if (Character.isDigit(codepoint)) {
+			number = number(codepoint);
+			return NUMBER;
 		} else if (isValidIdentifierStart(codepoint)) { // [A-z_]
-			StringBuilder builder = new StringBuilder();
+			int start = index;
+			boolean upperCase = false;
 
 			do {
-				builder.appendCodePoint(codepoint);
-			} while (isValidIdentifier(codepoint = readChar()));
-
-			String identifier = builder.toString().toLowerCase(Locale.ROOT);
-
-			return switch (identifier) {
-				case "return" -> RETURN;
-				case "break" -> BREAK;
-				case "continue" -> CONTINUE;
-				case "true" -> ConstantToken.TRUE;
-				case "false" -> ConstantToken.FALSE;
-				default -> new IdentifierToken(identifier);
-			};
+				upperCase |= 'A' <= codepoint && codepoint <= 'Z';
+			} while (isValidIdentifier(codepoint = advance()));
+
+			int end = index;
+
+			if (matches(start, end, "return")) return RETURN.ordinal();
+			if (matches(start, end, "break")) return BREAK.ordinal();
+			if (matches(start, end, "continue")) return CONTINUE.ordinal();
+			if (matches(start, end, "true")) return TRUE;
+			if (matches(start, end, "false")) return FALSE;
+
+			this.upperCase = upperCase;
+			return IDENTIFIER;
 		} else if (codepoint == '\'') {
-			StringBuilder builder = new StringBuilder();
+			codepoint = advance();
 
-			codepoint = readChar();
 			while (codepoint != '\'') {
-				builder.appendCodePoint(codepoint);
-
-				codepoint = readChar();
+				codepoint = advance();
 
 				if (codepoint == -1) {
-					return new ErrorToken("Found unclosed string", line, col);
+					error = new ErrorToken("Found unclosed string", line, col);
+					return ERROR;
 				}
 			}
 
-			readChar();
-
-			return new ConstantToken(builder.toString());
+			advance();
+			return STRING;
 		} else {
 			var token = switch (codepoint) {
 				case '!' -> {
-					if (readChar() == '=') {
-						readChar();
+					if (advance() == '=') {
+						advance();
 						yield NOT_EQUAL;
 					} else {
 						yield NOT;
 					}
 				}
 				case '|' -> {
-					if (readChar() == '|') {
-						readChar();
+					if (advance() == '|') {
+						advance();
 						yield OR;
 					} else {
 						yield new ErrorToken("Binary operations are not supported! Found use of binary OR", line, col);
 					}
 				}
 				case '&' -> {
-					if (readChar() == '&') {
-						readChar();
+					if (advance() == '&') {
+						advance();
 						yield AND;
 					} else {
 						yield new ErrorToken("Binary operations are not supported! Found use of binary AND", line, col);
 					}
 				}
 				case '<' -> {
-					if (readChar() == '=') {
-						readChar();
+					if (advance() == '=') {
+						advance();
 						yield LESS_OR_EQ;
 					} else {
 						yield LESS;
 					}
 				}
 				case '>' -> {
-					if (readChar() == '=') {
-						readChar();
+					if (advance() == '=') {
+						advance();
 						yield GREATER_OR_EQ;
 					} else {
 						yield GREATER;
 					}
 				}
 				case '?' -> {
-					if (readChar() == '?') {
-						readChar();
+					if (advance() == '?') {
+						advance();
 						yield NULL_COALESCE;
 					} else {
 						yield IF;
 					}
 				}
 				case '=' -> {
-					if (readChar() == '=') {
-						readChar();
+					if (advance() == '=') {
+						advance();
 						yield EQUAL;
 					} else {
 						yield SET;
@@ -205,8 +341,8 @@ public class MolangLexer {
 				}
 
 				case '-' -> {
-					if (readChar() == '>') {
-						readChar();
+					if (advance() == '>') {
+						advance();
 						yield CONTEXT_SWITCH;
 					} else {
 						yield SUBTRACT;
@@ -216,7 +352,7 @@ public class MolangLexer {
 			};
 
 			if (token != null) {
-				return token;
+				return kind(token);
 			}
 
 			token = switch (codepoint) {
@@ -235,37 +371,425 @@ public class MolangLexer {
 				case ',' -> COMMA;
 				case ':' -> ELSE;
 				case '"' -> new ErrorToken("Unexpected token \", Did you mean ' ?", line, col);
-				default -> new ErrorToken("Unexpected token '" + Character.getName(codepoint) + "'", line, col);
+				default -> {
+					var error = new ErrorToken("Unexpected token '" + Character.getName(input.codePointAt(index)) + "'", line, col);
+
+					// Skip all but the last unit of the character, which may be several bytes of UTF-8.
+					for (int i = input.width(index); i > 1; i--) {
+						advance();
+					}
+
+					yield error;
+				}
 			};
 
-			readChar();
-			return token;
+			advance();
+			return kind(token);
 		}
 	}
 
-	public List<MolangToken> readAll() throws IOException {
-		var result = new ArrayList<MolangToken>();
+	private int kind(MolangToken token) {
+		if (token instanceof ErrorToken error) {
+			this.error = error;
+			return ERROR;
+		}
 
-		while (true) {
-			var token = next();
-			result.add(token);
-			if (token == EOF) break;
+		return ((OperatorToken) token).ordinal();
+	}
+
+	/**
+	 * Parses a number as it's scanned, falling back to {@link #parseNumber} only for those too long to be exact.
+	 */
+	private float number(int codepoint) {
+		int start = index;
+		long mantissa = 0;
+		int fractionDigits = 0;
+		boolean exact = true;
+
+		while (Character.isDigit(codepoint)) {
+			if (exact) {
+				mantissa = mantissa * 10 + (codepoint - '0');
+				exact = codepoint <= '9' && mantissa <= MAX_EXACT_MANTISSA;
+			}
+
+			codepoint = advance();
 		}
 
-		return result;
+		if (codepoint == '.') {
+			codepoint = advance();
+
+			while (Character.isDigit(codepoint)) {
+				if (exact) {
+					mantissa = mantissa * 10 + (codepoint - '0');
+					exact = codepoint <= '9' && mantissa <= MAX_EXACT_MANTISSA;
+				}
+
+				fractionDigits++;
+				codepoint = advance();
+			}
+		}
+
+		if (exact && fractionDigits < POWERS_OF_TEN.length) {
+			return (float) mantissa / POWERS_OF_TEN[fractionDigits];
+		}
+
+		return parseNumber(input.string(start, index));
+	}
+
+	/**
+	 * Compares an identifier to a lowercase keyword, ignoring case.
+	 * Setting the case bit of a digit or underscore never turns it into a letter, so this holds for any identifier.
+	 */
+	private boolean matches(int start, int end, String keyword) {
+		if (end - start != keyword.length()) {
+			return false;
+		}
+
+		for (int i = 0; i < keyword.length(); i++) {
+			if ((input.at(start + i) | 0x20) != keyword.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private String identifier(int start, int end, boolean upperCase) {
+		if (!upperCase) {
+			return input.ascii(start, end);
+		}
+
+		var chars = new char[end - start];
+
+		for (int i = 0; i < chars.length; i++) {
+			int codepoint = input.at(start + i);
+			chars[i] = (char) ('A' <= codepoint && codepoint <= 'Z' ? codepoint | 0x20 : codepoint);
+		}
+
+		return new String(chars);
 	}
 
-	private int readChar() throws IOException {
-		int character = reader.read();
+	private int current() {
+		return index < length ? input.at(index) : -1;
+	}
+
+	private int advance() {
+		if (index < length) {
+			index++;
+		}
+
+		int character = current();
 		if (character == '\n') {
 			line++;
 			col = 1;
-		} else {
+		} else if (!input.isContinuation(character)) {
 			col++;
 		}
 
-		nextCharacter = character;
-
 		return character;
 	}
+
+	/**
+	 * Interns the identifiers and strings of a packed stream.
+	 * Each is compared in place against the first occurrence of its symbol, so it's only decoded if it's new.
+	 * Identifiers are compared ignoring case, and so share a symbol with any string of their lowercase form.
+	 */
+	private final class Symbols {
+		private final List<String> names = new ArrayList<>();
+
+		private int[] starts = new int[16];
+		private int[] ends = new int[16];
+		private boolean[] folded = new boolean[16];
+		private int[] hashes = new int[16];
+
+		/**
+		 * Symbols plus one, by hash, with zero for an empty slot.
+		 */
+		private int[] table = new int[32];
+
+		int intern(int start, int end, boolean fold) {
+			int hash = hash(start, end, fold);
+			int mask = table.length - 1;
+
+			for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+				int symbol = table[slot] - 1;
+
+				if (symbol == -1) {
+					symbol = add(start, end, fold, hash);
+					table[slot] = symbol + 1;
+
+					if (names.size() * 2 > table.length) {
+						rehash();
+					}
+
+					return symbol;
+				}
+
+				if (hashes[symbol] == hash && equal(symbol, start, end, fold)) {
+					return symbol;
+				}
+			}
+		}
+
+		private int add(int start, int end, boolean fold, int hash) {
+			int symbol = names.size();
+
+			if (symbol == starts.length) {
+				starts = Arrays.copyOf(starts, symbol * 2);
+				ends = Arrays.copyOf(ends, symbol * 2);
+				folded = Arrays.copyOf(folded, symbol * 2);
+				hashes = Arrays.copyOf(hashes, symbol * 2);
+			}
+
+			starts[symbol] = start;
+			ends[symbol] = end;
+			folded[symbol] = fold;
+			hashes[symbol] = hash;
+			names.add(fold ? identifier(start, end, true) : input.string(start, end));
+
+			return symbol;
+		}
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+
+			for (int symbol = 0; symbol < names.size(); symbol++) {
+				int slot = hashes[symbol] & mask;
+
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+
+				table[slot] = symbol + 1;
+			}
+		}
+
+		private int hash(int start, int end, boolean fold) {
+			int hash = 0;
+
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + unit(i, fold);
+			}
+
+			// Spread the high bits down, as only the low ones pick a slot.
+			return hash ^ (hash >>> 16);
+		}
+
+		private boolean equal(int symbol, int start, int end, boolean fold) {
+			int otherStart = starts[symbol];
+
+			if (ends[symbol] - otherStart != end - start) {
+				return false;
+			}
+
+			for (int i = 0; i < end - start; i++) {
+				if (unit(start + i, fold) != unit(otherStart + i, folded[symbol])) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private int unit(int index, boolean fold) {
+			int unit = input.at(index);
+			return fold && 'A' <= unit && unit <= 'Z' ? unit | 0x20 : unit;
+		}
+	}
+
+	/**
+	 * The source being lexed, as characters or UTF-8 bytes.
+	 * Everything Molang gives meaning to is ASCII, so either can be scanned a unit at a time,
+	 * and only literals and errors need to decode anything else.
+	 */
+	private sealed interface Input {
+		int length();
+
+		/**
+		 * @return The character, or unsigned byte, at the index.
+		 */
+		int at(int index);
+
+		/**
+		 * @return The code point starting at the index, for error messages.
+		 */
+		int codePointAt(int index);
+
+		/**
+		 * @return How many units the code point starting at the index spans.
+		 */
+		int width(int index);
+
+		/**
+		 * @return Whether the unit doesn't start a new character, and so doesn't count towards the column.
+		 */
+		boolean isContinuation(int unit);
+
+		/**
+		 * Decodes a range that is known to be all ASCII, such as an identifier.
+		 */
+		String ascii(int start, int end);
+
+		String string(int start, int end);
+	}
+
+	private record Chars(CharSequence chars) implements Input {
+		@Override
+		public int length() {
+			return chars.length();
+		}
+
+		@Override
+		public int at(int index) {
+			return chars.charAt(index);
+		}
+
+		@Override
+		public int codePointAt(int index) {
+			return chars.charAt(index);
+		}
+
+		@Override
+		public int width(int index) {
+			return 1;
+		}
+
+		@Override
+		public boolean isContinuation(int unit) {
+			return false;
+		}
+
+		@Override
+		public String ascii(int start, int end) {
+			return string(start, end);
+		}
+
+		@Override
+		public String string(int start, int end) {
+			return chars.subSequence(start, end).toString();
+		}
+	}
+
+	private record Bytes(byte[] bytes, int offset, int length) implements Input {
+		private Bytes {
+			Objects.checkFromIndexSize(offset, length, bytes.length);
+		}
+
+		@Override
+		public int at(int index) {
+			return bytes[offset + index] & 0xFF;
+		}
+
+		@Override
+		public int codePointAt(int index) {
+			return Utf8.codePointAt(this, index);
+		}
+
+		@Override
+		public int width(int index) {
+			return Utf8.width(this, index);
+		}
+
+		@Override
+		public boolean isContinuation(int unit) {
+			return Utf8.isContinuation(unit);
+		}
+
+		@Override
+		public String ascii(int start, int end) {
+			return new String(bytes, offset + start, end - start, StandardCharsets.ISO_8859_1);
+		}
+
+		@Override
+		public String string(int start, int end) {
+			return new String(bytes, offset + start, end - start, StandardCharsets.UTF_8);
+		}
+	}
+
+	private record Segment(MemorySegment segment, int length) implements Input {
+		private Segment(MemorySegment segment) {
+			this(segment, Math.toIntExact(segment.byteSize()));
+		}
+
+		@Override
+		public int at(int index) {
+			return segment.get(ValueLayout.JAVA_BYTE, index) & 0xFF;
+		}
+
+		@Override
+		public int codePointAt(int index) {
+			return Utf8.codePointAt(this, index);
+		}
+
+		@Override
+		public int width(int index) {
+			return Utf8.width(this, index);
+		}
+
+		@Override
+		public boolean isContinuation(int unit) {
+			return Utf8.isContinuation(unit);
+		}
+
+		@Override
+		public String ascii(int start, int end) {
+			return new String(bytes(start, end), StandardCharsets.ISO_8859_1);
+		}
+
+		@Override
+		public String string(int start, int end) {
+			return new String(bytes(start, end), StandardCharsets.UTF_8);
+		}
+
+		private byte[] bytes(int start, int end) {
+			return segment.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE);
+		}
+	}
+
+	private static final class Utf8 {
+		private Utf8() {
+		}
+
+		static boolean isContinuation(int unit) {
+			return (unit & 0xC0) == 0x80;
+		}
+
+		/**
+		 * @return The length of the sequence the byte leads, or one if it doesn't lead a valid one.
+		 */
+		static int width(Input input, int index) {
+			int lead = input.at(index);
+			int width = lead < 0xC0 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : lead < 0xF8 ? 4 : 1;
+
+			if (index + width > input.length()) {
+				return 1;
+			}
+
+			for (int i = 1; i < width; i++) {
+				if (!isContinuation(input.at(index + i))) {
+					return 1;
+				}
+			}
+
+			return width;
+		}
+
+		static int codePointAt(Input input, int index) {
+			int width = width(input, index);
+			int lead = input.at(index);
+
+			if (width == 1) {
+				return lead < 0x80 ? lead : 0xFFFD;
+			}
+
+			int codepoint = lead & (0xFF >> (width + 1));
+
+			for (int i = 1; i < width; i++) {
+				codepoint = codepoint << 6 | input.at(index + i) & 0x3F;
+			}
+
+			return codepoint;
+		}
+	}
 }
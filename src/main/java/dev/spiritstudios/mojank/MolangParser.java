@@ -4,6 +4,7 @@ import dev.spiritstudios.mojank.ast.*;
 import dev.spiritstudios.mojank.compile.link.Linker;
 import dev.spiritstudios.mojank.internal.Util;
 import dev.spiritstudios.mojank.token.*;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.io.IOException;
@@ -47,38 +48,102 @@ import static dev.spiritstudios.mojank.token.OperatorToken.SUBTRACT;
 public class MolangParser {
 	private static final Logger logger = Util.logger();
 
-	private final MolangLexer lexer;
+	private static final OperatorToken[] OPERATORS = OperatorToken.values();
+
+	private final @Nullable MolangLexer lexer;
+	private final @Nullable PackedTokens tokens;
 	private final Linker linker;
-	private MolangToken token;
+
+	// The current token's kind, as for PackedTokens#kind, and its operator if it is one.
+	private int kind;
+	private @Nullable OperatorToken operator;
+	// The current token itself, only when reading from a lexer; packed tokens are read in place.
+	private @Nullable MolangToken token;
+	private int current;
+	private int position;
 
 	public MolangParser(MolangLexer lexer, Linker linker) {
 		this.lexer = lexer;
+		this.tokens = null;
+		this.linker = linker;
+	}
+
+	/**
+	 * Parses a stream that has already been lexed, such as one that was cached.
+	 */
+	public MolangParser(PackedTokens tokens, Linker linker) {
+		this.lexer = null;
+		this.tokens = tokens;
 		this.linker = linker;
 	}
 
 	private void nextToken() throws IOException {
-		token = lexer.next();
+		if (tokens == null) {
+			token = lexer.next();
+			kind = PackedTokens.kindOf(token);
+		} else {
+			current = position;
+			kind = tokens.kind(current);
+
+			// Stay on the EOF at the end, as the lexer would keep returning it.
+			if (position < tokens.size() - 1) {
+				position++;
+			}
+		}
+
+		operator = kind >= 0 ? OPERATORS[kind] : null;
+	}
+
+	private boolean isConstant() {
+		return kind == PackedTokens.NUMBER || kind == PackedTokens.STRING ||
+			kind == PackedTokens.TRUE || kind == PackedTokens.FALSE;
+	}
+
+	private ConstantDesc constant() {
+		if (tokens == null) {
+			return ((ConstantToken) token).value();
+		}
+
+		return switch (kind) {
+			case PackedTokens.NUMBER -> tokens.number(current);
+			case PackedTokens.STRING -> tokens.name(tokens.symbol(current));
+			case PackedTokens.TRUE -> ConstantToken.TRUE.value();
+			default -> ConstantToken.FALSE.value();
+		};
+	}
+
+	private String identifier() {
+		return tokens == null ? ((IdentifierToken) token).value() : tokens.name(tokens.symbol(current));
+	}
+
+	/**
+	 * The current token as an object, which is only made for errors when reading packed tokens.
+	 */
+	private MolangToken token() {
+		return tokens == null ? token : tokens.token(current);
+	}
+
+	private RuntimeException error() {
+		return ((ErrorToken) token()).value();
 	}
 
 	public Expression next() throws IOException {
 		nextToken();
 
-		switch (token) {
-			case OperatorToken.EOF -> {
-				return null;
-			}
-			case ErrorToken error -> {
-				throw error.value();
-			}
-			default -> {
-				Expression expression = parse(-1);
-				if (token != OperatorToken.EOF && token != OperatorToken.END_EXPRESSION) {
-					throw new RuntimeException("Expected EOF or semicolon, got " + token);
-				}
+		if (operator == EOF) {
+			return null;
+		}
 
-				return expression;
-			}
+		if (kind == PackedTokens.ERROR) {
+			throw error();
 		}
+
+		Expression expression = parse(-1);
+		if (operator != EOF && operator != END_EXPRESSION) {
+			throw new RuntimeException("Expected EOF or semicolon, got " + token());
+		}
+
+		return expression;
 	}
 
 	public Expression parseAll() throws IOException {
@@ -112,13 +177,13 @@ public class MolangParser {
 		Expression expression = parseSingleExpression();
 
 		while (true) {
-			if (token == EOF || token == END_EXPRESSION) {
+			if (operator == EOF || operator == END_EXPRESSION) {
 				return expression;
 			}
 
 			Expression continuation = parseContinuation(expression, lastPrecedence);
 
-			if (token == EOF || token == END_EXPRESSION) {
+			if (operator == EOF || operator == END_EXPRESSION) {
 				return continuation;
 			}
 
@@ -131,13 +196,13 @@ public class MolangParser {
 	}
 
 	private Expression parseContinuation(Expression left, int lastPrecedence) throws IOException {
-		return switch (token) {
+		return switch (operator) {
 			case EOF, CLOSING_PAREN -> left;
 			case OPENING_PAREN -> {
 				List<Expression> args = new ArrayList<>(1);
 				nextToken();
 
-				if (token == CLOSING_PAREN) {
+				if (operator == CLOSING_PAREN) {
 					nextToken();
 				} else {
 					var shouldBreak = false;
@@ -145,15 +210,18 @@ public class MolangParser {
 					while (!shouldBreak) {
 						args.add(parse(-1));
 
-						switch (token) {
+						if (kind == PackedTokens.ERROR) {
+							throw error();
+						}
+
+						switch (operator) {
 							case EOF -> throw new RuntimeException("Syntax error: unmatched parenthesis");
-							case ErrorToken error -> throw error.value();
 							case COMMA -> nextToken();
 							case CLOSING_PAREN -> {
 								nextToken();
 								shouldBreak = true;
 							}
-							default -> throw new RuntimeException("Syntax error: Expected comma, got " + token);
+							case null, default -> throw new RuntimeException("Syntax error: Expected comma, got " + token());
 						}
 					}
 				}
@@ -165,16 +233,16 @@ public class MolangParser {
 
 				Expression expression = parse(-1);
 
-				if (token == EOF) {
-					throw new RuntimeException("Syntax error: unmatched brakets at " + token);
+				if (operator == EOF) {
+					throw new RuntimeException("Syntax error: unmatched brakets at " + token());
 				}
 
-				if (token == CLOSING_BRACKET) {
+				if (operator == CLOSING_BRACKET) {
 					nextToken();
 					yield new ArrayAccessExpression(left, expression);
 				}
 
-				throw new RuntimeException("Unexpected Token: Expected ], got " + token);
+				throw new RuntimeException("Unexpected Token: Expected ], got " + token());
 			}
 			case IF -> {
 				if (lastPrecedence >= BinaryOperationExpression.Operator.CONDITIONAL.precedence) {
@@ -184,7 +252,7 @@ public class MolangParser {
 				nextToken();
 				Expression ifTrue = parse(-1);
 
-				if (token == ELSE) {
+				if (operator == ELSE) {
 					nextToken();
 
 					Expression ifFalse = parse(-1);
@@ -194,8 +262,8 @@ public class MolangParser {
 					yield new BinaryOperationExpression(left, BinaryOperationExpression.Operator.CONDITIONAL, ifTrue);
 				}
 			}
-			default -> {
-				BinaryOperationExpression.Operator op = switch (token) {
+			case null, default -> {
+				BinaryOperationExpression.Operator op = switch (operator) {
 					case ADD -> BinaryOperationExpression.Operator.ADD;
 					case SUBTRACT -> BinaryOperationExpression.Operator.SUBTRACT;
 					case MULTIPLY -> BinaryOperationExpression.Operator.MULTIPLY;
@@ -212,7 +280,7 @@ public class MolangParser {
 					case LESS_OR_EQ -> BinaryOperationExpression.Operator.LESS_THAN_OR_EQUAL_TO;
 					case GREATER_OR_EQ -> BinaryOperationExpression.Operator.GREATER_THAN_OR_EQUAL_TO;
 					case NULL_COALESCE -> BinaryOperationExpression.Operator.NULL_COALESCE;
-					default -> null;
+					case null, default -> null;
 				};
 
 				if (op == null) yield left;
@@ -226,8 +294,7 @@ public class MolangParser {
 	}
 
 	public Expression parseSingleExpression() throws IOException {
-		var exp = switch (token) {
-			case ConstantToken(ConstantDesc desc) -> new ConstantExpression(desc);
+		var exp = isConstant() ? new ConstantExpression(constant()) : switch (operator) {
 			case BREAK -> KeywordExpression.BREAK;
 			case CONTINUE -> KeywordExpression.CONTINUE;
 			case
@@ -236,15 +303,15 @@ public class MolangParser {
 
 				Expression expression = parse(-1);
 
-				if (token != CLOSING_PAREN) {
-					throw new RuntimeException("Syntax error: unmatched parentheses at " + token);
+				if (operator != CLOSING_PAREN) {
+					throw new RuntimeException("Syntax error: unmatched parentheses at " + token());
 				}
 
 				// So for some reason, this is advancing one too much and causing problems, why?
 //				nextToken();
 				yield expression;
 			}
-			default -> null;
+			case null, default -> null;
 		};
 
 		if (exp != null) {
@@ -252,7 +319,11 @@ public class MolangParser {
 			return exp;
 		}
 
-		return switch (token) {
+		if (kind == PackedTokens.IDENTIFIER) {
+			return parseIdentifier();
+		}
+
+		return switch (operator) {
 			case RETURN -> {
 				nextToken();
 
@@ -274,70 +345,76 @@ public class MolangParser {
 
 				yield new UnaryOperationExpression(parse(999), UnaryOperationExpression.Operator.POSITIVE);
 			}
-			case IdentifierToken(String first) -> {
-				nextToken();
-
-				if (first.equalsIgnoreCase("loop")) {
-					if (token != OPENING_PAREN)
-						throw new RuntimeException("Unexpected token: Expected a '(' after keyword 'loop'");
-					nextToken();
-
-					var count = parse(-1);
-
-					if (token != COMMA) throw new IllegalStateException();
-					nextToken();
-
-					var body = parse(-1);
-
-					if (token != CLOSING_PAREN) throw new IllegalStateException();
-					nextToken();
-
-					yield new LoopExpression(count, body);
-				}
-
-				Expression expression = new IdentifierExpression(first);
-
-				while (token == DOT) {
-					nextToken();
-
-					if (!(token instanceof IdentifierToken(String value))) {
-						throw new RuntimeException("Unexpected Token: Expected an identifier after a dot");
-					}
-
-					expression = new BinaryOperationExpression(
-						expression,
-						BinaryOperationExpression.Operator.GET,
-						new IdentifierExpression(value)
-					);
-
-					nextToken();
-				}
-
-				yield expression;
-			}
 			case OPENING_BRACE -> { // Execution scope, a bit like a lambda
 				nextToken();
 
 				List<Expression> expressions = new ArrayList<>();
 				while (true) {
-					if (token == CLOSING_BRACE) {
+					if (operator == CLOSING_BRACE) {
 						nextToken();
 						break;
 					}
 
 					expressions.add(parse(-1));
 
-					switch (token) {
+					if (kind == PackedTokens.ERROR) {
+						throw error();
+					}
+
+					switch (operator) {
 						case EOF -> throw new RuntimeException("Syntax error: Unmatched braces");
-						case ErrorToken(RuntimeException error) -> throw error;
 						case END_EXPRESSION -> nextToken();
-						default -> throw new RuntimeException("Expected semicolon, got " + token);
+						case null, default -> throw new RuntimeException("Expected semicolon, got " + token());
 					}
 				}
 
 				yield new ComplexExpression(expressions);
 			}
-			default -> throw new IllegalArgumentException(token.toString());
+			case null, default -> throw new IllegalArgumentException(token().toString());
 		};
 	}
+
+	private Expression parseIdentifier() throws IOException {
+		String first = identifier();
+
+		nextToken();
+
+		if (first.equalsIgnoreCase("loop")) {
+			if (operator != OPENING_PAREN)
+				throw new RuntimeException("Unexpected token: Expected a '(' after keyword 'loop'");
+			nextToken();
+
+			var count = parse(-1);
+
+			if (operator != COMMA) throw new IllegalStateException();
+			nextToken();
+
+			var body = parse(-1);
+
+			if (operator != CLOSING_PAREN) throw new IllegalStateException();
+			nextToken();
+
+			return new LoopExpression(count, body);
+		}
+
+		Expression expression = new IdentifierExpression(first);
+
+		while (operator == DOT) {
+			nextToken();
+
+			if (kind != PackedTokens.IDENTIFIER) {
+				throw new RuntimeException("Unexpected Token: Expected an identifier after a dot");
+			}
+
+			expression = new BinaryOperationExpression(
+				expression,
+				BinaryOperationExpression.Operator.GET,
+				new IdentifierExpression(identifier())
+			);
+
+			nextToken();
+		}
+
+		return expression;
+	}
 }
@@ -10,7 +10,7 @@ import java.lang.classfile.TypeKind;
 public record ArrayAccessExpression(Expression array, Expression index) implements Expression {
 	@Override
 	public Class<?> type(CompileContext context) {
-		return array.type(context).componentType();
+		return context.analysis().type(this);
 	}
 
 	@Override
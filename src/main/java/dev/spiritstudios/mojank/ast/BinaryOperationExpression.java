@@ -1,5 +1,6 @@
 package dev.spiritstudios.mojank.ast;
 
+import dev.spiritstudios.mojank.compile.Binding;
 import dev.spiritstudios.mojank.compile.BoilerplateGenerator;
 import dev.spiritstudios.mojank.compile.Conditionals;
 import dev.spiritstudios.mojank.compile.link.Linker;
@@ -12,7 +13,9 @@ import org.jetbrains.annotations.NotNull;
 import java.lang.classfile.CodeBuilder;
 import java.lang.classfile.Opcode;
 import java.lang.classfile.TypeKind;
-import java.lang.reflect.Field;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.DirectMethodHandleDesc;
+import java.lang.constant.MethodHandleDesc;
 import java.lang.reflect.Modifier;
 import java.util.List;
 
@@ -48,7 +51,7 @@ public record BinaryOperationExpression(Expression left, Operator operator, Expr
 
 	@Override
 	public Class<?> type(CompileContext context) {
-		return null;
+		return context.analysis().type(this);
 	}
 
 	@Override
@@ -56,20 +59,43 @@ public record BinaryOperationExpression(Expression left, Operator operator, Expr
 		return switch (operator) {
 			case SET -> {
 				switch (left) {
-					case BinaryOperationExpression leftOp -> {
-						var leftType = leftOp.left.emit(context, builder);
-						if (!(leftOp.right instanceof IdentifierExpression(String identifier)))
-							throw new IllegalStateException("Right side of . must be an identifier");
+					case BinaryOperationExpression leftOp
+						when context.analysis().binding(leftOp) instanceof Binding.Temporary(var name, var type) -> {
+						BoilerplateGenerator.tryCast(right.emit(context, builder), type, builder);
 
-						Field field = context.linker().findField(leftType, identifier);
+						builder.storeLocal(TypeKind.from(type), context.temporary(name).slot());
 
-						if (field == null) {
-							throw new NotImplementedException("TODO: method gets");
-						}
+						yield void.class;
+					}
+					case BinaryOperationExpression leftOp
+						when context.analysis().binding(leftOp) instanceof Binding.Variable variable && variable.isIndexed() -> {
+						BoilerplateGenerator.loadArenaAccess(variable, context, builder);
+
+						BoilerplateGenerator.tryCast(right.emit(context, builder), variable.type(), builder);
+
+						BoilerplateGenerator.arenaSet(variable.type(), builder);
+
+						yield void.class;
+					}
+					case BinaryOperationExpression leftOp
+						when context.analysis().binding(leftOp) instanceof Binding.Variable variable -> {
+						var owner = loadVariables(variable, context, builder);
+
+						BoilerplateGenerator.tryCast(right.emit(context, builder), variable.type(), builder);
+
+						builder.putfield(owner, variable.field(), desc(variable.type()));
+
+						yield void.class;
+					}
+					case BinaryOperationExpression leftOp -> {
+						var access = context.analysis().binding(leftOp, Binding.FieldAccess.class);
+						var field = access.field();
 
-						var modifiers = field.getModifiers();
+						if (!access.hasReceiver() || Modifier.isStatic(field.getModifiers())) {
+							throw new NotImplementedException("TODO: Statics");
+						}
 
-						if (Modifier.isStatic(modifiers)) throw new NotImplementedException("TODO: Statics");
+						leftOp.left.emit(context, builder);
 
 						var rightType = right.emit(context, builder);
 
@@ -77,7 +103,7 @@ public record BinaryOperationExpression(Expression left, Operator operator, Expr
 
 						builder.fieldAccess(
 							Opcode.PUTFIELD,
-							desc(leftType),
+							desc(access.owner()),
 							field.getName(),
 							desc(field.getType())
 						);
@@ -122,7 +148,7 @@ public record BinaryOperationExpression(Expression left, Operator operator, Expr
 						Opcode.IFNULL,
 						n -> {
 							n.pop();
-							right.emit(context, builder);
+							right.emit(context, n);
 						}
 					);
 
@@ -133,106 +159,95 @@ public record BinaryOperationExpression(Expression left, Operator operator, Expr
 			case CONDITIONAL -> {
 				Conditionals.writeIf(
 					left,
-					b -> right.emit(context, b),
+					b -> BoilerplateGenerator.tryCast(right.emit(context, b), void.class, b),
 					null,
 					builder,
 					context
 				);
 
-				yield left.type(context);
+				yield void.class;
 			}
 			case ADD -> {
-				var leftType = left.emit(context, builder);
-				var rightType = right.emit(context, builder);
+				var type = emitOperands(context, builder);
 
-				if (leftType != rightType) {
-					BoilerplateGenerator.tryCast(rightType, leftType, builder);
-				}
+				BuiltinOperators.add(type, builder);
 
-				BuiltinOperators.add(leftType, builder);
-
-				yield leftType;
+				yield type;
 			}
 			case SUBTRACT -> {
-				var leftType = left.emit(context, builder);
-				var rightType = right.emit(context, builder);
-
-				if (leftType != rightType) {
-					BoilerplateGenerator.tryCast(rightType, leftType, builder);
-				}
+				var type = emitOperands(context, builder);
 
-				BuiltinOperators.subtract(leftType, builder);
+				BuiltinOperators.subtract(type, builder);
 
-				yield leftType;
+				yield type;
 			}
 			case MULTIPLY -> {
-				var leftType = left.emit(context, builder);
-				var rightType = right.emit(context, builder);
+				var type = emitOperands(context, builder);
 
-				if (leftType != rightType) {
-					BoilerplateGenerator.tryCast(rightType, leftType, builder);
-				}
-
-				BuiltinOperators.multiply(leftType, builder);
+				BuiltinOperators.multiply(type, builder);
 
-				yield leftType;
+				yield type;
 			}
 			case DIVIDE -> {
-				var leftType = left.emit(context, builder);
-				var rightType = right.emit(context, builder);
-
-				if (leftType != rightType) {
-					BoilerplateGenerator.tryCast(rightType, leftType, builder);
-				}
+				var type = emitOperands(context, builder);
 
-				BuiltinOperators.divide(leftType, builder);
+				BuiltinOperators.divide(type, builder);
 
-				yield leftType;
+				yield type;
 			}
 			case REMAINDER -> {
-				var leftType = left.emit(context, builder);
-				var rightType = right.emit(context, builder);
-
-				if (leftType != rightType) {
-					BoilerplateGenerator.tryCast(rightType, leftType, builder);
-				}
+				var type = emitOperands(context, builder);
 
-				BuiltinOperators.remainder(leftType, builder);
+				BuiltinOperators.remainder(type, builder);
 
-				yield leftType;
+				yield type;
 			}
 			case GET -> {
-				if (!(right instanceof IdentifierExpression(String fieldName))) throw new IllegalStateException("Right side of . must be an identifier");
-
-				Class<?> owner = null;
-				Field field = null;
+				if (context.analysis().binding(this) instanceof Binding.Temporary(var name, var type)) {
+					builder.loadLocal(TypeKind.from(type), context.temporary(name).slot());
+					yield type;
+				}
 
-				if (left instanceof IdentifierExpression(String name)) {
-					var clazz = context.linker().findClass(name);
+				if (context.analysis().binding(this) instanceof Binding.Variable variable && variable.isIndexed()) {
+					BoilerplateGenerator.loadArenaAccess(variable, context, builder);
+					BoilerplateGenerator.arenaGet(variable.type(), builder);
 
-					if (clazz != null) {
-						owner = clazz;
-						field = context.linker().findField(clazz, fieldName);
-					}
+					yield variable.type();
 				}
 
-				if (field == null) {
-					var leftType = left.emit(context, builder);
+				if (context.analysis().binding(this) instanceof Binding.Variable variable) {
+					var owner = loadVariables(variable, context, builder);
+
+					builder.getfield(owner, variable.field(), desc(variable.type()));
 
-					owner = leftType;
-					field = context.linker().findField(leftType, fieldName);
+					yield variable.type();
 				}
 
-				if (field == null) throw new NotImplementedException("TODO: method gets");
+				var access = context.analysis().binding(this, Binding.FieldAccess.class);
+				var field = access.field();
 
-				var modifiers = field.getModifiers();
+				if (access.hasReceiver()) {
+					left.emit(context, builder);
+				}
 
-				builder.fieldAccess(
-					Modifier.isStatic(modifiers) ? Opcode.GETSTATIC : Opcode.GETFIELD,
-					desc(owner),
-					field.getName(),
-					desc(field.getType())
-				);
+				if (context.options().inlineCaches() && !Modifier.isStatic(field.getModifiers())) {
+					BoilerplateGenerator.invokeInlineCache(
+						MethodHandleDesc.ofField(
+							DirectMethodHandleDesc.Kind.GETTER,
+							desc(access.owner()),
+							field.getName(),
+							desc(field.getType())
+						),
+						builder
+					);
+				} else {
+					builder.fieldAccess(
+						Modifier.isStatic(field.getModifiers()) ? Opcode.GETSTATIC : Opcode.GETFIELD,
+						desc(access.owner()),
+						field.getName(),
+						desc(field.getType())
+					);
+				}
 
 				yield field.getType();
 			}
@@ -253,6 +268,48 @@ public record BinaryOperationExpression(Expression left, Operator operator, Expr
 		};
 	}
 
+	/**
+	 * Pushes both operands of an arithmetic operation, each converted to the type the operation is done in.
+	 *
+	 * @return The type the operation is done in.
+	 */
+	private Class<?> emitOperands(CompileContext context, CodeBuilder builder) {
+		var type = context.analysis().type(this);
+
+		BoilerplateGenerator.tryCast(left.emit(context, builder), type, builder);
+		BoilerplateGenerator.tryCast(right.emit(context, builder), type, builder);
+
+		return type;
+	}
+
+	/**
+	 * Pushes whatever holds the variable's field.
+	 *
+	 * @return The class declaring the field.
+	 */
+	private static ClassDesc loadVariables(Binding.Variable variable, CompileContext context, CodeBuilder builder) {
+		var struct = variable.parameter();
+
+		if (struct == null) {
+			builder.aload(0);
+			return context.owner();
+		}
+
+		var schema = context.options().variables();
+
+		if (schema == null) {
+			throw new IllegalStateException("Variables passed as a parameter need a schema");
+		}
+
+		var structDesc = schema.structDesc(context.owner().packageName());
+
+		builder
+			.aload(struct.slot())
+			.checkcast(structDesc);
+
+		return structDesc;
+	}
+
 	@Override
 	public void append(IndentedStringBuilder builder) {
 		builder.append("BinaryOperation(").pushIndent().newline();
@@ -7,7 +7,8 @@ import java.lang.classfile.CodeBuilder;
 
 public sealed interface Expression permits ArrayAccessExpression, BinaryOperationExpression, ComplexExpression,
 	ConstantExpression, MethodCallExpression, KeywordExpression, IdentifierExpression, LoopExpression,
-	TernaryOperationExpression, UnaryOperationExpression {
+	TernaryOperationExpression, UnaryOperationExpression, LocalLoadExpression, LocalStoreExpression,
+	FusedMultiplyAddExpression {
 
 	Class<?> type(CompileContext context);
 
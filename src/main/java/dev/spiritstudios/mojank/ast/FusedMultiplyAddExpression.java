@@ -0,0 +1,58 @@
+package dev.spiritstudios.mojank.ast;
+
+import dev.spiritstudios.mojank.compile.BoilerplateGenerator;
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.internal.IndentedStringBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.classfile.CodeBuilder;
+
+import static dev.spiritstudios.mojank.compile.Descriptors.desc;
+import static dev.spiritstudios.mojank.compile.Descriptors.methodDesc;
+
+/**
+ * {@code multiplicand * multiplier + addend} with a single rounding, through {@link Math#fma}.
+ * <p>
+ * Only ever introduced by {@link dev.spiritstudios.mojank.compile.optimise.FastMath},
+ * as the result is not bit-exact with the separate multiply and add.
+ * All three operands are of the same floating point type.
+ */
+public record FusedMultiplyAddExpression(
+	Expression multiplicand,
+	Expression multiplier,
+	Expression addend
+) implements Expression {
+	@Override
+	public Class<?> type(CompileContext context) {
+		return context.analysis().type(this);
+	}
+
+	@Override
+	public Class<?> emit(CompileContext context, CodeBuilder builder) {
+		var type = type(context);
+
+		BoilerplateGenerator.tryCast(multiplicand.emit(context, builder), type, builder);
+		BoilerplateGenerator.tryCast(multiplier.emit(context, builder), type, builder);
+		BoilerplateGenerator.tryCast(addend.emit(context, builder), type, builder);
+
+		builder.invokestatic(desc(Math.class), "fma", methodDesc(type, type, type, type));
+
+		return type;
+	}
+
+	@Override
+	public void append(IndentedStringBuilder builder) {
+		builder.append("FusedMultiplyAdd(").pushIndent().newline();
+		multiplicand.append(builder);
+		builder.append(",").newline();
+		multiplier.append(builder);
+		builder.append(",").newline();
+		addend.append(builder);
+		builder.popIndent().newline().append(")");
+	}
+
+	@Override
+	public @NotNull String toString() {
+		return toStr();
+	}
+}
@@ -1,5 +1,6 @@
 package dev.spiritstudios.mojank.ast;
 
+import dev.spiritstudios.mojank.compile.Binding;
 import dev.spiritstudios.mojank.compile.CompileContext;
 import dev.spiritstudios.mojank.internal.IndentedStringBuilder;
 import org.jetbrains.annotations.NotNull;
@@ -11,40 +12,29 @@ import static dev.spiritstudios.mojank.compile.Descriptors.desc;
 
 public record IdentifierExpression(String name) implements Expression {
 	public boolean isClass(CompileContext context) {
-		var clazz = context.linker().findClass(name);
-		return clazz != null;
+		return context.analysis().type(this) == Class.class;
 	}
 
 	@Override
 	public Class<?> type(CompileContext context) {
-		var clazz = context.linker().findClass(name);
-		if (clazz != null) return Class.class;
-
-		var parameter = context.parametersByName().get(name);
-		if (parameter != null) return parameter.type();
-
-		throw new IllegalStateException("Unknown identifier '" + name + "'");
+		return context.analysis().type(this);
 	}
 
 	@Override
 	public Class<?> emit(CompileContext context, CodeBuilder builder) {
-		var clazz = context.linker().findClass(name);
-
-		if (clazz != null) {
-			builder.loadConstant(desc(clazz));
-
-			return Class.class;
-		}
-
-		var parameter = context.parametersByName().get(name);
-
-		if (parameter != null) {
-			builder.loadLocal(TypeKind.from(parameter.type()), parameter.index());
-
-			return parameter.type();
-		}
-
-		throw new IllegalStateException("Unknown identifier '" + name + "'");
+		return switch (context.analysis().binding(this)) {
+			case Binding.ClassAlias(var clazz) -> {
+				builder.loadConstant(desc(clazz));
+
+				yield Class.class;
+			}
+			case Binding.Parameter(var slot, var type) -> {
+				builder.loadLocal(TypeKind.from(type), slot);
+
+				yield type;
+			}
+			case Binding binding -> throw new IllegalStateException("Identifier '" + name + "' bound to " + binding);
+		};
 	}
 
 	@Override
@@ -0,0 +1,43 @@
+package dev.spiritstudios.mojank.ast;
+
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.internal.IndentedStringBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+
+/**
+ * Reads back the value kept by the {@link LocalStoreExpression} of the same id.
+ *
+ * @param source The expression the local stands in for.
+ */
+public record LocalLoadExpression(int id, Expression source) implements Expression {
+	@Override
+	public Class<?> type(CompileContext context) {
+		return context.analysis().type(this);
+	}
+
+	@Override
+	public Class<?> emit(CompileContext context, CodeBuilder builder) {
+		var local = context.locals().get(id);
+
+		if (local == null) {
+			throw new IllegalStateException("Local #" + id + " loaded before it was stored: " + source);
+		}
+
+		builder.loadLocal(TypeKind.from(local.type()), local.slot());
+
+		return local.type();
+	}
+
+	@Override
+	public void append(IndentedStringBuilder builder) {
+		builder.append("LocalLoad[#").append(String.valueOf(id)).append("]");
+	}
+
+	@Override
+	public @NotNull String toString() {
+		return toStr();
+	}
+}
@@ -0,0 +1,53 @@
+package dev.spiritstudios.mojank.ast;
+
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.compile.LocalSlot;
+import dev.spiritstudios.mojank.internal.IndentedStringBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+
+/**
+ * Evaluates the value and keeps a copy of it in a fresh local, for later {@link LocalLoadExpression}s of the same id.
+ * The value is left on the stack as if this node were not here.
+ */
+public record LocalStoreExpression(int id, Expression value) implements Expression {
+	@Override
+	public Class<?> type(CompileContext context) {
+		return context.analysis().type(this);
+	}
+
+	@Override
+	public Class<?> emit(CompileContext context, CodeBuilder builder) {
+		var type = value.emit(context, builder);
+		var kind = TypeKind.from(type);
+
+		// Allocated from the builder we're given, so that the slot is scoped to the enclosing block.
+		var slot = builder.allocateLocal(kind);
+
+		if (kind.slotSize() == 2) {
+			builder.dup2();
+		} else {
+			builder.dup();
+		}
+
+		builder.storeLocal(kind, slot);
+
+		context.locals().put(id, new LocalSlot(slot, type));
+
+		return type;
+	}
+
+	@Override
+	public void append(IndentedStringBuilder builder) {
+		builder.append("LocalStore[#").append(String.valueOf(id)).append(", ");
+		value.append(builder);
+		builder.append("]");
+	}
+
+	@Override
+	public @NotNull String toString() {
+		return toStr();
+	}
+}
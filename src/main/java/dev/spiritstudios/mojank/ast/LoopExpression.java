@@ -3,14 +3,24 @@ package dev.spiritstudios.mojank.ast;
 import dev.spiritstudios.mojank.compile.BoilerplateGenerator;
 import dev.spiritstudios.mojank.compile.CompileContext;
 import dev.spiritstudios.mojank.compile.Loop;
-import dev.spiritstudios.mojank.compile.Primitive;
 
 import java.lang.classfile.CodeBuilder;
 import java.lang.classfile.TypeKind;
+import java.util.List;
 
+import static dev.spiritstudios.mojank.compile.Descriptors.desc;
+import static dev.spiritstudios.mojank.compile.Descriptors.methodDesc;
 import static java.lang.constant.ConstantDescs.CD_int;
 
-public record LoopExpression(Expression count, Expression body) implements Expression {
+/**
+ * @param preheader Statements evaluated once before the first iteration, and only if there is one.
+ *                  Filled in by {@link dev.spiritstudios.mojank.compile.optimise.LoopInvariants}.
+ */
+public record LoopExpression(Expression count, Expression body, List<Expression> preheader) implements Expression {
+	public LoopExpression(Expression count, Expression body) {
+		this(count, body, List.of());
+	}
+
 	@Override
 	public Class<?> type(CompileContext context) {
 		return void.class;
@@ -18,7 +28,25 @@ public record LoopExpression(Expression count, Expression body) implements Expre
 
 	@Override
 	public Class<?> emit(CompileContext context, CodeBuilder builder) {
+		var maxIterations = context.options().maxLoopIterations();
+
 		builder.block(b -> {
+			// The count is only evaluated once, and clamped to the cap so that the index doubles as the iteration counter.
+			int limitSlot = b.allocateLocal(TypeKind.INT);
+
+			if (count instanceof ConstantExpression(Number constant)) {
+				b.loadConstant(Math.min(constant.intValue(), maxIterations));
+			} else {
+				var countType = count.emit(context, b);
+				BoilerplateGenerator.tryCast(countType, int.class, b);
+
+				b
+					.loadConstant(maxIterations)
+					.invokestatic(desc(Math.class), "min", methodDesc(int.class, int.class, int.class));
+			}
+
+			b.istore(limitSlot);
+
 			int indexSlot = b.allocateLocal(TypeKind.INT);
 			b.localVariable(
 					indexSlot,
@@ -30,16 +58,24 @@ public record LoopExpression(Expression count, Expression body) implements Expre
 				.iconst_0()
 				.istore(indexSlot);
 
-			var continue_ = b.newLabel();
+			if (!preheader.isEmpty()) {
+				b
+					.iload(limitSlot)
+					.ifle(b.breakLabel());
 
-			var start = b.newBoundLabel();
+				for (var statement : preheader) {
+					BoilerplateGenerator.tryCast(statement.emit(context, b), void.class, b);
+				}
+			}
 
-			b.iload(indexSlot);
+			var continue_ = b.newLabel();
 
-			var countType = count.emit(context, b);
-			BoilerplateGenerator.tryCast(countType, int.class, b);
+			var start = b.newBoundLabel();
 
-			b.if_icmpge(b.breakLabel());
+			b
+				.iload(indexSlot)
+				.iload(limitSlot)
+				.if_icmpge(b.breakLabel());
 
 			context.loops().push(new Loop(
 				continue_,
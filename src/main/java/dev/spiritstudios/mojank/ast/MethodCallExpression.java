@@ -1,14 +1,15 @@
 package dev.spiritstudios.mojank.ast;
 
+import dev.spiritstudios.mojank.compile.Binding;
 import dev.spiritstudios.mojank.compile.BoilerplateGenerator;
 import dev.spiritstudios.mojank.compile.CompileContext;
 import dev.spiritstudios.mojank.internal.IndentedStringBuilder;
-import dev.spiritstudios.mojank.internal.NotImplementedException;
 import org.jetbrains.annotations.NotNull;
 
 import java.lang.classfile.CodeBuilder;
 import java.lang.classfile.Opcode;
-import java.lang.reflect.Method;
+import java.lang.constant.DirectMethodHandleDesc;
+import java.lang.constant.MethodHandleDesc;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.List;
@@ -23,76 +24,51 @@ public record MethodCallExpression(Expression method, List<Expression> parameter
 
 	@Override
 	public Class<?> type(CompileContext context) {
-		if (!(method instanceof BinaryOperationExpression binaryOp)) {
-			throw new NotImplementedException("TODO: non binaryop methodcalls");
-		}
-
-		if (!(binaryOp.right() instanceof IdentifierExpression(String methodName))) {
-			throw new IllegalStateException("Right of method access is not an identifier.");
-		}
-
-		var objectType = binaryOp.left().type(context);
-
-		var method = context.linker().findMethod(objectType, methodName);
-
-		if (method == null) {
-			throw new IllegalStateException("No method with name '" + methodName + "' on class '" + objectType + "' was found.");
-		}
-
-		return method.getReturnType();
+		return context.analysis().type(this);
 	}
 
 	@Override
 	public Class<?> emit(CompileContext context, CodeBuilder builder) {
-		// TODO: Clearer errors
-		if (!(method instanceof BinaryOperationExpression binaryOp))
-			throw new NotImplementedException("TODO: non binaryop methodcalls");
-
-		if (!(binaryOp.right() instanceof IdentifierExpression(String methodName)))
-			throw new IllegalStateException("Right of method access is not an identifier.");
+		var invocation = context.analysis().binding(this, Binding.Invocation.class);
+		var owner = invocation.owner();
+		var method = invocation.method();
 
-		Class<?> owner = null;
-		Method method = null;
-
-		if (binaryOp.left() instanceof IdentifierExpression(String name)) {
-			var clazz = context.linker().findClass(name);
-
-			if (clazz != null) {
-				owner = clazz;
-				method = context.linker().findMethod(clazz, methodName);
-			}
-		}
-
-		if (method == null) {
-			var leftType = binaryOp.left().emit(context, builder);
-
-			owner = leftType;
-			method = context.linker().findMethod(leftType, methodName);
+		if (invocation.hasReceiver()) {
+			((BinaryOperationExpression) this.method).left().emit(context, builder);
 		}
 
-
-		if (method == null) {
-			throw new IllegalStateException("No method with name '" + methodName + "' on class '" + owner + "' was found.");
-		}
-
-		var modifiers = method.getModifiers();
+		var parameterTypes = method.getParameterTypes();
 
 		for (int i = 0; i < parameters.size(); i++) {
 			var param = parameters.get(i);
 
 			var type = param.emit(context, builder);
-			BoilerplateGenerator.tryCast(type, method.getParameterTypes()[i], builder);
+			BoilerplateGenerator.tryCast(type, parameterTypes[i], builder);
 		}
 
-		builder.invoke(
-			Modifier.isStatic(modifiers) ?
-				Opcode.INVOKESTATIC :
+		var type = methodDesc(method.getReturnType(), parameterTypes);
+
+		if (Modifier.isStatic(method.getModifiers())) {
+			builder.invokestatic(desc(owner), method.getName(), type, owner.isInterface());
+		} else if (context.options().inlineCaches()) {
+			BoilerplateGenerator.invokeInlineCache(
+				MethodHandleDesc.ofMethod(
+					owner.isInterface() ? DirectMethodHandleDesc.Kind.INTERFACE_VIRTUAL : DirectMethodHandleDesc.Kind.VIRTUAL,
+					desc(owner),
+					method.getName(),
+					type
+				),
+				builder
+			);
+		} else {
+			builder.invoke(
 				owner.isInterface() ? Opcode.INVOKEINTERFACE : Opcode.INVOKEVIRTUAL,
-			desc(owner),
-			method.getName(),
-			methodDesc(method.getReturnType(), method.getParameterTypes()),
-			owner.isInterface()
-		);
+				desc(owner),
+				method.getName(),
+				type,
+				owner.isInterface()
+			);
+		}
 
 		return method.getReturnType();
 	}
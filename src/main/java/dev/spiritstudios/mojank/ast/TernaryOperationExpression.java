@@ -12,7 +12,7 @@ public record TernaryOperationExpression(Expression condition, Expression ifTrue
 	Expression {
 	@Override
 	public Class<?> type(CompileContext context) {
-		return null;
+		return context.analysis().type(this);
 	}
 
 	@Override
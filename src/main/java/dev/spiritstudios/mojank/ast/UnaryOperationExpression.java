@@ -37,11 +37,7 @@ public record UnaryOperationExpression(Expression value, Operator operator) impl
 
 	@Override
 	public Class<?> type(CompileContext context) {
-		return switch (operator) {
-			case POSITIVE, NUMERICAL_NEGATE -> value.type(context);
-			case LOGICAL_NEGATE -> boolean.class;
-			case RETURN -> void.class;
-		};
+		return context.analysis().type(this);
 	}
 
 	@Override
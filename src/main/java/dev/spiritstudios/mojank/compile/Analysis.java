@@ -0,0 +1,476 @@
+package dev.spiritstudios.mojank.compile;
+
+import dev.spiritstudios.mojank.ast.ArrayAccessExpression;
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.link.Alias;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.compile.link.Local;
+import dev.spiritstudios.mojank.compile.link.Variables;
+import dev.spiritstudios.mojank.internal.NotImplementedException;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the type of every expression, and what each identifier, field access and method call is bound to,
+ * against a target method and {@link Linker}.
+ * <p>
+ * Results are memoised per node, so each is only resolved once however many times
+ * {@link Expression#type} or {@link Expression#emit} ask for it.
+ * Not thread safe; each compile has its own, through {@link CompileContext#analysis()}.
+ * Once {@link #resolveAll} has run over an expression, though, asking about anything within it only reads,
+ * so it can then be shared, as the interpreter does.
+ * <p>
+ * Variables in the target's {@link Local} scopes are typed by the first value assigned to them,
+ * or float if they're read first, and widen to float if a later assignment disagrees.
+ * Which comes first depends on the order types are asked for,
+ * so compiling runs {@link dev.spiritstudios.mojank.compile.optimise.Temporaries#declare} over the tree beforehand,
+ * typing them in evaluation order.
+ * Variables in the target's {@link Variables} scopes are typed the same way, unless there is a {@link VariableSchema}
+ * to take their types from.
+ */
+public final class Analysis {
+	private final Linker linker;
+	private final Map<String, IndexedParameter> parameters;
+	private final Set<String> scopes = new HashSet<>();
+	private final Set<String> variableScopes = new HashSet<>();
+	private final @Nullable VariableSchema schema;
+	private final @Nullable Binding.Parameter holder;
+
+	private final Map<String, Class<?>> temporaries = new HashMap<>();
+	private final Map<String, Class<?>> variables = new HashMap<>();
+	private final Map<Expression, Class<?>> types = new IdentityHashMap<>();
+	private final Map<Expression, Binding> bindings = new IdentityHashMap<>();
+	private int widenings;
+
+	public Analysis(final Linker linker, final Method target) {
+		this(linker, target, null);
+	}
+
+	/**
+	 * @param schema The schema to type variables by, or null to infer their types.
+	 */
+	public Analysis(final Linker linker, final Method target, final @Nullable VariableSchema schema) {
+		this.linker = linker;
+		this.parameters = new HashMap<>();
+		this.schema = schema;
+
+		final var methodParams = target.getParameters();
+
+		for (int i = 0; i < methodParams.length; i++) {
+			final var parameter = methodParams[i];
+			final var alias = parameter.getAnnotation(Alias.class);
+
+			if (alias == null) {
+				// Unnamed, so can't be referred to by scripts.
+				continue;
+			}
+
+			for (final String name : alias.value()) {
+				parameters.put(name, new IndexedParameter(parameter, i + 1));
+			}
+		}
+
+		final var local = target.getAnnotation(Local.class);
+
+		if (local != null) {
+			for (final String scope : local.value()) {
+				// Identifiers are lower cased by the lexer.
+				scopes.add(scope.toLowerCase(Locale.ROOT));
+			}
+		}
+
+		final var parameter = VariableSchema.parameter(target);
+		final var variables = parameter != null ?
+			parameter.parameter().getAnnotation(Variables.class) :
+			target.getAnnotation(Variables.class);
+
+		this.holder = parameter != null ? new Binding.Parameter(parameter.index(), parameter.type()) : null;
+
+		if (variables != null) {
+			for (final String scope : variables.value()) {
+				variableScopes.add(scope.toLowerCase(Locale.ROOT));
+			}
+		}
+
+		if (schema != null) {
+			this.variables.putAll(schema.members());
+		}
+	}
+
+	public Linker linker() {
+		return linker;
+	}
+
+	/**
+	 * @return How many times a variable has been widened, forgetting every type resolved before it.
+	 */
+	public int widenings() {
+		return widenings;
+	}
+
+	public Map<String, IndexedParameter> parameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return The name of the variable if the expression is an access of one within a {@link Local} scope,
+	 * such as {@code temp.a}, otherwise null.
+	 */
+	public @Nullable String temporary(final Expression expression) {
+		return scoped(expression, scopes);
+	}
+
+	/**
+	 * @return The name of the variable if the expression is an access of one within a {@link Variables} scope,
+	 * such as {@code variable.a}, otherwise null.
+	 */
+	public @Nullable String variable(final Expression expression) {
+		return scoped(expression, variableScopes);
+	}
+
+	/**
+	 * The type of every variable accessed so far, or every variable in the schema if there is one.
+	 */
+	public Map<String, Class<?>> variables() {
+		return Collections.unmodifiableMap(variables);
+	}
+
+	private static @Nullable String scoped(final Expression expression, final Set<String> scopes) {
+		if (expression instanceof BinaryOperationExpression(
+			IdentifierExpression(String scope), var operator, IdentifierExpression(String name)
+		) && operator == BinaryOperationExpression.Operator.GET && scopes.contains(scope)) {
+			return name;
+		}
+
+		return null;
+	}
+
+	public Class<?> type(final Expression expression) {
+		var type = types.get(expression);
+
+		if (type == null) {
+			type = resolve(expression);
+			types.put(expression, type);
+		}
+
+		return type;
+	}
+
+	/**
+	 * @throws IllegalStateException If the expression does not bind to anything,
+	 *                               such as an arithmetic operation.
+	 */
+	public Binding binding(final Expression expression) {
+		type(expression);
+
+		final var binding = bindings.get(expression);
+
+		if (binding == null) {
+			throw new IllegalStateException("Nothing is bound to " + expression);
+		}
+
+		return binding;
+	}
+
+	public <T extends Binding> T binding(final Expression expression, final Class<T> kind) {
+		final var binding = binding(expression);
+
+		if (!kind.isInstance(binding)) {
+			throw new IllegalStateException("Expected " + kind.getSimpleName() + " for " + expression + ", got " + binding);
+		}
+
+		return kind.cast(binding);
+	}
+
+	/**
+	 * Resolves every expression within the expression that the compiler or interpreter may ask about,
+	 * which is all of them besides the names of fields and methods.
+	 */
+	public void resolveAll(final Expression expression) {
+		type(expression);
+
+		switch (expression) {
+			// Resolving an access resolves whatever it accesses, and its right side is only a name.
+			case BinaryOperationExpression binary when binary.operator() == BinaryOperationExpression.Operator.GET -> {
+			}
+			case BinaryOperationExpression(var left, var _, var right) -> {
+				resolveAll(left);
+				resolveAll(right);
+			}
+			// Likewise resolving a call resolves its receiver.
+			case MethodCallExpression(var _, var arguments) -> arguments.forEach(this::resolveAll);
+			case ArrayAccessExpression(var array, var index) -> {
+				resolveAll(array);
+				resolveAll(index);
+			}
+			case ComplexExpression(var expressions) -> expressions.forEach(this::resolveAll);
+			case LoopExpression(var count, var body, var preheader) -> {
+				resolveAll(count);
+				preheader.forEach(this::resolveAll);
+				resolveAll(body);
+			}
+			case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> {
+				resolveAll(condition);
+				resolveAll(ifTrue);
+				resolveAll(ifFalse);
+			}
+			case UnaryOperationExpression(var value, var _) -> resolveAll(value);
+			case LocalStoreExpression(var _, var value) -> resolveAll(value);
+			case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) -> {
+				resolveAll(multiplicand);
+				resolveAll(multiplier);
+				resolveAll(addend);
+			}
+			case ConstantExpression _, IdentifierExpression _, KeywordExpression _, LocalLoadExpression _ -> {
+			}
+		}
+	}
+
+	private void bind(final Expression expression, final Binding binding) {
+		bindings.put(expression, binding);
+	}
+
+	private Class<?> resolve(final Expression expression) {
+		return switch (expression) {
+			case ConstantExpression(var value) -> Primitive.unboxedType(value.getClass());
+			case IdentifierExpression identifier -> resolveIdentifier(identifier);
+			case BinaryOperationExpression binary -> resolveBinary(binary);
+			case UnaryOperationExpression(var value, var operator) -> switch (operator) {
+				case POSITIVE, NUMERICAL_NEGATE -> type(value);
+				case LOGICAL_NEGATE -> boolean.class;
+				case RETURN -> void.class;
+			};
+			case TernaryOperationExpression(var _, var ifTrue, var ifFalse) -> {
+				final var ifTrueType = type(ifTrue);
+
+				if (ifTrueType != type(ifFalse)) {
+					throw new UnsupportedOperationException("Both sides of ternary must return the same type");
+				}
+
+				yield ifTrueType;
+			}
+			case ArrayAccessExpression(var array, var _) -> {
+				final var arrayType = type(array);
+
+				if (!arrayType.isArray()) {
+					throw new IllegalStateException("Cannot index a " + array);
+				}
+
+				yield arrayType.componentType();
+			}
+			case MethodCallExpression call -> resolveCall(call);
+			case LocalLoadExpression(var _, var source) -> type(source);
+			case LocalStoreExpression(var _, var value) -> type(value);
+			case FusedMultiplyAddExpression(var multiplicand, var _, var _) -> type(multiplicand);
+			case ComplexExpression _, LoopExpression _, KeywordExpression _ -> void.class;
+		};
+	}
+
+	private Class<?> resolveIdentifier(final IdentifierExpression identifier) {
+		final var clazz = linker.findClass(identifier.name());
+
+		if (clazz != null) {
+			bind(identifier, new Binding.ClassAlias(clazz));
+			return Class.class;
+		}
+
+		final var parameter = parameters.get(identifier.name());
+
+		if (parameter != null) {
+			bind(identifier, new Binding.Parameter(parameter.index(), parameter.type()));
+			return parameter.type();
+		}
+
+		throw new IllegalStateException("Unknown identifier '" + identifier.name() + "'");
+	}
+
+	private Class<?> resolveBinary(final BinaryOperationExpression binary) {
+		return switch (binary.operator()) {
+			case SET -> {
+				final var temporary = temporary(binary.left());
+
+				if (temporary != null) {
+					widen(temporaries, temporary, assigned(temporary, binary.right()));
+				}
+
+				final var variable = variable(binary.left());
+
+				if (variable != null) {
+					final var valueType = assigned(variable, binary.right());
+
+					if (schema == null) {
+						widen(variables, variable, valueType);
+					}
+				}
+
+				// Resolve the target now, so that any failure to do so is reported against the assignment.
+				if (binary.left() instanceof BinaryOperationExpression target) {
+					type(target);
+				}
+
+				yield void.class;
+			}
+			case NULL_COALESCE -> {
+				final var leftType = type(binary.left());
+				yield leftType == void.class ? type(binary.right()) : leftType;
+			}
+			// Only evaluated some of the time, so nothing is left behind.
+			case CONDITIONAL -> void.class;
+			case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER -> {
+				final var leftType = type(binary.left());
+				final var rightType = type(binary.right());
+
+				// Molang is all floats, so mixing primitives is done as floats rather than truncating to either side.
+				yield leftType == rightType || !leftType.isPrimitive() || !rightType.isPrimitive() ?
+					leftType :
+					float.class;
+			}
+			case GET -> resolveGet(binary);
+			case ARROW -> throw new NotImplementedException();
+			case LOGICAL_OR, LOGICAL_AND, EQUAL_TO, NOT_EQUAL, LESS_THAN, GREATER_THAN, LESS_THAN_OR_EQUAL_TO,
+				 GREATER_THAN_OR_EQUAL_TO -> boolean.class;
+		};
+	}
+
+	/**
+	 * Types a variable by a value assigned to it, widening it as {@link VariableSchema} does if an earlier assignment
+	 * typed it otherwise. Anything already typed by the narrower type is stale, so it's all forgotten,
+	 * to be resolved again.
+	 */
+	private void widen(final Map<String, Class<?>> scope, final String name, final Class<?> type) {
+		final var previous = scope.putIfAbsent(name, type);
+
+		if (previous == null) {
+			return;
+		}
+
+		final var widened = VariableSchema.unify(previous, type);
+
+		if (widened != previous) {
+			scope.put(name, widened);
+			types.clear();
+			bindings.clear();
+			widenings++;
+		}
+	}
+
+	private Class<?> assigned(final String name, final Expression value) {
+		final var type = type(value);
+
+		if (type == void.class) {
+			throw new IllegalStateException("Cannot assign nothing to '" + name + "': " + value);
+		}
+
+		return type;
+	}
+
+	private Class<?> resolveGet(final BinaryOperationExpression binary) {
+		if (!(binary.right() instanceof IdentifierExpression(String fieldName))) {
+			throw new IllegalStateException("Right side of . must be an identifier");
+		}
+
+		final var temporary = temporary(binary);
+
+		if (temporary != null) {
+			// Molang reads unset variables as 0.
+			final var type = temporaries.computeIfAbsent(temporary, _ -> float.class);
+			bind(binary, new Binding.Temporary(temporary, type));
+			return type;
+		}
+
+		final var variable = variable(binary);
+
+		if (variable != null) {
+			final Class<?> type;
+
+			if (schema == null) {
+				type = variables.computeIfAbsent(variable, _ -> float.class);
+			} else {
+				type = variables.get(variable);
+
+				if (type == null) {
+					throw new IllegalStateException("Variable '" + variable + "' is not part of " + schema);
+				}
+			}
+
+			bind(binary, new Binding.Variable(variable, type, holder));
+			return type;
+		}
+
+		if (binary.left() instanceof IdentifierExpression(String name)) {
+			final var clazz = linker.findClass(name);
+
+			if (clazz != null) {
+				final var field = linker.findField(clazz, fieldName);
+
+				if (field != null) {
+					bind(binary, new Binding.FieldAccess(clazz, field, false));
+					return field.getType();
+				}
+			}
+		}
+
+		final var owner = type(binary.left());
+		final var field = linker.findField(owner, fieldName);
+
+		if (field == null) {
+			throw new NotImplementedException("TODO: method gets");
+		}
+
+		bind(binary, new Binding.FieldAccess(owner, field, true));
+		return field.getType();
+	}
+
+	private Class<?> resolveCall(final MethodCallExpression call) {
+		if (!(call.method() instanceof BinaryOperationExpression binaryOp)) {
+			throw new NotImplementedException("TODO: non binaryop methodcalls");
+		}
+
+		if (!(binaryOp.right() instanceof IdentifierExpression(String methodName))) {
+			throw new IllegalStateException("Right of method access is not an identifier.");
+		}
+
+		if (binaryOp.left() instanceof IdentifierExpression(String name)) {
+			final var clazz = linker.findClass(name);
+
+			if (clazz != null) {
+				final var method = linker.findMethod(clazz, methodName);
+
+				if (method != null) {
+					bind(call, new Binding.Invocation(clazz, method, false));
+					return method.getReturnType();
+				}
+			}
+		}
+
+		final var owner = type(binaryOp.left());
+		final var method = linker.findMethod(owner, methodName);
+
+		if (method == null) {
+			throw new IllegalStateException("No method with name '" + methodName + "' on class '" + owner + "' was found.");
+		}
+
+		bind(call, new Binding.Invocation(owner, method, true));
+		return method.getReturnType();
+	}
+}
@@ -0,0 +1,124 @@
+package dev.spiritstudios.mojank.compile;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An expression compiled by {@link Compiler#compileKernel} to evaluate many elements per call,
+ * reading each primitive field of the target's parameters from an array instead of the parameters themselves,
+ * and writing each result into an output array.
+ * <p>
+ * The arrays are indexed by element, so element {@code i} reads {@code columns[c][i]} for every column {@code c}
+ * and writes {@code output[i]}. The loop over the elements is a plain counted loop with no calls left in it
+ * once the JIT has inlined the expression, which it may then unroll and vectorise.
+ *
+ * @param columns    The fields read by the expression, in the order their arrays are passed.
+ * @param outputType The return type of the target, which the output array holds.
+ */
+public record BatchKernel(List<Column> columns, Class<?> outputType, Evaluator evaluator) {
+	public BatchKernel {
+		columns = List.copyOf(columns);
+	}
+
+	/**
+	 * Evaluates the first {@code count} elements.
+	 *
+	 * @param columns An array of each {@link Column#type()} per column, such as a {@code float[]}.
+	 * @param output  An array of the {@link #outputType()}.
+	 * @throws IllegalArgumentException If there is not an array per column, or any array is shorter than the count.
+	 */
+	public void evaluate(final Object[] columns, final Object output, final int count) {
+		if (columns.length != this.columns.size()) {
+			throw new IllegalArgumentException("Expected " + this.columns.size() + " columns, got " + columns.length);
+		}
+
+		// Checked up front, so that a short array can't leave the output partially written.
+		for (int i = 0; i < columns.length; i++) {
+			checkLength(this.columns.get(i).name(), columns[i], count);
+		}
+
+		checkLength("output", output, count);
+
+		evaluator.evaluate(columns, output, count);
+	}
+
+	private static void checkLength(final String name, final Object array, final int count) {
+		if (Array.getLength(array) < count) {
+			throw new IllegalArgumentException("Array for " + name + " holds " + Array.getLength(array) + " elements, need " + count);
+		}
+	}
+
+	/**
+	 * @return An array of the right type for each column, holding the given number of elements.
+	 */
+	public Object[] allocateColumns(final int capacity) {
+		final var arrays = new Object[columns.size()];
+
+		for (int i = 0; i < arrays.length; i++) {
+			arrays[i] = Array.newInstance(columns.get(i).type(), capacity);
+		}
+
+		return arrays;
+	}
+
+	public Object allocateOutput(final int capacity) {
+		return Array.newInstance(outputType, capacity);
+	}
+
+	/**
+	 * Reads every column from the target's arguments into element {@code index} of the arrays.
+	 * <p>
+	 * This goes through reflection, so is only meant for filling arrays now and then;
+	 * data that is already laid out by field should be copied straight into the arrays.
+	 */
+	public void gather(final Object[] columns, final int index, final Object... arguments) {
+		for (int i = 0; i < columns.length; i++) {
+			Array.set(columns[i], index, this.columns.get(i).read(arguments));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BatchKernel[" + columns.stream().map(Column::name).collect(Collectors.joining(", ")) + " -> " + outputType + ']';
+	}
+
+	/**
+	 * A primitive field read through a chain of fields from one of the target's parameters, such as {@code query.pos.x}.
+	 *
+	 * @param name      The path to the field, starting from the parameter's first {@link dev.spiritstudios.mojank.compile.link.Alias alias}.
+	 * @param parameter The index of the parameter the path starts from.
+	 * @param path      The fields read in turn, the last of which is the column's own.
+	 */
+	public record Column(String name, Class<?> type, int parameter, List<Field> path) {
+		public Column {
+			path = List.copyOf(path);
+		}
+
+		/**
+		 * Reads the field from the target's arguments, as the expression would have.
+		 */
+		public Object read(final Object... arguments) {
+			Object value = arguments[parameter];
+
+			try {
+				for (final var field : path) {
+					value = field.get(value);
+				}
+			} catch (IllegalAccessException exception) {
+				throw new IllegalStateException("Cannot read " + name, exception);
+			}
+
+			return value;
+		}
+	}
+
+	/**
+	 * Implemented by the generated kernel.
+	 */
+	@FunctionalInterface
+	public interface Evaluator {
+		void evaluate(Object[] columns, Object output, int count);
+	}
+}
@@ -0,0 +1,25 @@
+package dev.spiritstudios.mojank.compile;
+
+import java.util.List;
+
+/**
+ * The outcome of {@link Compiler#compileBatch}.
+ *
+ * @param results      The compiled expressions, in the same order they were given.
+ * @param classes      How many hidden classes were defined to hold every result.
+ * @param bytecodeSize The total size of the defined classes, in bytes.
+ * @param defineNanos  Time spent defining and linking the hidden classes.
+ */
+public record BatchResult<T>(
+	List<T> results,
+	int classes,
+	long bytecodeSize,
+	long defineNanos
+) {
+	/**
+	 * How many hidden classes were avoided compared to compiling every expression on its own.
+	 */
+	public int classesSaved() {
+		return results.size() - classes;
+	}
+}
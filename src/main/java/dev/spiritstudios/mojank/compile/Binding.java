@@ -0,0 +1,72 @@
+package dev.spiritstudios.mojank.compile;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * What an identifier, field access or method call was resolved to by {@link Analysis}.
+ */
+public sealed interface Binding {
+	/**
+	 * A parameter of the target method.
+	 *
+	 * @param slot The local slot the parameter is passed in, which is one more than its index.
+	 */
+	record Parameter(int slot, Class<?> type) implements Binding {
+		public int index() {
+			return slot - 1;
+		}
+	}
+
+	/**
+	 * A variable in one of the target method's {@link dev.spiritstudios.mojank.compile.link.Local} scopes,
+	 * such as {@code temp.a}, which lives in a JVM local for a single invocation.
+	 *
+	 * @param type The type of the first value assigned to it, or float if it may be read first.
+	 */
+	record Temporary(String name, Class<?> type) implements Binding {
+	}
+
+	/**
+	 * A variable in one of the target's {@link dev.spiritstudios.mojank.compile.link.Variables} scopes,
+	 * such as {@code variable.a}, which lives in a field that outlives the invocation.
+	 *
+	 * @param parameter The parameter the variables are passed in through, either as a {@link VariableSchema} struct
+	 *                  or as an index into a {@link VariableArena}, or null if they're fields of the compiled expression.
+	 */
+	record Variable(String name, Class<?> type, @Nullable Parameter parameter) implements Binding {
+		/**
+		 * @return Whether the variable is held in a {@link VariableArena}, rather than a field.
+		 */
+		public boolean isIndexed() {
+			return parameter != null && parameter.type() == int.class;
+		}
+
+		public String field() {
+			// Prefixed on the expression, to keep clear of anything else it declares.
+			return parameter == null ? "variable$" + name : name;
+		}
+	}
+
+	/**
+	 * A class made available through {@link dev.spiritstudios.mojank.compile.link.Linker#findClass(String)}.
+	 */
+	record ClassAlias(Class<?> clazz) implements Binding {
+	}
+
+	/**
+	 * @param hasReceiver Whether the left of the access is evaluated for the receiver,
+	 *                    rather than being a class alias resolved statically.
+	 */
+	record FieldAccess(Class<?> owner, Field field, boolean hasReceiver) implements Binding {
+	}
+
+	/**
+	 * @param hasReceiver Whether the left of the call is evaluated for the receiver,
+	 *                    rather than being a class alias resolved statically.
+	 */
+	record Invocation(Class<?> owner, Method method, boolean hasReceiver) implements Binding {
+	}
+}
@@ -7,6 +7,7 @@ import java.lang.classfile.ClassFile;
 import java.lang.classfile.CodeBuilder;
 import java.lang.classfile.Opcode;
 import java.lang.constant.*;
+import java.lang.foreign.MemorySegment;
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.AccessFlag;
 import java.lang.reflect.Method;
@@ -19,6 +20,31 @@ import static java.lang.constant.ConstantDescs.*;
  **/
 @ApiStatus.Internal
 public final class BoilerplateGenerator {
+	private static final ClassDesc CD_MemorySegment = desc(MemorySegment.class);
+
+	/**
+	 * The segment of the arena an expression was compiled against, which it's defined with as its class data.
+	 */
+	private static final DynamicConstantDesc<MemorySegment> ARENA_SEGMENT = DynamicConstantDesc.ofNamed(
+		ofConstantBootstrap(CD_MethodHandles, "classData", CD_Object),
+		DEFAULT_NAME,
+		CD_MemorySegment
+	);
+
+	private static final DirectMethodHandleDesc ARENA_HANDLE = MethodHandleDesc.ofMethod(
+		DirectMethodHandleDesc.Kind.STATIC,
+		desc(VariableArena.class),
+		"handle",
+		MethodTypeDesc.of(CD_VarHandle, CD_Class)
+	);
+
+	private static final DirectMethodHandleDesc INLINE_CACHE = ofCallsiteBootstrap(
+		desc(InlineCache.class),
+		"bootstrap",
+		CD_CallSite,
+		CD_MethodHandle
+	);
+
 	public static void tryCast(Class<?> from, Class<?> to, CodeBuilder builder) {
 		if (from != void.class) {
 			Primitive.convert(builder, from, to);
@@ -172,6 +198,158 @@ public final class BoilerplateGenerator {
 		);
 	}
 
+	static final String BATCH_INDEX = "index";
+	static final String BATCH_SOURCE = "source";
+
+	/**
+	 * Generates a stub CompilerResult for a batch class, shared by every expression in the batch.
+	 * <p>
+	 * Unlike {@link #writeCompilerResultStub}, the source is not a constant, but is instead stored per instance
+	 * alongside the index of the expression the instance dispatches to.
+	 */
+	static void writeBatchCompilerResultStub(
+		final ClassDesc self,
+		final Class<?> soup,
+		final Method target,
+		final ClassBuilder builder
+	) {
+		var owner = soup.isInterface() ?
+			CD_Object :
+			desc(soup);
+
+		builder
+			.withFlags(AccessFlag.PUBLIC, AccessFlag.FINAL);
+
+		if (soup.isInterface()) {
+			builder.withInterfaceSymbols(
+				desc(soup),
+				desc(CompilerResult.class)
+			);
+		} else {
+			builder
+				.withSuperclass(desc(soup))
+				.withInterfaceSymbols(desc(CompilerResult.class));
+		}
+
+		builder
+			.withField(BATCH_INDEX, CD_int, ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL)
+			.withField(BATCH_SOURCE, CD_String, ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL);
+
+		// Constructor
+		builder.withMethodBody(
+			INIT_NAME,
+			MethodTypeDesc.of(CD_void, CD_int, CD_String),
+			ClassFile.ACC_PRIVATE,
+			cob -> cob
+				.aload(0) // push this
+				.invokespecial(owner, INIT_NAME, MTD_void)
+				.aload(0)
+				.iload(1)
+				.putfield(self, BATCH_INDEX, CD_int)
+				.aload(0)
+				.aload(2)
+				.putfield(self, BATCH_SOURCE, CD_String)
+				.return_()
+		);
+
+		// Object.equals
+		builder.withMethodBody(
+			"equals",
+			MethodTypeDesc.ofDescriptor("(Ljava/lang/Object;)Z"),
+			ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
+			cob -> cob
+				.aload(0) // push this
+				.aload(1) // push other
+				.ifThenElse( // if (this == other) (pop this and other)
+					Opcode.IF_ACMPEQ,
+					eq ->
+						eq.iconst_1()
+							.ireturn(), // return true,
+					ne ->
+						ne
+							.aload(1) // push other
+							.instanceOf(desc(CompilerResult.class)) // pop other, push bool
+							.ifThenElse(
+								Opcode.IFNE,
+								eq -> eq
+									.aload(1)
+									.invokevirtual(
+										CD_Object,
+										"toString",
+										MethodTypeDesc.ofDescriptor("()Ljava/lang/String;")
+									)
+									.aload(0)
+									.getfield(self, BATCH_SOURCE, CD_String)
+									.invokevirtual(
+										CD_String,
+										"equals",
+										MethodTypeDesc.ofDescriptor("(Ljava/lang/Object;)Z")
+									)
+									.ireturn(),
+								ne1 ->
+									ne1
+										.iconst_0()
+										.ireturn()
+							)
+				)
+		);
+
+		builder.withMethodBody(
+			"hashCode",
+			MethodTypeDesc.ofDescriptor("()I"),
+			ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
+			cob -> cob
+				.aload(0)
+				.getfield(self, BATCH_SOURCE, CD_String)
+				.invokevirtual(CD_String, "hashCode", MethodTypeDesc.ofDescriptor("()I"))
+				.ireturn()
+		);
+
+		builder.withMethodBody(
+			"getType",
+			methodDesc(Class.class),
+			ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
+			cob -> cob
+				.ldc(desc(soup))
+				.areturn()
+		);
+
+		builder.withMethodBody(
+			"toHandle",
+			methodDesc(MethodHandle.class),
+			ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
+			cob -> cob
+				.ldc(
+					MethodHandleDesc.ofMethod(
+						DirectMethodHandleDesc.Kind.VIRTUAL,
+						self,
+						target.getName(),
+						methodDesc(
+							target.getReturnType(),
+							target.getParameterTypes()
+						)
+					)
+				)
+				.aload(0)
+				.invokevirtual(
+					desc(MethodHandle.class),
+					"bindTo",
+					methodDesc(MethodHandle.class, Object.class)
+				)
+				.areturn()
+		);
+
+		builder.withMethodBody(
+			"toString",
+			methodDesc(String.class),
+			ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
+			cob -> cob
+				.aload(0)
+				.getfield(self, BATCH_SOURCE, CD_String)
+				.areturn()
+		);
+	}
+
 	public static String loopIndexName(int depth) {
 		return String.valueOf((char) ((int) 'i' + depth)); // If you have a loop nested over 17 layers deep then that's your fault.
 	}
@@ -194,6 +372,55 @@ public final class BoilerplateGenerator {
 		);
 	}
 
+	/**
+	 * Pushes the var handle, segment and byte offset of a variable held in the {@link CompileOptions#arena() arena},
+	 * ready for {@link #arenaGet} or {@link #arenaSet}.
+	 * The handle and segment are both dynamic constants, so the JIT folds them like any other constant.
+	 */
+	public static void loadArenaAccess(Binding.Variable variable, CompileContext context, CodeBuilder builder) {
+		var schema = context.options().variables();
+
+		if (schema == null || context.options().arena() == null || variable.parameter() == null) {
+			throw new IllegalStateException("Variables passed as an index need an arena");
+		}
+
+		var layout = VariableArena.layout(schema);
+		var offset = VariableArena.offset(layout, variable.name());
+
+		builder
+			.ldc(DynamicConstantDesc.ofNamed(BSM_INVOKE, DEFAULT_NAME, CD_VarHandle, ARENA_HANDLE, desc(variable.type())))
+			.ldc(ARENA_SEGMENT)
+			.iload(variable.parameter().slot())
+			.i2l()
+			.loadConstant(layout.byteSize())
+			.lmul();
+
+		if (offset != 0) {
+			builder
+				.loadConstant(offset)
+				.ladd();
+		}
+	}
+
+	public static void arenaGet(Class<?> type, CodeBuilder builder) {
+		builder.invokevirtual(CD_VarHandle, "get", MethodTypeDesc.of(desc(type), CD_MemorySegment, CD_long));
+	}
+
+	public static void arenaSet(Class<?> type, CodeBuilder builder) {
+		builder.invokevirtual(CD_VarHandle, "set", MethodTypeDesc.of(CD_void, CD_MemorySegment, CD_long, desc(type)));
+	}
+
+	/**
+	 * Invokes the target through an {@link InlineCache}, with the receiver and any arguments already on the stack.
+	 *
+	 * @param target The virtual method or field getter the cache falls back to.
+	 */
+	public static void invokeInlineCache(DirectMethodHandleDesc target, CodeBuilder builder) {
+		var type = target.invocationType();
+
+		builder.invokedynamic(DynamicCallSiteDesc.of(INLINE_CACHE, target.methodName(), type, target));
+	}
+
 	public static void wrapArrayIndex(CodeBuilder builder) {
 		builder
 			.iconst_0()
@@ -0,0 +1,450 @@
+package dev.spiritstudios.mojank.compile;
+
+import dev.spiritstudios.mojank.MolangLexer;
+import dev.spiritstudios.mojank.MolangParser;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.internal.Util;
+import org.jetbrains.annotations.CheckReturnValue;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static dev.spiritstudios.mojank.compile.Descriptors.methodDesc;
+
+/**
+ * Persistent cache of generated class bytes, so that warm starts skip lexing, parsing and code generation,
+ * and go straight to {@link Compiler#define}.
+ * <p>
+ * Entries are keyed by a hash of the source, the target method descriptor, the linker policy,
+ * the compile options, the defining package and the Mojank {@link #VERSION build}.
+ * Entries are written to a temporary file and atomically renamed into place,
+ * so several JVMs may safely share one directory.
+ * Entries that fail validation or fail to define are discarded and rebuilt rather than failing the load.
+ * <p>
+ * Cached classes are defined with the caller's lookup, bypassing the {@link Linker} entirely,
+ * so whoever can write entries can run any code with the caller's privileges.
+ * Each entry is therefore authenticated with an HMAC keyed by a secret, and anything that fails it is rebuilt.
+ * Unless one is given, the secret is generated into the directory on first use, readable only by its owner,
+ * and the directory itself is created accessible only by its owner.
+ * The directory must not be writable, nor its secret readable, by anyone less trusted than the caller.
+ */
+public final class BytecodeCache {
+	private static final Logger logger = Util.logger();
+
+	private static final int MAGIC = 0x4D4A4E4B; // MJNK
+	private static final int FORMAT = 2;
+	private static final String EXTENSION = ".mjc";
+
+	private static final String SECRET = "secret.key";
+	private static final int SECRET_LENGTH = 32;
+	private static final String MAC = "HmacSHA256";
+	private static final int MAC_LENGTH = 32;
+
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+	/**
+	 * The build of Mojank that generated the bytes, as its version and a hash of its own classes.
+	 * Snapshots all share a version, so without the hash their entries would outlive changes to the compiler.
+	 */
+	static final String VERSION = version();
+
+	private final Path directory;
+	private final SecretKeySpec secret;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder rebuilds = new LongAdder();
+	private final LongAdder writeFailures = new LongAdder();
+
+	/**
+	 * Uses the secret in the directory, generating one if there isn't one yet.
+	 */
+	public BytecodeCache(final Path directory) throws IOException {
+		this.directory = createDirectory(directory);
+		this.secret = new SecretKeySpec(secret(this.directory), MAC);
+	}
+
+	/**
+	 * @param secret The key entries are authenticated with, which should be kept somewhere less exposed than the directory.
+	 */
+	public BytecodeCache(final Path directory, final byte[] secret) throws IOException {
+		if (secret.length < 16) {
+			throw new IllegalArgumentException("Expected a secret of at least 16 bytes, got " + secret.length);
+		}
+
+		this.directory = createDirectory(directory);
+		this.secret = new SecretKeySpec(secret, MAC);
+	}
+
+	private static Path createDirectory(final Path directory) throws IOException {
+		if (!isPosix(directory)) {
+			return Files.createDirectories(directory);
+		}
+
+		if (Files.isDirectory(directory)) {
+			final var permissions = Files.getPosixFilePermissions(directory);
+
+			if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+				logger.warn("Bytecode cache {} is writable by others, who could run code through it", directory);
+			}
+
+			return directory;
+		}
+
+		return Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+	}
+
+	private static boolean isPosix(final Path path) {
+		return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+	}
+
+	/**
+	 * Reads the secret in the directory, or generates it if there isn't one yet.
+	 * Several JVMs may race to generate it, in which case all of them use whichever was linked into place first.
+	 */
+	private static byte[] secret(final Path directory) throws IOException {
+		final Path file = directory.resolve(SECRET);
+
+		try {
+			return readSecret(file);
+		} catch (NoSuchFileException ignored) {
+			// First use, so make one.
+		}
+
+		final byte[] secret = new byte[SECRET_LENGTH];
+		new SecureRandom().nextBytes(secret);
+
+		// Temporary files are only readable by their owner.
+		final Path temporary = Files.createTempFile(directory, SECRET, ".tmp");
+
+		try {
+			Files.write(temporary, secret);
+
+			try {
+				// Unlike a move, linking never replaces a secret another JVM already made.
+				Files.createLink(file, temporary);
+			} catch (UnsupportedOperationException ignored) {
+				Files.copy(temporary, file, StandardCopyOption.COPY_ATTRIBUTES);
+			}
+		} catch (FileAlreadyExistsException ignored) {
+			return readSecret(file);
+		} finally {
+			discard(temporary);
+		}
+
+		return secret;
+	}
+
+	private static byte[] readSecret(final Path file) throws IOException {
+		final byte[] secret = Files.readAllBytes(file);
+
+		if (secret.length != SECRET_LENGTH) {
+			throw new IOException("Malformed bytecode cache secret " + file);
+		}
+
+		return secret;
+	}
+
+	public Path directory() {
+		return directory;
+	}
+
+	/**
+	 * Defines the cached class for the given source, or compiles and stores it if there is no valid entry.
+	 */
+	public <T> T compile(
+		final MethodHandles.Lookup lookup,
+		final Linker linker,
+		final Class<T> targetClass,
+		final String source
+	) throws Throwable {
+		return compile(lookup, linker, targetClass, source, CompileOptions.DEFAULT);
+	}
+
+	/**
+	 * Defines the cached class for the given source and options, or compiles and stores it if there is no valid entry.
+	 */
+	public <T> T compile(
+		final MethodHandles.Lookup lookup,
+		final Linker linker,
+		final Class<T> targetClass,
+		final String source,
+		final CompileOptions options
+	) throws Throwable {
+		final Method targetMethod = linker.tryFunctionalClass(targetClass)
+			.orElseThrow(() -> new IllegalArgumentException("'" + targetClass + "' is not a valid functional interface"));
+
+		final byte[] key = key(lookup, linker, targetClass, targetMethod, options, source);
+		final Path file = directory.resolve(HexFormat.of().formatHex(key) + EXTENSION);
+
+		final byte[] cached = read(file, key);
+
+		if (cached != null) {
+			final var parameter = VariableSchema.parameter(targetMethod);
+
+			if (options.variables() != null && parameter != null && parameter.type() == Object.class) {
+				// The cached expression names the struct, so it has to exist before the expression runs.
+				options.variables().define(lookup);
+			}
+
+			try {
+				final T result = Compiler.define(lookup, cached, Compiler.classData(options));
+				hits.increment();
+				return result;
+			} catch (LinkageError | IllegalArgumentException error) {
+				logger.warn("Discarding cache entry {} that failed to define", file, error);
+				rebuilds.increment();
+				discard(file);
+			}
+		}
+
+		misses.increment();
+
+		final var parser = new MolangParser(new MolangLexer(source), linker);
+		final byte[] bytecode = Compiler.compileToBytecode(lookup, linker, targetClass, parser.parseAll(), source, options);
+
+		write(file, key, bytecode);
+
+		return Compiler.define(lookup, bytecode, Compiler.classData(options));
+	}
+
+	/**
+	 * @return The validated class bytes, or null if there is no usable entry.
+	 */
+	private byte[] read(final Path file, final byte[] key) {
+		final byte[] raw;
+
+		try {
+			raw = Files.readAllBytes(file);
+		} catch (NoSuchFileException ignored) {
+			return null;
+		} catch (IOException exception) {
+			logger.warn("Failed to read cache entry {}", file, exception);
+			return null;
+		}
+
+		try (var input = new DataInputStream(new ByteArrayInputStream(raw))) {
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT) {
+				throw new IOException("Unrecognised header");
+			}
+
+			final byte[] storedKey = input.readNBytes(key.length);
+			if (!Arrays.equals(key, storedKey)) {
+				throw new IOException("Key mismatch");
+			}
+
+			final int length = input.readInt();
+			if (length < 0 || length > input.available() - MAC_LENGTH) {
+				throw new IOException("Truncated entry");
+			}
+
+			final byte[] bytecode = input.readNBytes(length);
+			final byte[] mac = input.readNBytes(MAC_LENGTH);
+
+			if (!MessageDigest.isEqual(mac, mac(key, bytecode))) {
+				throw new IOException("Authentication failed");
+			}
+
+			return bytecode;
+		} catch (IOException exception) {
+			logger.warn("Discarding corrupt or tampered cache entry {}: {}", file, exception.getMessage());
+			rebuilds.increment();
+			discard(file);
+
+			return null;
+		}
+	}
+
+	private static void discard(final Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException exception) {
+			// Another JVM may have already replaced it; either way it'll be rewritten.
+			logger.debug("Failed to discard cache entry {}", file, exception);
+		}
+	}
+
+	private void write(final Path file, final byte[] key, final byte[] bytecode) {
+		final var buffer = new ByteArrayOutputStream(bytecode.length + key.length + 12 + MAC_LENGTH);
+
+		try (var output = new DataOutputStream(buffer)) {
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT);
+			output.write(key);
+			output.writeInt(bytecode.length);
+			output.write(bytecode);
+			output.write(mac(key, bytecode));
+		} catch (IOException exception) {
+			throw new AssertionError("In-memory streams do not throw", exception);
+		}
+
+		Path temporary = null;
+
+		try {
+			temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			Files.write(temporary, buffer.toByteArray());
+
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ignored) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException exception) {
+			// The cache is only an optimisation, so failing to write it must not fail the compile.
+			logger.warn("Failed to write cache entry {}", file, exception);
+			writeFailures.increment();
+
+			if (temporary != null) {
+				discard(temporary);
+			}
+		}
+	}
+
+	/**
+	 * Authenticates the class bytes along with the key they're stored under, so that an entry can't be moved to another.
+	 */
+	private byte[] mac(final byte[] key, final byte[] bytecode) {
+		final Mac mac;
+
+		try {
+			mac = Mac.getInstance(MAC);
+			mac.init(secret);
+		} catch (GeneralSecurityException exception) {
+			throw new AssertionError(MAC + " is required to be supported", exception);
+		}
+
+		mac.update(key);
+		return mac.doFinal(bytecode);
+	}
+
+	private static byte[] key(
+		final MethodHandles.Lookup lookup,
+		final Linker linker,
+		final Class<?> targetClass,
+		final Method targetMethod,
+		final CompileOptions options,
+		final String source
+	) {
+		final var digest = sha256();
+
+		update(digest, VERSION);
+		update(digest, lookup.lookupClass().getPackageName());
+		update(digest, targetClass.getName());
+		update(digest, targetMethod.getName());
+		update(digest, methodDesc(targetMethod.getReturnType(), targetMethod.getParameterTypes()).descriptorString());
+		update(digest, linker.describePolicy());
+		update(digest, options.toString());
+		update(digest, source);
+
+		return digest.digest();
+	}
+
+	private static String version() {
+		final var version = Objects.requireNonNullElse(
+			BytecodeCache.class.getPackage().getImplementationVersion(),
+			"development"
+		);
+
+		try {
+			return version + '+' + HexFormat.of().formatHex(hashBuild());
+		} catch (IOException | URISyntaxException | RuntimeException exception) {
+			// Without knowing which build wrote an entry, none can be trusted to match this one past this run.
+			logger.warn("Failed to hash Mojank's classes, so the bytecode cache won't outlive this run", exception);
+			return version + '+' + UUID.randomUUID();
+		}
+	}
+
+	/**
+	 * Hashes the jar Mojank was loaded from, or each of its classes when loaded from a directory, as in development.
+	 */
+	private static byte[] hashBuild() throws IOException, URISyntaxException {
+		final var codeSource = BytecodeCache.class.getProtectionDomain().getCodeSource();
+
+		if (codeSource == null || codeSource.getLocation() == null) {
+			throw new IOException("Unknown code source");
+		}
+
+		final Path location = Path.of(codeSource.getLocation().toURI());
+		final var digest = sha256();
+
+		if (Files.isRegularFile(location)) {
+			try (var input = new DigestInputStream(Files.newInputStream(location), digest)) {
+				input.transferTo(OutputStream.nullOutputStream());
+			}
+
+			return digest.digest();
+		}
+
+		final Path root = location.resolve("dev/spiritstudios/mojank");
+		final List<Path> classes;
+
+		try (var files = Files.walk(root)) {
+			classes = files.filter(file -> file.toString().endsWith(".class")).sorted().toList();
+		}
+
+		for (final Path file : classes) {
+			update(digest, root.relativize(file).toString());
+			digest.update(Files.readAllBytes(file));
+		}
+
+		return digest.digest();
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException exception) {
+			throw new AssertionError("SHA-256 is required to be supported", exception);
+		}
+	}
+
+	private static void update(final MessageDigest digest, final String string) {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+		// Length prefixed, so that adjacent fields can't run into each other.
+		digest.update((byte) (bytes.length >>> 24));
+		digest.update((byte) (bytes.length >>> 16));
+		digest.update((byte) (bytes.length >>> 8));
+		digest.update((byte) bytes.length);
+		digest.update(bytes);
+	}
+
+	@CheckReturnValue
+	public Stats stats() {
+		return new Stats(hits.sum(), misses.sum(), rebuilds.sum(), writeFailures.sum());
+	}
+
+	public record Stats(long hits, long misses, long rebuilds, long writeFailures) {
+	}
+}
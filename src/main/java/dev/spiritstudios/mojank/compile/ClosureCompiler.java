@@ -0,0 +1,1099 @@
+package dev.spiritstudios.mojank.compile;
+
+import dev.spiritstudios.mojank.MolangInterpreter;
+import dev.spiritstudios.mojank.ast.ArrayAccessExpression;
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.compile.optimise.Optimiser;
+import dev.spiritstudios.mojank.compile.optimise.Temporaries;
+import dev.spiritstudios.mojank.internal.NotImplementedException;
+import dev.spiritstudios.mojank.runtime.Primitives;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import static dev.spiritstudios.mojank.internal.Evaluation.STATIC_FLOAT;
+import static dev.spiritstudios.mojank.internal.Evaluation.STATIC_FLOAT_SETTER;
+import static dev.spiritstudios.mojank.internal.Evaluation.VIRTUAL_FLOAT;
+import static dev.spiritstudios.mojank.internal.Evaluation.VIRTUAL_FLOAT_SETTER;
+import static dev.spiritstudios.mojank.internal.Evaluation.isFloatShaped;
+import static dev.spiritstudios.mojank.internal.Evaluation.rethrow;
+import static dev.spiritstudios.mojank.internal.Evaluation.widensToFloat;
+import static dev.spiritstudios.mojank.internal.Evaluation.wrapIndex;
+import static dev.spiritstudios.mojank.internal.Evaluation.zero;
+
+/**
+ * Runs expressions as a tree of closures, for those that run a few hundred times and are then thrown away,
+ * which is too few to be worth defining a hidden class for, but too many to walk the AST with the
+ * {@link MolangInterpreter} every time.
+ * <p>
+ * The expression is optimised as the {@link Compiler} would, then converted once into a tree of small nodes,
+ * each specialised to producing a float, a boolean or an object.
+ * Fields, methods, temporaries and locals are all resolved while converting,
+ * so evaluating is only a chain of calls from each node to its children.
+ * Floats and booleans are never boxed between nodes that produce them, and fields and methods of those types
+ * are read and called through method handles adapted to them up front.
+ * <p>
+ * The result implements the same functional interfaces as {@link Compiler#compile}, through a {@link MethodHandleProxies proxy},
+ * whose class is shared by every expression implementing the same interface.
+ * Evaluating is thread safe, save for the variables the expression itself holds, as when compiled.
+ */
+public final class ClosureCompiler {
+	private static final MethodType STATIC_BOOLEAN = MethodType.methodType(boolean.class);
+	private static final MethodType VIRTUAL_BOOLEAN = MethodType.methodType(boolean.class, Object.class);
+
+	private static final MethodHandle EVALUATE;
+	private static final MethodHandle EVALUATE_FLOAT;
+	private static final MethodHandle EVALUATE_BOOLEAN;
+	private static final MethodHandle CONVERT;
+
+	static {
+		try {
+			final var lookup = MethodHandles.lookup();
+
+			EVALUATE = lookup.findVirtual(
+				Program.class,
+				"evaluate",
+				MethodType.methodType(Object.class, Object[].class)
+			);
+			EVALUATE_FLOAT = lookup.findVirtual(
+				Program.class,
+				"evaluateFloat",
+				MethodType.methodType(float.class, Object[].class)
+			);
+			EVALUATE_BOOLEAN = lookup.findVirtual(
+				Program.class,
+				"evaluateBoolean",
+				MethodType.methodType(boolean.class, Object[].class)
+			);
+			CONVERT = MethodHandles.publicLookup().findStatic(
+				MolangInterpreter.class,
+				"convert",
+				MethodType.methodType(Object.class, Object.class, Class.class)
+			);
+		} catch (ReflectiveOperationException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+
+	private ClosureCompiler() {
+	}
+
+	public static <T> T compile(final Linker linker, final Class<T> targetClass, final Expression expression) {
+		return compile(linker, targetClass, expression, CompileOptions.DEFAULT);
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the target isn't a functional interface,
+	 *                                  or the expression accesses variables in a {@link VariableArena},
+	 *                                  which only compiled expressions can reach.
+	 */
+	public static <T> T compile(
+		final Linker linker,
+		final Class<T> targetClass,
+		final Expression expression,
+		final CompileOptions options
+	) {
+		final Method targetMethod = linker.tryFunctionalClass(targetClass)
+			.orElseThrow(() -> new IllegalArgumentException("'" + targetClass + "' is not a valid functional interface"));
+
+		final var context = new CompileContext(linker, targetMethod, options);
+		Temporaries.declare(expression, context);
+
+		final var holder = VariableSchema.parameter(targetMethod);
+
+		if (!context.analysis().variables().isEmpty() && holder != null && holder.type() == int.class) {
+			throw new IllegalArgumentException("Variables held in a VariableArena can only be accessed once compiled");
+		}
+
+		final var builder = new Builder(context);
+		final var program = builder.build(Optimiser.optimise(expression, context));
+
+		final var returnType = targetMethod.getReturnType();
+		final var handle = switch (returnType.getName()) {
+			case "float", "double" -> EVALUATE_FLOAT.bindTo(program);
+			case "boolean" -> EVALUATE_BOOLEAN.bindTo(program);
+			case "void" -> EVALUATE.bindTo(program);
+			default -> MethodHandles.filterReturnValue(
+				EVALUATE.bindTo(program),
+				MethodHandles.insertArguments(CONVERT, 1, returnType)
+			);
+		};
+
+		final var type = MethodType.methodType(returnType, targetMethod.getParameterTypes());
+
+		return MethodHandleProxies.asInterfaceInstance(
+			targetClass,
+			handle.asCollector(Object[].class, type.parameterCount()).asType(type)
+		);
+	}
+
+	@FunctionalInterface
+	private interface Node {
+		@Nullable Object evaluate(Frame frame);
+	}
+
+	@FunctionalInterface
+	private interface FloatNode {
+		float evaluate(Frame frame);
+	}
+
+	@FunctionalInterface
+	private interface BooleanNode {
+		boolean evaluate(Frame frame);
+	}
+
+	private enum Jump {
+		RETURN,
+		BREAK,
+		CONTINUE
+	}
+
+	/**
+	 * The state of a single evaluation, with a slot for every temporary and local the expression uses.
+	 */
+	private static final class Frame {
+		private static final float[] NO_FLOATS = new float[0];
+		private static final Object[] NO_OBJECTS = new Object[0];
+
+		private final Object[] arguments;
+		private final float[] floats;
+		private final @Nullable Object[] objects;
+		private @Nullable Jump jump;
+		private @Nullable Object returned;
+
+		private Frame(final Object[] arguments, final Program program) {
+			this.arguments = arguments;
+			this.floats = program.floats == 0 ? NO_FLOATS : new float[program.floats];
+			this.objects = program.objects.length == 0 ? NO_OBJECTS : program.objects.clone();
+		}
+	}
+
+	/**
+	 * @param floats  How many float slots each frame needs.
+	 * @param objects The initial values of the other slots, which are zero for primitives.
+	 */
+	private record Program(
+		@Nullable FloatNode returnedFloat,
+		@Nullable BooleanNode returnedBoolean,
+		Node root,
+		int floats,
+		@Nullable Object[] objects
+	) {
+		@SuppressWarnings("unused") // Bound by compile
+		private @Nullable Object evaluate(final Object[] arguments) {
+			final var frame = new Frame(arguments, this);
+			final var result = root.evaluate(frame);
+			return frame.jump == Jump.RETURN ? frame.returned : result;
+		}
+
+		@SuppressWarnings("unused") // Bound by compile
+		private float evaluateFloat(final Object[] arguments) {
+			if (returnedFloat != null) {
+				return returnedFloat.evaluate(new Frame(arguments, this));
+			}
+
+			return Primitives.unboxAsFloatLenient(evaluate(arguments));
+		}
+
+		@SuppressWarnings("unused") // Bound by compile
+		private boolean evaluateBoolean(final Object[] arguments) {
+			if (returnedBoolean != null) {
+				return returnedBoolean.evaluate(new Frame(arguments, this));
+			}
+
+			return Primitives.unboxAsBooleanLenient(evaluate(arguments));
+		}
+	}
+
+	/**
+	 * Converts an optimised expression into nodes, building every node in the order it's evaluated,
+	 * so that locals are given their slots before they're loaded.
+	 */
+	private static final class Builder {
+		private final CompileContext context;
+		private final Analysis analysis;
+		private final Linker linker;
+		private final int maxLoopIterations;
+
+		private final Map<String, LocalSlot> temporaries = new HashMap<>();
+		private final Map<Integer, LocalSlot> locals = new HashMap<>();
+		private final Map<String, Integer> variableSlots = new HashMap<>();
+		/**
+		 * The variables held by the expression itself, which outlive each evaluation.
+		 */
+		private final @Nullable Object[] variables;
+		private final List<@Nullable Object> objects = new ArrayList<>();
+		private int floats;
+		private int loops;
+
+		private Builder(final CompileContext context) {
+			this.context = context;
+			this.analysis = context.analysis();
+			this.linker = context.linker();
+			this.maxLoopIterations = context.options().maxLoopIterations();
+
+			final var declared = analysis.variables();
+			this.variables = new Object[declared.size()];
+
+			for (final var variable : declared.entrySet()) {
+				final int slot = variableSlots.size();
+				variableSlots.put(variable.getKey(), slot);
+				variables[slot] = zero(variable.getValue());
+			}
+		}
+
+		private Program build(final Expression expression) {
+			FloatNode returnedFloat = null;
+			BooleanNode returnedBoolean = null;
+			final Node root;
+
+			// Single expressions are parsed as a return of their value, which is then evaluated straight to the return type.
+			if (expression instanceof UnaryOperationExpression(var value, var operator) &&
+				operator == UnaryOperationExpression.Operator.RETURN) {
+				final var type = context.target().getReturnType();
+
+				if (type == float.class || type == double.class) {
+					returnedFloat = floatNode(value);
+					final var node = returnedFloat;
+					root = frame -> node.evaluate(frame);
+				} else if (type == boolean.class) {
+					returnedBoolean = booleanNode(value);
+					final var node = returnedBoolean;
+					root = frame -> node.evaluate(frame);
+				} else {
+					root = node(value);
+				}
+			} else {
+				root = node(expression);
+			}
+
+			return new Program(returnedFloat, returnedBoolean, root, floats, objects.toArray());
+		}
+
+		private LocalSlot allocate(final Class<?> type) {
+			if (type == float.class) {
+				return new LocalSlot(floats++, type);
+			}
+
+			objects.add(zero(type));
+			return new LocalSlot(objects.size() - 1, type);
+		}
+
+		private LocalSlot local(final LocalLoadExpression load) {
+			final var local = locals.get(load.id());
+
+			if (local == null) {
+				throw new IllegalStateException("Local #" + load.id() + " loaded before it was stored: " + load.source());
+			}
+
+			return local;
+		}
+
+		private Node node(final Expression expression) {
+			return switch (expression) {
+				case ConstantExpression(var value) -> _ -> value;
+				case IdentifierExpression identifier -> switch (analysis.binding(identifier)) {
+					case Binding.ClassAlias(var clazz) -> _ -> clazz;
+					case Binding.Parameter parameter -> {
+						final int index = parameter.index();
+						yield frame -> frame.arguments[index];
+					}
+					case Binding binding -> throw new IllegalStateException("Identifier bound to " + binding);
+				};
+				case BinaryOperationExpression binary -> binaryNode(binary);
+				case UnaryOperationExpression(var value, var operator) -> switch (operator) {
+					case NUMERICAL_NEGATE, POSITIVE -> boxed(floatNode(expression));
+					case LOGICAL_NEGATE -> boxed(booleanNode(expression));
+					case RETURN -> {
+						final var node = node(value);
+
+						yield frame -> {
+							frame.returned = node.evaluate(frame);
+							frame.jump = Jump.RETURN;
+							return null;
+						};
+					}
+				};
+				case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> {
+					final var test = booleanNode(condition);
+					final var a = node(ifTrue);
+					final var b = node(ifFalse);
+
+					yield frame -> test.evaluate(frame) ? a.evaluate(frame) : b.evaluate(frame);
+				}
+				case ArrayAccessExpression(var array, var index) -> {
+					final var arrayNode = node(array);
+					final var indexNode = floatNode(index);
+
+					yield frame -> {
+						final var value = arrayNode.evaluate(frame);
+						return Array.get(value, wrapIndex(value, (int) indexNode.evaluate(frame)));
+					};
+				}
+				case MethodCallExpression call -> callNode(call);
+				case FusedMultiplyAddExpression _ -> boxed(floatNode(expression));
+				case ComplexExpression(var expressions) -> {
+					final var statements = nodes(expressions);
+
+					yield frame -> {
+						for (final var statement : statements) {
+							statement.evaluate(frame);
+
+							if (frame.jump != null) {
+								break;
+							}
+						}
+
+						return null;
+					};
+				}
+				case LocalStoreExpression(var id, var value) -> {
+					final var type = value.type(context);
+
+					if (type == float.class) {
+						yield boxed(floatNode(expression));
+					}
+
+					final var node = node(value);
+					final var local = allocate(type);
+					final int slot = local.slot();
+					locals.put(id, local);
+
+					yield frame -> frame.objects[slot] = node.evaluate(frame);
+				}
+				case LocalLoadExpression load -> {
+					final var local = local(load);
+					final int slot = local.slot();
+
+					if (local.type() == float.class) {
+						yield boxed(floatNode(load));
+					}
+
+					yield frame -> frame.objects[slot];
+				}
+				case LoopExpression loop -> loopNode(loop);
+				case KeywordExpression keyword -> {
+					if (loops == 0) {
+						throw new IllegalStateException("Tried to " + keyword.name().toLowerCase(Locale.ROOT) + " when not inside a loop!");
+					}
+
+					final var jump = switch (keyword) {
+						case BREAK -> Jump.BREAK;
+						case CONTINUE -> Jump.CONTINUE;
+					};
+
+					yield frame -> {
+						frame.jump = jump;
+						return null;
+					};
+				}
+			};
+		}
+
+		private Node[] nodes(final List<Expression> expressions) {
+			final var nodes = new Node[expressions.size()];
+
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = node(expressions.get(i));
+			}
+
+			return nodes;
+		}
+
+		private Node binaryNode(final BinaryOperationExpression binary) {
+			final var left = binary.left();
+			final var right = binary.right();
+
+			return switch (binary.operator()) {
+				case SET -> setNode(binary);
+				case NULL_COALESCE -> {
+					final var a = node(left);
+					final var b = node(right);
+
+					yield frame -> {
+						final var value = a.evaluate(frame);
+						return value != null ? value : b.evaluate(frame);
+					};
+				}
+				case CONDITIONAL -> {
+					final var test = booleanNode(left);
+					final var node = node(right);
+
+					yield frame -> {
+						if (test.evaluate(frame)) {
+							node.evaluate(frame);
+						}
+
+						return null;
+					};
+				}
+				case LOGICAL_OR, LOGICAL_AND, EQUAL_TO, NOT_EQUAL, LESS_THAN, GREATER_THAN,
+					 LESS_THAN_OR_EQUAL_TO, GREATER_THAN_OR_EQUAL_TO -> boxed(booleanNode(binary));
+				case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER -> boxed(floatNode(binary));
+				case GET -> getNode(binary);
+				case ARROW -> throw new NotImplementedException();
+			};
+		}
+
+		private Node getNode(final BinaryOperationExpression binary) {
+			return switch (analysis.binding(binary)) {
+				case Binding.Temporary(var name, var type) -> {
+					// Unset temporaries read as zero, as their slots start out.
+					final var local = temporary(name, type);
+					final int slot = local.slot();
+
+					if (local.type() == float.class) {
+						final FloatNode node = frame -> frame.floats[slot];
+						yield boxed(node);
+					}
+
+					yield frame -> frame.objects[slot];
+				}
+				case Binding.Variable variable when variable.parameter() == null -> {
+					final int slot = variableSlots.get(variable.name());
+					final var variables = this.variables;
+					yield _ -> variables[slot];
+				}
+				case Binding.Variable variable -> {
+					final int index = variable.parameter().index();
+					final var getter = linker.getter(structField(variable));
+
+					yield frame -> {
+						try {
+							return getter.invoke(frame.arguments[index]);
+						} catch (Throwable throwable) {
+							throw rethrow(throwable);
+						}
+					};
+				}
+				case Binding.FieldAccess(var _, var field, var hasReceiver) -> {
+					final var getter = linker.getter(field);
+
+					if (Modifier.isStatic(field.getModifiers())) {
+						yield _ -> {
+							try {
+								return getter.invoke();
+							} catch (Throwable throwable) {
+								throw rethrow(throwable);
+							}
+						};
+					}
+
+					final var receiver = receiverNode(binary.left(), hasReceiver);
+
+					yield frame -> {
+						try {
+							return getter.invoke(receiver.evaluate(frame));
+						} catch (Throwable throwable) {
+							throw rethrow(throwable);
+						}
+					};
+				}
+				case Binding binding -> throw new IllegalStateException("Field access bound to " + binding);
+			};
+		}
+
+		private Node setNode(final BinaryOperationExpression binary) {
+			// Types a variable by its value, if this is the first assignment to it.
+			analysis.type(binary);
+
+			final var right = binary.right();
+
+			return switch (binary.left()) {
+				case BinaryOperationExpression target
+					when analysis.binding(target) instanceof Binding.Temporary(var name, var type) -> {
+					final var local = temporary(name, type);
+					final int slot = local.slot();
+
+					if (local.type() == float.class) {
+						final var value = floatNode(right);
+
+						yield frame -> {
+							frame.floats[slot] = value.evaluate(frame);
+							return null;
+						};
+					}
+
+					final var value = node(right);
+
+					yield frame -> {
+						frame.objects[slot] = MolangInterpreter.convert(value.evaluate(frame), type);
+						return null;
+					};
+				}
+				case BinaryOperationExpression target
+					when analysis.binding(target) instanceof Binding.Variable variable -> {
+					final var type = variable.type();
+					final var value = node(right);
+
+					if (variable.parameter() == null) {
+						final int slot = variableSlots.get(variable.name());
+						final var variables = this.variables;
+
+						yield frame -> {
+							variables[slot] = MolangInterpreter.convert(value.evaluate(frame), type);
+							return null;
+						};
+					}
+
+					final int index = variable.parameter().index();
+					final var setter = linker.setter(structField(variable));
+
+					yield frame -> {
+						try {
+							setter.invoke(frame.arguments[index], MolangInterpreter.convert(value.evaluate(frame), type));
+						} catch (Throwable throwable) {
+							throw rethrow(throwable);
+						}
+
+						return null;
+					};
+				}
+				case BinaryOperationExpression target -> {
+					final var field = analysis.binding(target, Binding.FieldAccess.class).field();
+					yield setFieldNode(field, target.left(), right);
+				}
+				case ArrayAccessExpression(var array, var index) -> {
+					final var arrayNode = node(array);
+					final var indexNode = floatNode(index);
+					final var value = node(right);
+
+					yield frame -> {
+						final var target = arrayNode.evaluate(frame);
+						final int wrapped = wrapIndex(target, (int) indexNode.evaluate(frame));
+						Array.set(target, wrapped, MolangInterpreter.convert(value.evaluate(frame), target.getClass().componentType()));
+						return null;
+					};
+				}
+				default -> throw new IllegalStateException("Cannot assign to " + binary.left());
+			};
+		}
+
+		private Node setFieldNode(final Field field, final Expression receiver, final Expression value) {
+			final var isStatic = Modifier.isStatic(field.getModifiers());
+			final Node target = isStatic ? _ -> null : node(receiver);
+			final var setter = linker.setter(field);
+
+			if (field.getType() == float.class) {
+				final var floatValue = floatNode(value);
+
+				if (isStatic) {
+					final var exact = setter.asType(STATIC_FLOAT_SETTER);
+
+					return frame -> {
+						try {
+							exact.invokeExact(floatValue.evaluate(frame));
+						} catch (Throwable throwable) {
+							throw rethrow(throwable);
+						}
+
+						return null;
+					};
+				}
+
+				final var exact = setter.asType(VIRTUAL_FLOAT_SETTER);
+
+				return frame -> {
+					try {
+						exact.invokeExact(target.evaluate(frame), floatValue.evaluate(frame));
+					} catch (Throwable throwable) {
+						throw rethrow(throwable);
+					}
+
+					return null;
+				};
+			}
+
+			final var type = field.getType();
+			final var node = node(value);
+
+			return frame -> {
+				try {
+					if (isStatic) {
+						setter.invoke(MolangInterpreter.convert(node.evaluate(frame), type));
+					} else {
+						setter.invoke(target.evaluate(frame), MolangInterpreter.convert(node.evaluate(frame), type));
+					}
+				} catch (Throwable throwable) {
+					throw rethrow(throwable);
+				}
+
+				return null;
+			};
+		}
+
+		private Node callNode(final MethodCallExpression call) {
+			final var invocation = analysis.binding(call, Binding.Invocation.class);
+			final var method = invocation.method();
+			final var receiver = receiverNode(receiverOf(call), invocation.hasReceiver());
+
+			final var parameterTypes = method.getParameterTypes();
+			final var parameters = nodes(call.parameters());
+			final int offset = Modifier.isStatic(method.getModifiers()) ? 0 : 1;
+			final var invoker = linker.invoker(method);
+
+			return frame -> {
+				final var args = new Object[parameterTypes.length + offset];
+
+				if (offset == 1) {
+					args[0] = receiver.evaluate(frame);
+				}
+
+				for (int i = 0; i < parameterTypes.length; i++) {
+					args[i + offset] = MolangInterpreter.convert(parameters[i].evaluate(frame), parameterTypes[i]);
+				}
+
+				try {
+					return invoker.invokeWithArguments(args);
+				} catch (Throwable throwable) {
+					throw rethrow(throwable);
+				}
+			};
+		}
+
+		/**
+		 * @param hasReceiver Whether the receiver is evaluated, rather than being a class alias resolved statically.
+		 */
+		private Node receiverNode(final Expression receiver, final boolean hasReceiver) {
+			return hasReceiver ? node(receiver) : _ -> null;
+		}
+
+		private static Expression receiverOf(final MethodCallExpression call) {
+			return ((BinaryOperationExpression) call.method()).left();
+		}
+
+		private LocalSlot temporary(final String name, final Class<?> type) {
+			return temporaries.computeIfAbsent(name, _ -> allocate(type));
+		}
+
+		private Node loopNode(final LoopExpression loop) {
+			final var count = floatNode(loop.count());
+			final var preheader = nodes(loop.preheader());
+
+			loops++;
+			final var body = node(loop.body());
+			loops--;
+
+			final int maxLoopIterations = this.maxLoopIterations;
+
+			return frame -> {
+				// Clamped to the cap, and only evaluated once, as when compiled.
+				final int limit = Math.min((int) count.evaluate(frame), maxLoopIterations);
+
+				if (limit > 0) {
+					for (final var node : preheader) {
+						node.evaluate(frame);
+					}
+				}
+
+				for (int i = 0; i < limit && frame.jump != Jump.RETURN; i++) {
+					body.evaluate(frame);
+
+					if (frame.jump == Jump.BREAK) {
+						frame.jump = null;
+						break;
+					}
+
+					if (frame.jump == Jump.CONTINUE) {
+						frame.jump = null;
+					}
+				}
+
+				return null;
+			};
+		}
+
+		private FloatNode floatNode(final Expression expression) {
+			return switch (expression) {
+				case ConstantExpression(var value) -> {
+					final float constant = Primitives.unboxAsFloatLenient(value);
+					yield _ -> constant;
+				}
+				case BinaryOperationExpression binary -> switch (binary.operator()) {
+					case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER -> arithmetic(binary);
+					case LOGICAL_OR, LOGICAL_AND, EQUAL_TO, NOT_EQUAL, LESS_THAN, GREATER_THAN,
+						 LESS_THAN_OR_EQUAL_TO, GREATER_THAN_OR_EQUAL_TO -> {
+						final var test = booleanNode(binary);
+						yield frame -> test.evaluate(frame) ? 1F : 0F;
+					}
+					case GET -> getFloat(binary);
+					default -> unboxed(node(binary));
+				};
+				case UnaryOperationExpression(var value, var operator) -> switch (operator) {
+					case NUMERICAL_NEGATE -> {
+						final var node = floatNode(value);
+						yield frame -> -node.evaluate(frame);
+					}
+					case POSITIVE -> floatNode(value);
+					case LOGICAL_NEGATE -> {
+						final var test = booleanNode(value);
+						yield frame -> test.evaluate(frame) ? 0F : 1F;
+					}
+					case RETURN -> unboxed(node(expression));
+				};
+				case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> {
+					final var test = booleanNode(condition);
+					final var a = floatNode(ifTrue);
+					final var b = floatNode(ifFalse);
+
+					yield frame -> test.evaluate(frame) ? a.evaluate(frame) : b.evaluate(frame);
+				}
+				case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) -> {
+					final var a = floatNode(multiplicand);
+					final var b = floatNode(multiplier);
+					final var c = floatNode(addend);
+
+					yield frame -> Math.fma(a.evaluate(frame), b.evaluate(frame), c.evaluate(frame));
+				}
+				case MethodCallExpression call -> callFloat(call);
+				case LocalStoreExpression(var id, var value) when value.type(context) == float.class -> {
+					final var node = floatNode(value);
+					final var local = allocate(float.class);
+					final int slot = local.slot();
+					locals.put(id, local);
+
+					yield frame -> frame.floats[slot] = node.evaluate(frame);
+				}
+				case LocalLoadExpression load when local(load).type() == float.class -> {
+					final int slot = local(load).slot();
+					yield frame -> frame.floats[slot];
+				}
+				default -> unboxed(node(expression));
+			};
+		}
+
+		private FloatNode arithmetic(final BinaryOperationExpression binary) {
+			final var a = floatNode(binary.left());
+			final var b = floatNode(binary.right());
+
+			return switch (binary.operator()) {
+				case ADD -> frame -> a.evaluate(frame) + b.evaluate(frame);
+				case SUBTRACT -> frame -> a.evaluate(frame) - b.evaluate(frame);
+				case MULTIPLY -> frame -> a.evaluate(frame) * b.evaluate(frame);
+				case DIVIDE -> frame -> a.evaluate(frame) / b.evaluate(frame);
+				case REMAINDER -> frame -> a.evaluate(frame) % b.evaluate(frame);
+				default -> throw new IllegalArgumentException("Not arithmetic: " + binary);
+			};
+		}
+
+		private FloatNode getFloat(final BinaryOperationExpression binary) {
+			final var binding = analysis.binding(binary);
+
+			if (binding instanceof Binding.Temporary(var name, var type) && type == float.class) {
+				final int slot = temporary(name, type).slot();
+				return frame -> frame.floats[slot];
+			}
+
+			if (!(binding instanceof Binding.FieldAccess(var _, var field, var hasReceiver)) ||
+				!widensToFloat(field.getType())) {
+				return unboxed(node(binary));
+			}
+
+			final var getter = linker.getter(field);
+
+			if (Modifier.isStatic(field.getModifiers())) {
+				final var exact = getter.asType(STATIC_FLOAT[0]);
+
+				return _ -> {
+					try {
+						return (float) exact.invokeExact();
+					} catch (Throwable throwable) {
+						throw rethrow(throwable);
+					}
+				};
+			}
+
+			final var exact = getter.asType(VIRTUAL_FLOAT[0]);
+			final var receiver = receiverNode(binary.left(), hasReceiver);
+
+			return frame -> {
+				try {
+					return (float) exact.invokeExact(receiver.evaluate(frame));
+				} catch (Throwable throwable) {
+					throw rethrow(throwable);
+				}
+			};
+		}
+
+		/**
+		 * Calls a method taking and returning numbers without boxing, if it takes few enough floats or doubles.
+		 */
+		private FloatNode callFloat(final MethodCallExpression call) {
+			final var invocation = analysis.binding(call, Binding.Invocation.class);
+			final var method = invocation.method();
+
+			if (!isFloatShaped(method)) {
+				return unboxed(callNode(call));
+			}
+
+			final var receiver = receiverNode(receiverOf(call), invocation.hasReceiver());
+			final var parameters = new FloatNode[method.getParameterCount()];
+
+			for (int i = 0; i < parameters.length; i++) {
+				parameters[i] = floatNode(call.parameters().get(i));
+			}
+
+			if (Modifier.isStatic(method.getModifiers())) {
+				final var exact = linker.invoker(method).asType(STATIC_FLOAT[parameters.length]);
+
+				return switch (parameters.length) {
+					case 0 -> _ -> {
+						try {
+							return (float) exact.invokeExact();
+						} catch (Throwable throwable) {
+							throw rethrow(throwable);
+						}
+					};
+					case 1 -> frame -> {
+						try {
+							return (float) exact.invokeExact(parameters[0].evaluate(frame));
+						} catch (Throwable throwable) {
+							throw rethrow(throwable);
+						}
+					};
+					case 2 -> frame -> {
+						try {
+							return (float) exact.invokeExact(parameters[0].evaluate(frame), parameters[1].evaluate(frame));
+						} catch (Throwable throwable) {
+							throw rethrow(throwable);
+						}
+					};
+					default -> frame -> {
+						try {
+							return (float) exact.invokeExact(
+								parameters[0].evaluate(frame),
+								parameters[1].evaluate(frame),
+								parameters[2].evaluate(frame)
+							);
+						} catch (Throwable throwable) {
+							throw rethrow(throwable);
+						}
+					};
+				};
+			}
+
+			final var exact = linker.invoker(method).asType(VIRTUAL_FLOAT[parameters.length]);
+
+			return switch (parameters.length) {
+				case 0 -> frame -> {
+					try {
+						return (float) exact.invokeExact(receiver.evaluate(frame));
+					} catch (Throwable throwable) {
+						throw rethrow(throwable);
+					}
+				};
+				case 1 -> frame -> {
+					try {
+						return (float) exact.invokeExact(receiver.evaluate(frame), parameters[0].evaluate(frame));
+					} catch (Throwable throwable) {
+						throw rethrow(throwable);
+					}
+				};
+				case 2 -> frame -> {
+					try {
+						return (float) exact.invokeExact(
+							receiver.evaluate(frame),
+							parameters[0].evaluate(frame),
+							parameters[1].evaluate(frame)
+						);
+					} catch (Throwable throwable) {
+						throw rethrow(throwable);
+					}
+				};
+				default -> frame -> {
+					try {
+						return (float) exact.invokeExact(
+							receiver.evaluate(frame),
+							parameters[0].evaluate(frame),
+							parameters[1].evaluate(frame),
+							parameters[2].evaluate(frame)
+						);
+					} catch (Throwable throwable) {
+						throw rethrow(throwable);
+					}
+				};
+			};
+		}
+
+		private BooleanNode booleanNode(final Expression expression) {
+			return switch (expression) {
+				case ConstantExpression(var value) -> {
+					final boolean constant = Primitives.unboxAsBooleanLenient(value);
+					yield _ -> constant;
+				}
+				case BinaryOperationExpression binary -> switch (binary.operator()) {
+					case LOGICAL_OR -> {
+						final var a = booleanNode(binary.left());
+						final var b = booleanNode(binary.right());
+						yield frame -> a.evaluate(frame) || b.evaluate(frame);
+					}
+					case LOGICAL_AND -> {
+						final var a = booleanNode(binary.left());
+						final var b = booleanNode(binary.right());
+						yield frame -> a.evaluate(frame) && b.evaluate(frame);
+					}
+					case EQUAL_TO -> equal(binary.left(), binary.right());
+					case NOT_EQUAL -> {
+						final var test = equal(binary.left(), binary.right());
+						yield frame -> !test.evaluate(frame);
+					}
+					case LESS_THAN, GREATER_THAN, LESS_THAN_OR_EQUAL_TO, GREATER_THAN_OR_EQUAL_TO -> comparison(binary);
+					case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER -> {
+						final var node = floatNode(binary);
+						yield frame -> Primitives.castToBoolean(node.evaluate(frame));
+					}
+					case GET -> getBoolean(binary);
+					default -> unboxedBoolean(node(binary));
+				};
+				case UnaryOperationExpression(var value, var operator)
+					when operator == UnaryOperationExpression.Operator.LOGICAL_NEGATE -> {
+					final var test = booleanNode(value);
+					yield frame -> !test.evaluate(frame);
+				}
+				case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> {
+					final var test = booleanNode(condition);
+					final var a = booleanNode(ifTrue);
+					final var b = booleanNode(ifFalse);
+
+					yield frame -> test.evaluate(frame) ? a.evaluate(frame) : b.evaluate(frame);
+				}
+				default -> unboxedBoolean(node(expression));
+			};
+		}
+
+		private BooleanNode comparison(final BinaryOperationExpression binary) {
+			final var a = floatNode(binary.left());
+			final var b = floatNode(binary.right());
+
+			return switch (binary.operator()) {
+				case LESS_THAN -> frame -> a.evaluate(frame) < b.evaluate(frame);
+				case GREATER_THAN -> frame -> a.evaluate(frame) > b.evaluate(frame);
+				case LESS_THAN_OR_EQUAL_TO -> frame -> a.evaluate(frame) <= b.evaluate(frame);
+				case GREATER_THAN_OR_EQUAL_TO -> frame -> a.evaluate(frame) >= b.evaluate(frame);
+				default -> throw new IllegalArgumentException("Not a comparison: " + binary);
+			};
+		}
+
+		/**
+		 * Compares numbers as floats, as the interpreter does, which needs no boxing when the left is plainly a number.
+		 */
+		private BooleanNode equal(final Expression left, final Expression right) {
+			if (isNumeric(left)) {
+				final var a = floatNode(left);
+				final var b = floatNode(right);
+				return frame -> a.evaluate(frame) == b.evaluate(frame);
+			}
+
+			final var a = node(left);
+			final var b = node(right);
+
+			return frame -> {
+				final var first = a.evaluate(frame);
+				final var second = b.evaluate(frame);
+
+				if (first instanceof Number || first instanceof Boolean) {
+					return Primitives.unboxAsFloatLenient(first) == Primitives.unboxAsFloatLenient(second);
+				}
+
+				return Objects.equals(first, second);
+			};
+		}
+
+		private BooleanNode getBoolean(final BinaryOperationExpression binary) {
+			if (!(analysis.binding(binary) instanceof Binding.FieldAccess(var _, var field, var hasReceiver)) ||
+				field.getType() != boolean.class) {
+				return unboxedBoolean(node(binary));
+			}
+
+			final var getter = linker.getter(field);
+
+			if (Modifier.isStatic(field.getModifiers())) {
+				final var exact = getter.asType(STATIC_BOOLEAN);
+
+				return _ -> {
+					try {
+						return (boolean) exact.invokeExact();
+					} catch (Throwable throwable) {
+						throw rethrow(throwable);
+					}
+				};
+			}
+
+			final var exact = getter.asType(VIRTUAL_BOOLEAN);
+			final var receiver = receiverNode(binary.left(), hasReceiver);
+
+			return frame -> {
+				try {
+					return (boolean) exact.invokeExact(receiver.evaluate(frame));
+				} catch (Throwable throwable) {
+					throw rethrow(throwable);
+				}
+			};
+		}
+
+		private static boolean isNumeric(final Expression expression) {
+			return switch (expression) {
+				case ConstantExpression(var value) -> value instanceof Number;
+				case BinaryOperationExpression(var _, var operator, var _) -> switch (operator) {
+					case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER -> true;
+					default -> false;
+				};
+				case UnaryOperationExpression(var _, var operator) ->
+					operator == UnaryOperationExpression.Operator.NUMERICAL_NEGATE ||
+						operator == UnaryOperationExpression.Operator.POSITIVE;
+				case FusedMultiplyAddExpression _ -> true;
+				default -> false;
+			};
+		}
+
+		private static Field structField(final Binding.Variable variable) {
+			try {
+				return variable.parameter().type().getField(variable.field());
+			} catch (NoSuchFieldException exception) {
+				throw new IllegalStateException("Cannot access " + variable + " on " + variable.parameter().type(), exception);
+			}
+		}
+
+		private static Node boxed(final FloatNode node) {
+			return node::evaluate;
+		}
+
+		private static Node boxed(final BooleanNode node) {
+			return node::evaluate;
+		}
+
+		private static FloatNode unboxed(final Node node) {
+			return frame -> Primitives.unboxAsFloatLenient(node.evaluate(frame));
+		}
+
+		private static BooleanNode unboxedBoolean(final Node node) {
+			return frame -> Primitives.unboxAsBooleanLenient(node.evaluate(frame));
+		}
+	}
+}
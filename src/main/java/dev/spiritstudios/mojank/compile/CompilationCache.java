@@ -0,0 +1,236 @@
+package dev.spiritstudios.mojank.compile;
+
+import dev.spiritstudios.mojank.MolangLexer;
+import dev.spiritstudios.mojank.MolangParser;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.internal.Util;
+import org.jetbrains.annotations.CheckReturnValue;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandles;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, content-addressed cache of compiled expressions that sits in front of {@link Compiler#compile}.
+ * <p>
+ * Entries are keyed on the normalised source, the target functional interface, the {@link Linker},
+ * the {@link CompileOptions} and the class of the defining lookup, so identical expressions share a single {@link CompilerResult}
+ * instead of each defining their own hidden class.
+ * The least recently used entry is evicted once {@link #maximumSize()} is exceeded.
+ * <p>
+ * Safe for concurrent use; concurrent misses on the same key only compile once.
+ * Those that wait on another thread's compilation are counted as {@link Stats#joins() joins}, rather than hits or misses.
+ */
+public final class CompilationCache {
+	private static final Logger logger = Util.logger();
+
+	private final int maximumSize;
+	private final @Nullable BytecodeCache persistent;
+
+	// Guarded by itself.
+	private final LinkedHashMap<Key, Object> entries;
+	private final Map<Key, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder joins = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public CompilationCache(final int maximumSize) {
+		this(maximumSize, null);
+	}
+
+	/**
+	 * @param persistent The on-disk cache to consult on a miss, if any.
+	 */
+	public CompilationCache(final int maximumSize, final @Nullable BytecodeCache persistent) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+		}
+
+		this.maximumSize = maximumSize;
+		this.persistent = persistent;
+		this.entries = new LinkedHashMap<>(16, 0.75F, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Object> eldest) {
+				if (size() > CompilationCache.this.maximumSize) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Lexes, parses and compiles the given source, or returns the previously compiled instance for an identical key.
+	 */
+	public <T> T compile(
+		final MethodHandles.Lookup lookup,
+		final Linker linker,
+		final Class<T> targetClass,
+		final String source
+	) throws Throwable {
+		return compile(lookup, linker, targetClass, source, CompileOptions.DEFAULT);
+	}
+
+	/**
+	 * Lexes, parses and compiles the given source with the given options,
+	 * or returns the previously compiled instance for an identical key.
+	 */
+	public <T> T compile(
+		final MethodHandles.Lookup lookup,
+		final Linker linker,
+		final Class<T> targetClass,
+		final String source,
+		final CompileOptions options
+	) throws Throwable {
+		final var key = new Key(lookup.lookupClass(), targetClass, linker, options, normalise(source));
+
+		final Object cached = cached(key);
+
+		if (cached != null) {
+			hits.increment();
+			return targetClass.cast(cached);
+		}
+
+		final var future = new CompletableFuture<Object>();
+		final var inFlight = pending.putIfAbsent(key, future);
+
+		if (inFlight != null) {
+			// Someone else is already compiling this, share their result.
+			joins.increment();
+			return targetClass.cast(join(inFlight));
+		}
+
+		try {
+			// Someone else may have finished compiling this between the first look and claiming it.
+			final Object finished = cached(key);
+
+			if (finished != null) {
+				hits.increment();
+				future.complete(finished);
+				return targetClass.cast(finished);
+			}
+
+			misses.increment();
+
+			final T result;
+
+			if (persistent != null) {
+				result = persistent.compile(lookup, linker, targetClass, source, options);
+			} else {
+				final var parser = new MolangParser(new MolangLexer(source), linker);
+				result = Compiler.compile(lookup, linker, targetClass, parser.parseAll(), source, options);
+			}
+
+			synchronized (entries) {
+				entries.put(key, result);
+			}
+
+			future.complete(result);
+			return result;
+		} catch (Throwable throwable) {
+			logger.debug("Failed to compile {}", source, throwable);
+			future.completeExceptionally(throwable);
+			throw throwable;
+		} finally {
+			pending.remove(key, future);
+		}
+	}
+
+	private @Nullable Object cached(final Key key) {
+		synchronized (entries) {
+			return entries.get(key);
+		}
+	}
+
+	private static Object join(final CompletableFuture<Object> future) throws Throwable {
+		try {
+			return future.join();
+		} catch (CompletionException exception) {
+			throw exception.getCause();
+		}
+	}
+
+	public int maximumSize() {
+		return maximumSize;
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	@CheckReturnValue
+	public Stats stats() {
+		return new Stats(hits.sum(), misses.sum(), joins.sum(), evictions.sum(), size());
+	}
+
+	/**
+	 * Normalises the source such that formatting and case differences that the lexer would ignore anyway
+	 * map to the same cache entry. String literals are kept verbatim.
+	 */
+	static String normalise(final String source) {
+		final var builder = new StringBuilder(source.length());
+
+		boolean inString = false;
+		boolean pendingSpace = false;
+
+		for (int i = 0; i < source.length(); i++) {
+			final char c = source.charAt(i);
+
+			if (inString) {
+				builder.append(c);
+				inString = c != '\'';
+				continue;
+			}
+
+			if (MolangLexer.isSkipped(c)) {
+				pendingSpace = !builder.isEmpty();
+				continue;
+			}
+
+			if (pendingSpace) {
+				builder.append(' ');
+				pendingSpace = false;
+			}
+
+			builder.append(Character.toLowerCase(c));
+			inString = c == '\'';
+		}
+
+		return builder.toString();
+	}
+
+	private record Key(Class<?> host, Class<?> target, Linker linker, CompileOptions options, String source) {
+	}
+
+	/**
+	 * @param hits   Requests answered by an entry that was already compiled.
+	 * @param misses Requests that compiled their entry.
+	 * @param joins  Requests that waited on another request compiling the same entry.
+	 */
+	public record Stats(long hits, long misses, long joins, long evictions, int size) {
+		/**
+		 * @return The share of requests answered from the cache, of all those that didn't wait on a compilation.
+		 */
+		public double hitRate() {
+			final long requests = hits + misses;
+			return requests == 0 ? 0D : (double) hits / requests;
+		}
+	}
+}
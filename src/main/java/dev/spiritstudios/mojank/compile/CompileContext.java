@@ -1,39 +1,82 @@
 package dev.spiritstudios.mojank.compile;
 
-import dev.spiritstudios.mojank.compile.link.Alias;
 import dev.spiritstudios.mojank.compile.link.Linker;
+import org.jetbrains.annotations.Nullable;
 
+import java.lang.constant.ClassDesc;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.*;
 
+/**
+ * @param owner The class being generated, if any.
+ */
 public record CompileContext(
 	Linker linker,
 	Method target,
+	@Nullable ClassDesc owner,
 	List<Parameter> parameters,
 	Map<String, IndexedParameter> parametersByName,
-	Deque<Loop> loops
+	Deque<Loop> loops,
+	Map<Integer, LocalSlot> locals,
+	Map<String, LocalSlot> temporaries,
+	Analysis analysis,
+	CompileOptions options
 ) {
 	public CompileContext(Linker linker, Method target) {
+		this(linker, target, CompileOptions.DEFAULT);
+	}
+
+	public CompileContext(Linker linker, Method target, CompileOptions options) {
+		this(linker, target, null, options);
+	}
+
+	public CompileContext(Linker linker, Method target, @Nullable ClassDesc owner, CompileOptions options) {
+		this(linker, target, owner, new Analysis(linker, target, options.variables()), options);
+	}
+
+	public CompileContext(
+		Linker linker,
+		Method target,
+		@Nullable ClassDesc owner,
+		Analysis analysis,
+		CompileOptions options
+	) {
 		this(
 			linker,
 			target,
-			new ArrayList<>(),
+			owner,
+			List.of(target.getParameters()),
+			analysis.parameters(),
+			new ArrayDeque<>(),
 			new HashMap<>(),
-			new ArrayDeque<>()
+			new HashMap<>(),
+			analysis,
+			options
 		);
+	}
 
-		var methodParams = target.getParameters();
+	/**
+	 * @throws IllegalStateException If no slot was allocated for the variable.
+	 */
+	public LocalSlot temporary(String name) {
+		var slot = temporaries.get(name);
 
-		for (int i = 0; i < methodParams.length; i++) {
-			Parameter parameter = methodParams[i];
+		if (slot == null) {
+			throw new IllegalStateException("Temporary '" + name + "' was not allocated");
+		}
 
-			Alias alias = parameter.getAnnotation(Alias.class);
-			parameters.add(i, parameter);
+		return slot;
+	}
 
-			for (String name : alias.value()) {
-				parametersByName.put(name, new IndexedParameter(parameter, i + 1));
-			}
+	/**
+	 * @throws IllegalStateException If there's no class being generated to hold variables.
+	 */
+	public ClassDesc owner() {
+		if (owner == null) {
+			throw new IllegalStateException("No class is being generated");
 		}
+
+		return owner;
 	}
 }
@@ -0,0 +1,156 @@
+package dev.spiritstudios.mojank.compile;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * Per-compile settings that change the generated code, as opposed to what the code may access,
+ * which is the {@link dev.spiritstudios.mojank.compile.link.Linker}'s job.
+ * <p>
+ * Options are part of the key of both {@link CompilationCache} and {@link BytecodeCache},
+ * so the same source compiled with different options never shares a result.
+ *
+ * @param floatMode         How strictly floating point arithmetic must be preserved.
+ * @param maxLoopIterations The most iterations any single {@code loop} may run for, regardless of its count.
+ * @param unrollLimit       The highest constant count a {@code loop} may have and still be fully unrolled.
+ *                          Zero disables unrolling.
+ * @param vectorise         Whether {@link BatchKernel kernels} may evaluate several elements at once
+ *                          through the Vector API, where it's available and the expression allows.
+ * @param inlineCaches      Whether calls and field reads with a receiver are linked through an {@link InlineCache},
+ *                          rather than dispatched on the declared type of the receiver.
+ * @param variables         The schema variables are stored by. Required when the target takes its variables
+ *                          as a parameter, otherwise inferred from the expressions being compiled when null.
+ * @param arena             Where variables are stored when the target takes them as an index.
+ *                          Must have the same schema as {@code variables}.
+ */
+public record CompileOptions(
+	FloatMode floatMode,
+	int maxLoopIterations,
+	int unrollLimit,
+	boolean vectorise,
+	boolean inlineCaches,
+	@Nullable VariableSchema variables,
+	@Nullable VariableArena arena
+) {
+	/**
+	 * Matches the cap Bedrock places on {@code loop}.
+	 */
+	public static final int DEFAULT_MAX_LOOP_ITERATIONS = 1024;
+	public static final int DEFAULT_UNROLL_LIMIT = 8;
+
+	public static final CompileOptions DEFAULT = new CompileOptions(
+		FloatMode.STRICT,
+		DEFAULT_MAX_LOOP_ITERATIONS,
+		DEFAULT_UNROLL_LIMIT,
+		true,
+		false,
+		null,
+		null
+	);
+
+	public CompileOptions {
+		Objects.requireNonNull(floatMode, "floatMode");
+
+		if (maxLoopIterations <= 0) {
+			throw new IllegalArgumentException("Maximum loop iterations must be positive: " + maxLoopIterations);
+		}
+
+		if (unrollLimit < 0) {
+			throw new IllegalArgumentException("Unroll limit must not be negative: " + unrollLimit);
+		}
+
+		if (arena != null && !arena.schema().equals(variables)) {
+			throw new IllegalArgumentException("Arena schema " + arena.schema() + " does not match " + variables);
+		}
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public Builder toBuilder() {
+		return new Builder()
+			.floatMode(floatMode)
+			.maxLoopIterations(maxLoopIterations)
+			.unrollLimit(unrollLimit)
+			.vectorise(vectorise)
+			.inlineCaches(inlineCaches)
+			.variables(variables)
+			.arena(arena);
+	}
+
+	public enum FloatMode {
+		/**
+		 * Every operation is emitted as written, so results are bit-exact with the interpreter and between JVMs.
+		 */
+		STRICT,
+		/**
+		 * Arithmetic may be rewritten into cheaper forms that round differently,
+		 * such as multiplying by a reciprocal instead of dividing, or fusing a multiply and add.
+		 *
+		 * @see dev.spiritstudios.mojank.compile.optimise.FastMath
+		 */
+		FAST
+	}
+
+	public static final class Builder {
+		private FloatMode floatMode = FloatMode.STRICT;
+		private int maxLoopIterations = DEFAULT_MAX_LOOP_ITERATIONS;
+		private int unrollLimit = DEFAULT_UNROLL_LIMIT;
+		private boolean vectorise = true;
+		private boolean inlineCaches;
+		private @Nullable VariableSchema variables;
+		private @Nullable VariableArena arena;
+
+		private Builder() {
+		}
+
+		public Builder floatMode(FloatMode floatMode) {
+			this.floatMode = floatMode;
+			return this;
+		}
+
+		public Builder maxLoopIterations(int maxLoopIterations) {
+			this.maxLoopIterations = maxLoopIterations;
+			return this;
+		}
+
+		public Builder unrollLimit(int unrollLimit) {
+			this.unrollLimit = unrollLimit;
+			return this;
+		}
+
+		public Builder vectorise(boolean vectorise) {
+			this.vectorise = vectorise;
+			return this;
+		}
+
+		public Builder inlineCaches(boolean inlineCaches) {
+			this.inlineCaches = inlineCaches;
+			return this;
+		}
+
+		public Builder variables(@Nullable VariableSchema variables) {
+			this.variables = variables;
+			return this;
+		}
+
+		/**
+		 * Also compiles against the arena's schema.
+		 */
+		public Builder arena(@Nullable VariableArena arena) {
+			this.arena = arena;
+
+			if (arena != null) {
+				this.variables = arena.schema();
+			}
+
+			return this;
+		}
+
+		public CompileOptions build() {
+			return new CompileOptions(floatMode, maxLoopIterations, unrollLimit, vectorise, inlineCaches, variables, arena);
+		}
+	}
+}
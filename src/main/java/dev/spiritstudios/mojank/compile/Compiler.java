@@ -1,92 +1,733 @@
 package dev.spiritstudios.mojank.compile;
 
+import dev.spiritstudios.mojank.MolangLexer;
+import dev.spiritstudios.mojank.MolangParser;
 import dev.spiritstudios.mojank.ast.Expression;
 import dev.spiritstudios.mojank.compile.link.Alias;
 import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.compile.link.Variables;
+import dev.spiritstudios.mojank.compile.optimise.Columns;
+import dev.spiritstudios.mojank.compile.optimise.Optimiser;
+import dev.spiritstudios.mojank.compile.optimise.Temporaries;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
+import java.lang.classfile.ClassBuilder;
 import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.TypeKind;
+import java.lang.classfile.instruction.SwitchCase;
 import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessFlag;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static dev.spiritstudios.mojank.compile.BoilerplateGenerator.*;
 import static dev.spiritstudios.mojank.compile.Descriptors.desc;
 import static dev.spiritstudios.mojank.compile.Descriptors.methodDesc;
+import static java.lang.constant.ConstantDescs.CD_Object;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_void;
+import static java.lang.constant.ConstantDescs.INIT_NAME;
+import static java.lang.constant.ConstantDescs.MTD_void;
 
 public class Compiler {
+	/**
+	 * How many expressions {@link #compileBatch} will put into a single class by default.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 512;
+
+	/**
+	 * How many bits of the expression index each level of a batch's dispatch switches on.
+	 */
+	private static final int DISPATCH_BITS = 3;
+
+	private static final String KERNEL_ELEMENT = "element";
+
 	public static byte[] compileToBytecode(
 		MethodHandles.Lookup lookup,
 		Linker linker,
 		Class<?> targetClass,
 		Expression expression,
 		String source
+	) throws Throwable {
+		return compileToBytecode(lookup, linker, targetClass, expression, source, CompileOptions.DEFAULT);
+	}
+
+	public static byte[] compileToBytecode(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<?> targetClass,
+		Expression expression,
+		String source,
+		CompileOptions options
 	) throws Throwable {
 		Method targetMethod = linker.tryFunctionalClass(targetClass)
 			.orElseThrow(() -> new IllegalArgumentException("'" + targetClass + "' is not a valid functional interface"));
 
+		var desc = ClassDesc.of(
+			lookup.lookupClass().getPackage().getName(),
+			"\uD83C\uDFF3️\u200D⚧️️" + targetClass.getSimpleName()
+		);
+
+		var resolved = resolveVariables(lookup, linker, targetMethod, List.of(expression), options);
+
 		CompileContext context = new CompileContext(
 			linker,
-			targetMethod
+			targetMethod,
+			desc,
+			resolved
 		);
 
+		return ClassFile.of()
+			.build(
+				desc,
+				cb -> {
+					writeCompilerResultStub(desc, targetClass, targetMethod, source, cb);
+					writeVariableFields(cb, targetMethod, resolved);
+
+					writeInvoker(
+						cb,
+						targetMethod.getName(),
+						ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
+						targetMethod,
+						context,
+						expression
+					);
+				}
+			);
+	}
+
+	/**
+	 * Compiles every expression into a single hidden class, rather than one class per expression.
+	 * <p>
+	 * Each expression becomes a private method, and instances of the class dispatch to their expression by index,
+	 * through a shallow tree of small switches so that calls stay inlinable however large the batch.
+	 * The class is only split once {@code batchSize} expressions have been written to it,
+	 * which keeps it well clear of the constant pool and method limits.
+	 *
+	 * @param sources The source for each expression, used for {@link CompilerResult#toString()} and equality.
+	 */
+	public static <T> BatchResult<T> compileBatch(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<T> targetClass,
+		List<Expression> expressions,
+		List<String> sources,
+		int batchSize,
+		CompileOptions options
+	) throws Throwable {
+		if (expressions.size() != sources.size()) {
+			throw new IllegalArgumentException("Expected a source for each expression; got " + expressions.size() + " expressions and " + sources.size() + " sources");
+		}
+
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		}
+
+		final var results = new ArrayList<T>(expressions.size());
+
+		int classes = 0;
+		long bytecodeSize = 0;
+		long defineNanos = 0;
+
+		for (int start = 0; start < expressions.size(); start += batchSize) {
+			final int end = Math.min(start + batchSize, expressions.size());
+
+			final byte[] bytecode = compileBatchToBytecode(lookup, linker, targetClass, expressions.subList(start, end), options);
+
+			final long time = System.nanoTime();
+			final var classData = classData(options);
+			final var hidden = classData == null ?
+				lookup.defineHiddenClass(bytecode, true) :
+				lookup.defineHiddenClassWithClassData(bytecode, classData, true);
+			final var constructor = hidden.findConstructor(
+				hidden.lookupClass(),
+				MethodType.methodType(void.class, int.class, String.class)
+			);
+			defineNanos += System.nanoTime() - time;
+
+			for (int i = start; i < end; i++) {
+				results.add(targetClass.cast(constructor.invoke(i - start, sources.get(i))));
+			}
+
+			classes++;
+			bytecodeSize += bytecode.length;
+		}
+
+		return new BatchResult<>(List.copyOf(results), classes, bytecodeSize, defineNanos);
+	}
+
+	public static <T> BatchResult<T> compileBatch(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<T> targetClass,
+		List<Expression> expressions,
+		List<String> sources
+	) throws Throwable {
+		return compileBatch(lookup, linker, targetClass, expressions, sources, DEFAULT_BATCH_SIZE, CompileOptions.DEFAULT);
+	}
+
+	public static <T> BatchResult<T> compileBatch(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<T> targetClass,
+		List<Expression> expressions,
+		List<String> sources,
+		int batchSize
+	) throws Throwable {
+		return compileBatch(lookup, linker, targetClass, expressions, sources, batchSize, CompileOptions.DEFAULT);
+	}
+
+	/**
+	 * Lexes, parses and compiles every source in parallel on the given executor.
+	 * <p>
+	 * The compile path holds no shared mutable state besides the thread-safe caches in
+	 * {@link Descriptors} and {@link Linker}, so any executor may be used;
+	 * {@link java.util.concurrent.ForkJoinPool#commonPool()} is a reasonable default.
+	 *
+	 * @return The compiled expressions, in the same order as {@code sources}.
+	 * @throws Throwable The first failure encountered, if any source fails to compile.
+	 */
+	public static <T> List<T> compileAll(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<T> targetClass,
+		List<String> sources,
+		Executor executor
+	) throws Throwable {
+		return compileAll(lookup, linker, targetClass, sources, executor, CompileOptions.DEFAULT);
+	}
+
+	public static <T> List<T> compileAll(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<T> targetClass,
+		List<String> sources,
+		Executor executor,
+		CompileOptions options
+	) throws Throwable {
+		final var futures = new ArrayList<CompletableFuture<T>>(sources.size());
+
+		for (final var source : sources) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					final var parser = new MolangParser(new MolangLexer(source), linker);
+					return compile(lookup, linker, targetClass, parser.parseAll(), source, options);
+				} catch (Throwable throwable) {
+					throw new CompletionException(throwable);
+				}
+			}, executor));
+		}
+
+		final var results = new ArrayList<T>(futures.size());
+
+		try {
+			for (final var future : futures) {
+				results.add(future.join());
+			}
+		} catch (CompletionException exception) {
+			// Don't leave the rest of the pack compiling in the background.
+			futures.forEach(future -> future.cancel(false));
+			throw exception.getCause();
+		}
+
+		return List.copyOf(results);
+	}
+
+	/**
+	 * Compiles the expression into a kernel that evaluates it for many elements per call,
+	 * reading the primitive fields of the target's parameters from one array per field.
+	 *
+	 * @throws IllegalArgumentException If the expression needs anything from the parameters besides their primitive fields,
+	 *                                  or the target doesn't return a primitive.
+	 * @see BatchKernel
+	 */
+	public static BatchKernel compileKernel(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<?> targetClass,
+		Expression expression
+	) throws Throwable {
+		return compileKernel(lookup, linker, targetClass, expression, CompileOptions.DEFAULT);
+	}
+
+	public static BatchKernel compileKernel(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<?> targetClass,
+		Expression expression,
+		CompileOptions options
+	) throws Throwable {
+		final var columns = new ArrayList<BatchKernel.Column>();
+		final byte[] bytecode = compileKernelToBytecode(lookup, linker, targetClass, expression, options, columns);
+
+		final var hidden = lookup.defineHiddenClass(bytecode, true);
+		final var evaluator = (BatchKernel.Evaluator) hidden.findConstructor(
+			hidden.lookupClass(),
+			MethodType.methodType(void.class)
+		).invoke();
+
+		final Method targetMethod = linker.tryFunctionalClass(targetClass).orElseThrow();
+
+		return new BatchKernel(columns, targetMethod.getReturnType(), evaluator);
+	}
+
+	/**
+	 * @param columns Receives the columns the kernel reads, in the order it takes their arrays.
+	 */
+	public static byte[] compileKernelToBytecode(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<?> targetClass,
+		Expression expression,
+		CompileOptions options,
+		List<BatchKernel.Column> columns
+	) throws Throwable {
+		Method targetMethod = linker.tryFunctionalClass(targetClass)
+			.orElseThrow(() -> new IllegalArgumentException("'" + targetClass + "' is not a valid functional interface"));
+
+		var returnType = targetMethod.getReturnType();
+
+		if (!returnType.isPrimitive() || returnType == void.class) {
+			throw new IllegalArgumentException("Kernels can only produce primitives, not " + returnType);
+		}
+
 		var desc = ClassDesc.of(
 			lookup.lookupClass().getPackage().getName(),
-			"\uD83C\uDFF3️\u200D⚧️️" + targetClass.getSimpleName()
+			"\uD83C\uDFF3️\u200D⚧️️" + targetClass.getSimpleName() + "$Kernel"
 		);
 
+		var context = new CompileContext(linker, targetMethod, desc, options);
+
+		// Typed before the columns are taken out, as taking them out walks the tree out of evaluation order.
+		Temporaries.declare(expression, context);
+		var extracted = Columns.extract(expression, context, columns);
+		// Optimised once, so that the vector loop and the scalar tail agree, whatever the float mode.
+		var optimised = Optimiser.optimise(extracted, context);
+
+		var columnTypes = columns.stream().map(BatchKernel.Column::type).toArray(Class<?>[]::new);
+		var elementDesc = methodDesc(returnType, columnTypes);
+		var returnKind = TypeKind.from(returnType);
+		var vectorise = options.vectorise() && VectorKernels.supports(optimised, columns, returnType);
+
 		return ClassFile.of()
 			.build(
 				desc,
 				cb -> {
-					writeCompilerResultStub(desc, targetClass, targetMethod, source, cb);
+					cb.withFlags(AccessFlag.PUBLIC, AccessFlag.FINAL)
+						.withInterfaceSymbols(desc(BatchKernel.Evaluator.class));
 
-					cb.withMethod(
-						targetMethod.getName(),
-						methodDesc(targetMethod.getReturnType(), targetMethod.getParameterTypes()),
+					generateConstructor(cb, CD_Object);
+
+					// A single element, with each column's value as a parameter.
+					cb.withMethodBody(
+						KERNEL_ELEMENT,
+						elementDesc,
+						ClassFile.ACC_PRIVATE | ClassFile.ACC_STATIC,
+						cob -> {
+							for (int i = 0; i < columnTypes.length; i++) {
+								context.locals().put(i, new LocalSlot(cob.parameterSlot(i), columnTypes[i]));
+							}
+
+							writeOptimised(cob, context, optimised);
+						}
+					);
+
+					// evaluate(Object[] columns, Object output, int count)
+					cb.withMethodBody(
+						"evaluate",
+						MethodTypeDesc.of(CD_void, CD_Object.arrayType(), CD_Object, CD_int),
 						ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
-						mb -> mb.withCode(cob -> {
-							// Fill in the LVT for the parametersByName based on the aliases since you can't reflectively access the names in non-ancient JVMs
-							var params = targetMethod.getParameters();
-							for (int i = 0; i < params.length; i++) {
-								var param = params[i];
-								var alias = param.getAnnotation(Alias.class);
-
-								if (alias == null) {
-									continue;
-								}
-
-								cob.localVariable(
-									cob.parameterSlot(i),
-									alias.value()[0],
-									desc(param.getType()),
-									cob.startLabel(), cob.endLabel()
-								);
+						cob -> {
+							// Each array is cast once, up front, so the loop only indexes them.
+							var arrays = new int[columnTypes.length];
+
+							for (int i = 0; i < arrays.length; i++) {
+								arrays[i] = cob.allocateLocal(TypeKind.REFERENCE);
+
+								cob
+									.aload(1)
+									.loadConstant(i)
+									.aaload()
+									.checkcast(desc(columnTypes[i]).arrayType())
+									.astore(arrays[i]);
+							}
+
+							var output = cob.allocateLocal(TypeKind.REFERENCE);
+							var index = cob.allocateLocal(TypeKind.INT);
+
+							cob
+								.aload(2)
+								.checkcast(desc(returnType).arrayType())
+								.astore(output)
+								.iconst_0()
+								.istore(index);
+
+							// The vector loop covers whole vectors, and leaves any remainder to the scalar loop.
+							if (vectorise) {
+								VectorKernels.writeLoop(cob, optimised, columns, arrays, output, index, 3);
 							}
 
-							final var ret = expression.emit(context, cob);
+							var head = cob.newBoundLabel();
+							var end = cob.newLabel();
 
-							if (ret != void.class) {
-								cob.return_(Primitive.primitiveLookup.getOrDefault(
-									targetMethod.getReturnType(),
-									Primitive.Unknown
-								).trueType);
+							cob
+								.iload(index)
+								.iload(3)
+								.if_icmpge(end)
+								.aload(output)
+								.iload(index);
+
+							for (int i = 0; i < arrays.length; i++) {
+								cob
+									.aload(arrays[i])
+									.iload(index)
+									.arrayLoad(TypeKind.from(columnTypes[i]));
 							}
-						})
+
+							cob
+								.invokestatic(desc, KERNEL_ELEMENT, elementDesc)
+								.arrayStore(returnKind)
+								.iinc(index, 1)
+								.goto_(head)
+								.labelBinding(end);
+
+							cob.return_();
+						}
 					);
 				}
 			);
 	}
 
+	public static byte[] compileBatchToBytecode(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<?> targetClass,
+		List<Expression> expressions
+	) throws Throwable {
+		return compileBatchToBytecode(lookup, linker, targetClass, expressions, CompileOptions.DEFAULT);
+	}
+
+	public static byte[] compileBatchToBytecode(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<?> targetClass,
+		List<Expression> expressions,
+		CompileOptions options
+	) throws Throwable {
+		if (expressions.isEmpty()) {
+			throw new IllegalArgumentException("Cannot compile an empty batch");
+		}
+
+		Method targetMethod = linker.tryFunctionalClass(targetClass)
+			.orElseThrow(() -> new IllegalArgumentException("'" + targetClass + "' is not a valid functional interface"));
+
+		var desc = ClassDesc.of(
+			lookup.lookupClass().getPackage().getName(),
+			"\uD83C\uDFF3️\u200D⚧️️" + targetClass.getSimpleName() + "$Batch"
+		);
+
+		// One schema for the whole batch, so that every expression agrees on the fields.
+		var resolved = resolveVariables(lookup, linker, targetMethod, expressions, options);
+
+		return ClassFile.of()
+			.build(
+				desc,
+				cb -> {
+					writeBatchCompilerResultStub(desc, targetClass, targetMethod, cb);
+					writeVariableFields(cb, targetMethod, resolved);
+
+					for (int i = 0; i < expressions.size(); i++) {
+						writeInvoker(
+							cb,
+							batchMethodName(i),
+							ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL,
+							targetMethod,
+							new CompileContext(linker, targetMethod, desc, resolved),
+							expressions.get(i)
+						);
+					}
+
+					int levels = 1;
+					while (1 << (DISPATCH_BITS * levels) < expressions.size()) {
+						levels++;
+					}
+
+					writeBatchDispatcher(
+						cb,
+						desc,
+						targetMethod,
+						targetMethod.getName(),
+						ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL,
+						levels,
+						0,
+						expressions.size()
+					);
+				}
+			);
+	}
+
+	/**
+	 * Writes a method that dispatches on the expression index, over a tree of switches of at most
+	 * {@code 1 << DISPATCH_BITS} cases each, rather than one switch over the whole batch.
+	 * Every level stays small enough to be inlined into its caller, and far from the size at which the JIT gives up,
+	 * so a call costs a few predictable switches on the same field, however large the batch.
+	 *
+	 * @param level How many levels of switches lie at and below this one, with the last calling the expressions.
+	 * @param base  The index of the first expression within this method's range.
+	 */
+	private static void writeBatchDispatcher(
+		ClassBuilder cb,
+		ClassDesc desc,
+		Method targetMethod,
+		String name,
+		int flags,
+		int level,
+		int base,
+		int size
+	) {
+		var targetDesc = methodDesc(targetMethod.getReturnType(), targetMethod.getParameterTypes());
+		var returnKind = TypeKind.from(targetMethod.getReturnType());
+		var params = targetMethod.getParameterTypes();
+
+		int shift = DISPATCH_BITS * (level - 1);
+		int span = 1 << shift;
+		int children = Math.min(1 << DISPATCH_BITS, (size - base + span - 1) / span);
+
+		cb.withMethodBody(
+			name,
+			targetDesc,
+			flags,
+			cob -> {
+				var fallback = cob.newLabel();
+				var labels = new ArrayList<Label>(children);
+				var cases = new ArrayList<SwitchCase>(children);
+
+				for (int i = 0; i < children; i++) {
+					var label = cob.newLabel();
+					labels.add(label);
+					cases.add(SwitchCase.of(i, label));
+				}
+
+				cob
+					.aload(0)
+					.getfield(desc, BATCH_INDEX, CD_int);
+
+				if (shift != 0) {
+					cob
+						.loadConstant(shift)
+						.iushr();
+				}
+
+				cob
+					.loadConstant((1 << DISPATCH_BITS) - 1)
+					.iand()
+					.tableswitch(0, children - 1, fallback, cases);
+
+				for (int i = 0; i < children; i++) {
+					cob.labelBinding(labels.get(i)).aload(0);
+
+					for (int p = 0; p < params.length; p++) {
+						cob.loadLocal(TypeKind.from(params[p]), cob.parameterSlot(p));
+					}
+
+					var child = base + i * span;
+
+					cob
+						.invokevirtual(desc, level == 1 ? batchMethodName(child) : dispatchMethodName(level - 1, child), targetDesc)
+						.return_(returnKind);
+				}
+
+				cob
+					.labelBinding(fallback)
+					.new_(desc(IllegalStateException.class))
+					.dup()
+					.invokespecial(desc(IllegalStateException.class), INIT_NAME, MTD_void)
+					.athrow();
+			}
+		);
+
+		if (level == 1) {
+			return;
+		}
+
+		for (int i = 0; i < children; i++) {
+			var child = base + i * span;
+
+			writeBatchDispatcher(
+				cb,
+				desc,
+				targetMethod,
+				dispatchMethodName(level - 1, child),
+				ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL,
+				level - 1,
+				child,
+				size
+			);
+		}
+	}
+
+	/**
+	 * Settles the {@link CompileOptions#variables() schema} the expressions are compiled against.
+	 * <p>
+	 * Targets that take their variables as a parameter must already have one, and its struct is defined now,
+	 * as the expressions refer to it by name, or an arena if they take an index into one.
+	 * Otherwise, one is inferred from the expressions if the target declares any {@link Variables} scopes.
+	 */
+	private static CompileOptions resolveVariables(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Method targetMethod,
+		List<Expression> expressions,
+		CompileOptions options
+	) throws IllegalAccessException {
+		var parameter = VariableSchema.parameter(targetMethod);
+
+		if (parameter != null && parameter.type() == int.class) {
+			if (options.arena() == null) {
+				throw new IllegalArgumentException("'" + targetMethod + "' takes its variables as an index, so must be compiled against a VariableArena");
+			}
+
+			return options;
+		}
+
+		if (parameter != null) {
+			if (options.variables() == null) {
+				throw new IllegalArgumentException("'" + targetMethod + "' takes its variables as a parameter, so must be compiled against a VariableSchema");
+			}
+
+			options.variables().define(lookup);
+			return options;
+		}
+
+		if (options.variables() != null || !targetMethod.isAnnotationPresent(Variables.class)) {
+			return options;
+		}
+
+		var schema = VariableSchema.analyse(linker, targetMethod, expressions);
+
+		return schema.isEmpty() ? options : options.toBuilder().variables(schema).build();
+	}
+
+	/**
+	 * Declares a field for every variable kept by the compiled expression itself, rather than a struct.
+	 */
+	private static void writeVariableFields(ClassBuilder cb, Method targetMethod, CompileOptions options) {
+		if (options.variables() == null || VariableSchema.parameter(targetMethod) != null) {
+			return;
+		}
+
+		options.variables().members().forEach((name, type) -> cb.withField(
+			new Binding.Variable(name, type, null).field(),
+			desc(type),
+			ClassFile.ACC_PRIVATE
+		));
+	}
+
+	private static String batchMethodName(int index) {
+		return "expression$" + index;
+	}
+
+	private static String dispatchMethodName(int level, int base) {
+		return "dispatch$" + level + "$" + base;
+	}
+
+	private static void writeInvoker(
+		ClassBuilder cb,
+		String name,
+		int flags,
+		Method targetMethod,
+		CompileContext context,
+		Expression expression
+	) {
+		cb.withMethod(
+			name,
+			methodDesc(targetMethod.getReturnType(), targetMethod.getParameterTypes()),
+			flags,
+			mb -> mb.withCode(cob -> {
+				// Fill in the LVT for the parametersByName based on the aliases since you can't reflectively access the names in non-ancient JVMs
+				var params = targetMethod.getParameters();
+				for (int i = 0; i < params.length; i++) {
+					var param = params[i];
+					var alias = param.getAnnotation(Alias.class);
+
+					if (alias == null) {
+						continue;
+					}
+
+					cob.localVariable(
+						cob.parameterSlot(i),
+						alias.value()[0],
+						desc(param.getType()),
+						cob.startLabel(), cob.endLabel()
+					);
+				}
+
+				Temporaries.declare(expression, context);
+
+				writeBody(cob, context, expression);
+			})
+		);
+	}
+
+	/**
+	 * Optimises and emits an expression whose types have already been {@link Temporaries#declare declared}.
+	 */
+	private static void writeBody(CodeBuilder cob, CompileContext context, Expression expression) {
+		writeOptimised(cob, context, Optimiser.optimise(expression, context));
+	}
+
+	/**
+	 * Emits an expression that has already been {@link Optimiser#optimise optimised}.
+	 */
+	private static void writeOptimised(CodeBuilder cob, CompileContext context, Expression optimised) {
+		Temporaries.allocate(optimised, context, cob);
+
+		final var ret = optimised.emit(context, cob);
+
+		if (ret != void.class) {
+			cob.return_(Primitive.primitiveLookup.getOrDefault(
+				context.target().getReturnType(),
+				Primitive.Unknown
+			).trueType);
+		}
+	}
+
 	@VisibleForTesting
 	public static  <T> T define(MethodHandles.Lookup lookup, byte[] bytecode) throws Throwable {
-		final var result = lookup.defineHiddenClass(bytecode, true);
+		return define(lookup, bytecode, null);
+	}
+
+	/**
+	 * @param classData The {@link MethodHandles#classData class data} of the defined class,
+	 *                  which must be that from {@link #classData} for the options the bytecode was compiled with.
+	 */
+	public static <T> T define(MethodHandles.Lookup lookup, byte[] bytecode, @Nullable Object classData) throws Throwable {
+		final var result = classData == null ?
+			lookup.defineHiddenClass(bytecode, true) :
+			lookup.defineHiddenClassWithClassData(bytecode, classData, true);
 
 		//noinspection unchecked
 		return (T) result.findConstructor(result.lookupClass(), MethodType.methodType(void.class)).invoke();
 	}
 
+	/**
+	 * The class data expressions compiled with the given options expect, which is the segment of their
+	 * {@link CompileOptions#arena() arena}, if any.
+	 */
+	public static @Nullable Object classData(CompileOptions options) {
+		return options.arena() == null ? null : options.arena().segment();
+	}
+
 	public static <T> T compile(
 		MethodHandles.Lookup lookup,
 		Linker linker,
@@ -94,8 +735,19 @@ public class Compiler {
 		Expression expression,
 		String source
 	) throws Throwable {
-		byte[] bytecode = compileToBytecode(lookup, linker, targetClass, expression, source);
+		return compile(lookup, linker, targetClass, expression, source, CompileOptions.DEFAULT);
+	}
+
+	public static <T> T compile(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Class<T> targetClass,
+		Expression expression,
+		String source,
+		CompileOptions options
+	) throws Throwable {
+		byte[] bytecode = compileToBytecode(lookup, linker, targetClass, expression, source, options);
 
-		return define(lookup, bytecode);
+		return define(lookup, bytecode, classData(options));
 	}
 }
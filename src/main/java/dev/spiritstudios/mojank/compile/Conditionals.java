@@ -150,7 +150,7 @@ public class Conditionals {
 					builder,
 					Opcode.IFNE,
 					b -> {
-						right.emit(context, builder);
+						right.emit(context, b);
 
 						ifThenElse(b, Opcode.IFNE, ifTrue, ifFalse);
 					},
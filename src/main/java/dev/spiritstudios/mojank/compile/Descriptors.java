@@ -5,8 +5,8 @@ import java.lang.constant.MethodTypeDesc;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.MethodHandle;
 import java.util.Arrays;
-import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.constant.ConstantDescs.*;
 import static java.lang.constant.ConstantDescs.CD_Boolean;
@@ -61,7 +61,8 @@ public class Descriptors {
 
 	);
 
-	private static final Map<Class<?>, ClassDesc> descCache = new IdentityHashMap<>();
+	// Shared by every compiling thread.
+	private static final Map<Class<?>, ClassDesc> descCache = new ConcurrentHashMap<>();
 
 	public static ClassDesc desc(Class<?> clazz) {
 		final var desc = CLASS_DESCS.get(clazz);
@@ -0,0 +1,442 @@
+package dev.spiritstudios.mojank.compile;
+
+import dev.spiritstudios.mojank.MolangInterpreter;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.compile.optimise.Temporaries;
+import dev.spiritstudios.mojank.internal.Util;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A stable reference to a compiled expression, which a recompiled expression can be swapped into
+ * without replacing the handle wherever it's held.
+ * <p>
+ * Callers hold on to the {@link #invoker()}, ideally in a {@code static final} field,
+ * which calls through a {@link MutableCallSite} to the current expression.
+ * The JIT inlines straight through the site to the expression, and deoptimises when it changes.
+ * <p>
+ * Every handle belongs to a {@link Generation}, typically one per resource reload.
+ * Replacements are {@link #stage staged} against the next generation, and swapped in all at once
+ * when the current one is {@link Generation#invalidate() invalidated}, so no caller sees a mix of both.
+ * Handles that weren't given a replacement keep their expression, and stay in the invalidated generation,
+ * so that whatever is staged for them next is swapped in straight away and moves them to its generation.
+ * <p>
+ * A {@link #tiered tiered} handle starts out interpreting its expression, and only compiles it once it's called enough
+ * to be worth defining a class for, as set by its {@link TierPolicy}.
+ * <p>
+ * Nothing else keeps a replaced expression, so its hidden class can be unloaded once it isn't running anywhere.
+ *
+ * @param <T> The functional interface the expression implements.
+ */
+public final class ExpressionHandle<T> {
+	private static final Logger logger = Util.logger();
+
+	/**
+	 * Roughly how many interpreted calls each thread makes between checks against the threshold, a power of two.
+	 */
+	private static final int CHECK_INTERVAL = 16;
+
+	private static final MethodHandle RELINK;
+	private static final MethodHandle INTERPRET;
+
+	static {
+		try {
+			final var lookup = MethodHandles.lookup();
+			final var type = MethodType.methodType(Object.class, Object[].class);
+
+			RELINK = lookup.findVirtual(ExpressionHandle.class, "relink", type);
+			INTERPRET = lookup.findVirtual(ExpressionHandle.class, "interpret", type);
+		} catch (ReflectiveOperationException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+
+	private final Class<T> targetClass;
+	private final MutableCallSite site;
+	private final MethodHandle relink;
+	private final MethodHandle invoker;
+	private final @Nullable Interpreted interpreted;
+	private @Nullable T proxy;
+
+	private @Nullable T expression;
+	private MethodHandle target;
+	private Generation generation;
+	private @Nullable T staged;
+	private @Nullable Generation stagedGeneration;
+	private volatile TierPolicy.Tier tier;
+
+	private ExpressionHandle(
+		final Class<T> targetClass,
+		final MethodType type,
+		final @Nullable Interpreted interpreted,
+		final Generation generation
+	) {
+		checkGeneration(generation);
+
+		this.targetClass = targetClass;
+		this.site = new MutableCallSite(type);
+		this.relink = collect(RELINK.bindTo(this), type);
+		this.invoker = site.dynamicInvoker();
+		this.interpreted = interpreted;
+		this.target = site.getTarget();
+		this.generation = generation;
+		this.tier = interpreted != null ? TierPolicy.Tier.INTERPRETED : TierPolicy.Tier.COMPILED;
+	}
+
+	/**
+	 * @param expression An expression compiled by the {@link Compiler}.
+	 * @throws IllegalArgumentException If the expression wasn't compiled by the {@link Compiler},
+	 *                                  or the generation was already invalidated.
+	 */
+	public static <T> ExpressionHandle<T> of(final Class<T> targetClass, final T expression, final Generation generation) {
+		final var handle = new ExpressionHandle<>(targetClass, handle(expression).type(), null, generation);
+
+		handle.link(expression, generation);
+		return handle;
+	}
+
+	/**
+	 * Interprets the expression until it's been called {@link TierPolicy#threshold()} times,
+	 * then compiles it on the policy's executor and swaps to the compiled expression.
+	 * The expression is fully {@link Analysis#resolveAll analysed} up front, so interpreted calls don't lock anything.
+	 * <p>
+	 * Calls are counted on a {@link LongAdder}, so threads interpreting the same expression don't contend on one counter.
+	 * Summing it reads every stripe, so it's only compared against the threshold on about one in
+	 * {@value #CHECK_INTERVAL} calls, picked by each thread's own {@link ThreadLocalRandom}.
+	 * A handle may therefore compile a few calls past its threshold, unless the threshold is lower than that,
+	 * in which case every call checks, as the handle will compile before contention matters.
+	 *
+	 * @throws IllegalArgumentException If the target isn't a functional interface, the generation was already invalidated,
+	 *                                  or the expression accesses variables the interpreter can't keep,
+	 *                                  which are those on the compiled expression itself or in a {@link VariableArena}.
+	 */
+	public static <T> ExpressionHandle<T> tiered(
+		final MethodHandles.Lookup lookup,
+		final Linker linker,
+		final Class<T> targetClass,
+		final Expression expression,
+		final String source,
+		final CompileOptions options,
+		final TierPolicy policy,
+		final Generation generation
+	) {
+		final Method targetMethod = linker.tryFunctionalClass(targetClass)
+			.orElseThrow(() -> new IllegalArgumentException("'" + targetClass + "' is not a valid functional interface"));
+
+		// Typed in evaluation order up front, as when compiling, so both tiers agree on the type of every variable.
+		final var context = new CompileContext(linker, targetMethod, options);
+		Temporaries.declare(expression, context);
+		context.analysis().resolveAll(expression);
+
+		final var holder = VariableSchema.parameter(targetMethod);
+
+		if (!context.analysis().variables().isEmpty() && (holder == null || holder.type() == int.class)) {
+			throw new IllegalArgumentException("Only variables passed in as a struct can be interpreted: " + source);
+		}
+
+		final var type = MethodType.methodType(targetMethod.getReturnType(), targetMethod.getParameterTypes());
+		final var interpreted = new Interpreted(
+			lookup,
+			linker,
+			expression,
+			source,
+			options,
+			policy,
+			context.analysis(),
+			targetMethod.getReturnType(),
+			new LongAdder()
+		);
+
+		final var handle = new ExpressionHandle<>(targetClass, type, interpreted, generation);
+
+		synchronized (handle) {
+			handle.linkTarget(collect(INTERPRET.bindTo(handle), type), generation);
+		}
+
+		return handle;
+	}
+
+	private static MethodHandle collect(final MethodHandle handle, final MethodType type) {
+		return handle.asCollector(Object[].class, type.parameterCount()).asType(type);
+	}
+
+	private static MethodHandle handle(final Object expression) {
+		if (!(expression instanceof CompilerResult<?> result)) {
+			throw new IllegalArgumentException("Only compiled expressions can be held by a handle, not " + expression);
+		}
+
+		return result.toHandle();
+	}
+
+	/**
+	 * The handle every call should go through, which has the type of the target method without its receiver.
+	 */
+	public MethodHandle invoker() {
+		return invoker;
+	}
+
+	public MethodType type() {
+		return site.type();
+	}
+
+	/**
+	 * An implementation of the target interface that calls through the {@link #invoker()},
+	 * for callers that can't hold a method handle.
+	 */
+	public synchronized T proxy() {
+		if (proxy == null) {
+			proxy = MethodHandleProxies.asInterfaceInstance(targetClass, invoker);
+		}
+
+		return proxy;
+	}
+
+	/**
+	 * The expression calls currently go to, or null while they're still interpreted.
+	 */
+	public synchronized @Nullable T expression() {
+		update();
+		return expression;
+	}
+
+	public synchronized Generation generation() {
+		update();
+		return generation;
+	}
+
+	public TierPolicy.Tier tier() {
+		return tier;
+	}
+
+	/**
+	 * How many times the expression has been interpreted, which stops counting once it starts compiling.
+	 */
+	public long invocations() {
+		return interpreted != null ? interpreted.invocations.sum() : 0;
+	}
+
+	/**
+	 * Replaces the expression once this handle's current generation is {@link Generation#invalidate() invalidated},
+	 * moving it to the given generation.
+	 * Staging again before then replaces the staged expression.
+	 *
+	 * @throws IllegalArgumentException If the expression has a different type, or the generation was already invalidated.
+	 */
+	public synchronized void stage(final T expression, final Generation generation) {
+		checkType(expression);
+		checkGeneration(generation);
+
+		this.staged = expression;
+		this.stagedGeneration = generation;
+
+		// Too late to wait for it, so swap now.
+		if (!this.generation.isValid()) {
+			update();
+			MutableCallSite.syncAll(new MutableCallSite[] {site});
+		}
+	}
+
+	/**
+	 * Replaces the expression straight away, keeping the handle in its current generation.
+	 * Anything staged is still swapped in when the generation is invalidated.
+	 *
+	 * @throws IllegalArgumentException If the expression has a different type.
+	 */
+	public synchronized void set(final T expression) {
+		checkType(expression);
+		update();
+
+		link(expression, generation);
+		MutableCallSite.syncAll(new MutableCallSite[] {site});
+	}
+
+	private void checkType(final T expression) {
+		final var type = handle(expression).type();
+
+		if (!type.equals(site.type())) {
+			throw new IllegalArgumentException("Expected an expression of type " + site.type() + ", got " + type);
+		}
+	}
+
+	private static void checkGeneration(final Generation generation) {
+		if (!generation.isValid()) {
+			throw new IllegalArgumentException("Cannot move an expression into an invalidated generation");
+		}
+	}
+
+	private void link(final T expression, final Generation generation) {
+		this.expression = Objects.requireNonNull(expression, "expression");
+		linkTarget(handle(expression), generation);
+
+		// A compiled expression replaces the interpreter, whether or not it's the one that was being compiled.
+		transition(TierPolicy.Tier.COMPILED);
+	}
+
+	private void linkTarget(final MethodHandle target, final Generation generation) {
+		this.target = target;
+		this.generation = generation;
+
+		// Once the generation is invalidated, the next call relinks to whatever was staged.
+		// Already invalidated, there's nothing left to wait for, so calls go straight to the target.
+		site.setTarget(generation.isValid() ? generation.switchPoint.guardWithTest(target, relink) : target);
+	}
+
+	private void update() {
+		if (generation.isValid()) {
+			return;
+		}
+
+		if (staged != null && stagedGeneration != null && stagedGeneration.isValid()) {
+			link(staged, stagedGeneration);
+		} else if (site.getTarget() != target) {
+			// Nothing to move to, so keep the current target, no longer guarded, until something is staged.
+			linkTarget(target, generation);
+		}
+
+		staged = null;
+		stagedGeneration = null;
+	}
+
+	private Object relink(final Object[] arguments) throws Throwable {
+		// Another thread may have already relinked it, in which case this does nothing.
+		synchronized (this) {
+			update();
+		}
+
+		return site.getTarget().invokeWithArguments(arguments);
+	}
+
+	private void transition(final TierPolicy.Tier to) {
+		final var from = tier;
+
+		if (from == to) {
+			return;
+		}
+
+		tier = to;
+
+		if (interpreted != null) {
+			interpreted.policy.listener().transition(this, from, to);
+		}
+	}
+
+	private Object interpret(final Object[] arguments) {
+		final var interpreted = Objects.requireNonNull(this.interpreted);
+
+		if (tier == TierPolicy.Tier.INTERPRETED) {
+			interpreted.invocations.increment();
+
+			final int threshold = interpreted.policy.threshold();
+
+			if ((threshold < CHECK_INTERVAL || (ThreadLocalRandom.current().nextInt() & CHECK_INTERVAL - 1) == 0) &&
+				interpreted.invocations.sum() > threshold) {
+				promote(interpreted);
+			}
+		}
+
+		final var result = MolangInterpreter.evaluate(interpreted.expression, interpreted.analysis, interpreted.options, arguments);
+		return MolangInterpreter.convert(result, interpreted.returnType);
+	}
+
+	private synchronized void promote(final Interpreted interpreted) {
+		if (tier != TierPolicy.Tier.INTERPRETED) {
+			return;
+		}
+
+		transition(TierPolicy.Tier.COMPILING);
+		interpreted.policy.executor().execute(() -> compile(interpreted));
+	}
+
+	private void compile(final Interpreted interpreted) {
+		final T compiled;
+
+		try {
+			compiled = Compiler.compile(
+				interpreted.lookup,
+				interpreted.linker,
+				targetClass,
+				interpreted.expression,
+				interpreted.source,
+				interpreted.options
+			);
+		} catch (Throwable throwable) {
+			logger.warn("Failed to compile {}, so it will stay interpreted", interpreted.source, throwable);
+
+			synchronized (this) {
+				if (tier == TierPolicy.Tier.COMPILING) {
+					transition(TierPolicy.Tier.FAILED);
+				}
+			}
+
+			return;
+		}
+
+		synchronized (this) {
+			update();
+
+			// Replaced while it was compiling, so it's already been swapped to something newer.
+			if (tier != TierPolicy.Tier.COMPILING) {
+				return;
+			}
+
+			link(compiled, generation);
+			MutableCallSite.syncAll(new MutableCallSite[] {site});
+		}
+	}
+
+	@Override
+	public String toString() {
+		final var expression = expression();
+
+		return "ExpressionHandle[" + (expression != null ?
+			expression :
+			Objects.requireNonNull(interpreted).source) + ", " + tier + ']';
+	}
+
+	/**
+	 * Everything needed to interpret, and later compile, the expression of a tiered handle.
+	 */
+	private record Interpreted(
+		MethodHandles.Lookup lookup,
+		Linker linker,
+		Expression expression,
+		String source,
+		CompileOptions options,
+		TierPolicy policy,
+		Analysis analysis,
+		Class<?> returnType,
+		LongAdder invocations
+	) {
+	}
+
+	/**
+	 * A set of handles that are swapped to their staged expressions together.
+	 */
+	public static final class Generation {
+		private final SwitchPoint switchPoint = new SwitchPoint();
+
+		public boolean isValid() {
+			return !switchPoint.hasBeenInvalidated();
+		}
+
+		/**
+		 * Swaps every handle in this generation to its staged expression.
+		 * Each handle swaps on its next call, and every thread sees the generation invalidated at the same moment.
+		 */
+		public void invalidate() {
+			SwitchPoint.invalidateAll(new SwitchPoint[] {switchPoint});
+		}
+	}
+}
@@ -0,0 +1,855 @@
+package dev.spiritstudios.mojank.compile;
+
+import dev.spiritstudios.mojank.MolangInterpreter;
+import dev.spiritstudios.mojank.ast.ArrayAccessExpression;
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.compile.optimise.Optimiser;
+import dev.spiritstudios.mojank.compile.optimise.Temporaries;
+import dev.spiritstudios.mojank.internal.NotImplementedException;
+import dev.spiritstudios.mojank.runtime.Primitives;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import static dev.spiritstudios.mojank.internal.Evaluation.wrapIndex;
+import static dev.spiritstudios.mojank.internal.Evaluation.zero;
+
+/**
+ * Builds a {@link MethodHandle} for an expression out of {@link MethodHandles} combinators,
+ * for deployments that can't, or would rather not, define a hidden class per expression.
+ * <p>
+ * The expression is optimised as the {@link Compiler} would, then every node becomes a handle taking the target's parameters:
+ * operands are {@link MethodHandles#foldArguments folded} in, in evaluation order, ternaries are
+ * {@link MethodHandles#guardWithTest guards}, fields are read through their getters,
+ * and loops are {@link MethodHandles#countedLoop counted loops}.
+ * Temporaries, locals and jumps live in a frame allocated per call, which expressions without statements do without.
+ * <p>
+ * The handle has the exact type of the target's method, so it can be the target of a caller's own
+ * {@code invokedynamic} site, or be implemented as the target interface with {@link #proxy}.
+ * The JIT inlines through it much as through compiled code, but only where the handle is a constant to it,
+ * such as a site's target or a {@code static final} field.
+ */
+public final class HandleCompiler {
+	private static final MethodHandle ADD = find("add", float.class, float.class, float.class);
+	private static final MethodHandle SUBTRACT = find("subtract", float.class, float.class, float.class);
+	private static final MethodHandle MULTIPLY = find("multiply", float.class, float.class, float.class);
+	private static final MethodHandle DIVIDE = find("divide", float.class, float.class, float.class);
+	private static final MethodHandle REMAINDER = find("remainder", float.class, float.class, float.class);
+	private static final MethodHandle NEGATE = find("negate", float.class, float.class);
+	private static final MethodHandle LESS_THAN = find("lessThan", boolean.class, float.class, float.class);
+	private static final MethodHandle GREATER_THAN = find("greaterThan", boolean.class, float.class, float.class);
+	private static final MethodHandle LESS_THAN_OR_EQUAL_TO = find("lessThanOrEqualTo", boolean.class, float.class, float.class);
+	private static final MethodHandle GREATER_THAN_OR_EQUAL_TO = find("greaterThanOrEqualTo", boolean.class, float.class, float.class);
+	private static final MethodHandle EQUAL_FLOAT = find("equal", boolean.class, float.class, float.class);
+	private static final MethodHandle EQUAL = find("equal", boolean.class, Object.class, Object.class);
+	private static final MethodHandle NOT = find("not", boolean.class, boolean.class);
+	private static final MethodHandle IS_NON_NULL = find("isNonNull", boolean.class, Object.class);
+	private static final MethodHandle ARRAY_GET = find("arrayGet", Object.class, Object.class, float.class);
+	private static final MethodHandle ARRAY_SET = find("arraySet", void.class, Object.class, float.class, Object.class);
+	private static final MethodHandle LIMIT = find("limit", int.class, float.class, int.class);
+	private static final MethodHandle IS_POSITIVE = find("isPositive", boolean.class, int.class);
+
+	private static final MethodHandle NEW_FRAME = find("newFrame", Frame.class, int.class, Object[].class);
+	private static final MethodHandle GET_FLOAT = find("getFloat", float.class, Frame.class, int.class);
+	private static final MethodHandle SET_FLOAT = find("setFloat", void.class, Frame.class, int.class, float.class);
+	private static final MethodHandle STORE_FLOAT = find("storeFloat", float.class, Frame.class, int.class, float.class);
+	private static final MethodHandle GET_OBJECT = find("getObject", Object.class, Frame.class, int.class);
+	private static final MethodHandle SET_OBJECT = find("setObject", void.class, Frame.class, int.class, Object.class);
+	private static final MethodHandle STORE_OBJECT = find("storeObject", Object.class, Frame.class, int.class, Object.class);
+	private static final MethodHandle RETURN = find("return_", void.class, Frame.class, Object.class);
+	private static final MethodHandle RETURNED = find("returned", Object.class, Frame.class);
+	private static final MethodHandle JUMP = find("jump", void.class, Frame.class, Jump.class);
+	private static final MethodHandle IS_RUNNING = find("isRunning", boolean.class, Frame.class);
+	private static final MethodHandle END_ITERATION = find("endIteration", void.class, Frame.class);
+	private static final MethodHandle END_LOOP = find("endLoop", void.class, Frame.class);
+
+	private static final MethodHandle FMA;
+	private static final MethodHandle CAST_TO_BOOLEAN;
+	private static final MethodHandle UNBOX_AS_FLOAT;
+	private static final MethodHandle UNBOX_AS_BOOLEAN;
+	private static final MethodHandle CONVERT;
+
+	static {
+		try {
+			final var lookup = MethodHandles.publicLookup();
+
+			FMA = lookup.findStatic(
+				Math.class,
+				"fma",
+				MethodType.methodType(float.class, float.class, float.class, float.class)
+			);
+			CAST_TO_BOOLEAN = lookup.findStatic(
+				Primitives.class,
+				"castToBoolean",
+				MethodType.methodType(boolean.class, float.class)
+			);
+			UNBOX_AS_FLOAT = lookup.findStatic(
+				Primitives.class,
+				"unboxAsFloatLenient",
+				MethodType.methodType(float.class, Object.class)
+			);
+			UNBOX_AS_BOOLEAN = lookup.findStatic(
+				Primitives.class,
+				"unboxAsBooleanLenient",
+				MethodType.methodType(boolean.class, Object.class)
+			);
+			CONVERT = lookup.findStatic(
+				MolangInterpreter.class,
+				"convert",
+				MethodType.methodType(Object.class, Object.class, Class.class)
+			);
+		} catch (ReflectiveOperationException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+
+	private HandleCompiler() {
+	}
+
+	private static MethodHandle find(final String name, final Class<?> returnType, final Class<?>... parameterTypes) {
+		try {
+			return MethodHandles.lookup().findStatic(
+				HandleCompiler.class,
+				name,
+				MethodType.methodType(returnType, parameterTypes)
+			);
+		} catch (ReflectiveOperationException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+
+	public static MethodHandle compile(final Linker linker, final Class<?> targetClass, final Expression expression) {
+		return compile(linker, targetClass, expression, CompileOptions.DEFAULT);
+	}
+
+	/**
+	 * @return A handle of the exact type of the target's method.
+	 * @throws IllegalArgumentException If the target isn't a functional interface,
+	 *                                  or the expression accesses variables in a {@link VariableArena},
+	 *                                  which only compiled expressions can reach.
+	 */
+	public static MethodHandle compile(
+		final Linker linker,
+		final Class<?> targetClass,
+		final Expression expression,
+		final CompileOptions options
+	) {
+		final Method targetMethod = linker.tryFunctionalClass(targetClass)
+			.orElseThrow(() -> new IllegalArgumentException("'" + targetClass + "' is not a valid functional interface"));
+
+		final var context = new CompileContext(linker, targetMethod, options);
+		Temporaries.declare(expression, context);
+
+		final var holder = VariableSchema.parameter(targetMethod);
+
+		if (!context.analysis().variables().isEmpty() && holder != null && holder.type() == int.class) {
+			throw new IllegalArgumentException("Variables held in a VariableArena can only be accessed once compiled");
+		}
+
+		return new Builder(context).build(Optimiser.optimise(expression, context));
+	}
+
+	/**
+	 * Implements the target interface with the expression's handle.
+	 *
+	 * @see #compile(Linker, Class, Expression, CompileOptions)
+	 */
+	public static <T> T proxy(
+		final Linker linker,
+		final Class<T> targetClass,
+		final Expression expression,
+		final CompileOptions options
+	) {
+		return MethodHandleProxies.asInterfaceInstance(targetClass, compile(linker, targetClass, expression, options));
+	}
+
+	private enum Jump {
+		RETURN,
+		BREAK,
+		CONTINUE
+	}
+
+	/**
+	 * The temporaries, locals and jumps of a single call.
+	 */
+	private static final class Frame {
+		private final float[] floats;
+		private final @Nullable Object[] objects;
+		private @Nullable Jump jump;
+		private @Nullable Object returned;
+
+		private Frame(final float[] floats, final @Nullable Object[] objects) {
+			this.floats = floats;
+			this.objects = objects;
+		}
+	}
+
+	/**
+	 * Converts an optimised expression into a handle, where every node is a handle taking the frame
+	 * followed by the target's parameters.
+	 */
+	private static final class Builder {
+		private final CompileContext context;
+		private final Analysis analysis;
+		private final Linker linker;
+		private final Method targetMethod;
+		/**
+		 * The frame followed by the target's parameters, which every node takes.
+		 */
+		private final List<Class<?>> parameters = new ArrayList<>();
+
+		private final Map<String, LocalSlot> temporaries = new HashMap<>();
+		private final Map<Integer, LocalSlot> locals = new HashMap<>();
+		private final Map<String, Integer> variableSlots = new HashMap<>();
+		/**
+		 * The variables held by the expression itself, which outlive each call.
+		 */
+		private final @Nullable Object[] variables;
+		private final List<@Nullable Object> objects = new ArrayList<>();
+		private int floats;
+		private int loops;
+		/**
+		 * How many returns and jumps have been built, to tell which statements may jump.
+		 */
+		private int jumps;
+
+		private Builder(final CompileContext context) {
+			this.context = context;
+			this.analysis = context.analysis();
+			this.linker = context.linker();
+			this.targetMethod = context.target();
+
+			parameters.add(Frame.class);
+			parameters.addAll(List.of(targetMethod.getParameterTypes()));
+
+			final var declared = analysis.variables();
+			this.variables = new Object[declared.size()];
+
+			for (final var variable : declared.entrySet()) {
+				final int slot = variableSlots.size();
+				variableSlots.put(variable.getKey(), slot);
+				variables[slot] = zero(variable.getValue());
+			}
+		}
+
+		private MethodHandle build(final Expression expression) {
+			final var returnType = targetMethod.getReturnType();
+			final MethodHandle handle;
+			final boolean needsFrame;
+
+			// Single expressions are parsed as a return of their value, which needs no frame to return through.
+			if (expression instanceof UnaryOperationExpression(var value, var operator) &&
+				operator == UnaryOperationExpression.Operator.RETURN) {
+				handle = coerce(node(value), returnType);
+				needsFrame = floats > 0 || !objects.isEmpty();
+			} else {
+				final var body = coerce(node(expression), void.class);
+				final var returned = coerce(frameOnly(RETURNED), returnType);
+
+				handle = MethodHandles.foldArguments(returned, 0, body);
+				needsFrame = true;
+			}
+
+			if (!needsFrame) {
+				return MethodHandles.insertArguments(handle, 0, (Object) null);
+			}
+
+			final var frame = MethodHandles.insertArguments(NEW_FRAME, 0, floats, objects.toArray());
+			return MethodHandles.foldArguments(handle, 0, frame);
+		}
+
+		private MethodHandle node(final Expression expression) {
+			return switch (expression) {
+				case ConstantExpression(var value) -> switch (value) {
+					case Number number -> constant(float.class, number.floatValue());
+					default -> constant(value.getClass(), value);
+				};
+				case IdentifierExpression identifier -> switch (analysis.binding(identifier)) {
+					case Binding.ClassAlias(var clazz) -> constant(Class.class, clazz);
+					case Binding.Parameter parameter -> parameter(parameter.index());
+					case Binding binding -> throw new IllegalStateException("Identifier bound to " + binding);
+				};
+				case BinaryOperationExpression binary -> binaryNode(binary);
+				case UnaryOperationExpression(var value, var operator) -> switch (operator) {
+					case NUMERICAL_NEGATE -> combine(NEGATE, node(value));
+					case POSITIVE -> coerce(node(value), float.class);
+					case LOGICAL_NEGATE -> combine(NOT, node(value));
+					case RETURN -> {
+						jumps++;
+						yield combine(RETURN, frame(), node(value));
+					}
+				};
+				case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> {
+					final var type = expression.type(context);
+
+					yield MethodHandles.guardWithTest(
+						coerce(node(condition), boolean.class),
+						coerce(node(ifTrue), type),
+						coerce(node(ifFalse), type)
+					);
+				}
+				case ArrayAccessExpression(var array, var index) -> combine(ARRAY_GET, node(array), node(index));
+				case MethodCallExpression call -> callNode(call);
+				case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) ->
+					combine(FMA, node(multiplicand), node(multiplier), node(addend));
+				case ComplexExpression(var expressions) -> sequence(expressions);
+				case LocalStoreExpression(var id, var value) -> {
+					final var node = node(value);
+					final var type = node.type().returnType();
+					final var local = allocate(type);
+					locals.put(id, local);
+
+					yield type == float.class ?
+						combine(MethodHandles.insertArguments(STORE_FLOAT, 1, local.slot()), frame(), node) :
+						coerce(combine(MethodHandles.insertArguments(STORE_OBJECT, 1, local.slot()), frame(), node), type);
+				}
+				case LocalLoadExpression(var id, var source) -> {
+					final var local = locals.get(id);
+
+					if (local == null) {
+						throw new IllegalStateException("Local #" + id + " loaded before it was stored: " + source);
+					}
+
+					yield load(local);
+				}
+				case LoopExpression loop -> loopNode(loop);
+				case KeywordExpression keyword -> {
+					if (loops == 0) {
+						throw new IllegalStateException("Tried to " + keyword.name().toLowerCase(Locale.ROOT) + " when not inside a loop!");
+					}
+
+					jumps++;
+
+					final var jump = switch (keyword) {
+						case BREAK -> Jump.BREAK;
+						case CONTINUE -> Jump.CONTINUE;
+					};
+
+					yield frameOnly(MethodHandles.insertArguments(JUMP, 1, jump));
+				}
+			};
+		}
+
+		private MethodHandle binaryNode(final BinaryOperationExpression binary) {
+			final var left = binary.left();
+			final var right = binary.right();
+
+			return switch (binary.operator()) {
+				case SET -> setNode(binary);
+				case NULL_COALESCE -> {
+					// The left is evaluated once, and passed to both the test and the result.
+					final var test = MethodHandles.dropArguments(IS_NON_NULL, 1, parameters);
+					final var value = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, parameters);
+					final var otherwise = MethodHandles.dropArguments(coerce(node(right), Object.class), 0, Object.class);
+
+					yield MethodHandles.foldArguments(
+						MethodHandles.guardWithTest(test, value, otherwise),
+						0,
+						coerce(node(left), Object.class)
+					);
+				}
+				case CONDITIONAL -> MethodHandles.guardWithTest(
+					coerce(node(left), boolean.class),
+					coerce(node(right), void.class),
+					nothing()
+				);
+				case LOGICAL_OR -> MethodHandles.guardWithTest(
+					coerce(node(left), boolean.class),
+					constant(boolean.class, true),
+					coerce(node(right), boolean.class)
+				);
+				case LOGICAL_AND -> MethodHandles.guardWithTest(
+					coerce(node(left), boolean.class),
+					coerce(node(right), boolean.class),
+					constant(boolean.class, false)
+				);
+				case EQUAL_TO -> equal(left, right);
+				case NOT_EQUAL -> combine(NOT, equal(left, right));
+				case LESS_THAN -> combine(LESS_THAN, node(left), node(right));
+				case GREATER_THAN -> combine(GREATER_THAN, node(left), node(right));
+				case LESS_THAN_OR_EQUAL_TO -> combine(LESS_THAN_OR_EQUAL_TO, node(left), node(right));
+				case GREATER_THAN_OR_EQUAL_TO -> combine(GREATER_THAN_OR_EQUAL_TO, node(left), node(right));
+				case ADD -> combine(ADD, node(left), node(right));
+				case SUBTRACT -> combine(SUBTRACT, node(left), node(right));
+				case MULTIPLY -> combine(MULTIPLY, node(left), node(right));
+				case DIVIDE -> combine(DIVIDE, node(left), node(right));
+				case REMAINDER -> combine(REMAINDER, node(left), node(right));
+				case GET -> getNode(binary);
+				case ARROW -> throw new NotImplementedException();
+			};
+		}
+
+		/**
+		 * Compares numbers as floats, as the interpreter does, and anything else by equality.
+		 */
+		private MethodHandle equal(final Expression left, final Expression right) {
+			final var a = node(left);
+			final var b = node(right);
+
+			if (isNumeric(a.type().returnType())) {
+				return combine(EQUAL_FLOAT, a, b);
+			}
+
+			return combine(EQUAL, a, b);
+		}
+
+		private MethodHandle getNode(final BinaryOperationExpression binary) {
+			return switch (analysis.binding(binary)) {
+				// Unset temporaries read as zero, as their slots start out.
+				case Binding.Temporary(var name, var type) -> load(temporary(name, type));
+				case Binding.Variable variable when variable.parameter() == null -> readVariable(variable);
+				case Binding.Variable variable -> combine(
+					linker.getter(structField(variable)),
+					parameter(variable.parameter().index())
+				);
+				case Binding.FieldAccess(var _, var field, var hasReceiver) -> {
+					final var getter = linker.getter(field);
+
+					if (Modifier.isStatic(field.getModifiers())) {
+						yield combine(getter);
+					}
+
+					yield combine(getter, receiver(binary.left(), hasReceiver));
+				}
+				case Binding binding -> throw new IllegalStateException("Field access bound to " + binding);
+			};
+		}
+
+		private MethodHandle setNode(final BinaryOperationExpression binary) {
+			// Types a variable by its value, if this is the first assignment to it.
+			analysis.type(binary);
+
+			final var right = binary.right();
+
+			return switch (binary.left()) {
+				case BinaryOperationExpression target
+					when analysis.binding(target) instanceof Binding.Temporary(var name, var type) -> {
+					final var local = temporary(name, type);
+
+					yield local.type() == float.class ?
+						combine(MethodHandles.insertArguments(SET_FLOAT, 1, local.slot()), frame(), node(right)) :
+						combine(MethodHandles.insertArguments(SET_OBJECT, 1, local.slot()), frame(), coerce(node(right), type));
+				}
+				case BinaryOperationExpression target
+					when analysis.binding(target) instanceof Binding.Variable variable -> {
+					final var value = coerce(node(right), variable.type());
+
+					if (variable.parameter() == null) {
+						final var setter = MethodHandles.insertArguments(
+							MethodHandles.arrayElementSetter(Object[].class),
+							0,
+							variables,
+							variableSlots.get(variable.name())
+						);
+
+						yield combine(setter, value);
+					}
+
+					yield combine(
+						linker.setter(structField(variable)),
+						parameter(variable.parameter().index()),
+						value
+					);
+				}
+				case BinaryOperationExpression target -> {
+					final var field = analysis.binding(target, Binding.FieldAccess.class).field();
+					final var setter = linker.setter(field);
+
+					if (Modifier.isStatic(field.getModifiers())) {
+						yield combine(setter, node(right));
+					}
+
+					yield combine(setter, node(target.left()), node(right));
+				}
+				case ArrayAccessExpression(var array, var index) ->
+					combine(ARRAY_SET, node(array), node(index), node(right));
+				default -> throw new IllegalStateException("Cannot assign to " + binary.left());
+			};
+		}
+
+		private MethodHandle readVariable(final Binding.Variable variable) {
+			final var getter = MethodHandles.insertArguments(
+				MethodHandles.arrayElementGetter(Object[].class),
+				0,
+				variables,
+				variableSlots.get(variable.name())
+			);
+
+			return coerce(combine(getter), variable.type());
+		}
+
+		private MethodHandle callNode(final MethodCallExpression call) {
+			final var invocation = analysis.binding(call, Binding.Invocation.class);
+			final var method = invocation.method();
+			final var operands = new ArrayList<MethodHandle>();
+
+			if (!Modifier.isStatic(method.getModifiers())) {
+				operands.add(receiver(((BinaryOperationExpression) call.method()).left(), invocation.hasReceiver()));
+			}
+
+			for (final var parameter : call.parameters()) {
+				operands.add(node(parameter));
+			}
+
+			return combine(linker.invoker(method), operands.toArray(MethodHandle[]::new));
+		}
+
+		/**
+		 * @param hasReceiver Whether the receiver is evaluated, rather than being a class alias resolved statically.
+		 */
+		private MethodHandle receiver(final Expression receiver, final boolean hasReceiver) {
+			return hasReceiver ? node(receiver) : constant(Object.class, null);
+		}
+
+		/**
+		 * Runs each statement in turn, skipping the rest once one that may jump has.
+		 */
+		private MethodHandle sequence(final List<Expression> expressions) {
+			final var statements = new MethodHandle[expressions.size()];
+			final var mayJump = new boolean[statements.length];
+
+			for (int i = 0; i < statements.length; i++) {
+				final int before = jumps;
+				statements[i] = coerce(node(expressions.get(i)), void.class);
+				mayJump[i] = jumps != before;
+			}
+
+			var rest = nothing();
+
+			for (int i = statements.length - 1; i >= 0; i--) {
+				if (mayJump[i] && i < statements.length - 1) {
+					rest = MethodHandles.guardWithTest(frameOnly(IS_RUNNING), rest, nothing());
+				}
+
+				rest = MethodHandles.foldArguments(rest, 0, statements[i]);
+			}
+
+			return rest;
+		}
+
+		/**
+		 * Counts up to the clamped count, evaluated once, after running the preheader if there's at least one iteration.
+		 * Counted loops can't exit early, so the iterations after a {@code break} or {@code return} are skipped instead.
+		 */
+		private MethodHandle loopNode(final LoopExpression loop) {
+			final var limit = combine(
+				MethodHandles.insertArguments(LIMIT, 1, context.options().maxLoopIterations()),
+				node(loop.count())
+			);
+			final var preheader = sequence(loop.preheader());
+
+			loops++;
+			final var body = coerce(node(loop.body()), void.class);
+			loops--;
+
+			// Each iteration clears a continue, so the next runs.
+			final var iteration = MethodHandles.guardWithTest(
+				frameOnly(IS_RUNNING),
+				MethodHandles.foldArguments(frameOnly(END_ITERATION), 0, body),
+				nothing()
+			);
+
+			// Takes the limit ahead of the frame and parameters, as the count of the loop.
+			final var counted = MethodHandles.countedLoop(
+				MethodHandles.dropArguments(MethodHandles.identity(int.class), 1, parameters),
+				null,
+				MethodHandles.dropArguments(iteration, 0, int.class, int.class)
+			);
+
+			final var guardedPreheader = MethodHandles.guardWithTest(
+				MethodHandles.dropArguments(IS_POSITIVE, 1, parameters),
+				MethodHandles.dropArguments(preheader, 0, int.class),
+				MethodHandles.dropArguments(nothing(), 0, int.class)
+			);
+
+			final var run = MethodHandles.foldArguments(
+				MethodHandles.foldArguments(MethodHandles.dropArguments(frameOnly(END_LOOP), 0, int.class), 0, counted),
+				0,
+				guardedPreheader
+			);
+
+			return MethodHandles.foldArguments(run, 0, limit);
+		}
+
+		private LocalSlot temporary(final String name, final Class<?> type) {
+			return temporaries.computeIfAbsent(name, _ -> allocate(type));
+		}
+
+		private LocalSlot allocate(final Class<?> type) {
+			if (type == float.class) {
+				return new LocalSlot(floats++, type);
+			}
+
+			objects.add(zero(type));
+			return new LocalSlot(objects.size() - 1, type);
+		}
+
+		private MethodHandle load(final LocalSlot local) {
+			if (local.type() == float.class) {
+				return frameOnly(MethodHandles.insertArguments(GET_FLOAT, 1, local.slot()));
+			}
+
+			return coerce(frameOnly(MethodHandles.insertArguments(GET_OBJECT, 1, local.slot())), local.type());
+		}
+
+		/**
+		 * Calls the operation with each operand, evaluated in order.
+		 * Each operand takes the frame and parameters, and is coerced to the operation's parameter,
+		 * so that the result takes only the frame and parameters.
+		 */
+		private MethodHandle combine(final MethodHandle operation, final MethodHandle... operands) {
+			final var type = operation.type();
+			var result = MethodHandles.dropArguments(operation, type.parameterCount(), parameters);
+
+			for (int i = operands.length - 1; i >= 0; i--) {
+				result = MethodHandles.foldArguments(result, i, coerce(operands[i], type.parameterType(i)));
+			}
+
+			return result;
+		}
+
+		/**
+		 * @return The handle converted to return the given type, by the same lenient rules as the interpreter.
+		 */
+		private MethodHandle coerce(final MethodHandle handle, final Class<?> type) {
+			final var from = handle.type().returnType();
+
+			if (from == type) {
+				return handle;
+			}
+
+			if (type == void.class) {
+				return handle.asType(handle.type().changeReturnType(void.class));
+			}
+
+			if (from == void.class) {
+				return MethodHandles.filterReturnValue(handle, MethodHandles.zero(type));
+			}
+
+			if (type == boolean.class) {
+				return from.isPrimitive() ?
+					MethodHandles.filterReturnValue(coerce(handle, float.class), CAST_TO_BOOLEAN) :
+					MethodHandles.filterReturnValue(coerce(handle, Object.class), UNBOX_AS_BOOLEAN);
+			}
+
+			if (type.isPrimitive() && from.isPrimitive()) {
+				// Booleans are cast as one or zero.
+				return MethodHandles.explicitCastArguments(handle, handle.type().changeReturnType(type));
+			}
+
+			if (type == float.class) {
+				return MethodHandles.filterReturnValue(coerce(handle, Object.class), UNBOX_AS_FLOAT);
+			}
+
+			if (type == Object.class || (!from.isPrimitive() && type.isAssignableFrom(from))) {
+				return handle.asType(handle.type().changeReturnType(type));
+			}
+
+			final var converted = MethodHandles.filterReturnValue(
+				coerce(handle, Object.class),
+				MethodHandles.insertArguments(CONVERT, 1, type)
+			);
+
+			return converted.asType(converted.type().changeReturnType(type));
+		}
+
+		private MethodHandle constant(final Class<?> type, final @Nullable Object value) {
+			return MethodHandles.dropArguments(MethodHandles.constant(type, value), 0, parameters);
+		}
+
+		private MethodHandle parameter(final int index) {
+			final var type = parameters.get(index + 1);
+			return MethodHandles.permuteArguments(MethodHandles.identity(type), parameterTypes(type), index + 1);
+		}
+
+		private MethodHandle frame() {
+			return MethodHandles.permuteArguments(MethodHandles.identity(Frame.class), parameterTypes(Frame.class), 0);
+		}
+
+		/**
+		 * @param handle A handle taking only the frame.
+		 */
+		private MethodHandle frameOnly(final MethodHandle handle) {
+			return MethodHandles.dropArguments(handle, 1, parameters.subList(1, parameters.size()));
+		}
+
+		private MethodHandle nothing() {
+			return MethodHandles.empty(parameterTypes(void.class));
+		}
+
+		private MethodType parameterTypes(final Class<?> returnType) {
+			return MethodType.methodType(returnType, parameters);
+		}
+
+		private static boolean isNumeric(final Class<?> type) {
+			return type.isPrimitive() && type != boolean.class && type != void.class;
+		}
+
+		private static Field structField(final Binding.Variable variable) {
+			try {
+				return variable.parameter().type().getField(variable.field());
+			} catch (NoSuchFieldException exception) {
+				throw new IllegalStateException("Cannot access " + variable + " on " + variable.parameter().type(), exception);
+			}
+		}
+	}
+
+	private static float add(final float a, final float b) {
+		return a + b;
+	}
+
+	private static float subtract(final float a, final float b) {
+		return a - b;
+	}
+
+	private static float multiply(final float a, final float b) {
+		return a * b;
+	}
+
+	private static float divide(final float a, final float b) {
+		return a / b;
+	}
+
+	private static float remainder(final float a, final float b) {
+		return a % b;
+	}
+
+	private static float negate(final float value) {
+		return -value;
+	}
+
+	private static boolean lessThan(final float a, final float b) {
+		return a < b;
+	}
+
+	private static boolean greaterThan(final float a, final float b) {
+		return a > b;
+	}
+
+	private static boolean lessThanOrEqualTo(final float a, final float b) {
+		return a <= b;
+	}
+
+	private static boolean greaterThanOrEqualTo(final float a, final float b) {
+		return a >= b;
+	}
+
+	private static boolean equal(final float a, final float b) {
+		return a == b;
+	}
+
+	private static boolean equal(final @Nullable Object a, final @Nullable Object b) {
+		if (a instanceof Number || a instanceof Boolean) {
+			return Primitives.unboxAsFloatLenient(a) == Primitives.unboxAsFloatLenient(b);
+		}
+
+		return Objects.equals(a, b);
+	}
+
+	private static boolean not(final boolean value) {
+		return !value;
+	}
+
+	private static boolean isNonNull(final @Nullable Object value) {
+		return value != null;
+	}
+
+	private static Object arrayGet(final Object array, final float index) {
+		return Array.get(array, wrapIndex(array, (int) index));
+	}
+
+	private static void arraySet(final Object array, final float index, final @Nullable Object value) {
+		Array.set(array, wrapIndex(array, (int) index), MolangInterpreter.convert(value, array.getClass().componentType()));
+	}
+
+	private static int limit(final float count, final int maxLoopIterations) {
+		return Math.min((int) count, maxLoopIterations);
+	}
+
+	private static boolean isPositive(final int value) {
+		return value > 0;
+	}
+
+	private static Frame newFrame(final int floats, final @Nullable Object[] objects) {
+		return new Frame(new float[floats], objects.clone());
+	}
+
+	private static float getFloat(final Frame frame, final int slot) {
+		return frame.floats[slot];
+	}
+
+	private static void setFloat(final Frame frame, final int slot, final float value) {
+		frame.floats[slot] = value;
+	}
+
+	private static float storeFloat(final Frame frame, final int slot, final float value) {
+		return frame.floats[slot] = value;
+	}
+
+	private static @Nullable Object getObject(final Frame frame, final int slot) {
+		return frame.objects[slot];
+	}
+
+	private static void setObject(final Frame frame, final int slot, final @Nullable Object value) {
+		frame.objects[slot] = value;
+	}
+
+	private static @Nullable Object storeObject(final Frame frame, final int slot, final @Nullable Object value) {
+		return frame.objects[slot] = value;
+	}
+
+	private static void return_(final Frame frame, final @Nullable Object value) {
+		frame.returned = value;
+		frame.jump = Jump.RETURN;
+	}
+
+	private static @Nullable Object returned(final Frame frame) {
+		return frame.jump == Jump.RETURN ? frame.returned : null;
+	}
+
+	private static void jump(final Frame frame, final Jump jump) {
+		frame.jump = jump;
+	}
+
+	private static boolean isRunning(final Frame frame) {
+		return frame.jump == null;
+	}
+
+	private static void endIteration(final Frame frame) {
+		if (frame.jump == Jump.CONTINUE) {
+			frame.jump = null;
+		}
+	}
+
+	private static void endLoop(final Frame frame) {
+		if (frame.jump == Jump.BREAK) {
+			frame.jump = null;
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package dev.spiritstudios.mojank.compile;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A call site for a call or field read with a receiver, emitted as {@code invokedynamic}
+ * when {@link CompileOptions#inlineCaches()} is set.
+ * <p>
+ * The site starts out unlinked, and links itself to each receiver class it sees, testing the exact class
+ * and calling straight through to that class' implementation, for up to {@link #MAX_RECEIVERS} classes.
+ * Past that, it is megamorphic, and links for good to the plain virtual call it replaced.
+ * Unlike the shared profile of a single {@code invokevirtual} in the expression,
+ * every expression keeps its own cache, so one that only ever sees a single kind of entity stays monomorphic
+ * however many kinds the query interface has.
+ * <p>
+ * Each site counts the receivers it linked against, which {@link #statistics()} reports for every live site.
+ * Calls that hit the cache aren't counted, so as not to slow them down.
+ */
+public final class InlineCache extends MutableCallSite {
+	/**
+	 * Bimorphic, as the JIT's own inline caches are.
+	 */
+	public static final int MAX_RECEIVERS = 2;
+
+	private static final MethodHandle MISS;
+	private static final MethodHandle IS_CLASS;
+
+	private static final Set<Reference<InlineCache>> SITES = ConcurrentHashMap.newKeySet();
+	// Sites that have been collected, so that their references can be dropped without scanning every site.
+	private static final ReferenceQueue<InlineCache> COLLECTED = new ReferenceQueue<>();
+
+	static {
+		try {
+			final var lookup = MethodHandles.lookup();
+			MISS = lookup.findVirtual(InlineCache.class, "miss", MethodType.methodType(Object.class, Object[].class));
+			IS_CLASS = lookup.findStatic(
+				InlineCache.class,
+				"isClass",
+				MethodType.methodType(boolean.class, Class.class, Object.class)
+			);
+		} catch (ReflectiveOperationException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+
+	private final MethodHandles.Lookup lookup;
+	private final String name;
+	private final MethodHandle generic;
+	private final boolean virtual;
+	private final Map<Class<?>, Long> receivers = new LinkedHashMap<>();
+	private State state = State.UNLINKED;
+
+	private InlineCache(final MethodHandles.Lookup lookup, final String name, final MethodType type, final MethodHandle generic) {
+		super(type);
+		this.lookup = lookup;
+		this.name = name;
+		this.generic = generic.asType(type);
+		this.virtual = lookup.revealDirect(generic).getReferenceKind() != MethodHandleInfo.REF_getField;
+
+		setTarget(MISS.bindTo(this).asCollector(Object[].class, type.parameterCount()).asType(type));
+	}
+
+	/**
+	 * The bootstrap method of every inline cache.
+	 *
+	 * @param name   The name of the method or field, for {@link #statistics()}.
+	 * @param type   The receiver followed by the arguments, if any.
+	 * @param target The method or getter that would have been invoked without the cache.
+	 */
+	public static CallSite bootstrap(
+		final MethodHandles.Lookup lookup,
+		final String name,
+		final MethodType type,
+		final MethodHandle target
+	) {
+		final var site = new InlineCache(lookup, name, type, target);
+
+		purge();
+		SITES.add(new WeakReference<>(site, COLLECTED));
+
+		return site;
+	}
+
+	/**
+	 * @return The receivers seen by every site that is still reachable.
+	 */
+	public static List<Statistics> statistics() {
+		purge();
+
+		final var statistics = new ArrayList<Statistics>();
+
+		for (final var reference : SITES) {
+			final var site = reference.get();
+
+			if (site != null) {
+				statistics.add(site.snapshot());
+			}
+		}
+
+		return statistics;
+	}
+
+	private static void purge() {
+		Reference<? extends InlineCache> reference;
+
+		while ((reference = COLLECTED.poll()) != null) {
+			SITES.remove(reference);
+		}
+	}
+
+	private synchronized Statistics snapshot() {
+		return new Statistics(name, type(), state, Map.copyOf(receivers));
+	}
+
+	private static boolean isClass(final Class<?> clazz, final Object receiver) {
+		return receiver != null && receiver.getClass() == clazz;
+	}
+
+	private Object miss(final Object[] arguments) throws Throwable {
+		final var receiver = arguments[0];
+
+		// Left to the generic call to throw, as it would have without the cache.
+		if (receiver == null) {
+			return generic.invokeWithArguments(arguments);
+		}
+
+		// Invoked outside the lock, so that a slow or reentrant call doesn't hold up other threads missing this site.
+		return link(receiver.getClass()).invokeWithArguments(arguments);
+	}
+
+	/**
+	 * @return The target to invoke for the receiver class, now that it has been linked.
+	 */
+	private synchronized MethodHandle link(final Class<?> clazz) {
+		receivers.merge(clazz, 1L, Long::sum);
+
+		// Another thread may have already linked the class, in which case the cache just didn't see it yet.
+		if (state != State.MEGAMORPHIC && receivers.get(clazz) == 1) {
+			if (receivers.size() > MAX_RECEIVERS) {
+				state = State.MEGAMORPHIC;
+				setTarget(generic);
+			} else {
+				state = receivers.size() == 1 ? State.MONOMORPHIC : State.BIMORPHIC;
+				setTarget(MethodHandles.guardWithTest(guard(clazz), specialise(clazz), getTarget()));
+			}
+		}
+
+		return getTarget();
+	}
+
+	private MethodHandle guard(final Class<?> clazz) {
+		final var type = type();
+
+		return MethodHandles.dropArguments(
+			IS_CLASS.bindTo(clazz).asType(MethodType.methodType(boolean.class, type.parameterType(0))),
+			1,
+			type.parameterList().subList(1, type.parameterCount())
+		);
+	}
+
+	/**
+	 * Resolves the method against the receiver's own class, so the call it links is to a single known implementation.
+	 * Fields aren't virtual, and neither are methods on classes the expression can't see, so those keep the generic target,
+	 * only with the receiver cast to its exact class.
+	 */
+	private MethodHandle specialise(final Class<?> clazz) {
+		final var type = type();
+		final var exact = type.changeParameterType(0, clazz);
+
+		if (virtual) {
+			try {
+				return lookup.findVirtual(clazz, name, exact.dropParameterTypes(0, 1)).asType(type);
+			} catch (ReflectiveOperationException | IllegalArgumentException _) {
+				// Fall through to the generic target.
+			}
+		}
+
+		return generic.asType(exact).asType(type);
+	}
+
+	/**
+	 * How many times each receiver class missed the cache of a single site.
+	 * The first miss of each class links it, so any more are from threads that raced to link it.
+	 */
+	public record Statistics(String name, MethodType type, State state, Map<Class<?>, Long> receivers) {
+	}
+
+	public enum State {
+		UNLINKED,
+		MONOMORPHIC,
+		BIMORPHIC,
+		MEGAMORPHIC
+	}
+}
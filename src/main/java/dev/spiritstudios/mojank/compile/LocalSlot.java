@@ -0,0 +1,7 @@
+package dev.spiritstudios.mojank.compile;
+
+/**
+ * A JVM local allocated by the compiler to hold an intermediate value.
+ */
+public record LocalSlot(int slot, Class<?> type) {
+}
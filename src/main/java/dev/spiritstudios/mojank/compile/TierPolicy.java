@@ -0,0 +1,113 @@
+package dev.spiritstudios.mojank.compile;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * When and where a {@link ExpressionHandle#tiered tiered} handle compiles its expression.
+ *
+ * @param threshold How many interpreted calls a handle takes before it compiles. Zero compiles on the first call.
+ *                  Larger thresholds are only checked every few calls, so may be passed by a few.
+ * @param executor  Where expressions are compiled, off the calling thread.
+ * @param listener  Told of every handle that changes tier.
+ */
+public record TierPolicy(int threshold, Executor executor, Listener listener) {
+	/**
+	 * Enough calls that an expression run once or twice per reload never compiles.
+	 */
+	public static final int DEFAULT_THRESHOLD = 256;
+
+	public static final TierPolicy DEFAULT = new TierPolicy(DEFAULT_THRESHOLD, ForkJoinPool.commonPool(), Listener.NONE);
+
+	public TierPolicy {
+		Objects.requireNonNull(executor, "executor");
+		Objects.requireNonNull(listener, "listener");
+
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+		}
+	}
+
+	public TierPolicy withThreshold(final int threshold) {
+		return new TierPolicy(threshold, executor, listener);
+	}
+
+	public TierPolicy withExecutor(final Executor executor) {
+		return new TierPolicy(threshold, executor, listener);
+	}
+
+	public TierPolicy withListener(final Listener listener) {
+		return new TierPolicy(threshold, executor, listener);
+	}
+
+	public enum Tier {
+		/**
+		 * Evaluated by the {@link dev.spiritstudios.mojank.MolangInterpreter}, counting calls towards the threshold.
+		 */
+		INTERPRETED,
+		/**
+		 * Past the threshold, and still interpreted while it's compiled.
+		 */
+		COMPILING,
+		COMPILED,
+		/**
+		 * Failed to compile, so stays interpreted for good.
+		 */
+		FAILED
+	}
+
+	@FunctionalInterface
+	public interface Listener {
+		Listener NONE = (_, _, _) -> {
+		};
+
+		/**
+		 * Called on whichever thread made the change, which for {@link Tier#COMPILED} is the {@link #executor()}.
+		 */
+		void transition(ExpressionHandle<?> handle, Tier from, Tier to);
+	}
+
+	/**
+	 * Counts how many handles moved into each tier, for whichever policies it listens to.
+	 */
+	public static final class Metrics implements Listener {
+		private final Map<Tier, LongAdder> entered = new EnumMap<>(Tier.class);
+
+		public Metrics() {
+			for (final var tier : Tier.values()) {
+				entered.put(tier, new LongAdder());
+			}
+		}
+
+		@Override
+		public void transition(final ExpressionHandle<?> handle, final Tier from, final Tier to) {
+			entered.get(to).increment();
+		}
+
+		/**
+		 * How many handles have moved into the tier, including any that have since left it.
+		 */
+		public long entered(final Tier tier) {
+			return entered.get(tier).sum();
+		}
+
+		@Override
+		public String toString() {
+			final var builder = new StringBuilder("TierPolicy.Metrics[");
+
+			for (final var tier : Tier.values()) {
+				if (tier.ordinal() > 0) {
+					builder.append(", ");
+				}
+
+				builder.append(tier).append('=').append(entered(tier));
+			}
+
+			return builder.append(']').toString();
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package dev.spiritstudios.mojank.compile;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Off-heap storage for the variables of a fixed number of entities,
+ * each of which is a fixed-stride slice of one {@link MemorySegment} laid out by {@link #layout(VariableSchema)}.
+ * <p>
+ * Targets that take their variables as an {@code int} are handed the entity's index into the arena,
+ * and read and write its variables through {@link #handle var handles} at offsets fixed when compiling,
+ * so the only per-entity cost is its share of the segment, with no object header and nothing for the GC to trace.
+ * <p>
+ * Expressions are bound to the arena they were compiled against, which they hold as a constant;
+ * compile against another arena with the same schema to share the class bytes but not the storage.
+ * Indices are only bounds checked against the segment as a whole.
+ */
+public final class VariableArena implements AutoCloseable {
+	private final VariableSchema schema;
+	private final StructLayout layout;
+	private final int capacity;
+	private final Arena arena;
+	private final MemorySegment segment;
+
+	/**
+	 * Allocates zeroed storage for the given number of entities, which is shared between threads.
+	 */
+	public VariableArena(final VariableSchema schema, final int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+		}
+
+		this.schema = Objects.requireNonNull(schema, "schema");
+		this.layout = layout(schema);
+		this.capacity = capacity;
+		this.arena = Arena.ofShared();
+		this.segment = arena.allocate(layout.byteSize() * capacity, layout.byteAlignment());
+	}
+
+	/**
+	 * Lays out a single entity's variables, largest first so that each is naturally aligned without padding between them.
+	 * The layout is padded at the end to a multiple of its alignment, so that it may be repeated.
+	 *
+	 * @throws IllegalArgumentException If any variable isn't primitive, which can't be stored off-heap.
+	 */
+	public static StructLayout layout(final VariableSchema schema) {
+		final var members = new ArrayList<>(schema.members().entrySet());
+		members.sort(
+			Comparator.<Map.Entry<String, Class<?>>>comparingLong(entry -> valueLayout(entry.getValue()).byteSize())
+				.reversed()
+				.thenComparing(Map.Entry::getKey)
+		);
+
+		final var elements = new ArrayList<MemoryLayout>(members.size() + 1);
+		long size = 0;
+		long alignment = 1;
+
+		for (final var member : members) {
+			final var element = valueLayout(member.getValue()).withName(member.getKey());
+			elements.add(element);
+			size += element.byteSize();
+			alignment = Math.max(alignment, element.byteAlignment());
+		}
+
+		if (size % alignment != 0) {
+			elements.add(MemoryLayout.paddingLayout(alignment - size % alignment));
+		}
+
+		return MemoryLayout.structLayout(elements.toArray(MemoryLayout[]::new));
+	}
+
+	/**
+	 * The handle compiled expressions access variables of the given type through,
+	 * with coordinates of the segment and the byte offset into it.
+	 */
+	public static VarHandle handle(final Class<?> type) {
+		return valueLayout(type).varHandle();
+	}
+
+	static ValueLayout valueLayout(final Class<?> type) {
+		if (type == boolean.class) return ValueLayout.JAVA_BOOLEAN;
+		if (type == byte.class) return ValueLayout.JAVA_BYTE;
+		if (type == short.class) return ValueLayout.JAVA_SHORT;
+		if (type == char.class) return ValueLayout.JAVA_CHAR;
+		if (type == int.class) return ValueLayout.JAVA_INT;
+		if (type == long.class) return ValueLayout.JAVA_LONG;
+		if (type == float.class) return ValueLayout.JAVA_FLOAT;
+		if (type == double.class) return ValueLayout.JAVA_DOUBLE;
+
+		throw new IllegalArgumentException("Only primitive variables can be stored off-heap, not " + type);
+	}
+
+	/**
+	 * The byte offset of the variable within each entity's slice.
+	 */
+	static long offset(final StructLayout layout, final String name) {
+		return layout.byteOffset(MemoryLayout.PathElement.groupElement(name));
+	}
+
+	public VariableSchema schema() {
+		return schema;
+	}
+
+	public StructLayout layout() {
+		return layout;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public MemorySegment segment() {
+		return segment;
+	}
+
+	/**
+	 * The variables of a single entity, laid out by {@link #layout()}.
+	 */
+	public MemorySegment slice(final int index) {
+		return segment.asSlice(Objects.checkIndex(index, capacity) * layout.byteSize(), layout);
+	}
+
+	/**
+	 * Resets every variable of the entity to zero, such as when its index is reused for another.
+	 */
+	public void clear(final int index) {
+		slice(index).fill((byte) 0);
+	}
+
+	/**
+	 * Frees the storage. Expressions compiled against the arena must not be invoked afterwards.
+	 */
+	@Override
+	public void close() {
+		arena.close();
+	}
+
+	@Override
+	public String toString() {
+		// Identity isn't part of it; the compiled bytes only depend on the layout.
+		return "VariableArena[schema=" + schema + ", capacity=" + capacity + ']';
+	}
+}
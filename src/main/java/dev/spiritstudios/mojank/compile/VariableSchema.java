@@ -0,0 +1,194 @@
+package dev.spiritstudios.mojank.compile;
+
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.compile.link.Variables;
+import dev.spiritstudios.mojank.compile.optimise.Temporaries;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.classfile.ClassFile;
+import java.lang.constant.ClassDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessFlag;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static dev.spiritstudios.mojank.compile.Descriptors.desc;
+import static java.lang.constant.ConstantDescs.CD_Object;
+import static java.lang.constant.ConstantDescs.INIT_NAME;
+import static java.lang.constant.ConstantDescs.MTD_void;
+
+/**
+ * The name and type of every variable accessed by a set of expressions through their {@link Variables} scopes.
+ * <p>
+ * A schema defines a struct with a public field per variable, which expressions compiled against it
+ * read and write with plain {@code getfield} and {@code putfield}, rather than through a map of boxed values.
+ * Targets that take their variables as a parameter must be handed instances of that struct,
+ * so every expression sharing a struct must be compiled against the same schema.
+ * <p>
+ * Within each expression, a variable takes the type of the first value assigned to it, or float if it's read first.
+ * Where expressions disagree, primitives widen to float, and anything else to {@link Object}.
+ * <p>
+ * Schemas are compared by their members, so are safe to use as part of a cache key.
+ * Each distinct schema defines one class, which lives as long as the loader it's {@link #define defined} into.
+ *
+ * @param members Every variable, by name, in name order.
+ */
+public record VariableSchema(Map<String, Class<?>> members) {
+	private static final String STRUCT_PREFIX = "MolangVariables$";
+
+	public VariableSchema {
+		members = Collections.unmodifiableMap(new TreeMap<>(members));
+	}
+
+	/**
+	 * Collects the variables accessed by every expression, as compiled for the given functional interface.
+	 */
+	public static VariableSchema analyse(
+		final Linker linker,
+		final Class<?> targetClass,
+		final Collection<? extends Expression> expressions
+	) {
+		final Method targetMethod = linker.tryFunctionalClass(targetClass)
+			.orElseThrow(() -> new IllegalArgumentException("'" + targetClass + "' is not a valid functional interface"));
+
+		return analyse(linker, targetMethod, expressions);
+	}
+
+	static VariableSchema analyse(
+		final Linker linker,
+		final Method targetMethod,
+		final Collection<? extends Expression> expressions
+	) {
+		final var members = new TreeMap<String, Class<?>>();
+
+		for (final var expression : expressions) {
+			final var context = new CompileContext(linker, targetMethod);
+			Temporaries.declare(expression, context);
+
+			context.analysis().variables().forEach((name, type) -> members.merge(name, type, VariableSchema::unify));
+		}
+
+		return new VariableSchema(members);
+	}
+
+	static Class<?> unify(final Class<?> a, final Class<?> b) {
+		if (a == b) {
+			return a;
+		}
+
+		return a.isPrimitive() && b.isPrimitive() ? float.class : Object.class;
+	}
+
+	/**
+	 * @return The parameter the target's variables are passed in through, or null if it doesn't take them as one.
+	 * @throws IllegalArgumentException If the parameter is neither an {@link Object}, for a struct,
+	 *                                  nor an {@code int}, for an index into a {@link VariableArena}.
+	 */
+	static @Nullable IndexedParameter parameter(final Method targetMethod) {
+		final var parameters = targetMethod.getParameters();
+
+		for (int i = 0; i < parameters.length; i++) {
+			if (!parameters[i].isAnnotationPresent(Variables.class)) {
+				continue;
+			}
+
+			if (parameters[i].getType() != Object.class && parameters[i].getType() != int.class) {
+				throw new IllegalArgumentException("Variables must be passed as an Object or an int index: " + parameters[i]);
+			}
+
+			return new IndexedParameter(parameters[i], i + 1);
+		}
+
+		return null;
+	}
+
+	public boolean isEmpty() {
+		return members.isEmpty();
+	}
+
+	/**
+	 * Defines the struct for this schema into the package of the lookup, or finds it if it's already defined.
+	 * <p>
+	 * The struct is an ordinary class rather than a hidden one, as compiled expressions must be able to name it,
+	 * and is named after its members, so identical schemas share one struct however many times they're analysed.
+	 * <p>
+	 * Being ordinary, a struct is only unloaded along with the class loader of the lookup's class,
+	 * so every distinct schema defined through a long-lived loader stays for good.
+	 * Callers that reload expressions whose variables change should compile them through a lookup on a class
+	 * of a loader they own and drop together with the expressions, such as one per resource reload.
+	 *
+	 * @param lookup A lookup with {@link MethodHandles.Lookup#PACKAGE package} access,
+	 *               whose class's loader and package the struct is defined into.
+	 * @return The struct, which has a public no-arg constructor.
+	 */
+	public Class<?> define(final MethodHandles.Lookup lookup) throws IllegalAccessException {
+		final var packageName = lookup.lookupClass().getPackageName();
+		final var binaryName = packageName.isEmpty() ? structName() : packageName + '.' + structName();
+
+		try {
+			return lookup.findClass(binaryName);
+		} catch (ClassNotFoundException ignored) {
+			// Not yet defined.
+		}
+
+		try {
+			return lookup.defineClass(bytecode(structDesc(packageName)));
+		} catch (LinkageError error) {
+			// Another thread got there first.
+			try {
+				return lookup.findClass(binaryName);
+			} catch (ClassNotFoundException exception) {
+				error.addSuppressed(exception);
+				throw error;
+			}
+		}
+	}
+
+	/**
+	 * The struct as {@link #define} would name it in the given package.
+	 */
+	public ClassDesc structDesc(final String packageName) {
+		return ClassDesc.of(packageName, structName());
+	}
+
+	private String structName() {
+		final MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException exception) {
+			throw new AssertionError("SHA-256 is required to be supported", exception);
+		}
+
+		final byte[] hash = digest.digest(toString().getBytes(StandardCharsets.UTF_8));
+
+		return STRUCT_PREFIX + HexFormat.of().formatHex(hash, 0, 8);
+	}
+
+	private byte[] bytecode(final ClassDesc self) {
+		return ClassFile.of().build(self, cb -> {
+			cb.withFlags(AccessFlag.PUBLIC, AccessFlag.FINAL);
+
+			members.forEach((name, type) -> cb.withField(name, desc(type), ClassFile.ACC_PUBLIC));
+
+			// Fields are left at their defaults, which is how unset variables read.
+			cb.withMethodBody(
+				INIT_NAME,
+				MTD_void,
+				ClassFile.ACC_PUBLIC,
+				cob -> cob
+					.aload(0)
+					.invokespecial(CD_Object, INIT_NAME, MTD_void)
+					.return_()
+			);
+		});
+	}
+}
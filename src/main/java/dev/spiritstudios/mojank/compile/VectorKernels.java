@@ -0,0 +1,271 @@
+package dev.spiritstudios.mojank.compile;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.util.List;
+
+import static java.lang.constant.ConstantDescs.CD_float;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_void;
+
+/**
+ * Emits the main loop of a {@link BatchKernel} on the Vector API, evaluating as many elements at once
+ * as {@code FloatVector.SPECIES_PREFERRED} has lanes, and leaving the rest to the scalar loop that follows it.
+ * Both loops are given the same optimised tree, so they agree on every element.
+ * <p>
+ * Only float arithmetic and comparisons over float columns are vectorised: arithmetic maps to the lanewise operations,
+ * comparisons to {@code VectorMask}s, and ternaries to blends under their condition's mask.
+ * Both branches of a ternary, and both sides of {@code &&} and {@code ||}, are evaluated in every lane,
+ * which is only safe as nothing vectorised has side effects.
+ * Expressions with anything else, such as calls, statements or loops, are left entirely to the scalar loop.
+ * <p>
+ * The Vector API is still incubating, so is only referred to from the generated code,
+ * and only used if the {@code jdk.incubator.vector} module was added to the boot layer.
+ */
+final class VectorKernels {
+	private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	private static final String PACKAGE = "jdk.incubator.vector";
+
+	private static final ClassDesc CD_FloatVector = ClassDesc.of(PACKAGE, "FloatVector");
+	private static final ClassDesc CD_Vector = ClassDesc.of(PACKAGE, "Vector");
+	private static final ClassDesc CD_VectorMask = ClassDesc.of(PACKAGE, "VectorMask");
+	private static final ClassDesc CD_VectorSpecies = ClassDesc.of(PACKAGE, "VectorSpecies");
+	private static final ClassDesc CD_VectorOperators = ClassDesc.of(PACKAGE, "VectorOperators");
+	private static final ClassDesc CD_Comparison = ClassDesc.of(PACKAGE, "VectorOperators$Comparison");
+
+	private static final MethodTypeDesc MTD_lanewise = MethodTypeDesc.of(CD_FloatVector, CD_Vector);
+	private static final MethodTypeDesc MTD_mask = MethodTypeDesc.of(CD_VectorMask, CD_VectorMask);
+
+	private VectorKernels() {
+	}
+
+	private enum Lane {
+		VECTOR,
+		MASK
+	}
+
+	/**
+	 * @return Whether the expression, with its columns already {@link dev.spiritstudios.mojank.compile.optimise.Columns extracted},
+	 * can be vectorised for a target returning the given type.
+	 */
+	static boolean supports(final Expression expression, final List<BatchKernel.Column> columns, final Class<?> returnType) {
+		return AVAILABLE && returnType == float.class && lane(unwrap(expression), columns) != null;
+	}
+
+	/**
+	 * Emits the vector loop, which advances {@code index} to the first element left for the scalar loop.
+	 *
+	 * @param arrays The locals holding each column's array.
+	 */
+	static void writeLoop(
+		final CodeBuilder builder,
+		final Expression expression,
+		final List<BatchKernel.Column> columns,
+		final int[] arrays,
+		final int output,
+		final int index,
+		final int count
+	) {
+		final var body = unwrap(expression);
+		final int bound = builder.allocateLocal(TypeKind.INT);
+
+		loadSpecies(builder);
+		builder
+			.iload(count)
+			.invokeinterface(CD_VectorSpecies, "loopBound", MethodTypeDesc.of(CD_int, CD_int))
+			.istore(bound);
+
+		final var head = builder.newBoundLabel();
+		final var end = builder.newLabel();
+
+		builder
+			.iload(index)
+			.iload(bound)
+			.if_icmpge(end);
+
+		if (emit(body, columns, arrays, index, builder) == Lane.MASK) {
+			// Masks become the floats the scalar code would have cast the boolean to.
+			broadcast(0F, builder);
+			builder.swap();
+			broadcast(1F, builder);
+			builder
+				.swap()
+				.invokevirtual(CD_FloatVector, "blend", MethodTypeDesc.of(CD_FloatVector, CD_Vector, CD_VectorMask));
+		}
+
+		builder
+			.aload(output)
+			.iload(index)
+			.invokevirtual(CD_FloatVector, "intoArray", MethodTypeDesc.of(CD_void, CD_float.arrayType(), CD_int))
+			.iload(index);
+
+		loadSpecies(builder);
+		builder
+			.invokeinterface(CD_VectorSpecies, "length", MethodTypeDesc.of(CD_int))
+			.iadd()
+			.istore(index)
+			.goto_(head)
+			.labelBinding(end);
+	}
+
+	/**
+	 * A lone {@code return}, as parsed from a single expression, is just its value.
+	 */
+	private static Expression unwrap(final Expression expression) {
+		return switch (expression) {
+			case ComplexExpression(var statements) when statements.size() == 1 -> unwrap(statements.getFirst());
+			case UnaryOperationExpression(var value, var operator) when operator == UnaryOperationExpression.Operator.RETURN ->
+				value;
+			default -> expression;
+		};
+	}
+
+	private static @Nullable Lane lane(final Expression expression, final List<BatchKernel.Column> columns) {
+		return switch (expression) {
+			// Locals past the columns are the optimiser's own, which are stored by statements that aren't vectorised.
+			case LocalLoadExpression(var id, var _) ->
+				id < columns.size() && columns.get(id).type() == float.class ? Lane.VECTOR : null;
+			case ConstantExpression(var value) -> value instanceof Float ? Lane.VECTOR : null;
+			case UnaryOperationExpression(var value, var operator) -> switch (operator) {
+				case NUMERICAL_NEGATE, POSITIVE -> lane(value, columns) == Lane.VECTOR ? Lane.VECTOR : null;
+				case LOGICAL_NEGATE -> lane(value, columns) == Lane.MASK ? Lane.MASK : null;
+				case RETURN -> null;
+			};
+			case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) ->
+				lane(multiplicand, columns) == Lane.VECTOR &&
+					lane(multiplier, columns) == Lane.VECTOR &&
+					lane(addend, columns) == Lane.VECTOR ? Lane.VECTOR : null;
+			case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) ->
+				lane(condition, columns) == Lane.MASK &&
+					lane(ifTrue, columns) == Lane.VECTOR &&
+					lane(ifFalse, columns) == Lane.VECTOR ? Lane.VECTOR : null;
+			case BinaryOperationExpression(var left, var operator, var right) -> {
+				final var leftLane = lane(left, columns);
+				final var rightLane = lane(right, columns);
+
+				if (leftLane == null || leftLane != rightLane) {
+					yield null;
+				}
+
+				yield switch (operator) {
+					case ADD, SUBTRACT, MULTIPLY, DIVIDE -> leftLane == Lane.VECTOR ? Lane.VECTOR : null;
+					case EQUAL_TO, NOT_EQUAL, LESS_THAN, GREATER_THAN, LESS_THAN_OR_EQUAL_TO, GREATER_THAN_OR_EQUAL_TO ->
+						leftLane == Lane.VECTOR ? Lane.MASK : null;
+					case LOGICAL_AND, LOGICAL_OR -> leftLane == Lane.MASK ? Lane.MASK : null;
+					default -> null;
+				};
+			}
+			default -> null;
+		};
+	}
+
+	private static Lane emit(
+		final Expression expression,
+		final List<BatchKernel.Column> columns,
+		final int[] arrays,
+		final int index,
+		final CodeBuilder builder
+	) {
+		switch (expression) {
+			case LocalLoadExpression(var id, var _) -> {
+				loadSpecies(builder);
+				builder
+					.aload(arrays[id])
+					.iload(index)
+					.invokestatic(
+						CD_FloatVector,
+						"fromArray",
+						MethodTypeDesc.of(CD_FloatVector, CD_VectorSpecies, CD_float.arrayType(), CD_int)
+					);
+			}
+			case ConstantExpression(var value) -> broadcast((Float) value, builder);
+			case UnaryOperationExpression(var value, var operator) -> {
+				emit(value, columns, arrays, index, builder);
+
+				switch (operator) {
+					case NUMERICAL_NEGATE -> builder.invokevirtual(CD_FloatVector, "neg", MethodTypeDesc.of(CD_FloatVector));
+					case LOGICAL_NEGATE -> builder.invokevirtual(CD_VectorMask, "not", MethodTypeDesc.of(CD_VectorMask));
+					default -> {
+					}
+				}
+			}
+			case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) -> {
+				emit(multiplicand, columns, arrays, index, builder);
+				emit(multiplier, columns, arrays, index, builder);
+				emit(addend, columns, arrays, index, builder);
+				builder.invokevirtual(CD_FloatVector, "fma", MethodTypeDesc.of(CD_FloatVector, CD_Vector, CD_Vector));
+			}
+			case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> {
+				// ifFalse.blend(ifTrue, condition) takes ifTrue wherever the condition is set.
+				emit(ifFalse, columns, arrays, index, builder);
+				emit(ifTrue, columns, arrays, index, builder);
+				emit(condition, columns, arrays, index, builder);
+				builder.invokevirtual(CD_FloatVector, "blend", MethodTypeDesc.of(CD_FloatVector, CD_Vector, CD_VectorMask));
+			}
+			case BinaryOperationExpression(var left, var operator, var right) -> {
+				final var comparison = comparison(operator);
+
+				emit(left, columns, arrays, index, builder);
+
+				if (comparison != null) {
+					builder.getstatic(CD_VectorOperators, comparison, CD_Comparison);
+				}
+
+				emit(right, columns, arrays, index, builder);
+
+				switch (operator) {
+					case ADD -> builder.invokevirtual(CD_FloatVector, "add", MTD_lanewise);
+					case SUBTRACT -> builder.invokevirtual(CD_FloatVector, "sub", MTD_lanewise);
+					case MULTIPLY -> builder.invokevirtual(CD_FloatVector, "mul", MTD_lanewise);
+					case DIVIDE -> builder.invokevirtual(CD_FloatVector, "div", MTD_lanewise);
+					case LOGICAL_AND -> builder.invokevirtual(CD_VectorMask, "and", MTD_mask);
+					case LOGICAL_OR -> builder.invokevirtual(CD_VectorMask, "or", MTD_mask);
+					default -> builder.invokevirtual(
+						CD_FloatVector,
+						"compare",
+						MethodTypeDesc.of(CD_VectorMask, CD_Comparison, CD_Vector)
+					);
+				}
+			}
+			default -> throw new IllegalStateException("Cannot vectorise " + expression);
+		}
+
+		return lane(expression, columns);
+	}
+
+	private static @Nullable String comparison(final BinaryOperationExpression.Operator operator) {
+		return switch (operator) {
+			case EQUAL_TO -> "EQ";
+			case NOT_EQUAL -> "NE";
+			case LESS_THAN -> "LT";
+			case GREATER_THAN -> "GT";
+			case LESS_THAN_OR_EQUAL_TO -> "LE";
+			case GREATER_THAN_OR_EQUAL_TO -> "GE";
+			default -> null;
+		};
+	}
+
+	private static void loadSpecies(final CodeBuilder builder) {
+		builder.getstatic(CD_FloatVector, "SPECIES_PREFERRED", CD_VectorSpecies);
+	}
+
+	private static void broadcast(final float value, final CodeBuilder builder) {
+		loadSpecies(builder);
+		builder
+			.loadConstant(value)
+			.invokestatic(CD_FloatVector, "broadcast", MethodTypeDesc.of(CD_FloatVector, CD_VectorSpecies, CD_float));
+	}
+}
@@ -19,6 +19,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.instrument.Instrumentation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -31,11 +33,14 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 /**
@@ -129,8 +134,29 @@ public final class Linker {
 
 	private final Map<String, Class<?>> classAliases;
 
-	private transient final Map<Class<?>, Boolean> permitted = new WeakHashMap<>();
-	private transient final Map<Class<?>, Optional<Method>> lookup = new WeakHashMap<>();
+	// ClassValue is lock-free to read, and doesn't keep classes from unloading.
+	private transient final ClassValue<Boolean> permitted = new ClassValue<>() {
+		@Override
+		protected Boolean computeValue(final Class<?> type) {
+			return isPermitted0(type);
+		}
+	};
+	private transient final ClassValue<Optional<Method>> lookup = new ClassValue<>() {
+		@Override
+		protected Optional<Method> computeValue(final Class<?> type) {
+			return tryFunctionalClass0(type);
+		}
+	};
+	private transient final ClassValue<Members> members = new ClassValue<>() {
+		@Override
+		protected Members computeValue(final Class<?> type) {
+			return index(type);
+		}
+	};
+	// Keyed by declaring class, then by member.
+	private transient final ClassValue<Map<Method, MethodHandle>> invokers = new HandleCache<>();
+	private transient final ClassValue<Map<Field, MethodHandle>> getters = new HandleCache<>();
+	private transient final ClassValue<Map<Field, MethodHandle>> setters = new HandleCache<>();
 
 	private Linker(
 		final @Nullable Set<String> blockedPackages,
@@ -205,7 +231,7 @@ public final class Linker {
 
 	@CheckReturnValue
 	boolean isPermitted(Class<?> clazz) {
-		return permitted.computeIfAbsent(clazz, this::isPermitted0);
+		return permitted.get(clazz);
 	}
 
 	@CheckReturnValue
@@ -257,7 +283,7 @@ public final class Linker {
 
 	@CheckReturnValue
 	public Optional<Method> tryFunctionalClass(final Class<?> clazz) {
-		return lookup.computeIfAbsent(clazz, this::tryFunctionalClass0);
+		return lookup.get(clazz);
 	}
 
 	private Optional<Method> tryFunctionalClass0(final Class<?> clazz) {
@@ -312,12 +338,36 @@ public final class Linker {
 		) && Objects.equals(allowedPackages, linker.allowedPackages) && Objects.equals(
 			blockedClasses,
 			linker.blockedClasses
-		) && Objects.equals(allowedClasses, linker.allowedClasses);
+		) && Objects.equals(allowedClasses, linker.allowedClasses) && classAliases.equals(linker.classAliases);
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(blockedPackages, allowedPackages, blockedClasses, allowedClasses);
+		return Objects.hash(blockedPackages, allowedPackages, blockedClasses, allowedClasses, classAliases);
+	}
+
+	/**
+	 * Describes this linker's policy in a stable form, independent of set iteration order,
+	 * for use in keying persistent caches.
+	 */
+	@CheckReturnValue
+	public String describePolicy() {
+		final var aliases = new TreeMap<String, String>();
+		classAliases.forEach((alias, clazz) -> aliases.put(alias, clazz.getName()));
+
+		return "blockedPackages=" + sorted(blockedPackages) +
+			";allowedPackages=" + sorted(allowedPackages) +
+			";blockedClasses=" + sortedNames(blockedClasses) +
+			";allowedClasses=" + sortedNames(allowedClasses) +
+			";classAliases=" + aliases;
+	}
+
+	private static String sorted(final @Nullable Set<String> set) {
+		return set == null ? "null" : new TreeSet<>(set).toString();
+	}
+
+	private static String sortedNames(final @Nullable Set<Class<?>> set) {
+		return set == null ? "null" : set.stream().map(Class::getName).sorted().toList().toString();
 	}
 
 	@Override
@@ -329,8 +379,7 @@ public final class Linker {
 		builder.append("allowedPackages=").append(allowedPackages + "").newline();
 		builder.append("blockedClasses=").append(blockedClasses + "").newline();
 		builder.append("allowedClasses=").append(allowedClasses + "").newline();
-		builder.append("classAliases=").append(classAliases + "").newline();
-		builder.append("permitted=").append(permitted + "");
+		builder.append("classAliases=").append(classAliases + "");
 
 		builder.popIndent().newline().append("}");
 
@@ -340,69 +389,117 @@ public final class Linker {
 	public @Nullable Field findField(final Class<?> context, final String toAccess) {
 		this.checkPermitted(context, "context");
 
-		Field toFetch = null;
+		return members.get(context).fields().get(fold(toAccess));
+	}
 
-		for (final var field : context.getFields()) {
-			if (!toAccess.equalsIgnoreCase(field.getName())) {
-				logger.trace("Name mismatch: {} => {}", toAccess, field);
-				continue;
-			}
+	// Molang does not support overloads, may be useful in the future but for now it's simpler to ignore them
+	// FIXME: argument count
+	@CheckReturnValue
+	public @Nullable Method findMethod(Class<?> clazz, String name) {
+		this.checkPermitted(clazz, "function receiver");
 
-			if (!isPermitted(field.getType())) {
-				logger.trace("Type not permitted: {}", field);
-				continue;
-			}
+		return members.get(clazz).methods().get(fold(name));
+	}
 
-			if (field.isAnnotationPresent(Hidden.class)) {
-				logger.trace("Hidden: {}", field);
-				continue;
-			}
+	/**
+	 * A handle to a method found by {@link #findMethod}, for callers that can't link against it directly,
+	 * such as the interpreter. Resolved once per method with the public lookup, as only public members are linked.
+	 *
+	 * @throws IllegalStateException If the method isn't accessible.
+	 */
+	public MethodHandle invoker(final Method method) {
+		return invokers.get(method.getDeclaringClass()).computeIfAbsent(method, Linker::unreflect);
+	}
 
-			toFetch = field;
-		}
+	/**
+	 * @see #invoker(Method)
+	 */
+	public MethodHandle getter(final Field field) {
+		return getters.get(field.getDeclaringClass()).computeIfAbsent(field, Linker::unreflectGetter);
+	}
+
+	/**
+	 * @see #invoker(Method)
+	 */
+	public MethodHandle setter(final Field field) {
+		return setters.get(field.getDeclaringClass()).computeIfAbsent(field, Linker::unreflectSetter);
+	}
 
-		if (toFetch == null) {
-			// We couldn't find a field, lets look for methods with no parametersByName instead
+	private static MethodHandle unreflect(final Method method) {
+		try {
+			return MethodHandles.publicLookup().unreflect(method);
+		} catch (IllegalAccessException exception) {
+			throw new IllegalStateException("Cannot access " + method, exception);
+		}
+	}
 
-			for (Method method : context.getMethods()) {
-				if (!toAccess.equalsIgnoreCase(method.getName())) {
-					logger.trace("Name mismatch: {} => {}", toAccess, method);
-					continue;
-				}
+	private static MethodHandle unreflectGetter(final Field field) {
+		try {
+			return MethodHandles.publicLookup().unreflectGetter(field);
+		} catch (IllegalAccessException exception) {
+			throw new IllegalStateException("Cannot access " + field, exception);
+		}
+	}
 
-				if (method.isAnnotationPresent(Hidden.class)) {
-					logger.trace("Hidden: {} => {}", toAccess, method);
-					continue;
-				}
-			}
+	private static MethodHandle unreflectSetter(final Field field) {
+		try {
+			return MethodHandles.publicLookup().unreflectSetter(field);
+		} catch (IllegalAccessException exception) {
+			throw new IllegalStateException("Cannot access " + field, exception);
+		}
+	}
 
-			return null;
+	private static final class HandleCache<K> extends ClassValue<Map<K, MethodHandle>> {
+		@Override
+		protected Map<K, MethodHandle> computeValue(final Class<?> type) {
+			return new ConcurrentHashMap<>();
 		}
+	}
 
-		return toFetch;
+	private static String fold(final String name) {
+		return name.toLowerCase(Locale.ROOT);
 	}
 
-	// Molang does not support overloads, may be useful in the future but for now it's simpler to ignore them
-	// FIXME: argument count
-	@CheckReturnValue
-	public @Nullable Method findMethod(Class<?> clazz, String name) {
-		this.checkPermitted(clazz, "function receiver");
+	/**
+	 * Builds the case-folded member index for a class, so that linking an identifier is a single lookup.
+	 */
+	private Members index(final Class<?> clazz) {
+		final var fields = new HashMap<String, Field>();
 
-		for (final var method : clazz.getMethods()) {
-			if (!name.equalsIgnoreCase(method.getName())) {
-				logger.trace("Name mismatch: {} => {}", name, method);
+		for (final var field : clazz.getFields()) {
+			if (!isPermitted(field.getType())) {
+				logger.trace("Type not permitted: {}", field);
+				continue;
+			}
+
+			if (field.isAnnotationPresent(Hidden.class)) {
+				logger.trace("Hidden: {}", field);
 				continue;
 			}
 
+			// The last matching field wins.
+			fields.put(fold(field.getName()), field);
+		}
+
+		final var methods = new HashMap<String, Method>();
+
+		for (final var method : clazz.getMethods()) {
 			if (method.isAnnotationPresent(Hidden.class)) {
-				logger.trace("Hidden: {} => {}", name, method);
+				logger.trace("Hidden: {}", method);
 				continue;
 			}
 
-			return method;
+			// The first matching method wins.
+			methods.putIfAbsent(fold(method.getName()), method);
 		}
 
-		return null;
+		return new Members(Map.copyOf(fields), Map.copyOf(methods));
+	}
+
+	/**
+	 * The linkable members of a class, keyed by lower case name.
+	 */
+	private record Members(Map<String, Field> fields, Map<String, Method> methods) {
 	}
 
 	@SuppressWarnings("unused") // Public API
@@ -0,0 +1,21 @@
+package dev.spiritstudios.mojank.compile.link;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The scopes variables that outlive a single invocation are accessed through, such as {@code variable} and {@code v}.
+ * <p>
+ * On an {@link Object} parameter, variables are stored in the struct passed through it,
+ * which must be created from the {@link dev.spiritstudios.mojank.compile.VariableSchema} the expression was compiled against.
+ * On an {@code int} parameter, they're stored off-heap, at that index into the
+ * {@link dev.spiritstudios.mojank.compile.VariableArena} the expression was compiled against.
+ * On the target method instead, every compiled expression stores its own.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.PARAMETER})
+public @interface Variables {
+	String[] value();
+}
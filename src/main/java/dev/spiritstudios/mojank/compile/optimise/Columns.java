@@ -0,0 +1,148 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.compile.BatchKernel;
+import dev.spiritstudios.mojank.compile.Binding;
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.compile.link.Alias;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces every read of a primitive field of the target's parameters, such as {@code query.anim_time},
+ * with a {@link LocalLoadExpression} of the column holding it, so that a {@link BatchKernel}
+ * may evaluate the expression from one array per field rather than from the parameters themselves.
+ * <p>
+ * Columns are numbered in the order they're first read, and the local id of each column is its number.
+ * Identical paths through different aliases, such as {@code q.pos.x} and {@code query.pos.x}, share a column.
+ * <p>
+ * Anything else that would need the parameters themselves, such as writing to their fields or calling their methods,
+ * can't be evaluated from the columns, so is rejected.
+ * So are {@link dev.spiritstudios.mojank.compile.link.Variables variables}, which have nowhere to be kept.
+ */
+public final class Columns {
+	private final CompileContext context;
+	private final Map<Key, Integer> ids = new HashMap<>();
+	private final List<BatchKernel.Column> columns = new ArrayList<>();
+
+	private Columns(final CompileContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Types must already be settled by {@link Temporaries#declare}, as this walks the tree out of evaluation order.
+	 *
+	 * @param columns Receives every column read by the expression, in local id order.
+	 * @return The expression, reading from the columns.
+	 * @throws IllegalArgumentException If the expression can't be evaluated from the columns alone.
+	 */
+	public static Expression extract(
+		final Expression expression,
+		final CompileContext context,
+		final List<BatchKernel.Column> columns
+	) {
+		final var extractor = new Columns(context);
+		final var extracted = extractor.visit(expression);
+
+		extractor.check(extracted);
+
+		columns.addAll(extractor.columns);
+		return extracted;
+	}
+
+	private Expression visit(final Expression expression) {
+		final var column = column(expression);
+
+		if (column != null) {
+			return column;
+		}
+
+		return switch (expression) {
+			// Only what is assigned is read; the target is left alone, and rejected if it's a parameter's field.
+			case BinaryOperationExpression(var left, var operator, var right)
+				when operator == BinaryOperationExpression.Operator.SET ->
+				new BinaryOperationExpression(left, operator, visit(right));
+			// The method itself is a name, so only its receiver is read.
+			case MethodCallExpression(BinaryOperationExpression(var owner, var operator, var name), var parameters) ->
+				new MethodCallExpression(
+					new BinaryOperationExpression(visit(owner), operator, name),
+					Trees.mapAll(parameters, this::visit)
+				);
+			default -> Trees.mapChildren(expression, this::visit);
+		};
+	}
+
+	private void check(final Expression expression) {
+		switch (expression) {
+			case IdentifierExpression identifier
+				when context.analysis().binding(identifier) instanceof Binding.Parameter ->
+				throw new IllegalArgumentException("Parameters may only be read through their primitive fields in a kernel: " + identifier);
+			case BinaryOperationExpression binary when binary.operator() == BinaryOperationExpression.Operator.GET -> {
+				switch (context.analysis().binding(binary)) {
+					case Binding.Variable _ -> throw new IllegalArgumentException("Variables can't be kept by a kernel: " + binary);
+					// The right of a get is a member name.
+					case Binding.FieldAccess access when access.hasReceiver() -> check(binary.left());
+					// Otherwise, the left is a scope or class alias.
+					default -> {
+					}
+				}
+			}
+			case MethodCallExpression(BinaryOperationExpression(var owner, var _, var _), var parameters) -> {
+				check(owner);
+				parameters.forEach(this::check);
+			}
+			default -> Trees.children(expression).forEach(this::check);
+		}
+	}
+
+	private @Nullable Expression column(final Expression expression) {
+		final var path = new ArrayList<Field>();
+		var node = expression;
+
+		while (node instanceof BinaryOperationExpression binary &&
+			binary.operator() == BinaryOperationExpression.Operator.GET &&
+			context.analysis().binding(binary) instanceof Binding.FieldAccess(var _, var field, var hasReceiver) &&
+			hasReceiver && !Modifier.isStatic(field.getModifiers())) {
+			path.addFirst(field);
+			node = binary.left();
+		}
+
+		if (path.isEmpty() || !path.getLast().getType().isPrimitive() ||
+			!(node instanceof IdentifierExpression identifier) ||
+			!(context.analysis().binding(identifier) instanceof Binding.Parameter parameter)) {
+			return null;
+		}
+
+		final int id = ids.computeIfAbsent(new Key(parameter.index(), List.copyOf(path)), _ -> {
+			columns.add(new BatchKernel.Column(name(parameter, path), path.getLast().getType(), parameter.index(), path));
+			return columns.size() - 1;
+		});
+
+		return new LocalLoadExpression(id, expression);
+	}
+
+	private String name(final Binding.Parameter parameter, final List<Field> path) {
+		final var declared = context.parameters().get(parameter.index());
+		final var alias = declared.getAnnotation(Alias.class);
+		final var name = new StringBuilder(alias != null ? alias.value()[0] : declared.getName());
+
+		for (final var field : path) {
+			name.append('.').append(field.getName());
+		}
+
+		return name.toString();
+	}
+
+	private record Key(int parameter, List<Field> path) {
+	}
+}
@@ -0,0 +1,276 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.ArrayAccessExpression;
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Reuses repeated pure subexpressions, including field reads, through JVM locals.
+ * <p>
+ * The first occurrence of an expression is wrapped in a {@link LocalStoreExpression},
+ * and every later occurrence that is still available becomes a {@link LocalLoadExpression}.
+ * Stores that are never loaded are unwrapped again afterwards.
+ * <p>
+ * An expression stops being available once anything it reads may have changed:
+ * <ul>
+ *     <li>a {@code SET} of a field kills every read of a field of the same name, regardless of owner,</li>
+ *     <li>a {@code SET} of an array element kills every array read,</li>
+ *     <li>a call to anything not marked {@link dev.spiritstudios.mojank.compile.link.Pure} kills everything.</li>
+ * </ul>
+ * Expressions first seen in conditionally evaluated code are only available within that code,
+ * matching the block scoping of the locals they are stored in.
+ * Kills within a loop are applied before entering it, as they affect every iteration after the first.
+ */
+public final class CommonSubexpressions {
+	private final Linker linker;
+	private Scope scope = new Scope(null);
+	private int nextId;
+
+	private CommonSubexpressions(final Linker linker, final int firstId) {
+		this.linker = linker;
+		this.nextId = firstId;
+	}
+
+	public static Expression eliminate(final Expression expression, final Linker linker) {
+		final var rewritten = new CommonSubexpressions(linker, Trees.nextLocalId(expression)).visit(expression);
+
+		final var loaded = new HashSet<Integer>();
+		Trees.anyMatch(rewritten, node -> {
+			if (node instanceof LocalLoadExpression(int id, var _)) {
+				loaded.add(id);
+			}
+			return false;
+		});
+
+		return unwrapUnused(rewritten, loaded);
+	}
+
+	private static Expression unwrapUnused(final Expression expression, final Set<Integer> loaded) {
+		final var mapped = Trees.mapChildren(expression, child -> unwrapUnused(child, loaded));
+
+		if (mapped instanceof LocalStoreExpression(int id, var value) && !loaded.contains(id)) {
+			return value;
+		}
+
+		return mapped;
+	}
+
+	private Expression visit(final Expression expression) {
+		return switch (expression) {
+			case ConstantExpression _, IdentifierExpression _, KeywordExpression _, LocalLoadExpression _ ->
+				expression;
+			case LocalStoreExpression store -> Trees.mapChildren(store, this::visit);
+			case ComplexExpression complex -> Trees.mapChildren(complex, this::visit);
+			case ArrayAccessExpression(var array, var index) ->
+				candidate(expression, () -> new ArrayAccessExpression(visit(array), visit(index)));
+			case FusedMultiplyAddExpression fma -> candidate(expression, () -> Trees.mapChildren(fma, this::visit));
+			case UnaryOperationExpression(var value, var operator) -> switch (operator) {
+				case NUMERICAL_NEGATE, POSITIVE -> candidate(expression, () -> new UnaryOperationExpression(visit(value), operator));
+				case LOGICAL_NEGATE, RETURN -> new UnaryOperationExpression(visit(value), operator);
+			};
+			case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> {
+				final var visitedCondition = visit(condition);
+				yield new TernaryOperationExpression(visitedCondition, branch(ifTrue), branch(ifFalse));
+			}
+			case LoopExpression(var count, var body, var preheader) -> {
+				killEffects(count);
+				killEffects(body);
+
+				final var parent = scope;
+				scope = new Scope(parent);
+
+				try {
+					final var visitedCount = visit(count);
+					final var visitedPreheader = Trees.mapAll(preheader, this::visit);
+					yield new LoopExpression(visitedCount, visit(body), visitedPreheader);
+				} finally {
+					scope = parent;
+				}
+			}
+			case MethodCallExpression call -> visitCall(call);
+			case BinaryOperationExpression binary -> visitBinary(binary);
+		};
+	}
+
+	private Expression visitBinary(final BinaryOperationExpression binary) {
+		final var left = binary.left();
+		final var operator = binary.operator();
+		final var right = binary.right();
+
+		return switch (operator) {
+			case GET -> candidate(binary, () -> new BinaryOperationExpression(receiver(left), operator, right));
+			case SET -> switch (left) {
+				case BinaryOperationExpression(var owner, var getter, IdentifierExpression field)
+					when getter == BinaryOperationExpression.Operator.GET -> {
+					final var target = new BinaryOperationExpression(receiver(owner), getter, field);
+					final var value = visit(right);
+					kill(node -> readsField(node, field.name()));
+					yield new BinaryOperationExpression(target, operator, value);
+				}
+				case ArrayAccessExpression(var array, var index) -> {
+					final var target = new ArrayAccessExpression(visit(array), visit(index));
+					final var value = visit(right);
+					kill(node -> node instanceof ArrayAccessExpression);
+					yield new BinaryOperationExpression(target, operator, value);
+				}
+				default -> {
+					final var value = visit(right);
+					kill(_ -> true);
+					yield new BinaryOperationExpression(left, operator, value);
+				}
+			};
+			case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER ->
+				candidate(binary, () -> new BinaryOperationExpression(visit(left), operator, visit(right)));
+			// The right is only evaluated some of the time.
+			case LOGICAL_OR, LOGICAL_AND, NULL_COALESCE, CONDITIONAL -> {
+				final var visitedLeft = visit(left);
+				yield new BinaryOperationExpression(visitedLeft, operator, branch(right));
+			}
+			case ARROW -> {
+				kill(_ -> true);
+				yield binary;
+			}
+			default -> {
+				final var visitedLeft = visit(left);
+				yield new BinaryOperationExpression(visitedLeft, operator, visit(right));
+			}
+		};
+	}
+
+	private Expression visitCall(final MethodCallExpression call) {
+		final Supplier<Expression> rewrite = () -> {
+			final var method = call.method() instanceof BinaryOperationExpression(var owner, var operator, var name) ?
+				new BinaryOperationExpression(receiver(owner), operator, name) :
+				visit(call.method());
+
+			return new MethodCallExpression(method, Trees.mapAll(call.parameters(), this::visit));
+		};
+
+		if (Effects.isPureCall(call, linker)) {
+			return candidate(call, rewrite);
+		}
+
+		final var rewritten = rewrite.get();
+		kill(_ -> true);
+		return rewritten;
+	}
+
+	/**
+	 * Class aliases and parameters are left as is, as they're either resolved statically or already a local.
+	 */
+	private Expression receiver(final Expression owner) {
+		return owner instanceof IdentifierExpression ? owner : visit(owner);
+	}
+
+	/**
+	 * Visits conditionally evaluated code, keeping anything first seen within it local to it.
+	 */
+	private Expression branch(final Expression expression) {
+		final var parent = scope;
+		scope = new Scope(parent);
+
+		try {
+			return visit(expression);
+		} finally {
+			scope = parent;
+		}
+	}
+
+	private Expression candidate(final Expression original, final Supplier<Expression> rewrite) {
+		if (!Effects.isPure(original, linker)) {
+			return rewrite.get();
+		}
+
+		final var id = scope.find(original);
+
+		if (id != null) {
+			return new LocalLoadExpression(id, original);
+		}
+
+		final var rewritten = rewrite.get();
+		final int newId = nextId++;
+
+		scope.available.put(original, newId);
+
+		return new LocalStoreExpression(newId, rewritten);
+	}
+
+	private void kill(final Predicate<Expression> reads) {
+		for (var current = scope; current != null; current = current.parent) {
+			current.available.keySet().removeIf(expression -> Trees.anyMatch(expression, reads));
+		}
+	}
+
+	/**
+	 * Applies every kill the expression could cause, without visiting it.
+	 */
+	private void killEffects(final Expression expression) {
+		Trees.anyMatch(expression, node -> {
+			switch (node) {
+				case BinaryOperationExpression(var left, var operator, var _)
+					when operator == BinaryOperationExpression.Operator.SET -> {
+					switch (left) {
+						case BinaryOperationExpression(var _, var _, IdentifierExpression(String field)) ->
+							kill(read -> readsField(read, field));
+						case ArrayAccessExpression _ -> kill(read -> read instanceof ArrayAccessExpression);
+						default -> kill(_ -> true);
+					}
+				}
+				case BinaryOperationExpression(var _, var operator, var _)
+					when operator == BinaryOperationExpression.Operator.ARROW -> kill(_ -> true);
+				case MethodCallExpression call when !Effects.isPureCall(call, linker) -> kill(_ -> true);
+				default -> {
+				}
+			}
+
+			return false;
+		});
+	}
+
+	private static boolean readsField(final Expression expression, final String field) {
+		return expression instanceof BinaryOperationExpression(var _, var operator, IdentifierExpression(String name)) &&
+			operator == BinaryOperationExpression.Operator.GET &&
+			name.equalsIgnoreCase(field);
+	}
+
+	private static final class Scope {
+		private final @Nullable Scope parent;
+		private final Map<Expression, Integer> available = new HashMap<>();
+
+		private Scope(final @Nullable Scope parent) {
+			this.parent = parent;
+		}
+
+		private @Nullable Integer find(final Expression expression) {
+			for (var current = this; current != null; current = current.parent) {
+				final var id = current.available.get(expression);
+
+				if (id != null) {
+					return id;
+				}
+			}
+
+			return null;
+		}
+	}
+}
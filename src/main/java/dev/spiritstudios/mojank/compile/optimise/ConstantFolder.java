@@ -0,0 +1,231 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.MolangInterpreter;
+import dev.spiritstudios.mojank.ast.ArrayAccessExpression;
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.link.Linker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folds constant subexpressions and applies IEEE 754 safe identities ahead of emission.
+ * <p>
+ * Folding is delegated to {@link MolangInterpreter}, so a folded expression always evaluates
+ * the same as interpreting it would.
+ * Only operand types where the compiler and interpreter already agree are folded;
+ * anything else is left for the emitter, as folding it would change the emitted types.
+ *
+ * @see Optimiser
+ */
+public final class ConstantFolder {
+	private static final int NEGATIVE_ZERO = Float.floatToRawIntBits(-0F);
+
+	private ConstantFolder() {
+	}
+
+	public static Expression fold(final Expression expression, final Linker linker) {
+		return switch (expression) {
+			case ArrayAccessExpression(var array, var index) ->
+				new ArrayAccessExpression(fold(array, linker), fold(index, linker));
+			case BinaryOperationExpression binary -> foldBinary(binary, linker);
+			case ComplexExpression(var expressions) -> new ComplexExpression(foldAll(expressions, linker));
+			case MethodCallExpression(var method, var parameters) ->
+				new MethodCallExpression(method, foldAll(parameters, linker));
+			case LoopExpression(var count, var body, var preheader) ->
+				new LoopExpression(fold(count, linker), fold(body, linker), foldAll(preheader, linker));
+			case TernaryOperationExpression ternary -> foldTernary(ternary, linker);
+			case UnaryOperationExpression unary -> foldUnary(unary, linker);
+			case LocalStoreExpression(var id, var value) -> new LocalStoreExpression(id, fold(value, linker));
+			case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) -> new FusedMultiplyAddExpression(
+				fold(multiplicand, linker),
+				fold(multiplier, linker),
+				fold(addend, linker)
+			);
+			case ConstantExpression _, IdentifierExpression _, KeywordExpression _, LocalLoadExpression _ -> expression;
+		};
+	}
+
+	private static List<Expression> foldAll(final List<Expression> expressions, final Linker linker) {
+		final var folded = new ArrayList<Expression>(expressions.size());
+		for (final var expression : expressions) {
+			folded.add(fold(expression, linker));
+		}
+		return folded;
+	}
+
+	private static Expression foldBinary(final BinaryOperationExpression binary, final Linker linker) {
+		final var operator = binary.operator();
+
+		if (operator == BinaryOperationExpression.Operator.GET) {
+			// The right of a get is a member name, never a value.
+			return new BinaryOperationExpression(fold(binary.left(), linker), operator, binary.right());
+		}
+
+		final var left = fold(binary.left(), linker);
+		final var right = fold(binary.right(), linker);
+		final var folded = new BinaryOperationExpression(left, operator, right);
+
+		return switch (operator) {
+			case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER -> {
+				// Arithmetic between ints is emitted as ints, which the interpreter does not model,
+				// so only fold pure float arithmetic.
+				if (isFloat(left) && isFloat(right)) {
+					yield new ConstantExpression(MolangInterpreter.evaluate(folded, linker));
+				}
+
+				yield simplify(folded);
+			}
+			case LESS_THAN, GREATER_THAN, LESS_THAN_OR_EQUAL_TO, GREATER_THAN_OR_EQUAL_TO -> {
+				if (Trees.isNumber(left) && Trees.isNumber(right)) {
+					yield condition(folded, linker);
+				}
+
+				yield folded;
+			}
+			case EQUAL_TO, NOT_EQUAL -> {
+				// The compiler converts between numeric types before comparing, whereas the interpreter does not.
+				if (left instanceof ConstantExpression(var a) &&
+					right instanceof ConstantExpression(var b) &&
+					a.getClass() == b.getClass()) {
+					yield condition(folded, linker);
+				}
+
+				yield folded;
+			}
+			case LOGICAL_OR, LOGICAL_AND -> {
+				if (Trees.isNumber(left) && Trees.isNumber(right)) {
+					yield condition(folded, linker);
+				}
+
+				// Short circuit; the right is never evaluated in either case.
+				if (Trees.isNumber(left)) {
+					final boolean value = MolangInterpreter.evaluateBoolean(left, linker);
+
+					if (operator == BinaryOperationExpression.Operator.LOGICAL_OR && value) {
+						yield ConstantExpression.TRUE;
+					}
+
+					if (operator == BinaryOperationExpression.Operator.LOGICAL_AND && !value) {
+						yield ConstantExpression.FALSE;
+					}
+				}
+
+				yield folded;
+			}
+			default -> folded;
+		};
+	}
+
+	/**
+	 * Applies identities that hold for every IEEE 754 value, including NaN, infinities and signed zeroes.
+	 * Only a constant on the right is considered. An int on the left then stays an int rather than becoming a float,
+	 * which can only make it more exact.
+	 * <p>
+	 * {@code x + 0} is deliberately absent, as {@code -0 + 0} is {@code +0}; {@code x + -0} is used instead.
+	 */
+	private static Expression simplify(final BinaryOperationExpression binary) {
+		if (!(binary.right() instanceof ConstantExpression(Float constant))) {
+			return binary;
+		}
+
+		final int bits = Float.floatToRawIntBits(constant);
+
+		return switch (binary.operator()) {
+			case MULTIPLY, DIVIDE -> constant == 1F ? binary.left() : binary;
+			case SUBTRACT -> bits == 0 ? binary.left() : binary;
+			case ADD -> bits == NEGATIVE_ZERO ? binary.left() : binary;
+			default -> binary;
+		};
+	}
+
+	private static Expression foldTernary(final TernaryOperationExpression ternary, final Linker linker) {
+		final var condition = fold(ternary.condition(), linker);
+		final var ifTrue = fold(ternary.ifTrue(), linker);
+		final var ifFalse = fold(ternary.ifFalse(), linker);
+
+		if (Trees.isNumber(condition)) {
+			return MolangInterpreter.evaluateBoolean(condition, linker) ? ifTrue : ifFalse;
+		}
+
+		return new TernaryOperationExpression(condition, ifTrue, ifFalse);
+	}
+
+	private static Expression foldUnary(final UnaryOperationExpression unary, final Linker linker) {
+		final var value = fold(unary.value(), linker);
+
+		return switch (unary.operator()) {
+			// Positive has no effect on the emitted code.
+			case POSITIVE -> value;
+			case NUMERICAL_NEGATE -> {
+				if (isFloat(value)) {
+					yield new ConstantExpression(MolangInterpreter.evaluate(
+						new UnaryOperationExpression(value, UnaryOperationExpression.Operator.NUMERICAL_NEGATE),
+						linker
+					));
+				}
+
+				// --x
+				if (value instanceof UnaryOperationExpression(
+					var inner, UnaryOperationExpression.Operator operator
+				) && operator == UnaryOperationExpression.Operator.NUMERICAL_NEGATE) {
+					yield inner;
+				}
+
+				yield new UnaryOperationExpression(value, UnaryOperationExpression.Operator.NUMERICAL_NEGATE);
+			}
+			case LOGICAL_NEGATE -> {
+				final var negated = new UnaryOperationExpression(value, UnaryOperationExpression.Operator.LOGICAL_NEGATE);
+
+				if (Trees.isNumber(value)) {
+					yield condition(negated, linker);
+				}
+
+				// !!b, only when b is already a boolean, as otherwise the double negation normalises it to 0 or 1.
+				if (value instanceof UnaryOperationExpression(
+					var inner, UnaryOperationExpression.Operator operator
+				) && operator == UnaryOperationExpression.Operator.LOGICAL_NEGATE && isBoolean(inner)) {
+					yield inner;
+				}
+
+				yield negated;
+			}
+			case RETURN -> new UnaryOperationExpression(value, UnaryOperationExpression.Operator.RETURN);
+		};
+	}
+
+	private static ConstantExpression condition(final Expression expression, final Linker linker) {
+		return MolangInterpreter.evaluateBoolean(expression, linker) ? ConstantExpression.TRUE : ConstantExpression.FALSE;
+	}
+
+	private static boolean isFloat(final Expression expression) {
+		return expression instanceof ConstantExpression(Float _);
+	}
+
+	/**
+	 * Whether the expression is always emitted as a {@code boolean}.
+	 */
+	private static boolean isBoolean(final Expression expression) {
+		return switch (expression) {
+			case BinaryOperationExpression binary -> switch (binary.operator()) {
+				case LOGICAL_OR, LOGICAL_AND, EQUAL_TO, NOT_EQUAL, LESS_THAN, GREATER_THAN, LESS_THAN_OR_EQUAL_TO,
+					 GREATER_THAN_OR_EQUAL_TO -> true;
+				default -> false;
+			};
+			case UnaryOperationExpression unary -> unary.operator() == UnaryOperationExpression.Operator.LOGICAL_NEGATE;
+			default -> false;
+		};
+	}
+}
@@ -0,0 +1,118 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.MolangInterpreter;
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.internal.Util;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes code that can never run, or whose only result would be discarded.
+ * <ul>
+ *     <li>Statements after an unconditional {@code return}, {@code break} or {@code continue}.</li>
+ *     <li>Pure statements, as every statement's value is discarded.
+ *     Any exception one would have thrown, such as from reading a field of null, is lost with it.</li>
+ *     <li>{@code condition ? statement} where the condition is constant.</li>
+ *     <li>Loops with a constant count of zero or less.</li>
+ * </ul>
+ */
+public final class DeadCode {
+	private static final Logger logger = Util.logger();
+
+	private final Linker linker;
+
+	private DeadCode(final Linker linker) {
+		this.linker = linker;
+	}
+
+	public static Expression eliminate(final Expression expression, final Linker linker) {
+		return new DeadCode(linker).visit(expression);
+	}
+
+	private Expression visit(final Expression expression) {
+		return switch (expression) {
+			case ComplexExpression(var statements) -> new ComplexExpression(statements(statements));
+			case LoopExpression(var count, var body, var preheader) -> {
+				final var statement = statement(visit(body));
+				yield new LoopExpression(
+					visit(count),
+					statement != null ? statement : new ComplexExpression(List.of()),
+					preheader
+				);
+			}
+			default -> Trees.mapChildren(expression, this::visit);
+		};
+	}
+
+	private List<Expression> statements(final List<Expression> statements) {
+		final var kept = new ArrayList<Expression>(statements.size());
+
+		for (int i = 0; i < statements.size(); i++) {
+			final var statement = statement(visit(statements.get(i)));
+
+			if (statement == null) {
+				continue;
+			}
+
+			// Blocks have no scope of their own, so can be spliced into their parent.
+			if (statement instanceof ComplexExpression(var inner)) {
+				kept.addAll(inner);
+			} else {
+				kept.add(statement);
+			}
+
+			if (terminates(statement)) {
+				if (i + 1 < statements.size()) {
+					logger.debug("Dropping unreachable statements: {}", statements.subList(i + 1, statements.size()));
+				}
+				break;
+			}
+		}
+
+		return kept;
+	}
+
+	/**
+	 * @return The statement to keep, or null if it can be removed entirely.
+	 */
+	private @Nullable Expression statement(final Expression statement) {
+		if (statement instanceof BinaryOperationExpression(var condition, var operator, var body) &&
+			operator == BinaryOperationExpression.Operator.CONDITIONAL &&
+			Trees.isNumber(condition)) {
+			return MolangInterpreter.evaluateBoolean(condition, linker) ? statement(body) : null;
+		}
+
+		if (statement instanceof LoopExpression(var count, var _, var _) &&
+			Trees.isNumber(count) &&
+			(int) MolangInterpreter.evaluateFloat(count, linker) <= 0) {
+			return null;
+		}
+
+		if (Effects.isPure(statement, linker)) {
+			return null;
+		}
+
+		return statement;
+	}
+
+	/**
+	 * Whether nothing after the statement in the same block can run.
+	 */
+	private static boolean terminates(final Expression statement) {
+		return switch (statement) {
+			case KeywordExpression _ -> true;
+			case UnaryOperationExpression unary -> unary.operator() == UnaryOperationExpression.Operator.RETURN;
+			case ComplexExpression(var statements) -> !statements.isEmpty() && terminates(statements.getLast());
+			default -> false;
+		};
+	}
+}
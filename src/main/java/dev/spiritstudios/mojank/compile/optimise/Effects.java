@@ -0,0 +1,104 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.compile.link.Pure;
+
+/**
+ * Side effect analysis shared by the passes.
+ */
+final class Effects {
+	private Effects() {
+	}
+
+	/**
+	 * Whether evaluating the expression can neither write anything, call anything not marked {@link Pure},
+	 * nor transfer control.
+	 * Such an expression may be evaluated fewer times, or not at all, without changing the result.
+	 * <p>
+	 * A pure expression may still throw, such as reading a field of null, and that exception is lost
+	 * along with it when it isn't evaluated. The passes never evaluate one where it otherwise wouldn't be,
+	 * so they may lose an exception, but never introduce one.
+	 */
+	static boolean isPure(final Expression expression, final Linker linker) {
+		final boolean self = switch (expression) {
+			case KeywordExpression _ -> false;
+			case UnaryOperationExpression unary -> unary.operator() != UnaryOperationExpression.Operator.RETURN;
+			case BinaryOperationExpression binary -> switch (binary.operator()) {
+				case SET, ARROW -> false;
+				// The right of a get is a member name.
+				case GET -> isPure(binary.left(), linker);
+				default -> true;
+			};
+			case MethodCallExpression call -> isPureCall(call, linker);
+			// Loops are only ever emitted for their effects.
+			case LoopExpression _ -> false;
+			default -> true;
+		};
+
+		if (!self) {
+			return false;
+		}
+
+		if (expression instanceof BinaryOperationExpression binary &&
+			binary.operator() == BinaryOperationExpression.Operator.GET) {
+			return true;
+		}
+
+		if (expression instanceof MethodCallExpression(BinaryOperationExpression method, var parameters)) {
+			if (!isPure(method.left(), linker)) {
+				return false;
+			}
+
+			for (final var parameter : parameters) {
+				if (!isPure(parameter, linker)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		for (final var child : Trees.children(expression)) {
+			if (!isPure(child, linker)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Whether the call itself is to a method marked {@link Pure}, ignoring its arguments.
+	 * <p>
+	 * Only static calls through a class alias can be resolved without type information,
+	 * so any other call is conservatively impure.
+	 */
+	static boolean isPureCall(final MethodCallExpression call, final Linker linker) {
+		if (!(call.method() instanceof BinaryOperationExpression(
+			IdentifierExpression(String owner), var _, IdentifierExpression(String name)
+		))) {
+			return false;
+		}
+
+		final var clazz = linker.findClass(owner);
+
+		if (clazz == null) {
+			return false;
+		}
+
+		try {
+			final var method = linker.findMethod(clazz, name);
+			return method != null && method.isAnnotationPresent(Pure.class);
+		} catch (IllegalArgumentException ignored) {
+			// Not permitted; it'll fail properly during emission.
+			return false;
+		}
+	}
+}
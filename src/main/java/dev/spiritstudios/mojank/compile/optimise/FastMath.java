@@ -0,0 +1,222 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.Binding;
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.link.Pure;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import static dev.spiritstudios.mojank.ast.BinaryOperationExpression.Operator.ADD;
+import static dev.spiritstudios.mojank.ast.BinaryOperationExpression.Operator.MULTIPLY;
+import static dev.spiritstudios.mojank.ast.BinaryOperationExpression.Operator.SUBTRACT;
+
+/**
+ * Strength reductions that trade bit-exactness for speed, only run under {@link CompileOptions.FloatMode#FAST}.
+ * <ul>
+ *     <li>{@code x / c} becomes {@code x * (1 / c)}, as long as the reciprocal is finite and non-zero,</li>
+ *     <li>{@code (x + a) + b} and {@code (x * a) * b} are reassociated into {@code x + (a + b)} and {@code x * (a * b)},</li>
+ *     <li>{@code pow(x, n)} for {@code n} of 1 through 4 becomes a chain of multiplies of a pure {@code x},</li>
+ *     <li>{@code a * b + c} and {@code a * b - c} become {@link FusedMultiplyAddExpression}s.</li>
+ * </ul>
+ * Only floating point arithmetic is touched; integer arithmetic is already exact.
+ * Powers are recognised as any static {@link Pure} method named {@code pow} taking and returning the same
+ * floating point type, so an alias of {@link Math#pow} qualifies.
+ *
+ * @see Optimiser
+ */
+public final class FastMath {
+	private final CompileContext context;
+
+	private FastMath(final CompileContext context) {
+		this.context = context;
+	}
+
+	public static Expression rewrite(final Expression expression, final CompileContext context) {
+		final var fastMath = new FastMath(context);
+		// Fused last, so that reassociation and expanded powers can still be fused.
+		return fastMath.fuse(fastMath.reduce(expression));
+	}
+
+	private Expression reduce(final Expression expression) {
+		final var mapped = Trees.mapChildren(expression, this::reduce);
+
+		return switch (mapped) {
+			case BinaryOperationExpression binary -> reduceBinary(binary);
+			case MethodCallExpression call -> reducePower(call);
+			default -> mapped;
+		};
+	}
+
+	private Expression reduceBinary(final BinaryOperationExpression binary) {
+		final var left = binary.left();
+
+		return switch (binary.operator()) {
+			case DIVIDE -> {
+				if (binary.right() instanceof ConstantExpression(Float divisor) && isFloating(left)) {
+					final float reciprocal = 1F / divisor;
+
+					if (Float.isFinite(reciprocal) && reciprocal != 0F) {
+						yield reassociate(new BinaryOperationExpression(left, MULTIPLY, new ConstantExpression(reciprocal)));
+					}
+				}
+
+				yield binary;
+			}
+			case ADD, SUBTRACT, MULTIPLY -> isFloating(left) ? reassociate(binary) : binary;
+			default -> binary;
+		};
+	}
+
+	private static Expression reassociate(final BinaryOperationExpression binary) {
+		if (!(binary.right() instanceof ConstantExpression(Float outer)) ||
+			!(binary.left() instanceof BinaryOperationExpression(var inner, var innerOperator, ConstantExpression(Float constant)))) {
+			return binary;
+		}
+
+		final var operator = binary.operator();
+
+		if (isSum(operator) && isSum(innerOperator)) {
+			final float sum = signed(innerOperator, constant) + signed(operator, outer);
+			return new BinaryOperationExpression(inner, ADD, new ConstantExpression(sum));
+		}
+
+		if (operator == MULTIPLY && innerOperator == MULTIPLY) {
+			return new BinaryOperationExpression(inner, MULTIPLY, new ConstantExpression(constant * outer));
+		}
+
+		return binary;
+	}
+
+	private Expression reducePower(final MethodCallExpression call) {
+		final var parameters = call.parameters();
+
+		if (parameters.size() != 2 || !(parameters.get(1) instanceof ConstantExpression(Float exponent))) {
+			return call;
+		}
+
+		final var invocation = context.analysis().binding(call, Binding.Invocation.class);
+
+		if (invocation.hasReceiver() || !isPower(invocation.method())) {
+			return call;
+		}
+
+		final var base = parameters.getFirst();
+
+		// Expanding duplicates the base, so it has to be safe to evaluate more than once.
+		if (context.analysis().type(base) != invocation.method().getReturnType() ||
+			!Effects.isPure(base, context.linker())) {
+			return call;
+		}
+
+		if (exponent == 1F) {
+			return base;
+		}
+
+		final var square = new BinaryOperationExpression(base, MULTIPLY, base);
+
+		if (exponent == 2F) {
+			return square;
+		}
+
+		if (exponent == 3F) {
+			return new BinaryOperationExpression(square, MULTIPLY, base);
+		}
+
+		if (exponent == 4F) {
+			return new BinaryOperationExpression(square, MULTIPLY, square);
+		}
+
+		return call;
+	}
+
+	private Expression fuse(final Expression expression) {
+		final var mapped = Trees.mapChildren(expression, this::fuse);
+
+		if (!(mapped instanceof BinaryOperationExpression(var left, var operator, var right))) {
+			return mapped;
+		}
+
+		return switch (operator) {
+			case ADD -> {
+				if (isProduct(left, right)) {
+					yield fma((BinaryOperationExpression) left, right);
+				}
+
+				// Evaluating the addend last changes the order of evaluation, so only do so when nothing can tell.
+				if (isProduct(right, left) &&
+					Effects.isPure(left, context.linker()) &&
+					Effects.isPure(right, context.linker())) {
+					yield fma((BinaryOperationExpression) right, left);
+				}
+
+				yield mapped;
+			}
+			case SUBTRACT -> isProduct(left, right) ? fma((BinaryOperationExpression) left, negate(right)) : mapped;
+			default -> mapped;
+		};
+	}
+
+	/**
+	 * Whether the expression is a multiply of two operands of the same floating point type as the addend.
+	 */
+	private boolean isProduct(final Expression expression, final Expression addend) {
+		if (!(expression instanceof BinaryOperationExpression(var multiplicand, var operator, var multiplier)) ||
+			operator != MULTIPLY) {
+			return false;
+		}
+
+		final var type = context.analysis().type(multiplicand);
+
+		return isFloating(type) &&
+			type == context.analysis().type(multiplier) &&
+			type == context.analysis().type(addend);
+	}
+
+	private static Expression fma(final BinaryOperationExpression product, final Expression addend) {
+		return new FusedMultiplyAddExpression(product.left(), product.right(), addend);
+	}
+
+	private static Expression negate(final Expression expression) {
+		if (expression instanceof ConstantExpression(Float value)) {
+			return new ConstantExpression(-value);
+		}
+
+		return new UnaryOperationExpression(expression, UnaryOperationExpression.Operator.NUMERICAL_NEGATE);
+	}
+
+	private static boolean isPower(final Method method) {
+		final var returnType = method.getReturnType();
+		final var parameterTypes = method.getParameterTypes();
+
+		return method.getName().equalsIgnoreCase("pow") &&
+			Modifier.isStatic(method.getModifiers()) &&
+			method.isAnnotationPresent(Pure.class) &&
+			isFloating(returnType) &&
+			parameterTypes.length == 2 &&
+			parameterTypes[0] == returnType;
+	}
+
+	private boolean isFloating(final Expression expression) {
+		return isFloating(context.analysis().type(expression));
+	}
+
+	private static boolean isFloating(final Class<?> type) {
+		return type == float.class || type == double.class;
+	}
+
+	private static boolean isSum(final BinaryOperationExpression.Operator operator) {
+		return operator == ADD || operator == SUBTRACT;
+	}
+
+	private static float signed(final BinaryOperationExpression.Operator operator, final float value) {
+		return operator == SUBTRACT ? -value : value;
+	}
+}
@@ -0,0 +1,242 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.ArrayAccessExpression;
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.CompileContext;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hoists pure, loop-invariant subexpressions out of loop bodies and into the loop's
+ * {@link LoopExpression#preheader() preheader}, through JVM locals.
+ * <p>
+ * An expression is invariant when nothing in the body may change what it reads, using the same rules as
+ * {@link CommonSubexpressions}: a field {@code SET} varies every read of a field of the same name,
+ * an array element {@code SET} varies every array read, and a call to anything not marked
+ * {@link dev.spiritstudios.mojank.compile.link.Pure} varies everything, so nothing is hoisted at all.
+ * <p>
+ * Only expressions the first iteration would have evaluated unconditionally are hoisted,
+ * as even a pure expression may throw, such as reading a field of null, and hoisting one that might not have run
+ * could introduce that exception. Passes may only lose exceptions, as {@link DeadCode} does, never introduce them.
+ * The preheader itself is skipped when the loop has no iterations.
+ * Inner loops are hoisted first, into their own preheaders. Those are only run if the inner loop is,
+ * so whatever they take stays within the outer loop, even if it's invariant there too.
+ *
+ * @see Optimiser
+ */
+public final class LoopInvariants {
+	private final CompileContext context;
+	private int nextId;
+
+	private LoopInvariants(final CompileContext context, final int firstId) {
+		this.context = context;
+		this.nextId = firstId;
+	}
+
+	public static Expression hoist(final Expression expression, final CompileContext context) {
+		return new LoopInvariants(context, Trees.nextLocalId(expression)).visit(expression);
+	}
+
+	private Expression visit(final Expression expression) {
+		final var mapped = Trees.mapChildren(expression, this::visit);
+
+		if (!(mapped instanceof LoopExpression(var count, var body, var preheader))) {
+			return mapped;
+		}
+
+		final var writes = new Writes();
+
+		if (!writes.scan(body)) {
+			return mapped;
+		}
+
+		final var invariants = new LinkedHashMap<Expression, Integer>();
+		collect(body, writes, invariants);
+
+		if (invariants.isEmpty()) {
+			return mapped;
+		}
+
+		final var hoisted = new ArrayList<>(preheader);
+		invariants.forEach((invariant, id) -> hoisted.add(new LocalStoreExpression(id, invariant)));
+
+		return new LoopExpression(count, replace(body, invariants), hoisted);
+	}
+
+	/**
+	 * Collects the largest invariant expressions that are unconditionally evaluated by the first iteration.
+	 *
+	 * @return Whether evaluation may have stopped, or jumped elsewhere, within the expression.
+	 */
+	private boolean collect(final Expression expression, final Writes writes, final Map<Expression, Integer> out) {
+		if (isHoistable(expression, writes)) {
+			if (!out.containsKey(expression)) {
+				out.put(expression, nextId++);
+			}
+			return false;
+		}
+
+		return switch (expression) {
+			case ComplexExpression(var statements) -> {
+				for (final var statement : statements) {
+					if (collect(statement, writes, out)) {
+						yield true;
+					}
+				}
+				yield false;
+			}
+			// The body of an inner loop may never run; its own preheader has already taken what it can.
+			case LoopExpression loop -> collect(loop.count(), writes, out) || transfersControl(loop);
+			case TernaryOperationExpression(var condition, var _, var _) ->
+				collect(condition, writes, out) || transfersControl(expression);
+			case BinaryOperationExpression(var left, var operator, var right) -> switch (operator) {
+				case CONDITIONAL, LOGICAL_AND, LOGICAL_OR, NULL_COALESCE ->
+					collect(left, writes, out) || transfersControl(expression);
+				// The right of a get is a member name.
+				case GET -> collect(left, writes, out);
+				case SET -> switch (left) {
+					case BinaryOperationExpression(var owner, var _, var _) ->
+						collect(owner, writes, out) || collect(right, writes, out);
+					case ArrayAccessExpression(var array, var index) -> collect(array, writes, out) ||
+						collect(index, writes, out) ||
+						collect(right, writes, out);
+					default -> collect(right, writes, out);
+				};
+				default -> collect(left, writes, out) || collect(right, writes, out);
+			};
+			case MethodCallExpression(var method, var parameters) -> {
+				if (method instanceof BinaryOperationExpression(var owner, var _, var _) && collect(owner, writes, out)) {
+					yield true;
+				}
+
+				for (final var parameter : parameters) {
+					if (collect(parameter, writes, out)) {
+						yield true;
+					}
+				}
+
+				yield false;
+			}
+			case UnaryOperationExpression(var value, var operator) ->
+				collect(value, writes, out) || operator == UnaryOperationExpression.Operator.RETURN;
+			case KeywordExpression _ -> true;
+			default -> {
+				for (final var child : Trees.children(expression)) {
+					if (collect(child, writes, out)) {
+						yield true;
+					}
+				}
+				yield false;
+			}
+		};
+	}
+
+	private boolean isHoistable(final Expression expression, final Writes writes) {
+		return switch (expression) {
+			// Already as cheap as the local that would replace them.
+			case ConstantExpression _, IdentifierExpression _, KeywordExpression _, LocalLoadExpression _,
+				 LocalStoreExpression _, ComplexExpression _, LoopExpression _ -> false;
+			case BinaryOperationExpression binary when context.analysis().temporary(binary) != null -> false;
+			// Values only; anything void, such as a conditional, is only evaluated for its effects.
+			default -> Effects.isPure(expression, context.linker()) &&
+				context.analysis().type(expression) != void.class &&
+				!Trees.anyMatch(expression, node -> switch (node) {
+					case LocalLoadExpression _, LocalStoreExpression _ -> true;
+					case ArrayAccessExpression _ -> writes.arrays;
+					case BinaryOperationExpression(var _, var operator, IdentifierExpression(String name))
+						when operator == BinaryOperationExpression.Operator.GET -> writes.fields.contains(normalise(name));
+					default -> false;
+				});
+		};
+	}
+
+	private static Expression replace(final Expression expression, final Map<Expression, Integer> invariants) {
+		final var id = invariants.get(expression);
+
+		if (id != null) {
+			return new LocalLoadExpression(id, expression);
+		}
+
+		return switch (expression) {
+			case BinaryOperationExpression(var left, var operator, var right)
+				when operator == BinaryOperationExpression.Operator.GET ->
+				new BinaryOperationExpression(replace(left, invariants), operator, right);
+			// The target of a set is written to, not read, so only what it is written into may be replaced.
+			case BinaryOperationExpression(var left, var operator, var right)
+				when operator == BinaryOperationExpression.Operator.SET -> new BinaryOperationExpression(
+				switch (left) {
+					case BinaryOperationExpression(var owner, var getOperator, var name) ->
+						new BinaryOperationExpression(replace(owner, invariants), getOperator, name);
+					case ArrayAccessExpression(var array, var index) ->
+						new ArrayAccessExpression(replace(array, invariants), replace(index, invariants));
+					default -> replace(left, invariants);
+				},
+				operator,
+				replace(right, invariants)
+			);
+			case MethodCallExpression(BinaryOperationExpression(var owner, var operator, var name), var parameters) ->
+				new MethodCallExpression(
+					new BinaryOperationExpression(replace(owner, invariants), operator, name),
+					Trees.mapAll(parameters, parameter -> replace(parameter, invariants))
+				);
+			default -> Trees.mapChildren(expression, child -> replace(child, invariants));
+		};
+	}
+
+	private static boolean transfersControl(final Expression expression) {
+		return Trees.anyMatch(expression, node -> node instanceof KeywordExpression ||
+			node instanceof UnaryOperationExpression(var _, var operator) &&
+				operator == UnaryOperationExpression.Operator.RETURN);
+	}
+
+	private static String normalise(final String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Everything a loop body may write to.
+	 */
+	private final class Writes {
+		private final Set<String> fields = new HashSet<>();
+		private boolean arrays;
+
+		/**
+		 * @return Whether the writes are known; false if anything may be written.
+		 */
+		private boolean scan(final Expression body) {
+			return !Trees.anyMatch(body, node -> switch (node) {
+				case BinaryOperationExpression(var left, var operator, var _)
+					when operator == BinaryOperationExpression.Operator.SET -> {
+					switch (left) {
+						case BinaryOperationExpression(var _, var _, IdentifierExpression(String name)) ->
+							fields.add(normalise(name));
+						case ArrayAccessExpression _ -> arrays = true;
+						default -> {
+						}
+					}
+					yield false;
+				}
+				case BinaryOperationExpression(var _, var operator, var _)
+					when operator == BinaryOperationExpression.Operator.ARROW -> true;
+				case MethodCallExpression call -> !Effects.isPureCall(call, context.linker());
+				default -> false;
+			});
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+
+import java.util.Collections;
+
+/**
+ * Replaces loops with a small constant count by that many copies of their body.
+ * <p>
+ * A loop is only unrolled when its count, after applying {@link CompileOptions#maxLoopIterations()},
+ * is at most {@link CompileOptions#unrollLimit()}, the unrolled copies stay within {@link #NODE_BUDGET},
+ * and its body has no {@code break} or {@code continue}, which would need the loop to jump to.
+ * Inner loops are considered first, so nested loops may be unrolled entirely.
+ *
+ * @see Optimiser
+ */
+public final class LoopUnroller {
+	/**
+	 * The most nodes a single unrolled loop may expand to, which keeps the method well within its size limit.
+	 */
+	static final int NODE_BUDGET = 256;
+
+	private LoopUnroller() {
+	}
+
+	public static Expression unroll(final Expression expression, final CompileOptions options) {
+		final var mapped = Trees.mapChildren(expression, child -> unroll(child, options));
+
+		if (!(mapped instanceof LoopExpression(ConstantExpression(Number constant), var body, var preheader)) ||
+			!preheader.isEmpty()) {
+			return mapped;
+		}
+
+		// Matches the truncation, and saturation, of the count in LoopExpression.
+		final int count = Math.max(Math.min(constant.intValue(), options.maxLoopIterations()), 0);
+
+		if (count > options.unrollLimit() ||
+			(long) count * Trees.size(body) > NODE_BUDGET ||
+			Trees.anyMatch(body, KeywordExpression.class::isInstance)) {
+			return mapped;
+		}
+
+		return new ComplexExpression(Collections.nCopies(count, body));
+	}
+}
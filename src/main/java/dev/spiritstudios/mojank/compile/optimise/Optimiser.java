@@ -0,0 +1,29 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+
+/**
+ * Runs the AST optimisation passes, in order, before an expression is emitted.
+ */
+public final class Optimiser {
+	private Optimiser() {
+	}
+
+	public static Expression optimise(final Expression expression, final CompileContext context) {
+		var optimised = ConstantFolder.fold(expression, context.linker());
+		optimised = DeadCode.eliminate(optimised, context.linker());
+		optimised = LoopUnroller.unroll(optimised, context.options());
+
+		if (context.options().floatMode() == CompileOptions.FloatMode.FAST) {
+			// Before CSE, so that the operands duplicated by expanding powers are shared again.
+			optimised = FastMath.rewrite(optimised, context);
+		}
+
+		optimised = LoopInvariants.hoist(optimised, context);
+
+		optimised = CommonSubexpressions.eliminate(optimised, context.linker());
+		return optimised;
+	}
+}
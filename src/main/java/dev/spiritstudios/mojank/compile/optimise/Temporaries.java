@@ -0,0 +1,229 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.compile.LocalSlot;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Allocates the JVM locals backing variables in the target's {@link dev.spiritstudios.mojank.compile.link.Local}
+ * scopes, such as {@code temp.a}, so that they cost no more than any other local.
+ * <p>
+ * Each variable is live from its first to its last access in evaluation order,
+ * and variables whose ranges don't overlap share a slot of the same kind.
+ * Accesses within a loop keep the variable live for the whole loop, as they may be reached again by the next iteration.
+ * <p>
+ * A variable that may be read before it's assigned, as its first access is a read or a conditional assignment,
+ * is live from the start of the method, and is initialised to zero or null there.
+ *
+ * @see dev.spiritstudios.mojank.compile.Binding.Temporary
+ */
+public final class Temporaries {
+	private final CompileContext context;
+	private final Map<String, Range> ranges = new LinkedHashMap<>();
+	private final Deque<Set<String>> loops = new ArrayDeque<>();
+	private int position;
+
+	private Temporaries(final CompileContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Types every temporary and {@link dev.spiritstudios.mojank.compile.link.Variables variable} access
+	 * in evaluation order, so that each takes the type of whichever of its accesses would run first,
+	 * regardless of the order the passes ask for types in.
+	 * <p>
+	 * Widening a variable forgets every type resolved by then, so this goes over the expression again
+	 * until nothing more is widened.
+	 */
+	public static void declare(final Expression expression, final CompileContext context) {
+		final var analysis = context.analysis();
+		int widenings;
+
+		do {
+			widenings = analysis.widenings();
+			new Temporaries(context).visit(expression, false);
+		} while (analysis.widenings() != widenings);
+	}
+
+	/**
+	 * Allocates a slot for every variable accessed within the expression into {@link CompileContext#temporaries()},
+	 * and initialises those that may be read before they're assigned.
+	 *
+	 * @param builder The builder for the start of the method, so that the slots are live throughout.
+	 */
+	public static void allocate(final Expression expression, final CompileContext context, final CodeBuilder builder) {
+		final var temporaries = new Temporaries(context);
+		temporaries.visit(expression, false);
+
+		final var sorted = new ArrayList<>(temporaries.ranges.entrySet());
+		sorted.sort(Comparator.comparingInt(entry -> entry.getValue().start));
+
+		final List<Slot> slots = new ArrayList<>();
+
+		for (final var entry : sorted) {
+			final var range = entry.getValue();
+			final var kind = TypeKind.from(range.type).asLoadable();
+
+			Slot slot = null;
+
+			for (final var candidate : slots) {
+				if (candidate.kind == kind && candidate.end < range.start) {
+					slot = candidate;
+					break;
+				}
+			}
+
+			if (slot == null) {
+				slot = new Slot(kind, builder.allocateLocal(kind));
+				slots.add(slot);
+			}
+
+			slot.end = range.end;
+
+			if (range.start == 0) {
+				zero(kind, builder);
+				builder.storeLocal(kind, slot.slot);
+			}
+
+			context.temporaries().put(entry.getKey(), new LocalSlot(slot.slot, range.type));
+		}
+	}
+
+	private void visit(final Expression expression, final boolean conditional) {
+		final var analysis = context.analysis();
+
+		switch (expression) {
+			case BinaryOperationExpression(var left, var operator, var right)
+				when operator == BinaryOperationExpression.Operator.SET && isScoped(left) -> {
+				// The value is evaluated before it's stored, so any read of the variable within it comes first.
+				visit(right, conditional);
+				analysis.type(expression);
+				access(left, !conditional);
+			}
+			case BinaryOperationExpression binary when isScoped(binary) -> access(binary, false);
+			case BinaryOperationExpression(var left, var operator, var right) -> {
+				visit(left, conditional);
+
+				switch (operator) {
+					case CONDITIONAL, LOGICAL_AND, LOGICAL_OR, NULL_COALESCE -> visit(right, true);
+					default -> visit(right, conditional);
+				}
+			}
+			case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> {
+				visit(condition, conditional);
+				visit(ifTrue, true);
+				visit(ifFalse, true);
+			}
+			case LoopExpression(var count, var body, var preheader) -> {
+				visit(count, conditional);
+
+				final int start = position;
+				loops.push(new HashSet<>());
+
+				// Neither runs when there are no iterations.
+				for (final var statement : preheader) {
+					visit(statement, true);
+				}
+				visit(body, true);
+
+				final int end = ++position;
+				final var accessed = loops.pop();
+
+				for (final var name : accessed) {
+					final var range = ranges.get(name);
+					range.start = Math.min(range.start, start);
+					range.end = end;
+				}
+
+				if (!loops.isEmpty()) {
+					loops.peek().addAll(accessed);
+				}
+			}
+			default -> {
+				for (final var child : Trees.children(expression)) {
+					visit(child, conditional);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param definite Whether the access is an assignment that is always evaluated.
+	 */
+	private void access(final Expression variable, final boolean definite) {
+		final var name = context.analysis().temporary(variable);
+		final var type = context.analysis().type(variable);
+
+		if (name == null) {
+			// Persistent variables are fields, so only need typing.
+			return;
+		}
+
+		position++;
+
+		final var range = ranges.get(name);
+
+		if (range == null) {
+			ranges.put(name, new Range(type, definite ? position : 0, position));
+		} else {
+			range.end = position;
+		}
+
+		if (!loops.isEmpty()) {
+			loops.peek().add(name);
+		}
+	}
+
+	private boolean isScoped(final Expression expression) {
+		return context.analysis().temporary(expression) != null || context.analysis().variable(expression) != null;
+	}
+
+	private static void zero(final TypeKind kind, final CodeBuilder builder) {
+		switch (kind) {
+			case INT -> builder.iconst_0();
+			case LONG -> builder.lconst_0();
+			case FLOAT -> builder.fconst_0();
+			case DOUBLE -> builder.dconst_0();
+			case REFERENCE -> builder.aconst_null();
+			default -> throw new IllegalArgumentException("Cannot zero a local of kind " + kind);
+		}
+	}
+
+	private static final class Range {
+		private final Class<?> type;
+		private int start;
+		private int end;
+
+		private Range(final Class<?> type, final int start, final int end) {
+			this.type = type;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private static final class Slot {
+		private final TypeKind kind;
+		private final int slot;
+		private int end;
+
+		private Slot(final TypeKind kind, final int slot) {
+			this.kind = kind;
+			this.slot = slot;
+		}
+	}
+}
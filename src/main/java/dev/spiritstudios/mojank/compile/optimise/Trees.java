@@ -0,0 +1,158 @@
+package dev.spiritstudios.mojank.compile.optimise;
+
+import dev.spiritstudios.mojank.ast.ArrayAccessExpression;
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.KeywordExpression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.TernaryOperationExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Structural helpers shared by the passes.
+ */
+final class Trees {
+	private Trees() {
+	}
+
+	/**
+	 * The direct children of the expression, in emission order.
+	 */
+	static List<Expression> children(final Expression expression) {
+		return switch (expression) {
+			case ArrayAccessExpression(var array, var index) -> List.of(array, index);
+			case BinaryOperationExpression(var left, var _, var right) -> List.of(left, right);
+			case ComplexExpression(var expressions) -> expressions;
+			case MethodCallExpression(var method, var parameters) -> {
+				final var children = new ArrayList<Expression>(parameters.size() + 1);
+				children.add(method);
+				children.addAll(parameters);
+				yield children;
+			}
+			case LoopExpression(var count, var body, var preheader) -> {
+				final var children = new ArrayList<Expression>(preheader.size() + 2);
+				children.add(count);
+				children.addAll(preheader);
+				children.add(body);
+				yield children;
+			}
+			case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> List.of(condition, ifTrue, ifFalse);
+			case UnaryOperationExpression(var value, var _) -> List.of(value);
+			case LocalStoreExpression(var _, var value) -> List.of(value);
+			case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) ->
+				List.of(multiplicand, multiplier, addend);
+			case ConstantExpression _, IdentifierExpression _, KeywordExpression _, LocalLoadExpression _ -> List.of();
+		};
+	}
+
+	/**
+	 * Rebuilds the expression with the function applied to each of its direct children.
+	 */
+	static Expression mapChildren(final Expression expression, final UnaryOperator<Expression> function) {
+		return switch (expression) {
+			case ArrayAccessExpression(var array, var index) ->
+				new ArrayAccessExpression(function.apply(array), function.apply(index));
+			case BinaryOperationExpression(var left, var operator, var right) ->
+				new BinaryOperationExpression(function.apply(left), operator, function.apply(right));
+			case ComplexExpression(var expressions) -> new ComplexExpression(mapAll(expressions, function));
+			case MethodCallExpression(var method, var parameters) ->
+				new MethodCallExpression(function.apply(method), mapAll(parameters, function));
+			case LoopExpression(var count, var body, var preheader) -> {
+				final var mappedCount = function.apply(count);
+				final var mappedPreheader = mapAll(preheader, function);
+				yield new LoopExpression(mappedCount, function.apply(body), mappedPreheader);
+			}
+			case TernaryOperationExpression(var condition, var ifTrue, var ifFalse) -> new TernaryOperationExpression(
+				function.apply(condition),
+				function.apply(ifTrue),
+				function.apply(ifFalse)
+			);
+			case UnaryOperationExpression(var value, var operator) ->
+				new UnaryOperationExpression(function.apply(value), operator);
+			case LocalStoreExpression(var id, var value) -> new LocalStoreExpression(id, function.apply(value));
+			case FusedMultiplyAddExpression(var multiplicand, var multiplier, var addend) -> new FusedMultiplyAddExpression(
+				function.apply(multiplicand),
+				function.apply(multiplier),
+				function.apply(addend)
+			);
+			case ConstantExpression _, IdentifierExpression _, KeywordExpression _, LocalLoadExpression _ -> expression;
+		};
+	}
+
+	static List<Expression> mapAll(final List<Expression> expressions, final UnaryOperator<Expression> function) {
+		final var mapped = new ArrayList<Expression>(expressions.size());
+		for (final var expression : expressions) {
+			mapped.add(function.apply(expression));
+		}
+		return mapped;
+	}
+
+	/**
+	 * Whether the expression is a numeric constant, which the compiler and interpreter agree on the truthiness of.
+	 */
+	static boolean isNumber(final Expression expression) {
+		return expression instanceof ConstantExpression(var value) && (value instanceof Float || value instanceof Integer);
+	}
+
+	/**
+	 * The first local id that is not already used by a {@link LocalStoreExpression} or {@link LocalLoadExpression}
+	 * within the expression, as some locals are bound before the expression runs, and so are never stored.
+	 */
+	static int nextLocalId(final Expression expression) {
+		final int[] next = {0};
+
+		anyMatch(expression, node -> {
+			switch (node) {
+				case LocalStoreExpression(int id, var _) -> next[0] = Math.max(next[0], id + 1);
+				case LocalLoadExpression(int id, var _) -> next[0] = Math.max(next[0], id + 1);
+				default -> {
+				}
+			}
+			return false;
+		});
+
+		return next[0];
+	}
+
+	/**
+	 * How many nodes make up the expression, including itself.
+	 */
+	static int size(final Expression expression) {
+		int size = 1;
+
+		for (final var child : children(expression)) {
+			size += size(child);
+		}
+
+		return size;
+	}
+
+	/**
+	 * Whether the expression or any expression within it matches.
+	 */
+	static boolean anyMatch(final Expression expression, final Predicate<Expression> predicate) {
+		if (predicate.test(expression)) {
+			return true;
+		}
+
+		for (final var child : children(expression)) {
+			if (anyMatch(child, predicate)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,104 @@
+package dev.spiritstudios.mojank.internal;
+
+import dev.spiritstudios.mojank.MolangInterpreter;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+/**
+ * What the {@link MolangInterpreter} and the evaluators built from closures or method handles share,
+ * so that they agree with each other and with the compiled code.
+ */
+public final class Evaluation {
+	/**
+	 * The most parameters a method may take and still be called without boxing.
+	 */
+	public static final int MAX_FLOAT_PARAMETERS = 3;
+
+	/**
+	 * The shapes primitive static methods are invoked as, by parameter count.
+	 */
+	public static final MethodType[] STATIC_FLOAT = floatTypes(false);
+	/**
+	 * The shapes primitive virtual methods are invoked as, by parameter count, with the receiver as an {@link Object}.
+	 */
+	public static final MethodType[] VIRTUAL_FLOAT = floatTypes(true);
+	public static final MethodType STATIC_FLOAT_SETTER = MethodType.methodType(void.class, float.class);
+	public static final MethodType VIRTUAL_FLOAT_SETTER = MethodType.methodType(void.class, Object.class, float.class);
+
+	private Evaluation() {
+	}
+
+	private static MethodType[] floatTypes(final boolean receiver) {
+		final var types = new MethodType[MAX_FLOAT_PARAMETERS + 1];
+
+		for (int i = 0; i < types.length; i++) {
+			final var type = MethodType.methodType(float.class, Collections.nCopies(i, float.class));
+			types[i] = receiver ? type.insertParameterTypes(0, Object.class) : type;
+		}
+
+		return types;
+	}
+
+	/**
+	 * Whether the method can be invoked as one of {@link #STATIC_FLOAT} or {@link #VIRTUAL_FLOAT}, without boxing.
+	 */
+	public static boolean isFloatShaped(final Method method) {
+		if (method.getParameterCount() > MAX_FLOAT_PARAMETERS || !widensToFloat(method.getReturnType())) {
+			return false;
+		}
+
+		for (final var type : method.getParameterTypes()) {
+			if (type != float.class && type != double.class) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Whether a value of the type can be read as a float without boxing.
+	 * Booleans can't, as they aren't numbers to the JVM.
+	 */
+	public static boolean widensToFloat(final Class<?> type) {
+		return type == float.class || type == int.class || type == long.class ||
+			type == short.class || type == byte.class || type == char.class;
+	}
+
+	/**
+	 * @return What a variable of the type reads as before it's assigned.
+	 */
+	public static @Nullable Object zero(final Class<?> type) {
+		return type.isPrimitive() ? MolangInterpreter.convert(0F, type) : null;
+	}
+
+	/**
+	 * Wraps an index into the array's bounds, as the compiled code does, clamping negative indices to the first element.
+	 *
+	 * @see dev.spiritstudios.mojank.compile.BoilerplateGenerator#wrapArrayIndex
+	 */
+	public static int wrapIndex(final Object array, final int index) {
+		return Math.max(index, 0) % Array.getLength(array);
+	}
+
+	/**
+	 * Throws unchecked exceptions and errors as they are, and wraps anything else.
+	 *
+	 * @return Nothing, but can be thrown so that the compiler knows the caller doesn't continue.
+	 */
+	public static RuntimeException rethrow(final Throwable throwable) {
+		if (throwable instanceof RuntimeException exception) {
+			throw exception;
+		}
+
+		if (throwable instanceof Error error) {
+			throw error;
+		}
+
+		throw new RuntimeException(throwable);
+	}
+}
@@ -0,0 +1,151 @@
+package dev.spiritstudios.mojank.token;
+
+import java.util.Objects;
+
+/**
+ * A whole stream of tokens, packed into parallel arrays rather than being an object each.
+ * <p>
+ * Every token has a kind, which is either the ordinal of an {@link OperatorToken} or one of the kinds below,
+ * and a start and length in its source, counted in chars, or bytes for UTF-8.
+ * Identifiers and strings refer to an interned symbol, so equal ones share both an id and a string,
+ * and numbers keep their value unboxed.
+ * <p>
+ * Once lexed, a stream never changes, so it can be cached and parsed any number of times.
+ * Parsers read the arrays in place, and only make a token into an object to report it, which is never kept.
+ */
+public final class PackedTokens {
+	public static final int NUMBER = -1;
+	public static final int STRING = -2;
+	public static final int IDENTIFIER = -3;
+	public static final int TRUE = -4;
+	public static final int FALSE = -5;
+	public static final int ERROR = -6;
+
+	private static final OperatorToken[] OPERATORS = OperatorToken.values();
+
+	private final int size;
+	private final int[] kinds;
+	private final int[] starts;
+	private final int[] lengths;
+	private final int[] symbols;
+	private final float[] numbers;
+	private final String[] names;
+	private final ErrorToken[] errors;
+
+	/**
+	 * Takes ownership of the arrays, which may be longer than the stream.
+	 *
+	 * @param symbols The symbol of each identifier or string, or the index into {@code errors} of each error.
+	 * @param names   The string of each symbol.
+	 */
+	public PackedTokens(
+		int size,
+		int[] kinds,
+		int[] starts,
+		int[] lengths,
+		int[] symbols,
+		float[] numbers,
+		String[] names,
+		ErrorToken[] errors
+	) {
+		Objects.checkFromIndexSize(0, size, kinds.length);
+		Objects.checkFromIndexSize(0, size, starts.length);
+		Objects.checkFromIndexSize(0, size, lengths.length);
+		Objects.checkFromIndexSize(0, size, symbols.length);
+		Objects.checkFromIndexSize(0, size, numbers.length);
+
+		if (size == 0 || kinds[size - 1] != OperatorToken.EOF.ordinal()) {
+			throw new IllegalArgumentException("Packed tokens must end with EOF");
+		}
+
+		this.size = size;
+		this.kinds = kinds;
+		this.starts = starts;
+		this.lengths = lengths;
+		this.symbols = symbols;
+		this.numbers = numbers;
+		this.names = names;
+		this.errors = errors;
+	}
+
+	/**
+	 * @return The number of tokens, including the EOF at the end.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The ordinal of an {@link OperatorToken}, or one of {@link #NUMBER}, {@link #STRING}, {@link #IDENTIFIER},
+	 * {@link #TRUE}, {@link #FALSE} or {@link #ERROR}.
+	 */
+	public int kind(int index) {
+		return kinds[Objects.checkIndex(index, size)];
+	}
+
+	public int start(int index) {
+		return starts[Objects.checkIndex(index, size)];
+	}
+
+	public int length(int index) {
+		return lengths[Objects.checkIndex(index, size)];
+	}
+
+	/**
+	 * @return The symbol of an identifier or string, or -1 for any other kind.
+	 */
+	public int symbol(int index) {
+		int kind = kind(index);
+		return kind == IDENTIFIER || kind == STRING ? symbols[index] : -1;
+	}
+
+	/**
+	 * @return The value of a number, or zero for any other kind.
+	 */
+	public float number(int index) {
+		return kind(index) == NUMBER ? numbers[index] : 0F;
+	}
+
+	/**
+	 * @return The number of distinct symbols.
+	 */
+	public int symbols() {
+		return names.length;
+	}
+
+	public String name(int symbol) {
+		return names[symbol];
+	}
+
+	/**
+	 * Makes the token into an object, a new one on every call for numbers, strings and identifiers.
+	 */
+	public MolangToken token(int index) {
+		int kind = kinds[Objects.checkIndex(index, size)];
+
+		return switch (kind) {
+			case NUMBER -> new ConstantToken(numbers[index]);
+			case STRING -> new ConstantToken(names[symbols[index]]);
+			case IDENTIFIER -> new IdentifierToken(names[symbols[index]]);
+			case TRUE -> ConstantToken.TRUE;
+			case FALSE -> ConstantToken.FALSE;
+			case ERROR -> errors[symbols[index]];
+			default -> OPERATORS[kind];
+		};
+	}
+
+	/**
+	 * @return The kind a token would be packed as, as for {@link #kind}.
+	 */
+	public static int kindOf(MolangToken token) {
+		return switch (token) {
+			case OperatorToken operator -> operator.ordinal();
+			case ErrorToken error -> ERROR;
+			case IdentifierToken identifier -> IDENTIFIER;
+			case ConstantToken constant when constant == ConstantToken.TRUE -> TRUE;
+			case ConstantToken constant when constant == ConstantToken.FALSE -> FALSE;
+			case ConstantToken(String string) -> STRING;
+			case ConstantToken constant -> NUMBER;
+		};
+	}
+}
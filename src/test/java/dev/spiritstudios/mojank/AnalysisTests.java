@@ -0,0 +1,118 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.IdentifierExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.Binding;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.MolangMath;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static dev.spiritstudios.mojank.Assertions.analysis;
+import static dev.spiritstudios.mojank.Assertions.assertEvalEquals;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class AnalysisTests {
+	/**
+	 * Parses a single expression without the implicit return.
+	 */
+	private static Expression value(String source) throws IOException {
+		return ((UnaryOperationExpression) parse(source)).value();
+	}
+
+	private static Object evaluate(String source, Query query) throws IOException {
+		return MolangInterpreter.evaluate(parse(source), analysis(), new Context(), query);
+	}
+
+	@Test
+	public void testTypes() throws IOException {
+		var analysis = analysis();
+
+		assertEquals(float.class, analysis.type(value("q.anim_time * 2")));
+		assertEquals(boolean.class, analysis.type(value("q.anim_time > 2")));
+		assertEquals(int.class, analysis.type(value("q.x + 1")));
+		assertEquals(float[].class, analysis.type(value("q.array_test")));
+		assertEquals(float.class, analysis.type(value("q.array_test[1]")));
+		assertEquals(float.class, analysis.type(value("math.sin(q.anim_time)")));
+		assertEquals(void.class, analysis.type(value("q.x = 1")));
+		assertEquals(void.class, analysis.type(value("q.anim_time > 2 ? q.x = 1")));
+	}
+
+	@Test
+	public void testBindings() throws IOException {
+		var analysis = analysis();
+
+		var get = (BinaryOperationExpression) value("q.pos.x");
+		var access = analysis.binding(get, Binding.FieldAccess.class);
+		assertEquals(Query.Vec3.class, access.owner());
+		assertTrue(access.hasReceiver());
+
+		var query = analysis.binding(((BinaryOperationExpression) get.left()).left(), Binding.Parameter.class);
+		assertEquals(Query.class, query.type());
+		assertEquals(2, query.slot());
+
+		var pi = (BinaryOperationExpression) value("math.pi");
+		var constant = analysis.binding(pi, Binding.FieldAccess.class);
+		assertEquals(MolangMath.class, constant.owner());
+		assertFalse(constant.hasReceiver());
+
+		var call = (MethodCallExpression) value("math.cos(0)");
+		var invocation = analysis.binding(call, Binding.Invocation.class);
+		assertEquals("cos", invocation.method().getName());
+		assertFalse(invocation.hasReceiver());
+	}
+
+	@Test
+	public void testMemoised() throws IOException {
+		var analysis = analysis();
+		var expression = value("q.pos");
+
+		var first = analysis.binding(expression);
+		assertSame(first, analysis.binding(expression));
+		assertSame(analysis.type(expression), analysis.type(expression));
+	}
+
+	@Test
+	public void testErrors() {
+		var analysis = analysis();
+
+		assertThrows(IllegalStateException.class, () -> analysis.type(new IdentifierExpression("nope")));
+		assertThrows(IllegalStateException.class, () -> analysis.binding(value("1 + 1")));
+		assertThrows(UnsupportedOperationException.class, () -> analysis.type(value("q.test_bool ? 1 : q.x")));
+	}
+
+	@Test
+	public void testConditionalStatements() throws Throwable {
+		assertEvalEquals(1F, "q.anim_time > 2 ? q.x = 1; return q.x", new Context(), new Query());
+		assertEvalEquals(0F, "q.anim_time < 2 ? q.x = 1; return q.x", new Context(), new Query());
+		assertEvalEquals(15F, "q.anim_time > 2 ? q.test(1); return q.anim_time * 3", new Context(), new Query());
+	}
+
+	@Test
+	public void testInterpreter() throws IOException {
+		var query = new Query();
+
+		assertEquals(10F, evaluate("q.anim_time * 2", query));
+		assertEquals(12F, evaluate("q.test(4)", query));
+		assertEquals(4F, evaluate("q.array_test[2]", query));
+		assertEquals(1F, evaluate("q.array_test[3]", query));
+		assertEquals(true, evaluate("q.test_bool2 && !q.test_bool", query));
+		assertEquals(MolangMath.pi, evaluate("math.pi", query));
+		assertNull(evaluate("q.test_null", query));
+
+		assertEquals(3, evaluate("q.x = 3; q.pos.y = q.x * 2; return q.x", query));
+		assertEquals(6F, query.pos.y);
+		assertEquals(3, query.x);
+	}
+}
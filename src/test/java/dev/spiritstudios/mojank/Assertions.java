@@ -1,5 +1,7 @@
 package dev.spiritstudios.mojank;
 
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.compile.Analysis;
 import dev.spiritstudios.mojank.compile.Compiler;
 import dev.spiritstudios.mojank.internal.Util;
 import dev.spiritstudios.mojank.compile.link.Linker;
@@ -10,8 +12,10 @@ import dev.spiritstudios.mojank.meow.test.Query;
 import dev.spiritstudios.mojank.meow.test.debug.DebugUtils;
 import org.slf4j.Logger;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
 import java.time.Duration;
 import java.time.Instant;
 
@@ -20,13 +24,29 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 public class Assertions {
 	private static final Logger logger = Util.logger();
 
-	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+	static final MethodHandles.Lookup lookup = MethodHandles.lookup();
 
-	private static final Linker linker = Linker.UNTRUSTED.toBuilder()
+	static final Linker linker = Linker.UNTRUSTED.toBuilder()
 		.addAllowedClasses(Context.class, Query.class, Query.Vec3.class, Object.class)
 		.aliasClass(MolangMath.class, "math")
 		.build();
 
+	/**
+	 * The method expressions compiled as a {@link Functor} implement.
+	 */
+	static final Method target = linker.tryFunctionalClass(Functor.class).orElseThrow();
+
+	static Expression parse(String source) throws IOException {
+		return new MolangParser(new MolangLexer(new StringReader(source)), linker).parseAll();
+	}
+
+	/**
+	 * A fresh analysis for expressions compiled as a {@link Functor}.
+	 */
+	static Analysis analysis() {
+		return new Analysis(linker, target);
+	}
+
 	public static void assertEvalEquals(
 		float expected,
 		String source,
@@ -34,10 +54,7 @@ public class Assertions {
 		Query query,
 		boolean debug
 	) throws Throwable {
-		var lexer = new MolangLexer(new StringReader(source));
-		var parser = new MolangParser(lexer, linker);
-
-		var expression = parser.parseAll();
+		var expression = parse(source);
 
 		if (debug) {
 			logger.info("Expression: {}", expression);
@@ -0,0 +1,90 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.compile.CompilerResult;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public final class BatchCompilationTests {
+	@Test
+	public void testBatchSharesClasses() throws Throwable {
+		var sources = List.of(
+			"q.anim_time * 2",
+			"math.sin(1.23)",
+			"query.test(3)",
+			"6 > 7",
+			"query.array_test[1]"
+		);
+
+		var expressions = new ArrayList<Expression>();
+		for (var source : sources) {
+			expressions.add(new MolangParser(new MolangLexer(new StringReader(source)), linker).parseAll());
+		}
+
+		var batch = Compiler.compileBatch(lookup, linker, Functor.class, expressions, sources, 2);
+		var results = batch.results();
+
+		assertEquals(3, batch.classes());
+		assertEquals(2, batch.classesSaved());
+		assertSame(results.get(0).getClass(), results.get(1).getClass());
+
+		var context = new Context();
+		var query = new Query();
+
+		assertEquals(10F, results.get(0).invoke(context, query));
+		assertEquals((float) Math.sin(1.23F), results.get(1).invoke(context, query));
+		assertEquals(9F, results.get(2).invoke(context, query));
+		assertEquals(0F, results.get(3).invoke(context, query));
+		assertEquals(2F, results.get(4).invoke(context, query));
+
+		for (int i = 0; i < results.size(); i++) {
+			var result = (CompilerResult<?>) results.get(i);
+
+			assertEquals(sources.get(i), result.toString());
+			assertEquals(sources.get(i).hashCode(), result.hashCode());
+			assertEquals(Functor.class, result.getType());
+			assertEquals(results.get(i).invoke(context, query), (float) result.toHandle().invoke(context, query));
+		}
+
+		assertNotEquals(results.get(0), results.get(1));
+	}
+
+	@Test
+	public void testLargeBatchDispatch() throws Throwable {
+		// Enough for several levels of dispatch, with the last of each level only partly filled.
+		var sources = new ArrayList<String>();
+		for (int i = 0; i < 300; i++) {
+			sources.add("q.anim_time * " + i);
+		}
+
+		var expressions = new ArrayList<Expression>();
+		for (var source : sources) {
+			expressions.add(new MolangParser(new MolangLexer(new StringReader(source)), linker).parseAll());
+		}
+
+		var batch = Compiler.compileBatch(lookup, linker, Functor.class, expressions, sources, 300);
+		var results = batch.results();
+
+		assertEquals(1, batch.classes());
+
+		var context = new Context();
+		var query = new Query();
+
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(5F * i, results.get(i).invoke(context, query));
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.BytecodeCache;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public final class BytecodeCacheTests {
+	@TempDir
+	Path directory;
+
+	@Test
+	public void testWarmStartReusesEntry() throws Throwable {
+		var cold = new BytecodeCache(directory);
+		var a = cold.compile(lookup, linker, Functor.class, "q.anim_time * 2");
+
+		assertEquals(10F, a.invoke(new Context(), new Query()));
+		assertEquals(1, cold.stats().misses());
+		assertEquals(1, entries().size());
+
+		var warm = new BytecodeCache(directory);
+		var b = warm.compile(lookup, linker, Functor.class, "q.anim_time * 2");
+
+		assertEquals(10F, b.invoke(new Context(), new Query()));
+		assertEquals(1, warm.stats().hits());
+		assertEquals(0, warm.stats().misses());
+	}
+
+	@Test
+	public void testCorruptEntryIsRebuilt() throws Throwable {
+		var cache = new BytecodeCache(directory);
+		cache.compile(lookup, linker, Functor.class, "1 + 2");
+
+		var entry = entries().getFirst();
+		var bytes = Files.readAllBytes(entry);
+		bytes[bytes.length / 2] ^= 0x5A;
+		Files.write(entry, bytes);
+
+		var rebuilt = new BytecodeCache(directory);
+		var result = rebuilt.compile(lookup, linker, Functor.class, "1 + 2");
+
+		assertEquals(3F, result.invoke(null, null));
+		assertEquals(1, rebuilt.stats().rebuilds());
+		assertEquals(1, rebuilt.stats().misses());
+
+		// The rebuilt entry must be usable again.
+		var again = new BytecodeCache(directory);
+		again.compile(lookup, linker, Functor.class, "1 + 2");
+		assertEquals(1, again.stats().hits());
+	}
+
+	@Test
+	public void testForeignEntryIsRebuilt() throws Throwable {
+		var secret = new byte[32];
+		Arrays.fill(secret, (byte) 1);
+
+		new BytecodeCache(directory, secret).compile(lookup, linker, Functor.class, "1 + 2");
+
+		// Well formed, but written by someone without this cache's secret.
+		var cache = new BytecodeCache(directory);
+		var result = cache.compile(lookup, linker, Functor.class, "1 + 2");
+
+		assertEquals(3F, result.invoke(null, null));
+		assertEquals(1, cache.stats().rebuilds());
+		assertEquals(0, cache.stats().hits());
+	}
+
+	@Test
+	public void testOwnerOnly() throws Throwable {
+		assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+		var nested = directory.resolve("cache");
+		new BytecodeCache(nested);
+
+		assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(nested));
+		assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(nested.resolve("secret.key")));
+	}
+
+	private List<Path> entries() throws IOException {
+		try (var files = Files.list(directory)) {
+			return files.filter(file -> file.toString().endsWith(".mjc")).toList();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.ClosureCompiler;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class ClosureCompilerTests {
+	private static Query query() {
+		var query = new Query();
+		query.life_time = 2.5F;
+		query.pos.x = 7F;
+		query.x = 3;
+		return query;
+	}
+
+	private static void assertSameAsCompiled(String source, CompileOptions options) throws Throwable {
+		var compiled = Compiler.compile(lookup, linker, Functor.class, parse(source), source, options);
+		var closures = ClosureCompiler.compile(linker, Functor.class, parse(source), options);
+
+		var compiledQuery = query();
+		var closureQuery = query();
+
+		assertEquals(compiled.invoke(new Context(), compiledQuery), closures.invoke(new Context(), closureQuery), source);
+		// Any side effects on the query should match too.
+		assertEquals(compiledQuery.x, closureQuery.x, source);
+		assertEquals(compiledQuery.y, closureQuery.y, source);
+		assertEquals(compiledQuery.pos.x, closureQuery.pos.x, source);
+	}
+
+	@Test
+	public void testExpressions() throws Throwable {
+		for (var source : List.of(
+			"q.anim_time * 2 + q.life_time",
+			"q.anim_time * 2 + math.sin(q.life_time) > 3 ? q.pos.x : -q.x",
+			"math.pow(q.life_time, 2) % 4 + math.pi",
+			"q.test(q.x) - q.pos.x / 2",
+			"(q.x == 3 ? 1 : 0) + (!q.test_bool ? 2 : 0) + (q.anim_time != 5 ? 4 : 0)",
+			"q.test_bool_true && q.x > 2 || q.pos.y > 0",
+			"q.array_test[q.x - 1] * 10",
+			"q.test(q.anim_time) + q.test(q.anim_time) * q.test(q.anim_time)"
+		)) {
+			assertSameAsCompiled(source, CompileOptions.DEFAULT);
+		}
+	}
+
+	@Test
+	public void testStatements() throws Throwable {
+		var capped = CompileOptions.builder().maxLoopIterations(5).build();
+
+		for (var source : List.of(
+			"t.a = q.x * 2; t.b = t.a + 1; return t.a * t.b",
+			"return t.unset + 1",
+			"q.pos.x = q.anim_time * 2; q.x = q.test(2); return q.pos.x + q.x",
+			"q.array_test[1] = 8; return q.array_test[1]",
+			"loop(4, { q.x = q.x + 1; }); return q.x",
+			"loop(10, { q.x = q.x + 1; q.x > 5 ? break; }); return q.x",
+			"loop(10, { q.x = q.x + 1; q.x > 5 ? continue; q.y = q.y + 1; }); return q.y",
+			"loop(3, { loop(3, { q.x = q.x + 1; q.x > 6 ? break; }); q.y = q.y + 1; }); return q.x * 10 + q.y",
+			"t.i = 0; loop(q.count(100), { t.i = t.i + 1; }); return t.i"
+		)) {
+			assertSameAsCompiled(source, CompileOptions.DEFAULT);
+			assertSameAsCompiled(source, capped);
+		}
+	}
+
+	@Test
+	public void testVariables() throws Throwable {
+		var source = "v.count = v.count + 1; return v.count";
+		var closures = ClosureCompiler.compile(linker, Functor.class, parse(source));
+
+		// Held by the expression, so kept from one call to the next.
+		assertEquals(1F, closures.invoke(new Context(), query()));
+		assertEquals(2F, closures.invoke(new Context(), query()));
+	}
+
+	@Test
+	public void testKeywordOutsideLoop() {
+		assertThrows(IllegalStateException.class, () -> ClosureCompiler.compile(linker, Functor.class, parse("break")));
+	}
+}
@@ -0,0 +1,101 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.LocalLoadExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.compile.optimise.CommonSubexpressions;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.MolangMath;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.assertEvalEquals;
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+public final class CommonSubexpressionTests {
+	private static List<LocalLoadExpression> loads(String source) throws IOException {
+		var loads = new ArrayList<LocalLoadExpression>();
+		collect(CommonSubexpressions.eliminate(parse(source), linker), loads);
+		return loads;
+	}
+
+	private static void collect(Expression expression, List<LocalLoadExpression> loads) {
+		if (expression instanceof LocalLoadExpression load) {
+			loads.add(load);
+		}
+
+		if (!expression.getClass().isRecord()) {
+			return;
+		}
+
+		for (var component : expression.getClass().getRecordComponents()) {
+			try {
+				switch (component.getAccessor().invoke(expression)) {
+					case Expression child -> collect(child, loads);
+					case List<?> list -> list.forEach(child -> collect((Expression) child, loads));
+					default -> {
+					}
+				}
+			} catch (ReflectiveOperationException exception) {
+				throw new AssertionError(exception);
+			}
+		}
+	}
+
+	@Test
+	public void testRepeatedFieldReads() throws Throwable {
+		assertEquals(2, loads("q.anim_time * q.anim_time + q.anim_time").size());
+		assertEvalEquals(30F, "return q.anim_time * q.anim_time + q.anim_time", new Context(), new Query());
+	}
+
+	@Test
+	public void testPureCalls() throws Throwable {
+		var loads = loads("math.sin(q.anim_time) + math.sin(q.anim_time)");
+		assertEquals(1, loads.size());
+		assertInstanceOf(MethodCallExpression.class, loads.getFirst().source());
+
+		// Not marked pure, so each call must still happen.
+		assertEquals(0, loads("q.test(1) + q.test(1)").size());
+
+		assertEvalEquals(
+			MolangMath.sin(5F) * 2F,
+			"return math.sin(q.anim_time) + math.sin(q.anim_time)",
+			new Context(),
+			new Query()
+		);
+	}
+
+	@Test
+	public void testSetInvalidates() throws Throwable {
+		assertEvalEquals(4F, "q.x = 1; q.y = q.x + q.x; q.x = 2; return q.x + q.y", new Context(), new Query());
+		assertEvalEquals(
+			14F,
+			"q.y = q.array_test[1] + q.array_test[1]; q.array_test[1] = 10; return q.array_test[1] + q.y",
+			new Context(),
+			new Query()
+		);
+	}
+
+	@Test
+	public void testLoopInvalidatesBeforeFirstIteration() throws Throwable {
+		assertEvalEquals(
+			12F,
+			"q.life_time = q.anim_time; loop(3, { q.life_time = q.life_time + q.anim_time; q.anim_time = 1; }); return q.life_time",
+			new Context(),
+			new Query()
+		);
+	}
+
+	@Test
+	public void testBranchesDoNotLeak() throws Throwable {
+		assertEvalEquals(10F, "return q.test_bool ? q.anim_time * 2 : q.anim_time * 2", new Context(), new Query());
+		assertEvalEquals(15F, "return (q.test_bool2 ? q.anim_time * 2 : 0) + q.anim_time", new Context(), new Query());
+	}
+}
@@ -0,0 +1,120 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.CompilationCache;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class CompilationCacheTests {
+	@Test
+	public void testIdenticalSourcesShareResult() throws Throwable {
+		var cache = new CompilationCache(16);
+
+		var a = cache.compile(lookup, linker, Functor.class, "q.anim_time * 2");
+		var b = cache.compile(lookup, linker, Functor.class, "q.anim_time * 2");
+		var c = cache.compile(lookup, linker, Functor.class, "  Q.Anim_Time   *  2 ");
+
+		assertSame(a, b);
+		assertSame(a, c);
+		assertEquals(10F, a.invoke(new Context(), new Query()));
+
+		var stats = cache.stats();
+		assertEquals(2, stats.hits());
+		assertEquals(1, stats.misses());
+		assertEquals(1, stats.size());
+	}
+
+	@Test
+	public void testConcurrentRequestsCompileOnce() throws Throwable {
+		var cache = new CompilationCache(16);
+
+		for (int round = 0; round < 32; round++) {
+			var source = "q.anim_time * " + round;
+			var results = new ArrayList<Future<Functor>>();
+
+			try (var executor = Executors.newFixedThreadPool(8)) {
+				for (int i = 0; i < 8; i++) {
+					results.add(executor.submit(() -> {
+						try {
+							return cache.compile(lookup, linker, Functor.class, source);
+						} catch (Throwable throwable) {
+							throw new RuntimeException(throwable);
+						}
+					}));
+				}
+			}
+
+			for (var result : results) {
+				assertSame(results.getFirst().get(), result.get(), source);
+			}
+		}
+
+		// Every request either compiled, found the entry or waited on whoever was compiling it.
+		var stats = cache.stats();
+		assertEquals(32, stats.misses());
+		assertEquals(32 * 7, stats.hits() + stats.joins());
+	}
+
+	@Test
+	public void testStringLiteralsAreNotNormalised() throws Throwable {
+		var cache = new CompilationCache(16);
+
+		var a = cache.compile(lookup, linker, Functor.class, "'a  b' == 'a  b'");
+		var b = cache.compile(lookup, linker, Functor.class, "'A b' == 'a  b'");
+
+		assertNotSame(a, b);
+		assertEquals(1F, a.invoke(null, null));
+		assertEquals(0F, b.invoke(null, null));
+	}
+
+	@Test
+	public void testOnlySkippedWhitespaceIsNormalised() throws Throwable {
+		var cache = new CompilationCache(16);
+
+		cache.compile(lookup, linker, Functor.class, "q.anim_time * 2");
+
+		// A form feed is whitespace, but not to the lexer, so mustn't share the entry of a source that lexes.
+		assertThrows(RuntimeException.class, () -> cache.compile(lookup, linker, Functor.class, "q.anim_time\f* 2"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testOptionsAreKeyed() throws Throwable {
+		var cache = new CompilationCache(16);
+		var fast = CompileOptions.builder().floatMode(CompileOptions.FloatMode.FAST).build();
+
+		var a = cache.compile(lookup, linker, Functor.class, "q.anim_time / 20");
+		var b = cache.compile(lookup, linker, Functor.class, "q.anim_time / 20", fast);
+		var c = cache.compile(lookup, linker, Functor.class, "q.anim_time / 20", fast.toBuilder().build());
+
+		assertNotSame(a, b);
+		assertSame(b, c);
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testEviction() throws Throwable {
+		var cache = new CompilationCache(1);
+
+		var a = cache.compile(lookup, linker, Functor.class, "1 + 1");
+		cache.compile(lookup, linker, Functor.class, "2 + 2");
+		var c = cache.compile(lookup, linker, Functor.class, "1 + 1");
+
+		assertNotSame(a, c);
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.stats().evictions());
+	}
+}
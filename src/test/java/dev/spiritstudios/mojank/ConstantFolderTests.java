@@ -0,0 +1,71 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.optimise.ConstantFolder;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static dev.spiritstudios.mojank.Assertions.assertEvalEquals;
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+public final class ConstantFolderTests {
+	private static Expression fold(String source) throws IOException {
+		return ConstantFolder.fold(parse(source), linker);
+	}
+
+	private static Expression returned(String source) throws IOException {
+		return assertInstanceOf(UnaryOperationExpression.class, fold(source)).value();
+	}
+
+	@Test
+	public void testArithmeticMatchesInterpreter() throws Throwable {
+		var sources = new String[] {
+			"42 * 3 - 6 / 2 * 6",
+			"1 / 0",
+			"-1 / 0 * 0",
+			"7 % 3 + 0.5",
+			"11 + -1",
+		};
+
+		for (var source : sources) {
+			var interpreted = MolangInterpreter.evaluate(parse(source), linker);
+			assertEquals(new ConstantExpression(interpreted), returned(source), source);
+			assertEvalEquals((Float) interpreted, source);
+		}
+	}
+
+	@Test
+	public void testConditions() throws Throwable {
+		assertEquals(ConstantExpression.TRUE, returned("1 < 2"));
+		assertEquals(ConstantExpression.FALSE, returned("'A' == 'a'"));
+		assertEquals(ConstantExpression.TRUE, returned("!(2 <= 1)"));
+		assertEquals(ConstantExpression.FALSE, returned("0 && q.test_bool"));
+
+		assertEquals(new ConstantExpression(4F), returned("1 > 2 ? 3 : 4"));
+		assertEvalEquals(4F, "return 1 > 2 ? 3 : 4");
+	}
+
+	@Test
+	public void testIdentities() throws Throwable {
+		var anim = parse("q.anim_time") instanceof UnaryOperationExpression(var value, var _) ? value : null;
+
+		assertEquals(anim, returned("q.anim_time * 1"));
+		assertEquals(anim, returned("q.anim_time / 1"));
+		assertEquals(anim, returned("q.anim_time - 0"));
+		assertEquals(anim, returned("--q.anim_time"));
+
+		// -0 + 0 is +0, so this must be kept.
+		assertInstanceOf(BinaryOperationExpression.class, returned("q.anim_time + 0"));
+
+		assertEvalEquals(5F, "return --q.anim_time * 1", new Context(), new Query());
+	}
+}
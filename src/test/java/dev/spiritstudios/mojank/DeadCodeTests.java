@@ -0,0 +1,65 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.optimise.ConstantFolder;
+import dev.spiritstudios.mojank.compile.optimise.DeadCode;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.assertEvalEquals;
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+public final class DeadCodeTests {
+	private static List<Expression> statements(String source) throws IOException {
+		var eliminated = DeadCode.eliminate(ConstantFolder.fold(parse(source), linker), linker);
+		return assertInstanceOf(ComplexExpression.class, eliminated).expressions();
+	}
+
+	@Test
+	public void testAfterReturn() throws Throwable {
+		var statements = statements("q.x = 1; return q.x; q.x = 2; return 3");
+
+		assertEquals(2, statements.size());
+		assertInstanceOf(UnaryOperationExpression.class, statements.getLast());
+		assertEvalEquals(1F, "q.x = 1; return q.x; q.x = 2; return 3", new Context(), new Query());
+	}
+
+	@Test
+	public void testUnusedPureStatements() throws Throwable {
+		var statements = statements("q.anim_time * 2; math.sin(q.anim_time); q.test(1); return q.anim_time");
+
+		// The call to q.test is not pure, so has to stay.
+		assertEquals(2, statements.size());
+		assertEvalEquals(5F, "q.anim_time * 2; math.sin(q.anim_time); return q.anim_time", new Context(), new Query());
+
+		// Pure statements are dropped even if they would have thrown, here reading a field of a null query.
+		assertEvalEquals(1F, "q.anim_time * 2; return 1");
+	}
+
+	@Test
+	public void testConstantConditionsAndLoops() throws Throwable {
+		var statements = statements("0 ? q.x = 1; 1 ? q.y = 2; loop(0, { q.x = 3; }); return q.y");
+
+		assertEquals(2, statements.size());
+		assertEvalEquals(2F, "0 ? q.x = 1; 1 ? q.y = 2; loop(0, { q.x = 3; }); return q.y + q.x", new Context(), new Query());
+	}
+
+	@Test
+	public void testAfterBreak() throws Throwable {
+		assertEvalEquals(
+			1F,
+			"loop(10, { q.x = q.x + 1; break; q.x = 100; }); return q.x",
+			new Context(),
+			new Query()
+		);
+	}
+}
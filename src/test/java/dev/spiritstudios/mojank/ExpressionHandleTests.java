@@ -0,0 +1,203 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.compile.ExpressionHandle;
+import dev.spiritstudios.mojank.compile.TierPolicy;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class ExpressionHandleTests {
+	private static Functor compile(String source) throws Throwable {
+		return Compiler.compile(lookup, linker, Functor.class, parse(source), source);
+	}
+
+	private static float invoke(MethodHandle invoker) throws Throwable {
+		return (float) invoker.invokeExact(new Context(), new Query());
+	}
+
+	@Test
+	public void testSet() throws Throwable {
+		var handle = ExpressionHandle.of(Functor.class, compile("q.anim_time"), new ExpressionHandle.Generation());
+		var invoker = handle.invoker();
+		var proxy = handle.proxy();
+
+		assertEquals(5F, invoke(invoker));
+
+		handle.set(compile("q.anim_time * 2"));
+
+		assertEquals(10F, invoke(invoker));
+		assertEquals(10F, proxy.invoke(new Context(), new Query()));
+		assertSame(invoker, handle.invoker());
+	}
+
+	@Test
+	public void testGenerations() throws Throwable {
+		var first = new ExpressionHandle.Generation();
+		var a = ExpressionHandle.of(Functor.class, compile("1"), first);
+		var b = ExpressionHandle.of(Functor.class, compile("2"), first);
+		var c = ExpressionHandle.of(Functor.class, compile("3"), first);
+
+		var second = new ExpressionHandle.Generation();
+		a.stage(compile("10"), second);
+		b.stage(compile("20"), second);
+
+		// Nothing changes until the generation is invalidated.
+		assertEquals(1F, invoke(a.invoker()));
+		assertEquals(2F, invoke(b.invoker()));
+
+		first.invalidate();
+
+		assertFalse(first.isValid());
+		assertEquals(10F, invoke(a.invoker()));
+		assertEquals(20F, invoke(b.invoker()));
+		// Handles without a replacement keep their expression.
+		assertEquals(3F, invoke(c.invoker()));
+
+		assertSame(second, a.generation());
+		// Left in the invalidated generation until something is staged for it.
+		assertSame(first, c.generation());
+		assertEquals(3F, invoke(c.invoker()));
+
+		// Staging after the generation was invalidated swaps straight away.
+		c.stage(compile("30"), second);
+		assertEquals(30F, invoke(c.invoker()));
+		assertSame(second, c.generation());
+
+		// Staged into the same generation again, so both are swapped together.
+		var third = new ExpressionHandle.Generation();
+		a.stage(compile("100"), third);
+		c.stage(compile("300"), third);
+
+		second.invalidate();
+		assertEquals(100F, invoke(a.invoker()));
+		assertEquals(300F, invoke(c.invoker()));
+		assertEquals(20F, invoke(b.invoker()));
+		assertSame(third, c.generation());
+	}
+
+	@Test
+	public void testRejectsReplacements() throws Throwable {
+		var generation = new ExpressionHandle.Generation();
+		var handle = ExpressionHandle.of(Functor.class, compile("1"), generation);
+
+		// Only compiled expressions have a handle to call through.
+		assertThrows(IllegalArgumentException.class, () -> handle.set((c, q) -> 2));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionHandle.of(Functor.class, (c, q) -> 1, generation));
+
+		var invalidated = new ExpressionHandle.Generation();
+		invalidated.invalidate();
+
+		assertThrows(IllegalArgumentException.class, () -> handle.stage(compile("2"), invalidated));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionHandle.of(Functor.class, compile("2"), invalidated));
+	}
+
+	private static ExpressionHandle<Functor> tiered(String source, TierPolicy policy) throws Throwable {
+		return ExpressionHandle.tiered(
+			lookup,
+			linker,
+			Functor.class,
+			parse(source),
+			source,
+			CompileOptions.DEFAULT,
+			policy,
+			new ExpressionHandle.Generation()
+		);
+	}
+
+	@Test
+	public void testTiered() throws Throwable {
+		var metrics = new TierPolicy.Metrics();
+		// Compiles on the calling thread, so the swap has happened by the time the call returns.
+		var policy = TierPolicy.DEFAULT.withThreshold(3).withExecutor(Runnable::run).withListener(metrics);
+		var handle = tiered("t.a = q.anim_time; loop(3, { t.a = t.a * 2; }); return t.a", policy);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(40F, invoke(handle.invoker()));
+			assertEquals(TierPolicy.Tier.INTERPRETED, handle.tier());
+			assertNull(handle.expression());
+		}
+
+		assertEquals(3, handle.invocations());
+
+		// Still interpreted, as the call that passes the threshold only starts compiling.
+		assertEquals(40F, invoke(handle.invoker()));
+		assertEquals(TierPolicy.Tier.COMPILED, handle.tier());
+		assertNotNull(handle.expression());
+		assertEquals(40F, invoke(handle.invoker()));
+		assertEquals(4, handle.invocations());
+
+		assertEquals(1, metrics.entered(TierPolicy.Tier.COMPILING));
+		assertEquals(1, metrics.entered(TierPolicy.Tier.COMPILED));
+	}
+
+	@Test
+	public void testTieredConcurrently() throws Throwable {
+		var policy = TierPolicy.DEFAULT.withThreshold(Integer.MAX_VALUE);
+		var handle = tiered("t.a = q.anim_time; loop(3, { t.a = t.a * 2; }); return t.a", policy);
+		var proxy = handle.proxy();
+
+		// Interpreted calls share the analysis without locking it, so nothing may be resolved while they run.
+		try (var executor = Executors.newFixedThreadPool(4)) {
+			var results = new ArrayList<Future<Float>>();
+
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(() -> {
+					float sum = 0;
+
+					for (int j = 0; j < 1000; j++) {
+						sum += proxy.invoke(new Context(), new Query());
+					}
+
+					return sum;
+				}));
+			}
+
+			for (var result : results) {
+				assertEquals(40_000F, result.get());
+			}
+		}
+
+		assertEquals(4000, handle.invocations());
+		assertEquals(TierPolicy.Tier.INTERPRETED, handle.tier());
+	}
+
+	@Test
+	public void testTieredReplacement() throws Throwable {
+		var pending = new ArrayList<Runnable>();
+		var handle = tiered("q.anim_time", TierPolicy.DEFAULT.withThreshold(0).withExecutor(pending::add));
+
+		assertEquals(5F, invoke(handle.invoker()));
+		assertEquals(TierPolicy.Tier.COMPILING, handle.tier());
+
+		// Replaced before the compilation finishes, which then has nothing left to swap.
+		handle.set(compile("q.anim_time * 3"));
+		pending.forEach(Runnable::run);
+
+		assertEquals(15F, invoke(handle.invoker()));
+		assertEquals(TierPolicy.Tier.COMPILED, handle.tier());
+	}
+
+	@Test
+	public void testTieredRejectsVariables() {
+		// Variables on the compiled expression would be lost with every interpreted call.
+		assertThrows(IllegalArgumentException.class, () -> tiered("v.a = 1; return v.a", TierPolicy.DEFAULT));
+	}
+}
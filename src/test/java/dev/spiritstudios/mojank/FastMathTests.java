@@ -0,0 +1,106 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ConstantExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.FusedMultiplyAddExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.compile.optimise.FastMath;
+import dev.spiritstudios.mojank.compile.optimise.Optimiser;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static dev.spiritstudios.mojank.Assertions.target;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public final class FastMathTests {
+	private static final CompileOptions FAST = CompileOptions.builder()
+		.floatMode(CompileOptions.FloatMode.FAST)
+		.build();
+
+	private static CompileContext context(CompileOptions options) {
+		return new CompileContext(linker, target, options);
+	}
+
+	private static Expression rewritten(String source) throws IOException {
+		var rewritten = FastMath.rewrite(parse(source), context(FAST));
+		return assertInstanceOf(UnaryOperationExpression.class, rewritten).value();
+	}
+
+	private static float eval(String source, CompileOptions options) throws Throwable {
+		Functor functor = Compiler.compile(lookup, linker, Functor.class, parse(source), source, options);
+		return functor.invoke(new Context(), new Query());
+	}
+
+	@Test
+	public void testDivideByConstant() throws Throwable {
+		var rewritten = assertInstanceOf(BinaryOperationExpression.class, rewritten("q.anim_time / 20"));
+
+		assertEquals(BinaryOperationExpression.Operator.MULTIPLY, rewritten.operator());
+		assertEquals(new ConstantExpression(1F / 20F), rewritten.right());
+		assertEquals(0.25F, eval("q.anim_time / 20", FAST), 1E-6F);
+
+		// Integer division is exact already, and differs from multiplying by a reciprocal.
+		var integer = assertInstanceOf(BinaryOperationExpression.class, rewritten("q.x / 2"));
+		assertEquals(BinaryOperationExpression.Operator.DIVIDE, integer.operator());
+	}
+
+	@Test
+	public void testReassociation() throws Throwable {
+		var sum = assertInstanceOf(BinaryOperationExpression.class, rewritten("q.anim_time + 1 - 4 + 2"));
+		assertEquals(new ConstantExpression(-1F), sum.right());
+		assertEquals(4F, eval("q.anim_time + 1 - 4 + 2", FAST));
+
+		var product = assertInstanceOf(BinaryOperationExpression.class, rewritten("q.anim_time * 2 / 4"));
+		assertEquals(new ConstantExpression(0.5F), product.right());
+		assertEquals(2.5F, eval("q.anim_time * 2 / 4", FAST));
+	}
+
+	@Test
+	public void testPowers() throws Throwable {
+		assertInstanceOf(BinaryOperationExpression.class, rewritten("math.pow(q.anim_time, 2)"));
+		assertEquals(25F, eval("math.pow(q.anim_time, 2)", FAST));
+		assertEquals(125F, eval("math.pow(q.anim_time, 3)", FAST));
+		assertEquals(625F, eval("math.pow(q.anim_time, 4)", FAST));
+
+		// Impure bases can't be duplicated.
+		assertInstanceOf(MethodCallExpression.class, rewritten("math.pow(q.test(1), 2)"));
+		assertInstanceOf(MethodCallExpression.class, rewritten("math.pow(q.anim_time, 0.5)"));
+	}
+
+	@Test
+	public void testFusedMultiplyAdd() throws Throwable {
+		assertInstanceOf(FusedMultiplyAddExpression.class, rewritten("q.anim_time * 2 + 1"));
+		assertInstanceOf(FusedMultiplyAddExpression.class, rewritten("1 + q.anim_time * q.life_time"));
+		assertInstanceOf(FusedMultiplyAddExpression.class, rewritten("q.anim_time * 2 - 1"));
+
+		assertEquals(11F, eval("q.anim_time * 2 + 1", FAST));
+		assertEquals(9F, eval("q.anim_time * 2 - 1", FAST));
+		assertEquals(26F, eval("1 + math.pow(q.anim_time, 2)", FAST));
+	}
+
+	@Test
+	public void testStrictByDefault() throws Throwable {
+		var optimised = Optimiser.optimise(parse("q.anim_time / 20"), context(CompileOptions.DEFAULT));
+		var divide = (BinaryOperationExpression) ((UnaryOperationExpression) optimised).value();
+
+		assertEquals(BinaryOperationExpression.Operator.DIVIDE, divide.operator());
+		assertEquals(CompileOptions.FloatMode.STRICT, CompileOptions.DEFAULT.floatMode());
+
+		assertEquals(5F / 20F, eval("q.anim_time / 20", CompileOptions.DEFAULT));
+		assertNotEquals(FAST, CompileOptions.DEFAULT);
+	}
+}
@@ -0,0 +1,101 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.HandleCompiler;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class HandleCompilerTests {
+	private static Query query() {
+		var query = new Query();
+		query.life_time = 2.5F;
+		query.pos.x = 7F;
+		query.x = 3;
+		return query;
+	}
+
+	private static void assertSameAsCompiled(String source, CompileOptions options) throws Throwable {
+		var compiled = Compiler.compile(lookup, linker, Functor.class, parse(source), source, options);
+		var handles = HandleCompiler.proxy(linker, Functor.class, parse(source), options);
+
+		var compiledQuery = query();
+		var handleQuery = query();
+
+		assertEquals(compiled.invoke(new Context(), compiledQuery), handles.invoke(new Context(), handleQuery), source);
+		// Any side effects on the query should match too.
+		assertEquals(compiledQuery.x, handleQuery.x, source);
+		assertEquals(compiledQuery.y, handleQuery.y, source);
+		assertEquals(compiledQuery.pos.x, handleQuery.pos.x, source);
+	}
+
+	@Test
+	public void testExpressions() throws Throwable {
+		for (var source : List.of(
+			"q.anim_time * 2 + q.life_time",
+			"q.anim_time * 2 + math.sin(q.life_time) > 3 ? q.pos.x : -q.x",
+			"math.pow(q.life_time, 2) % 4 + math.pi",
+			"q.test(q.x) - q.pos.x / 2",
+			"(q.x == 3 ? 1 : 0) + (!q.test_bool ? 2 : 0) + (q.anim_time != 5 ? 4 : 0)",
+			"q.test_bool_true && q.x > 2 || q.pos.y > 0",
+			"q.array_test[q.x - 1] * 10",
+			"q.test(q.anim_time) + q.test(q.anim_time) * q.test(q.anim_time)"
+		)) {
+			assertSameAsCompiled(source, CompileOptions.DEFAULT);
+		}
+	}
+
+	@Test
+	public void testStatements() throws Throwable {
+		var capped = CompileOptions.builder().maxLoopIterations(5).build();
+
+		for (var source : List.of(
+			"t.a = q.x * 2; t.b = t.a + 1; return t.a * t.b",
+			"return t.unset + 1",
+			"q.pos.x = q.anim_time * 2; q.x = q.test(2); return q.pos.x + q.x",
+			"q.array_test[1] = 8; return q.array_test[1]",
+			"loop(4, { q.x = q.x + 1; }); return q.x",
+			"loop(10, { q.x = q.x + 1; q.x > 5 ? break; }); return q.x",
+			"loop(10, { q.x = q.x + 1; q.x > 5 ? continue; q.y = q.y + 1; }); return q.y",
+			"loop(3, { loop(3, { q.x = q.x + 1; q.x > 6 ? break; }); q.y = q.y + 1; }); return q.x * 10 + q.y",
+			"t.i = 0; loop(q.count(100), { t.i = t.i + 1; }); return t.i"
+		)) {
+			assertSameAsCompiled(source, CompileOptions.DEFAULT);
+			assertSameAsCompiled(source, capped);
+		}
+	}
+
+	@Test
+	public void testVariables() throws Throwable {
+		var source = "v.count = v.count + 1; return v.count";
+		var handles = HandleCompiler.proxy(linker, Functor.class, parse(source), CompileOptions.DEFAULT);
+
+		// Held by the expression, so kept from one call to the next.
+		assertEquals(1F, handles.invoke(new Context(), query()));
+		assertEquals(2F, handles.invoke(new Context(), query()));
+	}
+
+	@Test
+	public void testExactType() throws Throwable {
+		var handle = HandleCompiler.compile(linker, Functor.class, parse("q.anim_time * q.x"));
+
+		assertEquals(MethodType.methodType(float.class, Context.class, Query.class), handle.type());
+		assertEquals(15F, (float) handle.invokeExact(new Context(), query()));
+	}
+
+	@Test
+	public void testKeywordOutsideLoop() {
+		assertThrows(IllegalStateException.class, () -> HandleCompiler.compile(linker, Functor.class, parse("break")));
+	}
+}
@@ -0,0 +1,111 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.compile.InlineCache;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class InlineCacheTests {
+	private static final CompileOptions OPTIONS = CompileOptions.builder().inlineCaches(true).build();
+
+	static class Doubled extends Query {
+		@Override
+		public float test(float value) {
+			return value * 2F;
+		}
+	}
+
+	static class Halved extends Query {
+		@Override
+		public float test(float value) {
+			return value / 2F;
+		}
+	}
+
+	static final class Negated extends Query {
+		@Override
+		public float test(float value) {
+			return -value;
+		}
+	}
+
+	private static Functor compile(String source) throws Throwable {
+		return Compiler.compile(lookup, linker, Functor.class, parse(source), source, OPTIONS);
+	}
+
+	/**
+	 * @return The sites that have seen any of the given receivers.
+	 */
+	private static List<InlineCache.Statistics> sites(Class<?>... receivers) {
+		return InlineCache.statistics().stream()
+			.filter(site -> List.of(receivers).stream().anyMatch(site.receivers()::containsKey))
+			.toList();
+	}
+
+	@Test
+	public void testDispatch() throws Throwable {
+		var expression = compile("q.test(4) + q.anim_time");
+		var context = new Context();
+
+		assertEquals(17F, expression.invoke(context, new Query()));
+		assertEquals(13F, expression.invoke(context, new Doubled()));
+		assertEquals(7F, expression.invoke(context, new Halved()));
+		assertEquals(1F, expression.invoke(context, new Negated()));
+
+		// Every receiver still reaches its own implementation once linked.
+		assertEquals(17F, expression.invoke(context, new Query()));
+		assertEquals(13F, expression.invoke(context, new Doubled()));
+		assertEquals(1F, expression.invoke(context, new Negated()));
+	}
+
+	@Test
+	public void testStatistics() throws Throwable {
+		var expression = compile("q.test(q.x)");
+		var context = new Context();
+
+		for (int i = 0; i < 10; i++) {
+			expression.invoke(context, new Doubled());
+		}
+
+		// Fields are read through a cache too.
+		var sites = sites(Doubled.class);
+		assertEquals(2, sites.size());
+
+		for (var site : sites) {
+			assertEquals(InlineCache.State.MONOMORPHIC, site.state());
+			assertEquals(Map.of(Doubled.class, 1L), site.receivers());
+		}
+
+		expression.invoke(context, new Halved());
+
+		for (var site : sites(Halved.class)) {
+			assertEquals(InlineCache.State.BIMORPHIC, site.state());
+		}
+
+		expression.invoke(context, new Query());
+
+		for (var site : sites(Halved.class)) {
+			assertEquals(InlineCache.State.MEGAMORPHIC, site.state());
+			assertEquals(3, site.receivers().size());
+		}
+	}
+
+	@Test
+	public void testNullReceiver() throws Throwable {
+		var expression = compile("q.test(2)");
+
+		assertThrows(NullPointerException.class, () -> expression.invoke(new Context(), null));
+	}
+}
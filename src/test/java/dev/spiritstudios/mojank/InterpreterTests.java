@@ -0,0 +1,87 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.Analysis;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.analysis;
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class InterpreterTests {
+	private static final Analysis analysis = analysis();
+
+	private static Query query() {
+		var query = new Query();
+		query.life_time = 2.5F;
+		query.pos.x = 7F;
+		query.x = 3;
+		return query;
+	}
+
+	private static float compiled(String source) throws Throwable {
+		return Compiler.compile(lookup, linker, Functor.class, parse(source), source).invoke(new Context(), query());
+	}
+
+	@Test
+	public void testFloat() throws Throwable {
+		for (var source : List.of(
+			"q.anim_time * 2 + q.life_time",
+			"q.anim_time * 2 + math.sin(q.life_time) > 3 ? q.pos.x : -q.x",
+			"math.pow(q.life_time, 2) % 4",
+			"q.test(q.x) - q.pos.x / 2",
+			"(q.x == 3 ? 1 : 0) + (!q.test_bool ? 2 : 0) + (q.anim_time != 5 ? 4 : 0)",
+			"q.test_bool_true && q.x > 2 || q.pos.y > 0",
+			"t.a = q.x * 2; return t.a + math.pi"
+		)) {
+			var interpreted = MolangInterpreter.evaluateFloat(parse(source), analysis, CompileOptions.DEFAULT, new Context(), query());
+
+			assertEquals(compiled(source), interpreted, source);
+		}
+	}
+
+	@Test
+	public void testBoolean() throws Throwable {
+		for (var source : List.of(
+			"q.x >= 3 && q.pos.x < 8",
+			"q.test_bool || q.life_time == 2.5",
+			"q.anim_time - 5",
+			"q.x ? q.test_bool2 : q.test_bool"
+		)) {
+			var interpreted = MolangInterpreter.evaluateBoolean(parse(source), analysis, CompileOptions.DEFAULT, new Context(), query());
+
+			assertEquals(compiled(source) != 0F, interpreted, source);
+		}
+	}
+
+	@Test
+	public void testFieldSet() throws Throwable {
+		var source = "q.pos.x = q.anim_time * 2; q.x = q.test(2); return q.pos.x + q.x";
+		var query = query();
+
+		var interpreted = MolangInterpreter.evaluateFloat(parse(source), analysis, CompileOptions.DEFAULT, new Context(), query);
+
+		assertEquals(compiled(source), interpreted);
+		assertEquals(10F, query.pos.x);
+		assertEquals(6, query.x);
+	}
+
+	@Test
+	public void testReusedArguments() throws Throwable {
+		var expression = parse("q.x = q.x + 1; return q.x");
+		var arguments = new Object[] {new Context(), query()};
+
+		// State left over from one evaluation must not leak into the next.
+		for (int i = 1; i <= 3; i++) {
+			assertEquals(3F + i, MolangInterpreter.evaluateFloat(expression, analysis, CompileOptions.DEFAULT, arguments));
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.BatchKernel;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.instruction.InvokeInstruction;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public final class KernelTests {
+	private static final int COUNT = 100;
+
+	private static Query query(int i) {
+		var query = new Query();
+		query.anim_time = i * 0.5F;
+		query.x = i - COUNT / 2;
+		query.pos.x = i * 0.25F;
+		query.test_bool = i % 3 == 0;
+		return query;
+	}
+
+	/**
+	 * Checks the kernel against the expression compiled as usual, for every element.
+	 */
+	private static BatchKernel assertKernelEquals(String source) throws Throwable {
+		return assertKernelEquals(source, CompileOptions.DEFAULT);
+	}
+
+	private static BatchKernel assertKernelEquals(String source, CompileOptions options) throws Throwable {
+		var kernel = Compiler.compileKernel(lookup, linker, Functor.class, parse(source), options);
+		Functor expected = Compiler.compile(lookup, linker, Functor.class, parse(source), source, options);
+
+		var columns = kernel.allocateColumns(COUNT);
+		var output = new float[COUNT];
+		var expectedOutput = new float[COUNT];
+
+		for (int i = 0; i < COUNT; i++) {
+			var context = new Context();
+			var query = query(i);
+
+			kernel.gather(columns, i, context, query);
+			expectedOutput[i] = expected.invoke(context, query);
+		}
+
+		kernel.evaluate(columns, output, COUNT);
+
+		assertArrayEquals(expectedOutput, output, source);
+		return kernel;
+	}
+
+	private static List<String> columnNames(BatchKernel kernel) {
+		return kernel.columns().stream().map(BatchKernel.Column::name).toList();
+	}
+
+	@Test
+	public void testColumns() throws Throwable {
+		var kernel = assertKernelEquals("q.anim_time * 2 + q.pos.x");
+		assertEquals(List.of("query.anim_time", "query.pos.x"), columnNames(kernel));
+		assertEquals(List.of(float.class, float.class), kernel.columns().stream().map(BatchKernel.Column::type).toList());
+
+		// Aliases of the same field share a column.
+		assertEquals(List.of("query.anim_time"), columnNames(assertKernelEquals("q.anim_time + query.anim_time")));
+
+		assertEquals(List.of(), columnNames(assertKernelEquals("math.pi * 2")));
+	}
+
+	@Test
+	public void testPrimitiveColumns() throws Throwable {
+		var kernel = assertKernelEquals("q.test_bool ? q.x : -q.x");
+		assertEquals(List.of(boolean.class, int.class), kernel.columns().stream().map(BatchKernel.Column::type).toList());
+	}
+
+	@Test
+	public void testStatements() throws Throwable {
+		assertKernelEquals("math.sin(q.anim_time) * math.cos(q.pos.x)");
+		assertKernelEquals("t.a = q.anim_time * 2; t.b = t.a + q.x; return t.b > 10 ? t.b : t.a;");
+		assertKernelEquals("t.total = 0; loop(4, { t.total = t.total + q.anim_time; }); return t.total;");
+		assertKernelEquals("t.r = q.pos.x; q.test_bool ? t.r = q.x; return t.r;");
+	}
+
+	@Test
+	public void testVectorised() throws Throwable {
+		// Float columns only, so these take the vector loop where the Vector API is available, with a scalar tail.
+		assertKernelEquals("q.anim_time * 2 - q.pos.x / 4");
+		assertKernelEquals("-(q.anim_time + 1) * +q.pos.x");
+		assertKernelEquals("q.anim_time > q.pos.x * 3");
+		assertKernelEquals("q.anim_time >= 10 && !(q.pos.x == 5) || q.anim_time < 2");
+		assertKernelEquals("q.anim_time > 20 ? q.anim_time * 0.5 : q.pos.x != 3 ? q.pos.x : -1");
+	}
+
+	@Test
+	public void testVectorisedFast() throws Throwable {
+		assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+
+		var options = CompileOptions.builder().floatMode(CompileOptions.FloatMode.FAST).build();
+		var source = "q.anim_time * (2 * 3) + q.pos.x";
+
+		assertKernelEquals(source, options);
+
+		// Folded and fused before either loop is written, so the vector loop is a single fma.
+		var bytecode = Compiler.compileKernelToBytecode(lookup, linker, Functor.class, parse(source), options, new ArrayList<>());
+		var vectorCalls = ClassFile.of().parse(bytecode).methods().stream()
+			.filter(method -> method.methodName().equalsString("evaluate"))
+			.flatMap(method -> method.code().orElseThrow().elementStream())
+			.filter(element -> element instanceof InvokeInstruction invoke &&
+				invoke.owner().asInternalName().equals("jdk/incubator/vector/FloatVector"))
+			.map(element -> ((InvokeInstruction) element).name().stringValue())
+			.toList();
+
+		assertTrue(vectorCalls.contains("fma"), vectorCalls::toString);
+		assertFalse(vectorCalls.contains("mul"), vectorCalls::toString);
+	}
+
+	@Test
+	public void testRejectsParameterUses() {
+		for (var source : List.of("q.test(2)", "q.x = 3; return 1", "return q.pos", "v.a = 1; return v.a")) {
+			assertThrows(
+				IllegalArgumentException.class,
+				() -> Compiler.compileKernel(lookup, linker, Functor.class, parse(source)),
+				source
+			);
+		}
+	}
+
+	@Test
+	public void testChecksLengths() throws Throwable {
+		var kernel = Compiler.compileKernel(lookup, linker, Functor.class, parse("q.anim_time + q.x"));
+
+		assertThrows(IllegalArgumentException.class, () -> kernel.evaluate(kernel.allocateColumns(4), new float[2], 4));
+		assertThrows(IllegalArgumentException.class, () -> kernel.evaluate(kernel.allocateColumns(2), new float[4], 4));
+		assertThrows(IllegalArgumentException.class, () -> kernel.evaluate(new Object[1], new float[4], 4));
+
+		// Only the given count is evaluated.
+		var output = new float[] {-1, -1, -1};
+		kernel.evaluate(kernel.allocateColumns(3), output, 2);
+		assertArrayEquals(new float[] {0, 0, -1}, output);
+	}
+}
@@ -1,16 +1,26 @@
 package dev.spiritstudios.mojank;
 
 import dev.spiritstudios.mojank.token.ConstantToken;
+import dev.spiritstudios.mojank.token.ErrorToken;
 import dev.spiritstudios.mojank.token.IdentifierToken;
 import dev.spiritstudios.mojank.token.MolangToken;
+import dev.spiritstudios.mojank.token.PackedTokens;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.parse;
 import static dev.spiritstudios.mojank.token.ConstantToken.ONE;
 import static dev.spiritstudios.mojank.token.OperatorToken.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public final class LexerTests {
 	private static void assertTokensEqual(String expression, MolangToken... expected) throws IOException {
@@ -54,4 +64,121 @@ public final class LexerTests {
 			SUBTRACT, OPENING_PAREN, id("cond"), IF, ONE, ELSE, ZERO, CLOSING_PAREN, EOF
 		);
 	}
+
+	@Test
+	public void testInputs() throws IOException {
+		var source = "t.a = Q.Anim_Time * 1.5; return t.a > 2 ? 'caf\u00e9 \u2603' : v.x ?? 0;";
+		var utf8 = source.getBytes(StandardCharsets.UTF_8);
+
+		var padded = new byte[utf8.length + 4];
+		System.arraycopy(utf8, 0, padded, 2, utf8.length);
+
+		var expected = new MolangLexer(new StringReader(source)).readAll();
+
+		assertEquals(expected, new MolangLexer(source).readAll());
+		assertEquals(expected, new MolangLexer(utf8).readAll());
+		assertEquals(expected, new MolangLexer(padded, 2, utf8.length).readAll());
+		assertEquals(expected, new MolangLexer(ByteBuffer.wrap(padded, 2, utf8.length)).readAll());
+		assertEquals(expected, new MolangLexer(MemorySegment.ofArray(utf8)).readAll());
+	}
+
+	@Test
+	public void testNumbers() throws IOException {
+		for (var number : List.of(
+			"0", "1.", "0.1", "0.3", "123.456", "3.14159265", "16777216", "16777217", "0.0000000001", "0.00000000001",
+			"99999999999", "1.00000000000000000001", "340282356779733661637539395458142568448"
+		)) {
+			assertTokensEqual(number, nt(Float.parseFloat(number)), EOF);
+		}
+	}
+
+	@Test
+	public void testKeywords() throws IOException {
+		assertTokensEqual(
+			"RETURN Break continuE True fAlSe returns _return Query.Life_Time",
+			RETURN, BREAK, CONTINUE, ConstantToken.TRUE, ConstantToken.FALSE, id("returns"), id("_return"), id("query"), DOT, id("life_time"), EOF
+		);
+	}
+
+	private static String error(MolangToken token) {
+		return assertInstanceOf(ErrorToken.class, token).value().getMessage();
+	}
+
+	@Test
+	public void testErrors() throws IOException {
+		var tokens = new MolangLexer("1 +\n  \"a\"").readAll();
+		assertEquals("Unexpected token \", Did you mean ' ? at 2:4", error(tokens.get(2)));
+		assertEquals(id("a"), tokens.get(3));
+		assertEquals("Unexpected token \", Did you mean ' ? at 2:6", error(tokens.get(4)));
+
+		// A multibyte character is reported once, at the same column as it would be from characters.
+		var source = "a \u2603 b";
+		for (var lexed : List.of(
+			new MolangLexer(new StringReader(source)).readAll(),
+			new MolangLexer(source.getBytes(StandardCharsets.UTF_8)).readAll()
+		)) {
+			assertEquals(4, lexed.size());
+			assertEquals("Unexpected token 'SNOWMAN' at 1:3", error(lexed.get(1)));
+			assertEquals(id("b"), lexed.get(2));
+		}
+
+		assertEquals("Found unclosed string at 1:10", error(new MolangLexer("'unclosed").next()));
+	}
+
+	@Test
+	public void testPacked() throws IOException {
+		var source = "t.x = Q.X + q.x * 2.5; return t.x > 1 ? 'x' : \"x\"";
+		var packed = new MolangLexer(source).readPacked();
+
+		var tokens = new MolangLexer(source).readAll();
+		assertEquals(tokens.size(), packed.size());
+
+		for (int i = 0; i < packed.size(); i++) {
+			var token = packed.token(i);
+
+			if (token instanceof ErrorToken error) {
+				assertEquals(error(tokens.get(i)), error.value().getMessage());
+			} else {
+				assertEquals(tokens.get(i), token);
+			}
+		}
+
+		// t, x and q are the only symbols, as every x is the same one whatever its case or whether it's a string.
+		assertEquals(3, packed.symbols());
+		assertEquals(PackedTokens.IDENTIFIER, packed.kind(2));
+		assertEquals(packed.symbol(2), packed.symbol(6));
+		assertEquals(packed.symbol(2), packed.symbol(10));
+		assertEquals(PackedTokens.STRING, packed.kind(21));
+		assertEquals(packed.symbol(2), packed.symbol(21));
+		assertEquals("x", packed.name(packed.symbol(21)));
+
+		assertEquals(PackedTokens.NUMBER, packed.kind(12));
+		assertEquals(2.5F, packed.number(12));
+		assertEquals(source.indexOf("2.5"), packed.start(12));
+		assertEquals(3, packed.length(12));
+	}
+
+	@Test
+	public void testParsePacked() throws IOException {
+		for (var source : List.of(
+			"math.cos(query.anim_time * 38) * variable.rotation_scale + variable.x * variable.x * query.life_time;",
+			"t.a = q.x * 2; loop(4, { t.a = t.a > 3 ? t.a * 0.5 : t.a + 'str'; }); return t.a ?? -1",
+			""
+		)) {
+			var packed = new MolangLexer(source.getBytes(StandardCharsets.UTF_8)).readPacked();
+
+			assertEquals(parse(source), new MolangParser(packed, linker).parseAll(), source);
+			// The same stream can be parsed again.
+			assertEquals(parse(source), new MolangParser(packed, linker).parseAll(), source);
+		}
+
+		// Errors are the only tokens the parser makes objects of, and fail the same way either way.
+		var source = "q.x + \"x\"";
+		var packed = new MolangLexer(source.getBytes(StandardCharsets.UTF_8)).readPacked();
+
+		var expected = assertThrows(RuntimeException.class, () -> parse(source));
+		var actual = assertThrows(RuntimeException.class, () -> new MolangParser(packed, linker).parseAll());
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getMessage(), actual.getMessage());
+	}
 }
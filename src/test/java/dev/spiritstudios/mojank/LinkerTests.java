@@ -0,0 +1,45 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class LinkerTests {
+	@Test
+	public void testMembersAreCaseInsensitive() throws Throwable {
+		assertEquals(Query.class.getField("anim_time"), linker.findField(Query.class, "Anim_Time"));
+		assertEquals(Query.class.getMethod("test", float.class), linker.findMethod(Query.class, "TEST"));
+
+		assertNull(linker.findField(Query.class, "does_not_exist"));
+		assertNull(linker.findMethod(Query.class, "does_not_exist"));
+	}
+
+	@Test
+	public void testUnpermittedReceiver() {
+		assertThrows(IllegalArgumentException.class, () -> linker.findMethod(System.class, "exit"));
+		assertThrows(IllegalArgumentException.class, () -> linker.findField(Runtime.class, "version"));
+	}
+
+	@Test
+	public void testConcurrentLookups() throws Throwable {
+		var tasks = new ArrayList<Callable<Object>>();
+		for (int i = 0; i < 64; i++) {
+			tasks.add(() -> linker.findField(Query.Vec3.class, "x"));
+		}
+
+		try (var executor = Executors.newFixedThreadPool(8)) {
+			var expected = Query.Vec3.class.getField("x");
+			for (var future : executor.invokeAll(tasks)) {
+				assertEquals(expected, future.get());
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.ast.BinaryOperationExpression;
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.ast.LocalStoreExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.MethodCallExpression;
+import dev.spiritstudios.mojank.compile.CompileContext;
+import dev.spiritstudios.mojank.compile.optimise.LoopInvariants;
+import dev.spiritstudios.mojank.internal.Util;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.assertEvalEquals;
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static dev.spiritstudios.mojank.Assertions.target;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class LoopInvariantTests {
+	private static List<Expression> preheader(String source) throws IOException {
+		var context = new CompileContext(linker, target);
+		var hoisted = assertInstanceOf(ComplexExpression.class, LoopInvariants.hoist(parse(source), context));
+		return assertInstanceOf(LoopExpression.class, hoisted.expressions().getFirst()).preheader();
+	}
+
+	private static Expression hoisted(List<Expression> preheader, int index) {
+		return assertInstanceOf(LocalStoreExpression.class, preheader.get(index)).value();
+	}
+
+	@Test
+	public void testHoistsPureCalls() throws Throwable {
+		var source = "loop(10, { q.life_time = q.life_time + math.cos(q.anim_time * 3); }); return q.life_time";
+		var preheader = preheader(source);
+
+		assertEquals(1, preheader.size());
+		assertInstanceOf(MethodCallExpression.class, hoisted(preheader, 0));
+
+		assertEvalEquals(
+			Util.make(() -> {
+				var time = 0F;
+				for (int i = 0; i < 10; i++) {
+					time = time + (float) Math.cos(5F * 3F);
+				}
+				return time;
+			}),
+			source,
+			new Context(),
+			new Query()
+		);
+	}
+
+	@Test
+	public void testHoistsFieldChains() throws Throwable {
+		var source = "q.pos.x = 2; loop(10, { q.life_time = q.life_time + q.pos.x; }); return q.life_time";
+		var preheader = preheader("loop(10, { q.life_time = q.life_time + q.pos.x; }); return q.life_time");
+
+		var get = assertInstanceOf(BinaryOperationExpression.class, hoisted(preheader, 0));
+		assertEquals(BinaryOperationExpression.Operator.GET, get.operator());
+
+		assertEvalEquals(20F, source, new Context(), new Query());
+	}
+
+	@Test
+	public void testWritesInBody() throws Throwable {
+		// Read before it is written within the loop, so the first iteration sees a different value to the rest.
+		var source = "loop(10, { q.life_time = q.life_time + q.anim_time; q.anim_time = 1; }); return q.life_time";
+
+		assertTrue(preheader(source).isEmpty());
+		assertEvalEquals(14F, source, new Context(), new Query());
+
+		// Any call not marked pure could write anything.
+		assertTrue(preheader("loop(10, { q.life_time = q.life_time + q.pos.x; q.test(1); }); return 0").isEmpty());
+
+		// Array writes only affect array reads, not the array itself.
+		var arrays = preheader("loop(10, { q.array_test[0] = q.array_test[1] + q.anim_time; }); return 0");
+		assertEquals(2, arrays.size());
+		assertInstanceOf(BinaryOperationExpression.class, hoisted(arrays, 0));
+		assertInstanceOf(BinaryOperationExpression.class, hoisted(arrays, 1));
+	}
+
+	@Test
+	public void testOnlyUnconditionalExpressions() throws Throwable {
+		// Nothing after a break can be hoisted, as the first iteration may never get to it.
+		var preheader = preheader("loop(10, { q.x > 5 ? break; q.life_time = q.pos.x; }); return 0");
+		assertEquals(1, preheader.size());
+		assertEquals(
+			BinaryOperationExpression.Operator.GREATER_THAN,
+			assertInstanceOf(BinaryOperationExpression.class, hoisted(preheader, 0)).operator()
+		);
+
+		// Nor may a loop that never runs evaluate anything it hoisted.
+		var query = new Query();
+		query.pos = null;
+
+		assertEvalEquals(0F, "loop(q.count(0), { q.life_time = q.pos.x * 2; }); return q.life_time", new Context(), query);
+	}
+}
@@ -0,0 +1,95 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.ast.ComplexExpression;
+import dev.spiritstudios.mojank.ast.LoopExpression;
+import dev.spiritstudios.mojank.ast.UnaryOperationExpression;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.compile.optimise.LoopUnroller;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import dev.spiritstudios.mojank.runtime.Primitives;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.Assertions.analysis;
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+public final class LoopTests {
+	private static float eval(String source, Query query, CompileOptions options) throws Throwable {
+		Functor functor = Compiler.compile(lookup, linker, Functor.class, parse(source), source, options);
+		return functor.invoke(new Context(), query);
+	}
+
+	private static Object unrolled(String source, CompileOptions options) throws IOException {
+		var statements = assertInstanceOf(ComplexExpression.class, LoopUnroller.unroll(parse(source), options));
+		return statements.expressions().getFirst();
+	}
+
+	@Test
+	public void testCountEvaluatedOnce() throws Throwable {
+		var query = new Query();
+
+		assertEquals(10F, eval("loop(q.count(10), { q.x = q.x + 1; }); return q.x", query, CompileOptions.DEFAULT));
+		assertEquals(1, query.count_calls);
+	}
+
+	@Test
+	public void testIterationCap() throws Throwable {
+		var query = new Query();
+
+		assertEquals(1024F, eval("loop(q.count(100000), { q.x = q.x + 1; }); return q.x", query, CompileOptions.DEFAULT));
+		assertEquals(1024F, eval("q.x = 0; loop(100000, { q.x = q.x + 1; }); return q.x", query, CompileOptions.DEFAULT));
+
+		var capped = CompileOptions.builder().maxLoopIterations(5).build();
+		assertEquals(5F, eval("q.x = 0; loop(q.count(10), { q.x = q.x + 1; }); return q.x", query, capped));
+		assertEquals(5F, eval("q.x = 0; loop(10, { q.x = q.x + 1; }); return q.x", query, capped));
+	}
+
+	@Test
+	public void testUnrolling() throws Throwable {
+		var unrolled = unrolled("loop(3, { q.x = q.x + 1; }); return q.x", CompileOptions.DEFAULT);
+		assertEquals(3, assertInstanceOf(ComplexExpression.class, unrolled).expressions().size());
+		assertEquals(3F, eval("loop(3, { q.x = q.x + 1; }); return q.x", new Query(), CompileOptions.DEFAULT));
+
+		// The cap applies before deciding whether to unroll.
+		var capped = CompileOptions.builder().maxLoopIterations(2).build();
+		assertEquals(2, ((ComplexExpression) unrolled("loop(300, { q.x = q.x + 1; }); return q.x", capped)).expressions().size());
+
+		// Neither too many iterations nor anything that jumps out of the loop can be unrolled.
+		assertInstanceOf(LoopExpression.class, unrolled("loop(30, { q.x = q.x + 1; }); return q.x", CompileOptions.DEFAULT));
+		assertInstanceOf(LoopExpression.class, unrolled("loop(3, { q.x = q.x + 1; q.x > 1 ? break; }); return q.x", CompileOptions.DEFAULT));
+		assertEquals(2F, eval("loop(3, { q.x = q.x + 1; q.x > 1 ? break; }); return q.x", new Query(), CompileOptions.DEFAULT));
+
+		var disabled = CompileOptions.builder().unrollLimit(0).build();
+		assertInstanceOf(LoopExpression.class, unrolled("loop(3, { q.x = q.x + 1; }); return q.x", disabled));
+		assertInstanceOf(UnaryOperationExpression.class, LoopUnroller.unroll(parse("return 1"), disabled));
+	}
+
+	@Test
+	public void testInterpreted() throws Throwable {
+		var analysis = analysis();
+		var capped = CompileOptions.builder().maxLoopIterations(5).build();
+
+		for (var source : List.of(
+			"loop(4, { q.x = q.x + 1; }); return q.x",
+			"loop(10, { q.x = q.x + 1; q.x > 2 ? break; }); return q.x",
+			"loop(10, { q.x = q.x + 1; q.x > 2 ? continue; q.y = q.y + 1; }); return q.y",
+			"loop(3, { loop(3, { q.x = q.x + 1; q.x > 4 ? break; }); q.y = q.y + 1; }); return q.x * 10 + q.y",
+			"loop(q.count(100), { q.x = q.x + 1; }); return q.x"
+		)) {
+			for (var options : List.of(CompileOptions.DEFAULT, capped)) {
+				var interpreted = MolangInterpreter.evaluate(parse(source), analysis, options, new Context(), new Query());
+
+				assertEquals(eval(source, new Query(), options), Primitives.unboxAsFloatLenient(interpreted), source);
+			}
+		}
+	}
+}
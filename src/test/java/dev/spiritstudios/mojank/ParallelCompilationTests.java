@@ -0,0 +1,46 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class ParallelCompilationTests {
+	@Test
+	public void testCompileAllKeepsOrder() throws Throwable {
+		var sources = new ArrayList<String>();
+		for (int i = 0; i < 256; i++) {
+			sources.add("q.anim_time * " + i + " + math.sin(0)");
+		}
+
+		try (var executor = Executors.newFixedThreadPool(8)) {
+			var results = Compiler.compileAll(lookup, linker, Functor.class, sources, executor);
+
+			assertEquals(sources.size(), results.size());
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(5F * i, results.get(i).invoke(new Context(), new Query()));
+				assertEquals(sources.get(i), results.get(i).toString());
+			}
+		}
+	}
+
+	@Test
+	public void testCompileAllPropagatesFailure() {
+		try (var executor = Executors.newFixedThreadPool(4)) {
+			assertThrows(
+				IllegalArgumentException.class,
+				() -> Compiler.compileAll(lookup, linker, Functor.class, List.of("1", "2 +* )"), executor)
+			);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.lang.classfile.Attributes;
+import java.lang.classfile.ClassFile;
+
+import static dev.spiritstudios.mojank.Assertions.analysis;
+import static dev.spiritstudios.mojank.Assertions.assertEvalEquals;
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class TemporaryTests {
+	private static int maxLocals(String source) throws Throwable {
+		var bytecode = Compiler.compileToBytecode(lookup, linker, Functor.class, parse(source), source);
+
+		return ClassFile.of().parse(bytecode).methods().stream()
+			.filter(method -> method.methodName().equalsString("invoke"))
+			.findFirst()
+			.orElseThrow()
+			.findAttribute(Attributes.code())
+			.orElseThrow()
+			.maxLocals();
+	}
+
+	@Test
+	public void testTypes() throws Throwable {
+		var query = new Query();
+		query.x = 3;
+
+		assertEvalEquals(5F, "t.i = q.x + 2; return t.i", new Context(), query);
+		assertEvalEquals(3F, "t.b = q.test_bool2; return t.b ? 3 : 1", new Context(), query);
+
+		assertEvalEquals(4F, "t.p = q.pos; t.p.x = 4; return q.pos.x", new Context(), query);
+		assertEquals(4F, query.pos.x);
+	}
+
+	@Test
+	public void testWidening() throws Throwable {
+		var query = new Query();
+		query.x = 3;
+
+		assertEvalEquals(3.5F, "t.i = q.x; t.i = t.i + 0.5; return t.i", new Context(), query);
+		assertEvalEquals(0.5F, "t.i = q.x; t.i = 0.5; return t.i", new Context(), query);
+		assertEvalEquals(1.5F, "return q.x / 2", new Context(), query);
+		// Reads before the widening assignment see the widened type too.
+		assertEvalEquals(4.5F, "t.i = q.x; t.j = t.i + 1; t.i = t.j + 0.5; return t.i", new Context(), query);
+		assertEvalEquals(
+			9F,
+			"t.i = q.x; loop(3, { t.i = t.i + 0.5; }); t.i = t.i * 2; return t.i",
+			new Context(),
+			query
+		);
+	}
+
+	@Test
+	public void testUnsetReadsZero() throws Throwable {
+		assertEvalEquals(0F, "return t.a");
+		assertEvalEquals(0F, "q.test_bool ? t.a = 5; return t.a", new Context(), new Query());
+		assertEvalEquals(5F, "q.test_bool2 ? t.a = 5; return t.a", new Context(), new Query());
+		assertEvalEquals(1F, "t.a = t.a + 1; return t.a");
+	}
+
+	@Test
+	public void testLoops() throws Throwable {
+		assertEvalEquals(30F, "t.i = 0; loop(30, { t.i = t.i + 1; }); return t.i");
+		assertEvalEquals(60F, "loop(30, { t.j = t.j + 2; }); return t.j");
+		assertEvalEquals(
+			30F,
+			"""
+				t.total = 0;
+				loop(30, {
+					t.step = 1;
+					t.total = t.total + t.step;
+				});
+				t.last = t.total;
+				return t.last;
+				"""
+		);
+	}
+
+	@Test
+	public void testSlotsAreShared() throws Throwable {
+		var chain = """
+			t.a = q.anim_time;
+			t.b = t.a * 2;
+			t.c = t.b * 2;
+			t.d = t.c * 2;
+			t.e = t.d * 2;
+			return t.e;
+			""";
+
+		assertEvalEquals(new Query().anim_time * 16F, chain, new Context(), new Query());
+		// The receiver and both parameters, then a single slot that each variable takes over from the last.
+		assertEquals(4, maxLocals(chain));
+
+		// Both are live at once.
+		assertEquals(5, maxLocals("t.a = q.anim_time; t.b = q.life_time; return t.a + t.b"));
+	}
+
+	@Test
+	public void testInterpreter() throws Throwable {
+		var analysis = analysis();
+
+		assertEquals(6F, MolangInterpreter.evaluate(parse("t.a = 2; return t.a * 3"), analysis, new Context(), new Query()));
+		assertEquals(0F, MolangInterpreter.evaluate(parse("return temp.unset"), analysis, new Context(), new Query()));
+	}
+}
@@ -0,0 +1,161 @@
+package dev.spiritstudios.mojank;
+
+import dev.spiritstudios.mojank.compile.Analysis;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.compile.VariableArena;
+import dev.spiritstudios.mojank.compile.VariableSchema;
+import dev.spiritstudios.mojank.meow.test.ArenaFunctor;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.EntityFunctor;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.ValueLayout;
+import java.util.List;
+import java.util.Map;
+
+import static dev.spiritstudios.mojank.Assertions.linker;
+import static dev.spiritstudios.mojank.Assertions.lookup;
+import static dev.spiritstudios.mojank.Assertions.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class VariableTests {
+	private static <T> T compile(Class<T> targetClass, String source, CompileOptions options) throws Throwable {
+		return Compiler.compile(lookup, linker, targetClass, parse(source), source, options);
+	}
+
+	@Test
+	public void testPersistsAcrossInvocations() throws Throwable {
+		var source = "v.count = v.count + 1; return v.count";
+		Functor first = compile(Functor.class, source, CompileOptions.DEFAULT);
+		Functor second = compile(Functor.class, source, CompileOptions.DEFAULT);
+
+		assertEquals(1F, first.invoke(new Context(), new Query()));
+		assertEquals(2F, first.invoke(new Context(), new Query()));
+		assertEquals(3F, first.invoke(new Context(), new Query()));
+
+		// Each instance keeps its own.
+		assertEquals(1F, second.invoke(new Context(), new Query()));
+	}
+
+	@Test
+	public void testSharedStruct() throws Throwable {
+		var sources = List.of(
+			"v.speed = q.anim_time * 2; v.moving = v.speed > 0",
+			"return v.moving ? v.speed : -1"
+		);
+
+		var schema = VariableSchema.analyse(linker, EntityFunctor.class, List.of(parse(sources.get(0)), parse(sources.get(1))));
+		assertEquals(Map.of("moving", boolean.class, "speed", float.class), schema.members());
+
+		var options = CompileOptions.builder().variables(schema).build();
+		EntityFunctor update = compile(EntityFunctor.class, sources.get(0), options);
+		EntityFunctor read = compile(EntityFunctor.class, sources.get(1), options);
+
+		var struct = schema.define(lookup).getConstructor().newInstance();
+
+		assertEquals(-1F, read.invoke(new Context(), new Query(), struct));
+
+		update.invoke(new Context(), new Query(), struct);
+
+		assertEquals(new Query().anim_time * 2F, read.invoke(new Context(), new Query(), struct));
+		assertEquals(true, struct.getClass().getField("moving").get(struct));
+	}
+
+	@Test
+	public void testTypesAreUnified() throws Throwable {
+		var schema = VariableSchema.analyse(
+			linker,
+			EntityFunctor.class,
+			List.of(
+				parse("v.a = q.x; v.b = q.pos; v.c = q.test_bool"),
+				parse("v.a = 1.5; v.b = 2; v.c = q.test_bool2")
+			)
+		);
+
+		assertEquals(Map.of("a", float.class, "b", Object.class, "c", boolean.class), schema.members());
+	}
+
+	@Test
+	public void testStructRequiresSchema() {
+		assertThrows(
+			IllegalArgumentException.class,
+			() -> compile(EntityFunctor.class, "return v.a", CompileOptions.DEFAULT)
+		);
+	}
+
+	@Test
+	public void testDefineIsIdempotent() throws Throwable {
+		var schema = VariableSchema.analyse(linker, EntityFunctor.class, List.of(parse("v.idempotent = 1")));
+		var equal = new VariableSchema(Map.of("idempotent", float.class));
+
+		assertSame(schema.define(lookup), equal.define(lookup));
+	}
+
+	@Test
+	public void testArena() throws Throwable {
+		var sources = List.of(
+			"v.ticks = v.ticks + 1; v.flag = v.ticks > 2; v.total = v.total + q.anim_time",
+			"return v.flag ? v.total : -v.ticks"
+		);
+
+		var schema = VariableSchema.analyse(linker, ArenaFunctor.class, List.of(parse(sources.get(0)), parse(sources.get(1))));
+
+		try (var arena = new VariableArena(schema, 4)) {
+			var options = CompileOptions.builder().arena(arena).build();
+			ArenaFunctor update = compile(ArenaFunctor.class, sources.get(0), options);
+			ArenaFunctor read = compile(ArenaFunctor.class, sources.get(1), options);
+
+			update.invoke(new Context(), new Query(), 1);
+			update.invoke(new Context(), new Query(), 1);
+			update.invoke(new Context(), new Query(), 3);
+
+			assertEquals(-2F, read.invoke(new Context(), new Query(), 1));
+			assertEquals(-1F, read.invoke(new Context(), new Query(), 3));
+			assertEquals(-0F, read.invoke(new Context(), new Query(), 0));
+
+			update.invoke(new Context(), new Query(), 1);
+			assertEquals(new Query().anim_time * 3F, read.invoke(new Context(), new Query(), 1));
+
+			var ticks = arena.layout().byteOffset(MemoryLayout.PathElement.groupElement("ticks"));
+			assertEquals(3F, arena.slice(1).get(ValueLayout.JAVA_FLOAT, ticks));
+
+			arena.clear(1);
+			assertEquals(-0F, read.invoke(new Context(), new Query(), 1));
+
+			assertThrows(IndexOutOfBoundsException.class, () -> read.invoke(new Context(), new Query(), 4));
+		}
+	}
+
+	@Test
+	public void testArenaRequirements() throws Throwable {
+		assertThrows(
+			IllegalArgumentException.class,
+			() -> compile(ArenaFunctor.class, "return v.a", CompileOptions.DEFAULT)
+		);
+
+		// References can't be stored off-heap.
+		var schema = VariableSchema.analyse(linker, ArenaFunctor.class, List.of(parse("v.pos = q.pos")));
+		assertThrows(IllegalArgumentException.class, () -> new VariableArena(schema, 1));
+	}
+
+	@Test
+	public void testInterpreter() throws Throwable {
+		var schema = VariableSchema.analyse(linker, EntityFunctor.class, List.of(parse("v.a = 2")));
+		var analysis = new Analysis(
+			linker,
+			linker.tryFunctionalClass(EntityFunctor.class).orElseThrow(),
+			schema
+		);
+		var struct = schema.define(lookup).getConstructor().newInstance();
+
+		MolangInterpreter.evaluate(parse("v.a = 2"), analysis, new Context(), new Query(), struct);
+
+		assertEquals(6F, MolangInterpreter.evaluate(parse("return v.a * 3"), analysis, new Context(), new Query(), struct));
+	}
+}
@@ -0,0 +1,123 @@
+package dev.spiritstudios.mojank.benchmark;
+
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.internal.Util;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.format;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.linker;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.lookup;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.metaspaceUsed;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares defining one hidden class per expression against {@link Compiler#compileBatch},
+ * both in what it costs to define them and in how quickly they can then be called.
+ */
+@Tag(Benchmarks.TAG)
+public final class BatchCompilationBenchmark {
+	private static final Logger logger = Util.logger();
+
+	private static final int EXPRESSIONS = 20_000;
+
+	/**
+	 * Enough expressions to fill a whole batch, so that every level of its dispatch is exercised.
+	 */
+	private static final int CALLED = Compiler.DEFAULT_BATCH_SIZE;
+
+	private static final int PASSES = 20_000;
+
+	@Test
+	public void benchmarkDefineTimeAndMetaspace() throws Throwable {
+		var sources = Benchmarks.sources(EXPRESSIONS);
+		var expressions = Benchmarks.parseAll(sources);
+
+		// Warm up the class file API and the hidden class machinery before measuring anything.
+		Compiler.compileBatch(lookup, linker, Functor.class, expressions.subList(0, 512), sources.subList(0, 512));
+		for (int i = 0; i < 512; i++) {
+			Compiler.compile(lookup, linker, Functor.class, expressions.get(i), sources.get(i));
+		}
+
+		System.gc();
+		long metaspace = metaspaceUsed();
+		long defineNanos = 0;
+		for (int i = 0; i < EXPRESSIONS; i++) {
+			var bytecode = Compiler.compileToBytecode(lookup, linker, Functor.class, expressions.get(i), sources.get(i));
+
+			long time = System.nanoTime();
+			Compiler.<Functor>define(lookup, bytecode);
+			defineNanos += System.nanoTime() - time;
+		}
+		long singleMetaspace = metaspaceUsed() - metaspace;
+
+		System.gc();
+		metaspace = metaspaceUsed();
+		var batch = Compiler.compileBatch(lookup, linker, Functor.class, expressions, sources);
+		long batchMetaspace = metaspaceUsed() - metaspace;
+
+		assertEquals(EXPRESSIONS, batch.results().size());
+
+		logger.info(
+			"One class per expression: {} classes, define {}, metaspace +{} KiB",
+			EXPRESSIONS, format(defineNanos), singleMetaspace / 1024
+		);
+		logger.info(
+			"Batched: {} classes ({} saved), define {}, metaspace +{} KiB",
+			batch.classes(), batch.classesSaved(), format(batch.defineNanos()), batchMetaspace / 1024
+		);
+	}
+
+	@Test
+	public void benchmarkCallThroughput() throws Throwable {
+		var sources = Benchmarks.sources(CALLED);
+		var expressions = Benchmarks.parseAll(sources);
+
+		var single = new ArrayList<Functor>(CALLED);
+		for (int i = 0; i < CALLED; i++) {
+			single.add(Compiler.compile(lookup, linker, Functor.class, expressions.get(i), sources.get(i)));
+		}
+		var batched = Compiler.compileBatch(lookup, linker, Functor.class, expressions, sources).results();
+
+		var context = new Context();
+		var query = new Query();
+		query.life_time = 1.5F;
+
+		for (int i = 0; i < CALLED; i++) {
+			assertEquals(single.get(i).invoke(context, query), batched.get(i).invoke(context, query));
+		}
+
+		// Warm up both, so that neither is measured while still interpreted.
+		time(single, context, query);
+		time(batched, context, query);
+
+		long singleNanos = time(single, context, query);
+		long batchedNanos = time(batched, context, query);
+
+		logger.info("One class per expression: {} per {} calls", format(singleNanos), (long) CALLED * PASSES);
+		logger.info(
+			"Batched: {} per {} calls ({}x)",
+			format(batchedNanos), (long) CALLED * PASSES, String.format("%.2f", (double) batchedNanos / singleNanos)
+		);
+	}
+
+	private static long time(List<Functor> functors, Context context, Query query) {
+		float sum = 0;
+		long time = System.nanoTime();
+		for (int pass = 0; pass < PASSES; pass++) {
+			for (var functor : functors) {
+				sum += functor.invoke(context, query);
+			}
+		}
+		time = System.nanoTime() - time;
+		logger.debug("Sum: {}", sum);
+		return time;
+	}
+}
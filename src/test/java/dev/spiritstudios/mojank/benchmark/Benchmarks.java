@@ -0,0 +1,95 @@
+package dev.spiritstudios.mojank.benchmark;
+
+import dev.spiritstudios.mojank.MolangLexer;
+import dev.spiritstudios.mojank.MolangParser;
+import dev.spiritstudios.mojank.ast.Expression;
+import dev.spiritstudios.mojank.compile.Analysis;
+import dev.spiritstudios.mojank.compile.link.Linker;
+import dev.spiritstudios.mojank.internal.Util;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.MolangMath;
+import dev.spiritstudios.mojank.meow.test.Query;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared fixtures for the benchmarks, which are run with {@code gradlew benchmark} rather than as part of the tests.
+ */
+final class Benchmarks {
+	static final String TAG = "benchmark";
+
+	static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	static final Linker linker = Linker.UNTRUSTED.toBuilder()
+		.addAllowedClasses(Context.class, Query.class, Query.Vec3.class, Object.class)
+		.aliasClass(MolangMath.class, "math")
+		.build();
+
+	/**
+	 * The method expressions compiled as a {@link Functor} implement.
+	 */
+	static final Method target = linker.tryFunctionalClass(Functor.class).orElseThrow();
+
+	private Benchmarks() {
+	}
+
+	static Expression parse(String source) throws IOException {
+		return new MolangParser(new MolangLexer(new StringReader(source)), linker).parseAll();
+	}
+
+	/**
+	 * A fresh analysis for expressions compiled as a {@link Functor}.
+	 */
+	static Analysis analysis() {
+		return new Analysis(linker, target);
+	}
+
+	/**
+	 * Generates {@code count} distinct, but representative, animation expressions.
+	 */
+	static List<String> sources(int count) {
+		var sources = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			sources.add(switch (i % 4) {
+				case 0 -> "q.anim_time * " + i;
+				case 1 -> "math.sin(q.life_time * " + i + ") * 0.5";
+				case 2 -> "q.anim_time > " + i + " ? q.life_time : -" + i;
+				default -> "math.cos(q.anim_time + " + i + ") + math.sin(q.life_time)";
+			});
+		}
+		return sources;
+	}
+
+	static List<Expression> parseAll(List<String> sources) throws IOException {
+		var expressions = new ArrayList<Expression>(sources.size());
+		for (var source : sources) {
+			expressions.add(parse(source));
+		}
+		return expressions;
+	}
+
+	/**
+	 * Current metaspace usage in bytes, or -1 if the JVM does not expose it.
+	 */
+	static long metaspaceUsed() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ("Metaspace".equals(pool.getName())) {
+				return pool.getUsage().getUsed();
+			}
+		}
+		return -1;
+	}
+
+	static String format(long nanos) {
+		return Util.formatDuration(Duration.ofNanos(nanos));
+	}
+}
@@ -0,0 +1,68 @@
+package dev.spiritstudios.mojank.benchmark;
+
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.compile.HandleCompiler;
+import dev.spiritstudios.mojank.internal.Util;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.format;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.linker;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.lookup;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the throughput of an expression built from method handle combinators against the same expression compiled.
+ */
+@Tag(Benchmarks.TAG)
+public final class HandleCompilerBenchmark {
+	private static final Logger logger = Util.logger();
+
+	private static final int EVALUATIONS = 10_000_000;
+
+	private static final String SOURCE = "t.a = q.anim_time * 2 + math.sin(q.life_time); " +
+		"loop(4, { t.a = t.a > 3 ? t.a * 0.5 : t.a + q.pos.x; }); return t.a";
+
+	@Test
+	public void benchmarkHandleCompiler() throws Throwable {
+		var compiled = Compiler.compile(lookup, linker, Functor.class, parse(SOURCE), SOURCE);
+		var handles = HandleCompiler.proxy(linker, Functor.class, parse(SOURCE), CompileOptions.DEFAULT);
+
+		var context = new Context();
+		var query = new Query();
+		query.life_time = 1.5F;
+		query.pos.x = 2F;
+
+		assertEquals(compiled.invoke(context, query), handles.invoke(context, query));
+
+		// Warm up both, so that neither is measured while still interpreted.
+		time(compiled, context, query);
+		time(handles, context, query);
+
+		long compiledNanos = time(compiled, context, query);
+		long handleNanos = time(handles, context, query);
+
+		logger.info("Compiled: {} per {} evaluations", format(compiledNanos), EVALUATIONS);
+		logger.info(
+			"Handles: {} per {} evaluations ({}x)",
+			format(handleNanos), EVALUATIONS, String.format("%.2f", (double) handleNanos / compiledNanos)
+		);
+	}
+
+	private static long time(Functor functor, Context context, Query query) {
+		float sum = 0;
+		long time = System.nanoTime();
+		for (int i = 0; i < EVALUATIONS; i++) {
+			sum += functor.invoke(context, query);
+		}
+		time = System.nanoTime() - time;
+		logger.debug("Sum: {}", sum);
+		return time;
+	}
+}
@@ -0,0 +1,60 @@
+package dev.spiritstudios.mojank.benchmark;
+
+import dev.spiritstudios.mojank.MolangInterpreter;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.internal.Util;
+import dev.spiritstudios.mojank.meow.test.Context;
+import dev.spiritstudios.mojank.meow.test.Query;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.lang.management.ManagementFactory;
+
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.analysis;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.format;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures what {@link MolangInterpreter#evaluateFloat} allocates per evaluation, which should be nothing at all
+ * for arithmetic over fields and calls once the arguments array is reused.
+ */
+@Tag(Benchmarks.TAG)
+public final class InterpreterAllocationBenchmark {
+	private static final Logger logger = Util.logger();
+
+	private static final int EVALUATIONS = 1_000_000;
+
+	private static final String SOURCE = "q.anim_time * 2 + math.sin(q.life_time) > 3 ? q.pos.x + q.test(q.x) : -q.x";
+
+	@Test
+	public void benchmarkInterpreterAllocation() throws Throwable {
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		var thread = Thread.currentThread().threadId();
+
+		var expression = parse(SOURCE);
+		var analysis = analysis();
+		var arguments = new Object[] {new Context(), new Query()};
+
+		// Warm up, so that the handles are linked and their adaptations cached.
+		var sum = 0F;
+		for (int i = 0; i < EVALUATIONS / 10; i++) {
+			sum += MolangInterpreter.evaluateFloat(expression, analysis, CompileOptions.DEFAULT, arguments);
+		}
+
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long time = System.nanoTime();
+		for (int i = 0; i < EVALUATIONS; i++) {
+			sum += MolangInterpreter.evaluateFloat(expression, analysis, CompileOptions.DEFAULT, arguments);
+		}
+		time = System.nanoTime() - time;
+		allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+		logger.info("Interpreted: {} per evaluation (sum {})", format(time / EVALUATIONS), sum);
+		logger.info("Allocated: {} bytes over {} evaluations", allocated, EVALUATIONS);
+
+		// Anything that boxes would allocate at least a few bytes every evaluation.
+		assertEquals(0, allocated / EVALUATIONS);
+	}
+}
@@ -0,0 +1,61 @@
+package dev.spiritstudios.mojank.benchmark;
+
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.internal.Util;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.concurrent.Executors;
+
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.format;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.linker;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.lookup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures how {@link Compiler#compileAll} throughput scales from one thread up to every available core.
+ */
+@Tag(Benchmarks.TAG)
+public final class ParallelCompilationBenchmark {
+	private static final Logger logger = Util.logger();
+
+	private static final int EXPRESSIONS = 20_000;
+
+	@Test
+	public void benchmarkThreadScaling() throws Throwable {
+		var sources = Benchmarks.sources(EXPRESSIONS);
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		// Warm up every thread count's code paths before measuring.
+		try (var executor = Executors.newFixedThreadPool(cores)) {
+			Compiler.compileAll(lookup, linker, Functor.class, sources.subList(0, 2_000), executor);
+		}
+
+		long baseline = 0;
+
+		for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(threads * 2, cores) : threads + 1) {
+			try (var executor = Executors.newFixedThreadPool(threads)) {
+				long time = System.nanoTime();
+				var results = Compiler.compileAll(lookup, linker, Functor.class, sources, executor);
+				long elapsed = System.nanoTime() - time;
+
+				assertEquals(EXPRESSIONS, results.size());
+
+				if (threads == 1) {
+					baseline = elapsed;
+				}
+
+				logger.info(
+					"{} thread(s): {} for {} expressions, {} expressions/s, {}x speedup",
+					threads,
+					format(elapsed),
+					EXPRESSIONS,
+					String.format("%.0f", EXPRESSIONS / (elapsed / 1e9)),
+					String.format("%.2f", (double) baseline / elapsed)
+				);
+			}
+		}
+	}
+}
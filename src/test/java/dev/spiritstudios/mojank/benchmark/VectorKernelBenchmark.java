@@ -0,0 +1,79 @@
+package dev.spiritstudios.mojank.benchmark;
+
+import dev.spiritstudios.mojank.compile.BatchKernel;
+import dev.spiritstudios.mojank.compile.CompileOptions;
+import dev.spiritstudios.mojank.compile.Compiler;
+import dev.spiritstudios.mojank.internal.Util;
+import dev.spiritstudios.mojank.meow.test.Functor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.Random;
+
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.format;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.linker;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.lookup;
+import static dev.spiritstudios.mojank.benchmark.Benchmarks.parse;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compares a {@link BatchKernel} evaluated one element at a time against the same kernel vectorised.
+ */
+@Tag(Benchmarks.TAG)
+public final class VectorKernelBenchmark {
+	private static final Logger logger = Util.logger();
+
+	private static final int ELEMENTS = 1_000_003;
+	private static final int ROUNDS = 200;
+
+	private static final String SOURCE = "q.anim_time > q.life_time ? q.anim_time * 0.5 + q.life_time : -q.life_time * 2";
+
+	@Test
+	public void benchmarkVectorKernel() throws Throwable {
+		var expression = parse(SOURCE);
+
+		var scalar = Compiler.compileKernel(lookup, linker, Functor.class, expression,
+			CompileOptions.builder().vectorise(false).build());
+		var vector = Compiler.compileKernel(lookup, linker, Functor.class, expression,
+			CompileOptions.builder().vectorise(true).build());
+
+		var columns = scalar.allocateColumns(ELEMENTS);
+		var random = new Random(0);
+
+		for (var column : columns) {
+			var values = (float[]) column;
+			for (int i = 0; i < values.length; i++) {
+				values[i] = random.nextFloat() * 10;
+			}
+		}
+
+		var scalarOutput = new float[ELEMENTS];
+		var vectorOutput = new float[ELEMENTS];
+
+		// Warm up both loops, so that neither is measured while still interpreted.
+		for (int i = 0; i < ROUNDS / 4; i++) {
+			scalar.evaluate(columns, scalarOutput, ELEMENTS);
+			vector.evaluate(columns, vectorOutput, ELEMENTS);
+		}
+
+		assertArrayEquals(scalarOutput, vectorOutput);
+
+		long scalarNanos = time(scalar, columns, scalarOutput);
+		long vectorNanos = time(vector, columns, vectorOutput);
+
+		logger.info("Scalar: {} per {} elements", format(scalarNanos / ROUNDS), ELEMENTS);
+		logger.info(
+			"Vector: {} per {} elements ({}x)",
+			format(vectorNanos / ROUNDS), ELEMENTS, String.format("%.2f", (double) scalarNanos / vectorNanos)
+		);
+	}
+
+	private static long time(BatchKernel kernel, Object[] columns, float[] output) {
+		long time = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			kernel.evaluate(columns, output, ELEMENTS);
+		}
+		return System.nanoTime() - time;
+	}
+}
@@ -0,0 +1,18 @@
+package dev.spiritstudios.mojank.meow.test;
+
+import dev.spiritstudios.mojank.compile.link.Alias;
+import dev.spiritstudios.mojank.compile.link.Local;
+import dev.spiritstudios.mojank.compile.link.Variables;
+
+/**
+ * Takes its variables as an index into a {@link dev.spiritstudios.mojank.compile.VariableArena}.
+ */
+@FunctionalInterface
+public interface ArenaFunctor {
+	@Local({"temp", "t"})
+	float invoke(
+		@Alias({"context", "c"}) Context context,
+		@Alias({"query", "q"}) Query query,
+		@Variables({"variable", "v"}) int entity
+	);
+}
@@ -0,0 +1,18 @@
+package dev.spiritstudios.mojank.meow.test;
+
+import dev.spiritstudios.mojank.compile.link.Alias;
+import dev.spiritstudios.mojank.compile.link.Local;
+import dev.spiritstudios.mojank.compile.link.Variables;
+
+/**
+ * Takes its variables as a struct, so that several expressions may share them.
+ */
+@FunctionalInterface
+public interface EntityFunctor {
+	@Local({"temp", "t"})
+	float invoke(
+		@Alias({"context", "c"}) Context context,
+		@Alias({"query", "q"}) Query query,
+		@Variables({"variable", "v"}) Object variables
+	);
+}
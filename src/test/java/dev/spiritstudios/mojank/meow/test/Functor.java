@@ -2,6 +2,7 @@ package dev.spiritstudios.mojank.meow.test;
 
 import dev.spiritstudios.mojank.compile.link.Alias;
 import dev.spiritstudios.mojank.compile.link.Local;
+import dev.spiritstudios.mojank.compile.link.Variables;
 
 /**
  * @author Ampflower
@@ -9,6 +10,7 @@ import dev.spiritstudios.mojank.compile.link.Local;
 @FunctionalInterface
 public interface Functor {
 	@Local({"temp", "t"})
+	@Variables({"variable", "v"})
 	float invoke(
 		@Alias({"context", "c"}) Context context,
 		@Alias({"query", "q"}) Query query
@@ -14,4 +14,9 @@ public final class MolangMath {
 	public static float cos(float x) {
 		return (float) Math.cos(x);
 	}
+
+	@Pure
+	public static float pow(float base, float exponent) {
+		return (float) Math.pow(base, exponent);
+	}
 }
@@ -25,10 +25,17 @@ public class Query {
 	public int x = 0;
 	public int y = 0;
 
+	public int count_calls = 0;
+
 	public float test(float value) {
 		return value * 3F;
 	}
 
+	public float count(float value) {
+		count_calls++;
+		return value;
+	}
+
 	public static class Vec3 {
 		public float x;
 		public float y;